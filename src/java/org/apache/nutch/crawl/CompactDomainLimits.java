@@ -0,0 +1,519 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.nutch.crawl.Generator2.SelectorReducer;
+import org.apache.nutch.crawl.Generator2.SelectorReducer.DomainLimits;
+import org.apache.nutch.util.NutchConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact, read-only representation of the per-domain limits used by
+ * {@link Generator2} (see <code>generate.domain.limits.file</code>).
+ *
+ * The binary file is built once from the tab-separated limits file and holds
+ * the domain names as UTF-8 byte sequences sorted in byte order, an offset
+ * table and the packed int limits. Lookups are done by binary search over the
+ * domain bytes. If the file is available locally (e.g., localized by the
+ * distributed cache) it is memory-mapped, so that tasks do not need to parse
+ * a text file holding many millions of domains nor hold the limits as objects
+ * on the heap.
+ *
+ * File layout (all ints big-endian):
+ *
+ * <pre>
+ * magic "NDL1" | number of domains n | length of domain bytes
+ * offsets: int[n+1] into domain bytes
+ * limits:  int[4*n] (max. URLs, max. URLs per host, max. hosts, partitions)
+ * domain bytes
+ * </pre>
+ */
+public class CompactDomainLimits extends AbstractMap<String, DomainLimits> {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Magic bytes "NDL1" starting the binary limits file */
+  public static final int MAGIC = 0x4e444c31;
+
+  private static final int HEADER_SIZE = 12;
+
+  private final ByteBuffer buffer;
+  private final int size;
+  private final int offsetsPos;
+  private final int limitsPos;
+  private final int keysPos;
+
+  private CompactDomainLimits(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a binary domain limits file");
+    }
+    size = buffer.getInt(4);
+    int keysLength = buffer.getInt(8);
+    if (size < 0 || keysLength < 0) {
+      throw new IOException("Corrupt binary domain limits file");
+    }
+    // computed as long, a corrupt size must not overflow the positions
+    long limits = HEADER_SIZE + 4L * (size + 1L);
+    long keys = limits + 16L * size;
+    if (keys + keysLength > buffer.limit()) {
+      throw new IOException("Truncated or corrupt binary domain limits file");
+    }
+    offsetsPos = HEADER_SIZE;
+    limitsPos = (int) limits;
+    keysPos = (int) keys;
+  }
+
+  /**
+   * Check whether a file is a binary domain limits file.
+   *
+   * @param path
+   *          limits file
+   * @param conf
+   *          Hadoop configuration
+   * @return true if the file starts with the magic bytes of a binary limits
+   *         file
+   * @throws IOException
+   *           if the file could not be read
+   */
+  public static boolean isCompact(Path path, Configuration conf)
+      throws IOException {
+    FileSystem fs = path.getFileSystem(conf);
+    FileStatus status;
+    try {
+      status = fs.getFileStatus(path);
+    } catch (FileNotFoundException e) {
+      return false;
+    }
+    if (!status.isFile() || status.getLen() < HEADER_SIZE) {
+      return false;
+    }
+    try (FSDataInputStream in = fs.open(path)) {
+      return in.readInt() == MAGIC;
+    }
+  }
+
+  /**
+   * Open a binary domain limits file. If the file has been shipped by the
+   * distributed cache (see {@link #addCacheFile}) and a localized copy is
+   * found in the task's working directory, or the file is on the local file
+   * system, it is memory-mapped. Otherwise, the file is read into a heap
+   * buffer.
+   *
+   * @param path
+   *          limits file
+   * @param conf
+   *          Hadoop configuration
+   * @return domain limits
+   * @throws IOException
+   *           if the file could not be read or is not a binary limits file
+   */
+  public static CompactDomainLimits open(Path path, Configuration conf)
+      throws IOException {
+    File localFile = getLocalCacheFile(path, conf);
+    if (localFile == null) {
+      FileSystem fs = path.getFileSystem(conf);
+      if (fs instanceof LocalFileSystem) {
+        localFile = ((LocalFileSystem) fs).pathToFile(path);
+      }
+    }
+    if (localFile != null && localFile.isFile()) {
+      LOG.info("Memory-mapping binary domain limits file {}", localFile);
+      try (RandomAccessFile file = new RandomAccessFile(localFile, "r");
+          FileChannel channel = file.getChannel()) {
+        return new CompactDomainLimits(
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      }
+    }
+    LOG.info("Reading binary domain limits file {}", path);
+    FileSystem fs = path.getFileSystem(conf);
+    long length = fs.getFileStatus(path).getLen();
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Binary domain limits file too large: " + path);
+    }
+    byte[] bytes = new byte[(int) length];
+    try (FSDataInputStream in = fs.open(path)) {
+      in.readFully(0, bytes);
+    }
+    return new CompactDomainLimits(ByteBuffer.wrap(bytes));
+  }
+
+  /**
+   * Get the localized copy of a file registered in the distributed cache by
+   * {@link #addCacheFile}.
+   *
+   * @param path
+   *          limits file
+   * @param conf
+   *          Hadoop configuration
+   * @return local copy in the task's working directory, null if the file is
+   *         not shipped by the distributed cache or not localized
+   */
+  private static File getLocalCacheFile(Path path, Configuration conf)
+      throws IOException {
+    String[] cacheFiles = conf.getStrings(MRJobConfig.CACHE_FILES);
+    if (cacheFiles == null) {
+      return null;
+    }
+    URI qualified = path.getFileSystem(conf).makeQualified(path).toUri();
+    for (String cacheFile : cacheFiles) {
+      URI uri;
+      try {
+        uri = new URI(cacheFile);
+      } catch (URISyntaxException e) {
+        continue;
+      }
+      String linkName = uri.getFragment();
+      if (linkName == null) {
+        linkName = new Path(uri).getName();
+      }
+      URI target;
+      try {
+        target = new URI(uri.getScheme(), uri.getAuthority(), uri.getPath(),
+            null, null);
+      } catch (URISyntaxException e) {
+        continue;
+      }
+      if (target.equals(qualified)) {
+        File localFile = new File(linkName);
+        return localFile.isFile() ? localFile : null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Read a binary domain limits file from a stream.
+   *
+   * @param in
+   *          input stream positioned at the start of the file
+   * @return domain limits
+   * @throws IOException
+   *           if the stream could not be read or does not contain a binary
+   *           limits file
+   */
+  public static CompactDomainLimits read(InputStream in) throws IOException {
+    DataInputStream din = new DataInputStream(in);
+    int magic = din.readInt();
+    int n = din.readInt();
+    int keysLength = din.readInt();
+    long length = HEADER_SIZE + 4L * (n + 1L) + 16L * n + keysLength;
+    if (magic != MAGIC || n < 0 || keysLength < 0
+        || length > Integer.MAX_VALUE) {
+      throw new IOException("Not a binary domain limits file");
+    }
+    ByteBuffer buf = ByteBuffer.allocate((int) length);
+    buf.putInt(magic).putInt(n).putInt(keysLength);
+    din.readFully(buf.array(), HEADER_SIZE, (int) length - HEADER_SIZE);
+    return new CompactDomainLimits(buf);
+  }
+
+  /**
+   * Register a binary limits file in the distributed cache of a job, so that
+   * tasks are able to memory-map a local copy.
+   *
+   * @param job
+   *          job reading the limits
+   * @param path
+   *          binary limits file
+   */
+  public static void addCacheFile(org.apache.hadoop.mapreduce.Job job,
+      Path path) throws IOException {
+    FileSystem fs = path.getFileSystem(job.getConfiguration());
+    Path qualified = fs.makeQualified(path);
+    job.addCacheFile(
+        qualified.toUri().resolve("#" + qualified.getName()));
+  }
+
+  /**
+   * Write domain limits in the binary format.
+   *
+   * @param limits
+   *          map &lt;domain, limits&gt;
+   * @param out
+   *          output stream, closed after writing
+   * @throws IOException
+   *           if writing failed
+   */
+  public static void write(Map<String, DomainLimits> limits, OutputStream out)
+      throws IOException {
+    byte[][] keys = new byte[limits.size()][];
+    int i = 0;
+    for (String domain : limits.keySet()) {
+      keys[i++] = domain.getBytes(StandardCharsets.UTF_8);
+    }
+    Arrays.sort(keys, (a, b) -> WritableComparator.compareBytes(a, 0,
+        a.length, b, 0, b.length));
+    long keysLength = 0;
+    for (byte[] key : keys) {
+      keysLength += key.length;
+    }
+    // the file is mapped into a single buffer
+    if (HEADER_SIZE + 4L * (keys.length + 1L) + 16L * keys.length
+        + keysLength > Integer.MAX_VALUE) {
+      throw new IOException("Too many domains for binary limits file");
+    }
+    try (DataOutputStream dout = new DataOutputStream(
+        new BufferedOutputStream(out))) {
+      dout.writeInt(MAGIC);
+      dout.writeInt(keys.length);
+      dout.writeInt((int) keysLength);
+      int offset = 0;
+      for (byte[] key : keys) {
+        dout.writeInt(offset);
+        offset += key.length;
+      }
+      dout.writeInt(offset);
+      for (byte[] key : keys) {
+        DomainLimits l = limits.get(new String(key, StandardCharsets.UTF_8));
+        dout.writeInt(l.maxURLs);
+        dout.writeInt(l.maxURLsPerHost);
+        dout.writeInt(l.maxHosts);
+        dout.writeInt(l.numPartitions);
+      }
+      for (byte[] key : keys) {
+        dout.write(key);
+      }
+    }
+  }
+
+  private int keyStart(int i) {
+    return keysPos + buffer.getInt(offsetsPos + 4 * i);
+  }
+
+  private int keyEnd(int i) {
+    return keysPos + buffer.getInt(offsetsPos + 4 * (i + 1));
+  }
+
+  private int compare(int i, byte[] key, int length) {
+    int start = keyStart(i), end = keyEnd(i);
+    int n = Math.min(end - start, length);
+    for (int j = 0; j < n; j++) {
+      int a = buffer.get(start + j) & 0xff;
+      int b = key[j] & 0xff;
+      if (a != b) {
+        return a - b;
+      }
+    }
+    return (end - start) - length;
+  }
+
+  /**
+   * Binary search for a domain.
+   *
+   * @param key
+   *          UTF-8 bytes of the domain name
+   * @param length
+   *          number of valid bytes in key
+   * @return index of the domain or -1 if not found
+   */
+  public int indexOf(byte[] key, int length) {
+    int lo = 0, hi = size - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = compare(mid, key, length);
+      if (c < 0) {
+        lo = mid + 1;
+      } else if (c > 0) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  private int indexOf(Object key) {
+    if (key instanceof Text) {
+      Text t = (Text) key;
+      return indexOf(t.getBytes(), t.getLength());
+    } else if (key instanceof String) {
+      byte[] bytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+      return indexOf(bytes, bytes.length);
+    }
+    return -1;
+  }
+
+  private DomainLimits getLimits(int i) {
+    int pos = limitsPos + 16 * i;
+    return new DomainLimits(buffer.getInt(pos), buffer.getInt(pos + 4),
+        buffer.getInt(pos + 8), buffer.getInt(pos + 12));
+  }
+
+  /**
+   * Number of fetch list partitions for a domain without creating a
+   * {@link DomainLimits} object.
+   *
+   * @param domain
+   *          domain name
+   * @return number of partitions or 0 if there are no limits for the domain
+   */
+  public int getNumPartitions(String domain) {
+    int i = indexOf(domain);
+    if (i < 0) {
+      return 0;
+    }
+    return buffer.getInt(limitsPos + 16 * i + 12);
+  }
+
+  private String getDomain(int i) {
+    int start = keyStart(i), end = keyEnd(i);
+    byte[] bytes = new byte[end - start];
+    for (int j = 0; j < bytes.length; j++) {
+      bytes[j] = buffer.get(start + j);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Look up limits for a domain.
+   *
+   * @param key
+   *          domain name, either a {@link String} or a {@link Text}
+   * @return limits or null if there are no limits for the domain
+   */
+  @Override
+  public DomainLimits get(Object key) {
+    int i = indexOf(key);
+    if (i < 0) {
+      return null;
+    }
+    return getLimits(i);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Set<Map.Entry<String, DomainLimits>> entrySet() {
+    return new AbstractSet<Map.Entry<String, DomainLimits>>() {
+      @Override
+      public Iterator<Map.Entry<String, DomainLimits>> iterator() {
+        return new Iterator<Map.Entry<String, DomainLimits>>() {
+          private int i = 0;
+
+          @Override
+          public boolean hasNext() {
+            return i < size;
+          }
+
+          @Override
+          public Map.Entry<String, DomainLimits> next() {
+            if (i >= size) {
+              throw new NoSuchElementException();
+            }
+            Map.Entry<String, DomainLimits> e = new SimpleImmutableEntry<>(
+                getDomain(i), getLimits(i));
+            i++;
+            return e;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /**
+   * Tool to convert a tab-separated domain limits file into the binary
+   * format.
+   */
+  public static class Builder extends Configured implements Tool {
+
+    @Override
+    public int run(String[] args) throws Exception {
+      if (args.length != 2) {
+        System.err.println(
+            "Usage: CompactDomainLimits <limits_file> <binary_limits_file>");
+        return -1;
+      }
+      Path input = new Path(args[0]);
+      Path output = new Path(args[1]);
+      FileSystem inFs = input.getFileSystem(getConf());
+      Map<String, DomainLimits> limits;
+      try (InputStreamReader reader = new InputStreamReader(inFs.open(input),
+          StandardCharsets.UTF_8)) {
+        limits = SelectorReducer.readLimitsFile(reader,
+            (String d, DomainLimits l) -> true);
+      }
+      FileSystem outFs = output.getFileSystem(getConf());
+      OutputStream out = outFs.create(output, true);
+      try {
+        write(limits, out);
+      } finally {
+        IOUtils.closeStream(out);
+      }
+      LOG.info("Wrote limits for {} domains to {}", limits.size(), output);
+      return 0;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int res = ToolRunner.run(NutchConfiguration.create(), new Builder(), args);
+    System.exit(res);
+  }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.ByteWritable;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.protocol.ProtocolStatus;
+
+/**
+ * Compact serialization of {@link CrawlDatum} metadata (since CrawlDatum
+ * version 8). Compared to {@link MapWritable} no class-ID table is written,
+ * well-known keys are written as a single number and primitive values are
+ * variable-length encoded:
+ *
+ * <pre>
+ * vint numEntries
+ * per entry:
+ *   vint keyId    (0: followed by the key as Text, else index + 1 into the
+ *                  table of well-known keys)
+ *   byte type
+ *   value         (encoded by type)
+ * </pre>
+ *
+ * Only maps with {@link Text} keys and values of the supported types (Text,
+ * IntWritable, LongWritable, FloatWritable, DoubleWritable, BooleanWritable,
+ * ByteWritable, BytesWritable and ProtocolStatus) can be encoded, other maps
+ * are written as MapWritable.
+ *
+ * Decoded maps share the well-known key instances. Like
+ * {@link Nutch#WRITABLE_GENERATE_TIME_KEY} these must not be modified.
+ */
+class CompactMetaData {
+
+  /**
+   * Well-known metadata keys. The position in the table defines the key ID,
+   * new keys must be appended.
+   */
+  private static final Text[] KNOWN_KEYS = { //
+      Nutch.WRITABLE_GENERATE_TIME_KEY, // _ngt_
+      Nutch.WRITABLE_PROTO_STATUS_KEY, // _pst_
+      Nutch.WRITABLE_REPR_URL_KEY, // _repr_
+      Nutch.WRITABLE_FIXED_INTERVAL_KEY, // fixedInterval
+      Nutch.PROTOCOL_STATUS_CODE_KEY, // nutch.protocol.code
+      new Text(Nutch.FETCH_TIME_KEY), // _ftk_
+      new Text(Nutch.FETCH_STATUS_KEY), // _fst_
+      new Text("_rs_"), // response time (http.store.responsetime)
+      new Text("_variableFetchDelay_"), // Generator
+      new Text("_orphan_"), // scoring-orphan
+      new Text("_depth_"), // scoring-depth
+      new Text("_maxdepth_"), // scoring-depth
+      new Text("_ip_"), // http.store.ip.address
+      new Text("_lst_"), // last seen time
+      new Text("_sft_"), // successful fetch time
+  };
+
+  private static final Map<Text, Integer> KNOWN_KEY_IDS = new HashMap<>();
+  static {
+    for (int i = 0; i < KNOWN_KEYS.length; i++) {
+      KNOWN_KEY_IDS.put(KNOWN_KEYS[i], i + 1);
+    }
+  }
+
+  private static final byte TEXT = 1;
+  private static final byte INT = 2;
+  private static final byte LONG = 3;
+  private static final byte FLOAT = 4;
+  private static final byte DOUBLE = 5;
+  private static final byte BOOLEAN = 6;
+  private static final byte BYTE = 7;
+  private static final byte BYTES = 8;
+  private static final byte PROTOCOL_STATUS = 9;
+
+  private static final ThreadLocal<DataOutputBuffer> BUFFER = ThreadLocal
+      .withInitial(DataOutputBuffer::new);
+
+  private CompactMetaData() {
+  }
+
+  /**
+   * Encode metadata.
+   *
+   * @param metaData
+   *          metadata map
+   * @return a (thread-local) buffer holding the encoded metadata, or null if
+   *         the map holds keys or values which cannot be encoded
+   */
+  static DataOutputBuffer encode(MapWritable metaData) throws IOException {
+    DataOutputBuffer out = BUFFER.get();
+    out.reset();
+    WritableUtils.writeVInt(out, metaData.size());
+    for (Entry<Writable, Writable> e : metaData.entrySet()) {
+      if (e.getKey().getClass() != Text.class) {
+        return null;
+      }
+      Text key = (Text) e.getKey();
+      Integer keyId = KNOWN_KEY_IDS.get(key);
+      if (keyId == null) {
+        WritableUtils.writeVInt(out, 0);
+        key.write(out);
+      } else {
+        WritableUtils.writeVInt(out, keyId);
+      }
+      Writable value = e.getValue();
+      Class<?> valueClass = (value == null ? null : value.getClass());
+      if (valueClass == Text.class) {
+        out.writeByte(TEXT);
+        value.write(out);
+      } else if (valueClass == IntWritable.class) {
+        out.writeByte(INT);
+        WritableUtils.writeVInt(out, ((IntWritable) value).get());
+      } else if (valueClass == LongWritable.class) {
+        out.writeByte(LONG);
+        WritableUtils.writeVLong(out, ((LongWritable) value).get());
+      } else if (valueClass == FloatWritable.class) {
+        out.writeByte(FLOAT);
+        out.writeFloat(((FloatWritable) value).get());
+      } else if (valueClass == DoubleWritable.class) {
+        out.writeByte(DOUBLE);
+        out.writeDouble(((DoubleWritable) value).get());
+      } else if (valueClass == BooleanWritable.class) {
+        out.writeByte(BOOLEAN);
+        out.writeBoolean(((BooleanWritable) value).get());
+      } else if (valueClass == ByteWritable.class) {
+        out.writeByte(BYTE);
+        out.writeByte(((ByteWritable) value).get());
+      } else if (valueClass == BytesWritable.class) {
+        out.writeByte(BYTES);
+        BytesWritable bytes = (BytesWritable) value;
+        WritableUtils.writeVInt(out, bytes.getLength());
+        out.write(bytes.getBytes(), 0, bytes.getLength());
+      } else if (valueClass == ProtocolStatus.class) {
+        out.writeByte(PROTOCOL_STATUS);
+        ProtocolStatus status = (ProtocolStatus) value;
+        WritableUtils.writeVInt(out, status.getCode());
+        WritableUtils.writeVLong(out, status.getLastModified());
+        String[] args = status.getArgs();
+        if (args == null) {
+          WritableUtils.writeVInt(out, -1);
+        } else {
+          WritableUtils.writeVInt(out, args.length);
+          for (String arg : args) {
+            Text.writeString(out, arg == null ? "" : arg);
+          }
+        }
+      } else {
+        return null;
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Decode metadata.
+   *
+   * @param bytes
+   *          encoded metadata
+   * @return metadata map
+   */
+  static MapWritable decode(byte[] bytes) throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    int size = WritableUtils.readVInt(in);
+    MapWritable metaData = new MapWritable();
+    for (int i = 0; i < size; i++) {
+      int keyId = WritableUtils.readVInt(in);
+      Text key;
+      if (keyId == 0) {
+        key = new Text();
+        key.readFields(in);
+      } else if (keyId <= KNOWN_KEYS.length) {
+        key = KNOWN_KEYS[keyId - 1];
+      } else {
+        throw new IOException("Unknown metadata key ID " + keyId);
+      }
+      Writable value;
+      byte type = in.readByte();
+      switch (type) {
+      case TEXT:
+        Text text = new Text();
+        text.readFields(in);
+        value = text;
+        break;
+      case INT:
+        value = new IntWritable(WritableUtils.readVInt(in));
+        break;
+      case LONG:
+        value = new LongWritable(WritableUtils.readVLong(in));
+        break;
+      case FLOAT:
+        value = new FloatWritable(in.readFloat());
+        break;
+      case DOUBLE:
+        value = new DoubleWritable(in.readDouble());
+        break;
+      case BOOLEAN:
+        value = new BooleanWritable(in.readBoolean());
+        break;
+      case BYTE:
+        value = new ByteWritable(in.readByte());
+        break;
+      case BYTES:
+        byte[] b = new byte[WritableUtils.readVInt(in)];
+        in.readFully(b);
+        value = new BytesWritable(b);
+        break;
+      case PROTOCOL_STATUS:
+        int code = WritableUtils.readVInt(in);
+        long lastModified = WritableUtils.readVLong(in);
+        int numArgs = WritableUtils.readVInt(in);
+        String[] args = null;
+        if (numArgs >= 0) {
+          args = new String[numArgs];
+          for (int j = 0; j < numArgs; j++) {
+            args[j] = Text.readString(in);
+          }
+        }
+        value = new ProtocolStatus(code, args, lastModified);
+        break;
+      default:
+        throw new IOException("Unknown metadata value type " + type);
+      }
+      metaData.put(key, value);
+    }
+    return metaData;
+  }
+
+}
@@ -27,15 +27,14 @@ import java.util.Map.Entry;
 
 import org.apache.commons.jexl3.JexlContext;
 import org.apache.commons.jexl3.JexlScript;
-import org.apache.commons.jexl3.MapContext;
-import org.apache.hadoop.io.FloatWritable;
-import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.VersionMismatchException;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.io.WritableComparator;
-import org.apache.nutch.protocol.ProtocolStatus;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.nutch.util.JexlUtil;
 import org.apache.nutch.util.StringUtil;
 
 /* The crawl state of a url. */
@@ -45,7 +44,17 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
   public static final String FETCH_DIR_NAME = "crawl_fetch";
   public static final String PARSE_DIR_NAME = "crawl_parse";
 
-  private static final byte CUR_VERSION = 7;
+  /**
+   * Current version: 8 - compact metadata encoding, see
+   * {@link CompactMetaData}. Versions up to 7 store metadata as
+   * {@link org.apache.hadoop.io.MapWritable}.
+   */
+  private static final byte CUR_VERSION = 8;
+
+  /** Metadata formats (since version 8) */
+  private static final byte METADATA_NONE = 0;
+  private static final byte METADATA_MAP_WRITABLE = 1;
+  private static final byte METADATA_COMPACT = 2;
 
   /** Compatibility values for on-the-fly conversion from versions < 5. */
   private static final byte OLD_STATUS_SIGNATURE = 0;
@@ -145,6 +154,12 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
   private byte[] parentLink = defaultParentLink.getBytes();
   private long modifiedTime;
   private org.apache.hadoop.io.MapWritable metaData;
+  /**
+   * Compact-encoded metadata read in {@link #readFields(DataInput)}, decoded
+   * lazily in {@link #getMetaData()}. The array is never modified and may be
+   * shared between instances.
+   */
+  private byte[] rawMetaData;
 
   public static boolean hasDbStatus(CrawlDatum datum) {
     if (datum.status <= STATUS_DB_MAX)
@@ -277,6 +292,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
 
   public void setMetaData(org.apache.hadoop.io.MapWritable mapWritable) {
     this.metaData = new org.apache.hadoop.io.MapWritable(mapWritable);
+    this.rawMetaData = null;
   }
 
   /**
@@ -299,11 +315,27 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
    * instantiated).
    */
   public org.apache.hadoop.io.MapWritable getMetaData() {
+    decodeMetaData();
     if (this.metaData == null)
       this.metaData = new org.apache.hadoop.io.MapWritable();
     return this.metaData;
   }
 
+  /**
+   * Materialize the metadata map if metadata has been read in compact
+   * encoding but not yet decoded.
+   */
+  private void decodeMetaData() {
+    if (rawMetaData != null) {
+      try {
+        metaData = CompactMetaData.decode(rawMetaData);
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to decode CrawlDatum metadata", e);
+      }
+      rawMetaData = null;
+    }
+  }
+
   //
   // writable methods
   //
@@ -345,7 +377,21 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
     } else
       parentLink = null;
 
-    if (version > 3) {
+    rawMetaData = null;
+    if (version > 7) {
+      byte format = in.readByte();
+      if (format == METADATA_COMPACT) {
+        // decoded on demand, see getMetaData()
+        metaData = null;
+        rawMetaData = new byte[WritableUtils.readVInt(in)];
+        in.readFully(rawMetaData);
+      } else if (format == METADATA_MAP_WRITABLE) {
+        metaData = new org.apache.hadoop.io.MapWritable();
+        metaData.readFields(in);
+      } else {
+        metaData = null;
+      }
+    } else if (version > 3) {
       boolean hasMetadata = false;
       if (version < 7) {
         org.apache.hadoop.io.MapWritable oldMetaData = new org.apache.hadoop.io.MapWritable();
@@ -402,11 +448,23 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
       out.write(parentLink);
     }
 
-    if (metaData != null && metaData.size() > 0) {
-      out.writeBoolean(true);
-      metaData.write(out);
+    if (rawMetaData != null) {
+      // metadata not accessed since it was read: pass it through
+      out.writeByte(METADATA_COMPACT);
+      WritableUtils.writeVInt(out, rawMetaData.length);
+      out.write(rawMetaData);
+    } else if (metaData != null && metaData.size() > 0) {
+      DataOutputBuffer buffer = CompactMetaData.encode(metaData);
+      if (buffer != null) {
+        out.writeByte(METADATA_COMPACT);
+        WritableUtils.writeVInt(out, buffer.getLength());
+        out.write(buffer.getData(), 0, buffer.getLength());
+      } else {
+        out.writeByte(METADATA_MAP_WRITABLE);
+        metaData.write(out);
+      }
     } else {
-      out.writeBoolean(false);
+      out.writeByte(METADATA_NONE);
     }
   }
 
@@ -423,6 +481,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
     this.parentLink = that.parentLink;
     this.modifiedTime = that.modifiedTime;
     this.signature = that.signature;
+    this.rawMetaData = that.rawMetaData;
     if (that.metaData != null) {
       // make a deep copy
       this.metaData = new org.apache.hadoop.io.MapWritable(that.metaData);
@@ -520,6 +579,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
     buf.append("Signature: " + StringUtil.toHexString(getSignature()) + "\n");
     buf.append("ParentLink: " + getParentLink() + "\n");
     buf.append("Metadata: \n ");
+    decodeMetaData();
     if (metaData != null) {
       for (Entry<Writable, Writable> e : metaData.entrySet()) {
         buf.append("\t");
@@ -533,6 +593,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
   }
 
   private boolean metadataEquals(org.apache.hadoop.io.MapWritable otherMetaData) {
+    decodeMetaData();
     if (metaData == null || metaData.size() == 0) {
       return otherMetaData == null || otherMetaData.size() == 0;
     }
@@ -560,6 +621,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
         && (this.score == other.score);
     if (!res)
       return res;
+    other.decodeMetaData();
     return metadataEquals(other.metaData);
   }
 
@@ -571,6 +633,7 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
             + (signature[i + 2] << 8) + signature[i + 3]);
       }
     }
+    decodeMetaData();
     if (metaData != null) {
       res ^= metaData.entrySet().hashCode();
     }
@@ -588,47 +651,9 @@ public class CrawlDatum implements WritableComparable<CrawlDatum>, Cloneable {
   
   public boolean execute(JexlScript expr, String url) {
     if (expr != null && url != null) {
-      // Create a context and add data
-      JexlContext jcontext = new MapContext();
-      
       // https://issues.apache.org/jira/browse/NUTCH-2229
-      jcontext.set("url", url);
-      jcontext.set("status", getStatusName(getStatus()));
-      jcontext.set("fetchTime", (long)(getFetchTime()));
-      jcontext.set("modifiedTime", (long)(getModifiedTime()));
-      jcontext.set("retries", getRetriesSinceFetch());
-      jcontext.set("interval", Integer.valueOf(getFetchInterval()));
-      jcontext.set("score", getScore());
-      jcontext.set("signature", StringUtil.toHexString(getSignature()));
-      jcontext.set("parentlink", getParentLink());
-
-      // Set metadata variables
-      for (Map.Entry<Writable, Writable> entry : getMetaData().entrySet()) {
-        Object value = entry.getValue();
-        Text tkey = (Text)entry.getKey();
-        
-        if (value instanceof FloatWritable) {
-          FloatWritable fvalue = (FloatWritable)value;
-          jcontext.set(tkey.toString(), fvalue.get());
-        }
-        
-        if (value instanceof IntWritable) {
-          IntWritable ivalue = (IntWritable)value;
-          jcontext.set(tkey.toString(), ivalue.get());
-        }
-        
-        if (value instanceof Text) {
-          Text tvalue = (Text)value;
-          jcontext.set(tkey.toString().replace("-", "_"), tvalue.toString());
-        }
-        
-        if (value instanceof ProtocolStatus) {
-          ProtocolStatus pvalue = (ProtocolStatus)value;
-          jcontext.set(tkey.toString().replace("-", "_"), pvalue.toString());
-        }
+      JexlContext jcontext = new JexlUtil.CrawlDatumContext().reset(url, this);
 
-      }
-                  
       try {
         if (Boolean.TRUE.equals(expr.execute(jcontext))) {
           return true;
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
@@ -43,6 +44,7 @@ import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.util.BloomMapFileOutputFormat;
 import org.apache.nutch.util.FSUtils;
 import org.apache.nutch.util.HadoopFSUtil;
 import org.apache.nutch.util.LockUtil;
@@ -64,6 +66,16 @@ public class CrawlDb extends NutchTool implements Tool {
   public static final String CRAWLDB_PURGE_404 = "db.update.purge.404";
   public static final String CRAWLDB_PURGE_ORPHANS = "db.update.purge.orphans";
 
+  public static final String CRAWLDB_UPDATE_MERGE_JOIN = "db.update.merge.join";
+
+  public static final String CRAWLDB_UPDATE_SKIP_INLINKS = "db.update.inlinks.skip";
+
+  public static final String CRAWLDB_BLOOM_FILTER = "db.bloom.filter";
+
+  public static final String CRAWLDB_STATS_SUMMARY = "db.stats.summary";
+
+  public static final String CRAWLDB_STATS_SUMMARY_HOSTS = "db.stats.summary.hosts";
+
   public static final String CURRENT_NAME = "current";
 
   public static final String LOCK_NAME = ".locked";
@@ -106,14 +118,17 @@ public class CrawlDb extends NutchTool implements Tool {
     LOG.info("CrawlDb update: URL filtering: {}", filter);
     LOG.info("CrawlDb update: 404 purging: {}", url404Purging);
 
+    List<Path> inputs = new ArrayList<>();
     for (int i = 0; i < segments.length; i++) {
       FileSystem sfs = segments[i].getFileSystem(getConf());
       Path fetch = new Path(segments[i], CrawlDatum.FETCH_DIR_NAME);
       Path parse = new Path(segments[i], CrawlDatum.PARSE_DIR_NAME);
       if (sfs.exists(fetch)) {
         FileInputFormat.addInputPath(job, fetch);
+        inputs.add(fetch);
         if (sfs.exists(parse)) {
           FileInputFormat.addInputPath(job, parse);
+          inputs.add(parse);
         } else {
           LOG.info(" - adding fetched but unparsed segment {}", segments[i]);
         }
@@ -127,8 +142,18 @@ public class CrawlDb extends NutchTool implements Tool {
     FileSystem fs = crawlDb.getFileSystem(getConf());
     Path outPath = FileOutputFormat.getOutputPath(job);
     try {
-      boolean success = job.waitForCompletion(true);
-      if (!success) {
+      Job mergeJoinJob = null;
+      if (conf.getBoolean(CRAWLDB_UPDATE_MERGE_JOIN, false)) {
+        try {
+          mergeJoinJob = CrawlDbMergeJoin.update(conf, crawlDb, inputs);
+        } catch (RuntimeException e) {
+          LockUtil.removeLockFile(fs, lock);
+          throw e;
+        }
+      }
+      if (mergeJoinJob != null) {
+        job = mergeJoinJob;
+      } else if (!job.waitForCompletion(true)) {
         String message = NutchJob.getJobFailureLogMessage("CrawlDb update",
             job);
         LOG.error(message);
@@ -178,7 +203,7 @@ public class CrawlDb extends NutchTool implements Tool {
     job.setJarByClass(CrawlDb.class);
 
     FileOutputFormat.setOutputPath(job, newCrawlDb);
-    job.setOutputFormatClass(MapFileOutputFormat.class);
+    setOutputFormat(job);
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(CrawlDatum.class);
 
@@ -188,6 +213,26 @@ public class CrawlDb extends NutchTool implements Tool {
     return job;
   }
 
+  /**
+   * Set the output format of a job writing a new CrawlDb: a MapFile per part,
+   * with a Bloom filter sidecar if <code>db.bloom.filter</code> is true and a
+   * statistics summary (see {@link CrawlDbStatsSummary}) if
+   * <code>db.stats.summary</code> is true.
+   *
+   * @param job
+   *          job writing a CrawlDb
+   */
+  public static void setOutputFormat(Job job) {
+    if (job.getConfiguration().getBoolean(CRAWLDB_STATS_SUMMARY, false)) {
+      job.setOutputFormatClass(CrawlDbStatsSummary.SummaryOutputFormat.class);
+    } else if (job.getConfiguration().getBoolean(CRAWLDB_BLOOM_FILTER,
+        false)) {
+      job.setOutputFormatClass(BloomMapFileOutputFormat.class);
+    } else {
+      job.setOutputFormatClass(MapFileOutputFormat.class);
+    }
+  }
+
   public static Path lock(Configuration job, Path crawlDb, boolean force) throws IOException {
     Path lock = new Path(crawlDb, LOCK_NAME);
     LockUtil.createLockFile(job, lock, force);
@@ -228,7 +273,7 @@ public class CrawlDb extends NutchTool implements Tool {
   public int run(String[] args) throws Exception {
     if (args.length < 1) {
       System.err
-          .println("Usage: CrawlDb <crawldb> (-dir <segments> | <seg1> <seg2> ...) [-force] [-normalize] [-filter] [-noAdditions]");
+          .println("Usage: CrawlDb <crawldb> (-dir <segments> | <seg1> <seg2> ...) [-force] [-normalize] [-filter] [-noAdditions] [-mergeJoin]");
       System.err.println("\tcrawldb\tCrawlDb to update");
       System.err
           .println("\t-dir segments\tparent directory containing all segments to update from");
@@ -242,6 +287,8 @@ public class CrawlDb extends NutchTool implements Tool {
           .println("\t-filter\tuse URLFilters on urls in CrawlDb and segment");
       System.err
           .println("\t-noAdditions\tonly update already existing URLs, don't add any newly discovered URLs");
+      System.err
+          .println("\t-mergeJoin\tmerge segment data into the CrawlDb by a map-side join (requires a hash-partitioned CrawlDb, no normalization)");
 
       return -1;
     }
@@ -261,6 +308,8 @@ public class CrawlDb extends NutchTool implements Tool {
         force = true;
       } else if (args[i].equals("-noAdditions")) {
         additionsAllowed = false;
+      } else if (args[i].equals("-mergeJoin")) {
+        getConf().setBoolean(CRAWLDB_UPDATE_MERGE_JOIN, true);
       } else if (args[i].equals("-dir")) {
         Path dirPath = new Path(args[++i]);
         FileSystem fs = dirPath.getFileSystem(getConf());
@@ -23,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
@@ -54,7 +55,10 @@ public class CrawlDbFilter extends
 
   @Override
   public void setup(Mapper<Text, CrawlDatum, Text, CrawlDatum>.Context context) {
-    Configuration conf = context.getConfiguration();
+    setup(context.getConfiguration());
+  }
+
+  void setup(Configuration conf) {
     urlFiltering = conf.getBoolean(URL_FILTERING, false);
     urlNormalizers = conf.getBoolean(URL_NORMALIZING, false);
     url404Purging = conf.getBoolean(CrawlDb.CRAWLDB_PURGE_404, false);
@@ -75,21 +79,33 @@ public class CrawlDbFilter extends
   public void map(Text key, CrawlDatum value,
       Context context) throws IOException, InterruptedException {
 
-    String url = key.toString();
+    String url = filter(key.toString(), value, context);
+    if (url != null) {
+      newKey.set(url); // collect it
+      context.write(newKey, value);
+    }
+  }
+
+  /**
+   * Apply purging of gone and orphaned records, URL normalizers and filters.
+   * 
+   * @return the (normalized) URL or null if the record is removed
+   */
+  String filter(String url, CrawlDatum value, TaskAttemptContext context) {
 
     // https://issues.apache.org/jira/browse/NUTCH-1101 check status first,
     // cheaper than normalizing or filtering
     if (url404Purging && CrawlDatum.STATUS_DB_GONE == value.getStatus()) {
       context.getCounter("CrawlDB filter",
         "Gone records removed").increment(1);
-      return;
+      return null;
     }
     // Whether to remove orphaned pages
     // https://issues.apache.org/jira/browse/NUTCH-1932
     if (purgeOrphans && CrawlDatum.STATUS_DB_ORPHAN == value.getStatus()) {
       context.getCounter("CrawlDB filter",
         "Orphan records removed").increment(1);
-      return;
+      return null;
     }
     if (url != null && urlNormalizers) {
       try {
@@ -109,10 +125,7 @@ public class CrawlDbFilter extends
     }
     if (url == null) {
       context.getCounter("CrawlDB filter", "URLs filtered").increment(1);
-    } else {
-      // URL has passed filters
-      newKey.set(url); // collect it
-      context.write(newKey, value);
     }
+    return url;
   }
 }
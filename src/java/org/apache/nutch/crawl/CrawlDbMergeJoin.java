@@ -0,0 +1,604 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.HardLink;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.KeyValueTextInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.apache.nutch.util.HadoopFSUtil;
+import org.apache.nutch.util.NutchJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Update the CrawlDb by a map-side merge join. The CrawlDb is a set of
+ * MapFiles partitioned by {@link HashPartitioner} and sorted by URL. Instead
+ * of shuffling the entire CrawlDb together with the segment data:
+ * <ol>
+ * <li>the segment data (<code>crawl_fetch</code>, <code>crawl_parse</code>)
+ * is partitioned and sorted the same way as the CrawlDb, using the same
+ * number of partitions (shuffle of segment data only),</li>
+ * <li>every CrawlDb part is streamed by a map task and merged with the
+ * corresponding partition of the segment data. URLs are updated by
+ * {@link CrawlDbReducer} in the map task.</li>
+ * </ol>
+ * The time to update the CrawlDb then scales with the segment size. The
+ * merge join is possible only if the CrawlDb is partitioned by
+ * {@link HashPartitioner} (checked on the first key of every part) and if
+ * URLs are not normalized during the update, otherwise the CrawlDb is
+ * updated by the regular job.
+ *
+ * Seeds are injected the same way (see {@link #inject(Configuration, Path,
+ * List)}), except that only CrawlDb parts receiving seeds are merged. All
+ * other parts are copied unchanged into the new CrawlDb (hard-linked on the
+ * local file system), so that <code>current</code> remains complete until
+ * the new CrawlDb is installed.
+ */
+public class CrawlDbMergeJoin {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /**
+   * Path of the partitioned and sorted data (segment data or seeds) merged
+   * into the CrawlDb, set by the client
+   */
+  static final String MERGE_JOIN_SEGMENTS = "crawldb.update.merge.join.segments";
+
+  /** Input format reading every CrawlDb part in a single split */
+  public static class CrawlDbPartInputFormat
+      extends SequenceFileInputFormat<Text, CrawlDatum> {
+    @Override
+    protected boolean isSplitable(JobContext context, Path filename) {
+      return false;
+    }
+  }
+
+  /**
+   * Merges a CrawlDb part with the corresponding partition of the segment
+   * data or seeds. Subclasses define how the entries of a URL are merged.
+   */
+  abstract static class AbstractMergeJoinMapper
+      extends Mapper<Text, CrawlDatum, Text, CrawlDatum> {
+
+    private SequenceFile.Reader segmentReader;
+    private Text segmentKey = new Text();
+    private CrawlDatum segmentValue = new CrawlDatum();
+    private boolean segmentHasNext = false;
+    private List<CrawlDatum> values = new ArrayList<>();
+
+    /** Configure the merge */
+    protected abstract void setup(Configuration conf);
+
+    /**
+     * @return the URL of the CrawlDb entry or null if the entry is removed
+     */
+    protected abstract String filter(Text key, CrawlDatum value,
+        Context context);
+
+    /**
+     * Merge the entries of one URL (CrawlDb entry first, if present) and
+     * write the result.
+     */
+    protected abstract void merge(Text key, List<CrawlDatum> values,
+        Context context) throws IOException, InterruptedException;
+
+    @Override
+    public void setup(Context context) throws IOException {
+      Configuration conf = context.getConfiguration();
+      setup(conf);
+      // CrawlDb part: <crawldb>/current/part-r-NNNNN/data
+      Path data = ((FileSplit) context.getInputSplit()).getPath();
+      int partition = getPartition(data.getParent().getName());
+      Path segments = new Path(conf.get(MERGE_JOIN_SEGMENTS));
+      Path segmentPart = new Path(segments,
+          String.format("part-r-%05d", partition));
+      FileSystem fs = segmentPart.getFileSystem(conf);
+      if (fs.exists(segmentPart)) {
+        segmentReader = new SequenceFile.Reader(conf,
+            SequenceFile.Reader.file(segmentPart));
+        segmentHasNext = segmentReader.next(segmentKey, segmentValue);
+      }
+      LOG.info("Merging CrawlDb part {} with segment data {}", data,
+          segmentPart);
+    }
+
+    @Override
+    public void map(Text key, CrawlDatum value, Context context)
+        throws IOException, InterruptedException {
+      // new URLs sorting before the current one
+      while (segmentHasNext && segmentKey.compareTo(key) < 0) {
+        updateSegmentOnly(context);
+      }
+      values.clear();
+      if (filter(key, value, context) != null) {
+        values.add(value);
+      }
+      while (segmentHasNext && segmentKey.equals(key)) {
+        values.add(nextSegmentValue());
+      }
+      if (!values.isEmpty()) {
+        merge(key, values, context);
+      }
+    }
+
+    @Override
+    public void cleanup(Context context)
+        throws IOException, InterruptedException {
+      while (segmentHasNext) {
+        updateSegmentOnly(context);
+      }
+      if (segmentReader != null) {
+        segmentReader.close();
+      }
+    }
+
+    /** Update a URL not contained in the CrawlDb part */
+    private void updateSegmentOnly(Context context)
+        throws IOException, InterruptedException {
+      Text key = new Text(segmentKey);
+      values.clear();
+      while (segmentHasNext && segmentKey.equals(key)) {
+        values.add(nextSegmentValue());
+      }
+      merge(key, values, context);
+    }
+
+    private CrawlDatum nextSegmentValue() throws IOException {
+      CrawlDatum value = segmentValue;
+      segmentValue = new CrawlDatum();
+      segmentHasNext = segmentReader.next(segmentKey, segmentValue);
+      return value;
+    }
+  }
+
+  /**
+   * Merges a CrawlDb part with the corresponding partition of the segment
+   * data and updates the CrawlDb entries by {@link CrawlDbReducer}.
+   */
+  public static class MergeJoinMapper extends AbstractMergeJoinMapper {
+
+    private CrawlDbFilter filter = new CrawlDbFilter();
+    private CrawlDbReducer reducer = new CrawlDbReducer();
+
+    @Override
+    protected void setup(Configuration conf) {
+      filter.setup(conf);
+      reducer.setup(conf);
+    }
+
+    @Override
+    protected String filter(Text key, CrawlDatum value, Context context) {
+      return filter.filter(key.toString(), value, context);
+    }
+
+    @Override
+    protected void merge(Text key, List<CrawlDatum> values, Context context)
+        throws IOException, InterruptedException {
+      reducer.update(key, values, context);
+    }
+  }
+
+  /**
+   * Merges a CrawlDb part with the corresponding partition of the seeds by
+   * {@link Injector.InjectReducer}.
+   */
+  public static class InjectMergeJoinMapper extends AbstractMergeJoinMapper {
+
+    private Injector.InjectReducer reducer = new Injector.InjectReducer();
+
+    @Override
+    protected void setup(Configuration conf) {
+      reducer.setup(conf);
+    }
+
+    @Override
+    protected String filter(Text key, CrawlDatum value, Context context) {
+      return key.toString();
+    }
+
+    @Override
+    protected void merge(Text key, List<CrawlDatum> values, Context context)
+        throws IOException, InterruptedException {
+      reducer.merge(key, values, context);
+    }
+  }
+
+  /**
+   * @param name
+   *          part name, e.g. <code>part-r-00003</code>
+   * @return partition number
+   */
+  static int getPartition(String name) {
+    int i = name.lastIndexOf('-');
+    return Integer.parseInt(name.substring(i + 1));
+  }
+
+  private static FileStatus[] listParts(FileSystem fs, Path dir)
+      throws IOException {
+    FileStatus[] parts = fs.listStatus(dir,
+        HadoopFSUtil.getPassDirectoriesFilter(fs));
+    Arrays.sort(parts);
+    return parts;
+  }
+
+  /**
+   * Check whether the CrawlDb parts are partitioned by {@link HashPartitioner}
+   * and whether part names match the partition numbers. Because reading all
+   * keys would take as long as the update itself, only the keys in the
+   * MapFile index and the last key of every part are checked.
+   *
+   * @return number of partitions or -1 if the CrawlDb cannot be updated by a
+   *         merge join
+   */
+  static int checkPartitioning(Configuration conf, Path current)
+      throws IOException {
+    FileSystem fs = current.getFileSystem(conf);
+    if (!fs.exists(current)) {
+      return -1;
+    }
+    FileStatus[] parts = listParts(fs, current);
+    if (parts.length == 0) {
+      return -1;
+    }
+    HashPartitioner<Text, CrawlDatum> partitioner = new HashPartitioner<>();
+    Text key = new Text();
+    for (int i = 0; i < parts.length; i++) {
+      Path part = parts[i].getPath();
+      if (getPartition(part.getName()) != i) {
+        LOG.info("CrawlDb part {} does not match partition {}", part, i);
+        return -1;
+      }
+      // check a sample of keys: all keys of the MapFile index (every
+      // io.map.index.interval-th key, including the first one) and the last
+      // key
+      boolean partitioned = true;
+      boolean empty = true;
+      try (SequenceFile.Reader reader = new SequenceFile.Reader(conf,
+          SequenceFile.Reader.file(new Path(part, MapFile.INDEX_FILE_NAME)))) {
+        while (partitioned && reader.next(key)) {
+          empty = false;
+          partitioned = partitioner.getPartition(key, null, parts.length) == i;
+        }
+      }
+      if (partitioned && !empty) {
+        try (MapFile.Reader reader = new MapFile.Reader(part, conf)) {
+          reader.finalKey(key);
+          partitioned = partitioner.getPartition(key, null, parts.length) == i;
+        }
+      }
+      if (!partitioned) {
+        LOG.info("CrawlDb part {} is not partitioned by hash of URL", part);
+        return -1;
+      }
+    }
+    return parts.length;
+  }
+
+  /**
+   * Update the CrawlDb by a merge join, see {@link CrawlDbMergeJoin}.
+   *
+   * @param conf
+   *          job configuration
+   * @param crawlDb
+   *          CrawlDb path
+   * @param inputs
+   *          segment data (<code>crawl_fetch</code> and
+   *          <code>crawl_parse</code> directories)
+   * @return the job creating the new CrawlDb (ready to be installed) or null
+   *         if the CrawlDb cannot be updated by a merge join
+   */
+  public static Job update(Configuration conf, Path crawlDb, List<Path> inputs)
+      throws IOException, InterruptedException, ClassNotFoundException {
+    if (conf.getBoolean(CrawlDbFilter.URL_NORMALIZING, false)) {
+      LOG.info(
+          "CrawlDb update: merge join not possible if URLs are normalized");
+      return null;
+    }
+    Path current = new Path(crawlDb, CrawlDb.CURRENT_NAME);
+    int numParts = checkPartitioning(conf, current);
+    if (numParts <= 0) {
+      LOG.info(
+          "CrawlDb update: merge join not possible, CrawlDb is missing or not partitioned by URL hash");
+      return null;
+    }
+
+    // partition and sort segment data the same way as the CrawlDb
+    Job job = NutchJob.getInstance(conf);
+    job.setJobName("crawldb " + crawlDb + ": partition segments");
+    for (Path input : inputs) {
+      FileInputFormat.addInputPath(job, input);
+    }
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setMapperClass(CrawlDbFilter.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+
+    return mergeJoin(conf, crawlDb, numParts, job, MergeJoinMapper.class,
+        false, "CrawlDb update").get(1);
+  }
+
+  /**
+   * Inject seeds into the CrawlDb by a merge join, see
+   * {@link CrawlDbMergeJoin}. Seeds are normalized and filtered by
+   * {@link Injector.InjectMapper} and merged with existing CrawlDb entries by
+   * {@link Injector.InjectReducer}. CrawlDb parts not receiving any seeds are
+   * copied into the new CrawlDb.
+   *
+   * @param conf
+   *          job configuration
+   * @param crawlDb
+   *          CrawlDb path
+   * @param seedFiles
+   *          seed files
+   * @return the jobs run or null if the seeds cannot be injected by a merge
+   *         join. If two jobs are run, the second one created the new CrawlDb
+   *         (ready to be installed). If only one job is run, no seeds are left
+   *         after filtering and the CrawlDb is unchanged.
+   */
+  public static List<Job> inject(Configuration conf, Path crawlDb,
+      List<Path> seedFiles)
+      throws IOException, InterruptedException, ClassNotFoundException {
+    if (conf.getBoolean(Injector.URL_FILTER_NORMALIZE_ALL, false)
+        || conf.getBoolean(CrawlDb.CRAWLDB_PURGE_404, false)) {
+      LOG.info(
+          "Injector: merge join not possible if existing CrawlDb entries are filtered, normalized or purged");
+      return null;
+    }
+    Path current = new Path(crawlDb, CrawlDb.CURRENT_NAME);
+    int numParts = checkPartitioning(conf, current);
+    if (numParts <= 0) {
+      LOG.info(
+          "Injector: merge join not possible, CrawlDb is missing or not partitioned by URL hash");
+      return null;
+    }
+
+    // partition and sort seeds the same way as the CrawlDb
+    Job job = NutchJob.getInstance(conf);
+    job.setJobName("inject " + crawlDb + ": partition seeds");
+    for (Path seedFile : seedFiles) {
+      FileInputFormat.addInputPath(job, seedFile);
+    }
+    job.setInputFormatClass(KeyValueTextInputFormat.class);
+    job.setMapperClass(Injector.InjectMapper.class);
+    // do not write empty partitions
+    LazyOutputFormat.setOutputFormatClass(job, SequenceFileOutputFormat.class);
+
+    return mergeJoin(conf, crawlDb, numParts, job,
+        InjectMergeJoinMapper.class, true, "Injector");
+  }
+
+  /**
+   * Run the merge join: partition and sort the input data, merge the
+   * CrawlDb parts with the partitions of the input data and rename the
+   * merged parts. The partitioned data is always removed, the new CrawlDb
+   * if the merge join fails.
+   *
+   * @param partitionJob
+   *          job partitioning the input data, input, mapper and output
+   *          format are already set
+   * @param mergeOnlyWithData
+   *          merge only CrawlDb parts with input data, copy all other parts
+   * @return the partition job and the merge job. The merge job is not run
+   *         if there are no CrawlDb parts to be merged.
+   */
+  private static List<Job> mergeJoin(Configuration conf, Path crawlDb,
+      int numParts, Job partitionJob,
+      Class<? extends AbstractMergeJoinMapper> mapperClass,
+      boolean mergeOnlyWithData, String name)
+      throws IOException, InterruptedException, ClassNotFoundException {
+    FileSystem fs = crawlDb.getFileSystem(conf);
+    String tmpName = Integer.toString(new Random().nextInt(Integer.MAX_VALUE));
+    Path partitioned = new Path(crawlDb, tmpName + "-partitioned");
+    Path newCrawlDb = new Path(crawlDb, tmpName);
+    boolean success = false;
+    try {
+      List<Job> jobs = runMergeJoin(conf, crawlDb, numParts, partitionJob,
+          mapperClass, mergeOnlyWithData, name, partitioned, newCrawlDb);
+      success = true;
+      return jobs;
+    } finally {
+      // temporary data is removed also if the merge join failed
+      fs.delete(partitioned, true);
+      if (!success) {
+        fs.delete(newCrawlDb, true);
+      }
+    }
+  }
+
+  /** Run the jobs of {@link #mergeJoin} and assemble the new CrawlDb */
+  private static List<Job> runMergeJoin(Configuration conf, Path crawlDb,
+      int numParts, Job partitionJob,
+      Class<? extends AbstractMergeJoinMapper> mapperClass,
+      boolean mergeOnlyWithData, String name, Path partitioned,
+      Path newCrawlDb)
+      throws IOException, InterruptedException, ClassNotFoundException {
+    FileSystem fs = crawlDb.getFileSystem(conf);
+    Path current = new Path(crawlDb, CrawlDb.CURRENT_NAME);
+
+    Job job = partitionJob;
+    job.setPartitionerClass(HashPartitioner.class);
+    job.setNumReduceTasks(numParts);
+    job.setJarByClass(CrawlDbMergeJoin.class);
+    FileOutputFormat.setOutputPath(job, partitioned);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(CrawlDatum.class);
+    job.getConfiguration().setBoolean(
+        "mapreduce.fileoutputcommitter.marksuccessfuljobs", false);
+    if (!job.waitForCompletion(true)) {
+      throw new RuntimeException(
+          NutchJob.getJobFailureLogMessage(name + " (partition)", job));
+    }
+
+    // CrawlDb parts to be merged
+    List<Integer> partitions = new ArrayList<>();
+    for (int i = 0; i < numParts; i++) {
+      if (!mergeOnlyWithData || fs
+          .exists(new Path(partitioned, String.format("part-r-%05d", i)))) {
+        partitions.add(i);
+      }
+    }
+    LOG.info("{}: merging {} of {} CrawlDb parts", name, partitions.size(),
+        numParts);
+
+    List<Job> jobs = new ArrayList<>();
+    jobs.add(job);
+    if (partitions.isEmpty()) {
+      return jobs;
+    }
+
+    // merge CrawlDb parts with partitioned data, map-only
+    job = NutchJob.getInstance(conf);
+    jobs.add(job);
+    job.setJobName("crawldb " + crawlDb + ": merge join");
+    job.getConfiguration().set(MERGE_JOIN_SEGMENTS, partitioned.toString());
+    for (int partition : partitions) {
+      FileInputFormat.addInputPath(job, new Path(
+          new Path(current, String.format("part-r-%05d", partition)),
+          MapFile.DATA_FILE_NAME));
+    }
+    job.setInputFormatClass(CrawlDbPartInputFormat.class);
+    job.setMapperClass(mapperClass);
+    job.setNumReduceTasks(0);
+    job.setJarByClass(CrawlDbMergeJoin.class);
+    // the merged parts are written in sort order
+    job.setMapSpeculativeExecution(false);
+    FileOutputFormat.setOutputPath(job, newCrawlDb);
+    CrawlDb.setOutputFormat(job);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(CrawlDatum.class);
+    job.getConfiguration().setBoolean(
+        "mapreduce.fileoutputcommitter.marksuccessfuljobs", false);
+    if (!job.waitForCompletion(true)) {
+      throw new RuntimeException(
+          NutchJob.getJobFailureLogMessage(name + " (merge join)", job));
+    }
+
+    renameParts(conf, newCrawlDb, numParts, partitions);
+    // copy parts which have not been merged, current must stay complete
+    // until the new CrawlDb is installed
+    for (int i = 0; i < numParts; i++) {
+      if (partitions.contains(i)) {
+        continue;
+      }
+      String part = String.format("part-r-%05d", i);
+      copyPart(fs, new Path(current, part), new Path(newCrawlDb, part), conf);
+    }
+    return jobs;
+  }
+
+  /**
+   * Copy an unchanged CrawlDb part (a MapFile directory) into the new
+   * CrawlDb. On the local file system the files are hard-linked.
+   */
+  private static void copyPart(FileSystem fs, Path src, Path dst,
+      Configuration conf) throws IOException {
+    if (fs instanceof LocalFileSystem) {
+      File srcDir = ((LocalFileSystem) fs).pathToFile(src);
+      File dstDir = ((LocalFileSystem) fs).pathToFile(dst);
+      File[] files = srcDir.listFiles();
+      if (files != null && dstDir.mkdirs()) {
+        try {
+          for (File file : files) {
+            HardLink.createHardLink(file, new File(dstDir, file.getName()));
+          }
+          return;
+        } catch (IOException e) {
+          LOG.warn("Failed to hard-link CrawlDb part {}, copying it: {}", src,
+              e.getMessage());
+          fs.delete(dst, true);
+        }
+      }
+    }
+    if (!FileUtil.copy(fs, src, fs, dst, false, conf)) {
+      throw new IOException("Failed to copy CrawlDb part " + src + " to "
+          + dst);
+    }
+  }
+
+  /**
+   * Map tasks are not run in the order of the CrawlDb parts. Rename the
+   * output parts so that part names match the partition of the contained
+   * URLs.
+   *
+   * @param partitions
+   *          partitions of the merged parts
+   */
+  private static void renameParts(Configuration conf, Path dir, int numParts,
+      List<Integer> partitions) throws IOException {
+    FileSystem fs = dir.getFileSystem(conf);
+    FileStatus[] parts = listParts(fs, dir);
+    HashPartitioner<Text, CrawlDatum> partitioner = new HashPartitioner<>();
+    Path[] renamed = new Path[numParts];
+    List<Path> empty = new ArrayList<>();
+    Text key = new Text();
+    for (FileStatus part : parts) {
+      Path path = part.getPath();
+      try (SequenceFile.Reader reader = new SequenceFile.Reader(conf,
+          SequenceFile.Reader.file(new Path(path, MapFile.DATA_FILE_NAME)))) {
+        if (reader.next(key)) {
+          renamed[partitioner.getPartition(key, null, numParts)] = path;
+        } else {
+          empty.add(path);
+        }
+      }
+    }
+    for (int i : partitions) {
+      if (renamed[i] == null) {
+        if (empty.isEmpty()) {
+          throw new IOException("Missing CrawlDb part for partition " + i);
+        }
+        renamed[i] = empty.remove(0);
+      }
+    }
+    // rename to temporary names first to avoid name collisions
+    for (int i : partitions) {
+      Path tmp = new Path(dir, "_" + renamed[i].getName());
+      fs.rename(renamed[i], tmp);
+      renamed[i] = tmp;
+    }
+    for (int i : partitions) {
+      fs.rename(renamed[i], new Path(dir, String.format("part-r-%05d", i)));
+    }
+  }
+
+}
@@ -38,7 +38,6 @@ import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
-import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
@@ -178,7 +177,7 @@ public class CrawlDbMerger extends Configured implements Tool {
     job.setReducerClass(Merger.class);
 
     FileOutputFormat.setOutputPath(job, newCrawlDb);
-    job.setOutputFormatClass(MapFileOutputFormat.class);
+    CrawlDb.setOutputFormat(job);
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(CrawlDatum.class);
 
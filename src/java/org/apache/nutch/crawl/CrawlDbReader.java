@@ -16,16 +16,21 @@
  */
 package org.apache.nutch.crawl;
 
+import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.lang.invoke.MethodHandles;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -34,6 +39,13 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -68,6 +80,7 @@ import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.nutch.util.AbstractChecker;
+import org.apache.nutch.util.BloomMapFileOutputFormat;
 import org.apache.nutch.util.JexlUtil;
 import org.apache.nutch.util.NutchConfiguration;
 import org.apache.nutch.util.NutchJob;
@@ -99,13 +112,35 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
+  /** Number of threads used for batch lookups */
+  public static final String CRAWLDB_READER_LOOKUP_THREADS = "db.reader.lookup.threads";
+
+  /** Number of URLs read from a file or stdin and looked up in one batch */
+  private static final int LOOKUP_BATCH_SIZE = 10000;
+
+  private static final HashPartitioner<Text, CrawlDatum> PARTITIONER = new HashPartitioner<>();
+
   private MapFile.Reader[] readers = null;
 
+  private Path readersPath = null;
+
   protected String crawlDb;
 
   private long lastModified = 0;
 
-  private void openReaders(String crawlDb, Configuration config)
+  /**
+   * Guards the readers: held for reading during lookups, held for writing
+   * while readers are opened or closed.
+   */
+  private final ReentrantReadWriteLock readersLock = new ReentrantReadWriteLock();
+
+  /**
+   * Open the CrawlDb readers, or reuse the open readers if the CrawlDb is not
+   * modified. On return, the caller holds the read lock of
+   * {@link #readersLock} and must release it when the lookup is done, so
+   * that the readers are not closed by another thread while in use.
+   */
+  private MapFile.Reader[] openReaders(String crawlDb, Configuration config)
       throws IOException {
     Path crawlDbPath = new Path(crawlDb, CrawlDb.CURRENT_NAME);
 
@@ -113,33 +148,50 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
         .getFileStatus(crawlDbPath);
     long lastModified = stat.getModificationTime();
 
-    synchronized (this) {
-      if (readers != null) {
-        if (this.lastModified == lastModified) {
-          // CrawlDB not modified, re-use readers
-          return;
-        } else {
-          // CrawlDB modified, close and re-open readers
-          closeReaders();
-        }
-      }
+    readersLock.readLock().lock();
+    if (readers != null && this.lastModified == lastModified
+        && crawlDbPath.equals(readersPath)) {
+      // CrawlDB not modified, re-use readers
+      return readers;
+    }
+    readersLock.readLock().unlock();
 
-      this.lastModified = lastModified;
-      readers = MapFileOutputFormat.getReaders(crawlDbPath, config);
+    readersLock.writeLock().lock();
+    try {
+      // check again, readers may have been re-opened by another thread
+      if (readers == null || this.lastModified != lastModified
+          || !crawlDbPath.equals(readersPath)) {
+        // CrawlDB modified, close and re-open readers
+        closeReaders();
+        readers = BloomMapFileOutputFormat.getReaders(crawlDbPath, config);
+        readersPath = crawlDbPath;
+        this.lastModified = lastModified;
+      }
+      // downgrade to the read lock
+      readersLock.readLock().lock();
+      return readers;
+    } finally {
+      readersLock.writeLock().unlock();
     }
   }
 
   private void closeReaders() {
-    if (readers == null)
-      return;
-    for (int i = 0; i < readers.length; i++) {
-      try {
-        readers[i].close();
-      } catch (Exception e) {
+    readersLock.writeLock().lock();
+    try {
+      if (readers == null)
+        return;
+      for (int i = 0; i < readers.length; i++) {
+        try {
+          readers[i].close();
+        } catch (Exception e) {
 
+        }
       }
+      readers = null;
+      readersPath = null;
+    } finally {
+      readersLock.writeLock().unlock();
     }
-    readers = null;
   }
 
   @SuppressWarnings("serial")
@@ -405,6 +457,8 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
           new LongWritable(value.getFetchInterval()));
       context.write(new Text("fi"), fetchInterval);
       context.write(new Text("fit"), fetchInterval);
+      context.write(new Text("fid"),
+          new NutchWritable(new FloatWritable(value.getFetchInterval())));
 
       if (sort) {
         try {
@@ -442,7 +496,7 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
         context.write(key, new NutchWritable(new LongWritable(sum)));
       } else if (k.equals("sc")) {
         float min = Float.MAX_VALUE;
-        float max = Float.MIN_VALUE;
+        float max = -Float.MAX_VALUE;
         for (NutchWritable nvalue : values) {
           float value = ((FloatWritable) nvalue.get()).get();
           if (max < value) {
@@ -475,7 +529,7 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
           cnt += value;
         }
         context.write(key, new NutchWritable(new FloatWritable(cnt)));
-      } else if (k.equals("scd")) {
+      } else if (k.equals("scd") || k.equals("fid")) {
         MergingDigest tdigest = null;
         for (NutchWritable nvalue : values) {
           Writable value = nvalue.get();
@@ -559,9 +613,34 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
     closeReaders();
   }
 
-  private TreeMap<String, Writable> processStatJobHelper(String crawlDb,
-      Configuration config, boolean sort)
+  TreeMap<String, Writable> processStatJobHelper(String crawlDb,
+      Configuration config, boolean sort, boolean fullScan)
       throws IOException, InterruptedException, ClassNotFoundException {
+    if (!fullScan) {
+      Path[] summaries = CrawlDbStatsSummary
+          .getSummaries(new Path(crawlDb, CrawlDb.CURRENT_NAME), config);
+      if (summaries != null) {
+        LOG.info("CrawlDb statistics: merging summaries of {} CrawlDb parts",
+            summaries.length);
+        SequenceFile.Reader[] readers = new SequenceFile.Reader[summaries.length];
+        boolean hostCounts = true;
+        for (int i = 0; i < summaries.length; i++) {
+          readers[i] = new SequenceFile.Reader(config,
+              SequenceFile.Reader.file(summaries[i]));
+          hostCounts &= CrawlDbStatsSummary.hasHostCounts(readers[i]);
+        }
+        if (!sort || hostCounts) {
+          return mergeStats(readers, sort);
+        }
+        for (SequenceFile.Reader reader : readers) {
+          reader.close();
+        }
+        LOG.info(
+            "CrawlDb statistics: summaries hold no status counts per host");
+      }
+      LOG.info("CrawlDb statistics: scanning CrawlDb");
+    }
+
     Path tmpFolder = new Path(crawlDb, "stat_tmp" + System.currentTimeMillis());
 
     Job job = NutchJob.getInstance(config);
@@ -603,7 +682,24 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
     // reading the result
     SequenceFile.Reader[] readers = SegmentReaderUtil.getReaders(tmpFolder,
         config);
+    TreeMap<String, Writable> stats = mergeStats(readers, sort);
+    // removing the tmp folder
+    fileSystem.delete(tmpFolder, true);
+    return stats;
+  }
 
+  /**
+   * Merge the statistics written by the {@link CrawlDbStatReducer} or held in
+   * {@link CrawlDbStatsSummary CrawlDb part summaries}.
+   *
+   * @param readers
+   *          readers of the statistics, closed after reading
+   * @param sort
+   *          whether to keep the status counts per host
+   * @return merged statistics
+   */
+  private TreeMap<String, Writable> mergeStats(SequenceFile.Reader[] readers,
+      boolean sort) throws IOException {
     Text key = new Text();
     NutchWritable value = new NutchWritable();
 
@@ -612,6 +708,10 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
       SequenceFile.Reader reader = readers[i];
       while (reader.next(key, value)) {
         String k = key.toString();
+        if (!sort && k.startsWith("status ") && k.indexOf(' ', 7) != -1) {
+          // status count per host
+          continue;
+        }
         Writable val = stats.get(k);
         if (val == null) {
           stats.put(k, value.get());
@@ -619,7 +719,7 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
         }
         if (k.equals("sc")) {
           float min = Float.MAX_VALUE;
-          float max = Float.MIN_VALUE;
+          float max = -Float.MAX_VALUE;
           if (stats.containsKey("scn")) {
             min = ((FloatWritable) stats.get("scn")).get();
           } else {
@@ -666,7 +766,7 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
         } else if (k.equals("sct")) {
           FloatWritable fvalue = (FloatWritable) value.get();
           ((FloatWritable) val).set(((FloatWritable) val).get() + fvalue.get());
-        } else if (k.equals("scd")) {
+        } else if (k.equals("scd") || k.equals("fid")) {
           MergingDigest tdigest = null;
           MergingDigest tdig = MergingDigest.fromBytes(
               ByteBuffer.wrap(((BytesWritable) value.get()).getBytes()));
@@ -693,13 +793,36 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
     stats.remove("sc");
     stats.remove("fi");
     stats.remove("ft");
-    // removing the tmp folder
-    fileSystem.delete(tmpFolder, true);
     return stats;
   }
 
   public void processStatJob(String crawlDb, Configuration config, boolean sort)
       throws IOException, InterruptedException, ClassNotFoundException {
+    processStatJob(crawlDb, config, sort, false);
+  }
+
+  /**
+   * Print the CrawlDb statistics.
+   *
+   * @param crawlDb
+   *          CrawlDb path
+   * @param config
+   *          configuration
+   * @param sort
+   *          show status counts per host
+   * @param fullScan
+   *          scan the entire CrawlDb even if all parts have a statistics
+   *          summary (see {@link CrawlDbStatsSummary})
+   * @throws IOException
+   *           if the CrawlDb or the statistics cannot be read
+   * @throws InterruptedException
+   *           if the statistics job was interrupted
+   * @throws ClassNotFoundException
+   *           if the statistics job could not be launched
+   */
+  public void processStatJob(String crawlDb, Configuration config,
+      boolean sort, boolean fullScan)
+      throws IOException, InterruptedException, ClassNotFoundException {
 
     double quantiles[] = { .01, .05, .1, .2, .25, .3, .4, .5, .6, .7, .75, .8,
         .9, .95, .99 };
@@ -731,7 +854,7 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
 
     LOG.info("CrawlDb statistics start: {}", crawlDb);
     TreeMap<String, Writable> stats = processStatJobHelper(crawlDb, config,
-        sort);
+        sort, fullScan);
 
     if (LOG.isInfoEnabled()) {
       LOG.info("Statistics for CrawlDb: {}", crawlDb);
@@ -792,6 +915,13 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
           for (double q : quantiles) {
             LOG.info("score quantile {}:\t{}", q, tdigest.quantile(q));
           }
+        } else if (k.equals("fid")) {
+          MergingDigest tdigest = MergingDigest
+              .fromBytes(ByteBuffer.wrap(bytesValue));
+          for (double q : quantiles) {
+            LOG.info("fetch interval quantile {}:\t{}", q,
+                TimingUtil.secondsToDaysHMS((long) tdigest.quantile(q)));
+          }
         } else {
           LOG.info(k + ":\t" + val);
         }
@@ -804,9 +934,118 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
       throws IOException {
     Text key = new Text(url);
     CrawlDatum val = new CrawlDatum();
-    openReaders(crawlDb, config);
-    CrawlDatum res = (CrawlDatum) MapFileOutputFormat.getEntry(readers,
-        new HashPartitioner<>(), key, val);
+    MapFile.Reader[] readers = openReaders(crawlDb, config);
+    try {
+      MapFile.Reader reader = readers[PARTITIONER.getPartition(key, val,
+          readers.length)];
+      synchronized (reader) {
+        return (CrawlDatum) reader.get(key, val);
+      }
+    } finally {
+      readersLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Look up multiple URLs. URLs are grouped by CrawlDb part and sorted, every
+   * part is then read sequentially in forward direction. Parts are read in
+   * parallel by up to <code>db.reader.lookup.threads</code> threads. Readers
+   * are kept open and are reused by subsequent calls as long as the CrawlDb
+   * is not modified.
+   *
+   * @param crawlDb
+   *          path to CrawlDb
+   * @param urls
+   *          URLs to look up
+   * @param config
+   *          configuration
+   * @return map of URLs found in the CrawlDb to their CrawlDatum, ordered as
+   *         the input URLs
+   * @throws IOException
+   *           if the CrawlDb cannot be read
+   */
+  public Map<String, CrawlDatum> get(String crawlDb, Collection<String> urls,
+      Configuration config) throws IOException {
+    MapFile.Reader[] readers = openReaders(crawlDb, config);
+    try {
+      return get(readers, urls, config);
+    } finally {
+      readersLock.readLock().unlock();
+    }
+  }
+
+  private Map<String, CrawlDatum> get(MapFile.Reader[] readers,
+      Collection<String> urls, Configuration config) throws IOException {
+    List<List<Text>> partitions = new ArrayList<>(readers.length);
+    for (int i = 0; i < readers.length; i++) {
+      partitions.add(new ArrayList<>());
+    }
+    for (String url : urls) {
+      Text key = new Text(url);
+      partitions.get(PARTITIONER.getPartition(key, null, readers.length))
+          .add(key);
+    }
+
+    Map<String, CrawlDatum> found = new ConcurrentHashMap<>();
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int i = 0; i < readers.length; i++) {
+      List<Text> keys = partitions.get(i);
+      if (keys.isEmpty()) {
+        continue;
+      }
+      MapFile.Reader reader = readers[i];
+      tasks.add(() -> {
+        Collections.sort(keys);
+        synchronized (reader) {
+          for (Text key : keys) {
+            CrawlDatum val = new CrawlDatum();
+            if (reader.get(key, val) != null) {
+              found.put(key.toString(), val);
+            }
+          }
+        }
+        return null;
+      });
+    }
+
+    int numThreads = Math.min(tasks.size(),
+        config.getInt(CRAWLDB_READER_LOOKUP_THREADS, 4));
+    if (numThreads <= 1) {
+      for (Callable<Void> task : tasks) {
+        try {
+          task.call();
+        } catch (IOException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new IOException(e);
+        }
+      }
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      try {
+        for (Future<Void> result : executor.invokeAll(tasks)) {
+          result.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while looking up URLs", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    Map<String, CrawlDatum> res = new LinkedHashMap<>();
+    for (String url : urls) {
+      CrawlDatum datum = found.get(url);
+      if (datum != null) {
+        res.put(url, datum);
+      }
+    }
     return res;
   }
 
@@ -830,6 +1069,70 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
     output.append("\n");
   }
 
+  /**
+   * Look up URLs read from a file (one URL per line) or stdin and print
+   * information about every URL to System.out. URLs are looked up in batches,
+   * see {@link #get(String, Collection, Configuration)}.
+   *
+   * @param crawlDb
+   *          path to CrawlDb
+   * @param urlFile
+   *          file containing URLs or <code>-</code> to read from stdin
+   * @param config
+   *          configuration
+   * @throws IOException
+   *           if the URLs or the CrawlDb cannot be read
+   */
+  public void readUrls(String crawlDb, String urlFile, Configuration config)
+      throws IOException {
+    BufferedReader in;
+    if ("-".equals(urlFile)) {
+      in = new BufferedReader(
+          new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    } else {
+      Path path = new Path(urlFile);
+      in = new BufferedReader(new InputStreamReader(
+          path.getFileSystem(config).open(path), StandardCharsets.UTF_8));
+    }
+    try {
+      List<String> urls = new ArrayList<>();
+      String line;
+      while ((line = in.readLine()) != null) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        urls.add(line);
+        if (urls.size() >= LOOKUP_BATCH_SIZE) {
+          printUrls(crawlDb, urls, config);
+          urls.clear();
+        }
+      }
+      if (!urls.isEmpty()) {
+        printUrls(crawlDb, urls, config);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private void printUrls(String crawlDb, List<String> urls,
+      Configuration config) throws IOException {
+    Map<String, CrawlDatum> res = get(crawlDb, urls, config);
+    StringBuilder output = new StringBuilder();
+    for (String url : urls) {
+      CrawlDatum datum = res.get(url);
+      output.append("URL: ").append(url).append('\n');
+      if (datum != null) {
+        output.append(datum);
+      } else {
+        output.append("not found");
+      }
+      output.append('\n');
+    }
+    System.out.print(output);
+  }
+
   public void processDumpJob(String crawlDb, String output,
       Configuration config, String format, String regex, String status,
       Integer retry, String expr, Float sample)
@@ -1043,12 +1346,14 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
 
     if (args.length < 2) {
       System.err.println(
-          "Usage: CrawlDbReader <crawldb> (-stats | -dump <out_dir> | -topN <nnnn> <out_dir> [<min>] | -url <url> | -listen <port>)");
+          "Usage: CrawlDbReader <crawldb> (-stats | -dump <out_dir> | -topN <nnnn> <out_dir> [<min>] | -url <url> | -urls <file> | -listen <port>)");
       System.err
           .println("\t<crawldb>\tdirectory name where crawldb is located");
       System.err
-          .println("\t-stats [-sort] \tprint overall statistics to System.out");
+          .println("\t-stats [-sort] [-fullScan]\tprint overall statistics to System.out");
       System.err.println("\t\t[-sort]\tlist status sorted by host");
+      System.err.println(
+          "\t\t[-fullScan]\tscan the CrawlDb, do not use the statistics summaries of CrawlDb parts");
       System.err.println(
           "\t-dump <out_dir> [-format normal|csv|crawldb|json]\tdump the whole db to a text file in <out_dir>");
       System.err.println("\t\t[-format csv]\tdump in Csv format");
@@ -1066,6 +1371,8 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
           "\t\t[-sample <fraction>]\tOnly process a random sample with this ratio");
       System.err
           .println("\t-url <url>\tprint information on <url> to System.out");
+      System.err.println(
+          "\t-urls <file>\tprint information on URLs in <file> (one per line, - for stdin) to System.out");
       System.err
         .println("\t-listen <port> [-keepClientCnxOpen]\tlisten on <port> for URLs and");
       System.err
@@ -1086,11 +1393,18 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
     for (int i = 1; i < args.length; i++) {
       if (args[i].equals("-stats")) {
         boolean toSort = false;
-        if (i < args.length - 1 && "-sort".equals(args[i + 1])) {
-          toSort = true;
+        boolean fullScan = false;
+        while (i < args.length - 1) {
+          if ("-sort".equals(args[i + 1])) {
+            toSort = true;
+          } else if ("-fullScan".equals(args[i + 1])) {
+            fullScan = true;
+          } else {
+            break;
+          }
           i++;
         }
-        dbr.processStatJob(crawlDb, config, toSort);
+        dbr.processStatJob(crawlDb, config, toSort, fullScan);
       } else if (args[i].equals("-dump")) {
         param = args[++i];
         String format = "normal";
@@ -1132,6 +1446,9 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
         StringBuilder output = new StringBuilder();
         dbr.readUrl(crawlDb, param, config, output);
         System.out.print(output);
+      } else if (args[i].equals("-urls")) {
+        param = args[++i];
+        dbr.readUrls(crawlDb, param, config);
       } else if (args[i].equals("-topN")) {
         param = args[++i];
         long topN = Long.parseLong(param);
@@ -1175,7 +1492,7 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
           sort = true;
       }
       TreeMap<String, Writable> stats = processStatJobHelper(crawlDb,
-          NutchConfiguration.create(), sort);
+          NutchConfiguration.create(), sort, false);
       LongWritable totalCnt = (LongWritable) stats.get("T");
       stats.remove("T");
       results.put("totalUrls", String.valueOf(totalCnt.get()));
@@ -1276,24 +1593,35 @@ public class CrawlDbReader extends AbstractChecker implements Closeable {
     if (type.equalsIgnoreCase("url")) {
       String url = args.get("url");
       CrawlDatum res = get(crawlDb, url, conf);
-      results.put("status", res.getStatus());
-      results.put("fetchTime", new Date(res.getFetchTime()));
-      results.put("modifiedTime", new Date(res.getModifiedTime()));
-      results.put("retriesSinceFetch", res.getRetriesSinceFetch());
-      results.put("retryInterval", res.getFetchInterval());
-      results.put("score", res.getScore());
-      results.put("signature", StringUtil.toHexString(res.getSignature()));
-      Map<String, String> metadata = new HashMap<>();
-      if (res.getMetaData() != null) {
-        for (Entry<Writable, Writable> e : res.getMetaData().entrySet()) {
-          metadata.put(String.valueOf(e.getKey()),
-              String.valueOf(e.getValue()));
-        }
+      return toMap(res);
+    }
+    if (type.equalsIgnoreCase("urls")) {
+      List<String> urls = Arrays.asList(args.get("urls").trim().split("\\s+"));
+      for (Entry<String, CrawlDatum> e : get(crawlDb, urls, conf).entrySet()) {
+        results.put(e.getKey(), toMap(e.getValue()));
       }
-      results.put("metadata", metadata);
-
       return results;
     }
     return results;
   }
+
+  private static Map<String, Object> toMap(CrawlDatum res) {
+    Map<String, Object> results = new HashMap<>();
+    results.put("status", res.getStatus());
+    results.put("fetchTime", new Date(res.getFetchTime()));
+    results.put("modifiedTime", new Date(res.getModifiedTime()));
+    results.put("retriesSinceFetch", res.getRetriesSinceFetch());
+    results.put("retryInterval", res.getFetchInterval());
+    results.put("score", res.getScore());
+    results.put("signature", StringUtil.toHexString(res.getSignature()));
+    Map<String, String> metadata = new HashMap<>();
+    if (res.getMetaData() != null) {
+      for (Entry<Writable, Writable> e : res.getMetaData().entrySet()) {
+        metadata.put(String.valueOf(e.getKey()),
+            String.valueOf(e.getValue()));
+      }
+    }
+    results.put("metadata", metadata);
+    return results;
+  }
 }
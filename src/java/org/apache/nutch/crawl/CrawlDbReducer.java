@@ -18,6 +18,7 @@ package org.apache.nutch.crawl;
 
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map.Entry;
 import java.io.IOException;
@@ -26,10 +27,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
-import org.apache.hadoop.util.PriorityQueue;
 import org.apache.nutch.metadata.Nutch;
 import org.apache.nutch.scoring.ScoringFilterException;
 import org.apache.nutch.scoring.ScoringFilters;
@@ -45,6 +46,7 @@ public class CrawlDbReducer extends
   private int retryMax;
   private CrawlDatum result = new CrawlDatum();
   private InlinkPriorityQueue linked = null;
+  private boolean skipInlinks;
   private ScoringFilters scfilters = null;
   private boolean additionsAllowed;
   private int maxInterval;
@@ -52,7 +54,14 @@ public class CrawlDbReducer extends
 
   @Override
   public void setup(Reducer<Text, CrawlDatum, Text, CrawlDatum>.Context context) {
-    Configuration conf = context.getConfiguration();
+    setup(context.getConfiguration());
+  }
+
+  /**
+   * Configure the reducer, also used if CrawlDb entries are updated
+   * map-side, see {@link CrawlDbMergeJoin}.
+   */
+  void setup(Configuration conf) {
     retryMax = conf.getInt("db.fetch.retry.max", 3);
     scfilters = new ScoringFilters(conf);
     additionsAllowed = conf.getBoolean(CrawlDb.CRAWLDB_ADDITIONS_ALLOWED, true);
@@ -60,11 +69,22 @@ public class CrawlDbReducer extends
     schedule = FetchScheduleFactory.getFetchSchedule(conf);
     int maxLinks = conf.getInt("db.update.max.inlinks", 10000);
     linked = new InlinkPriorityQueue(maxLinks);
+    skipInlinks = conf.getBoolean(CrawlDb.CRAWLDB_UPDATE_SKIP_INLINKS, false);
   }
 
   @Override
   public void reduce(Text key, Iterable<CrawlDatum> values,
       Context context) throws IOException, InterruptedException {
+    update(key, values, context);
+  }
+
+  /**
+   * Merge the CrawlDb entry and the new entries of a single URL and write
+   * the updated CrawlDb entry.
+   */
+  void update(Text key, Iterable<CrawlDatum> values,
+      TaskInputOutputContext<?, ?, Text, CrawlDatum> context)
+      throws IOException, InterruptedException {
 
     CrawlDatum fetch = new CrawlDatum();
     CrawlDatum old = new CrawlDatum();
@@ -73,6 +93,7 @@ public class CrawlDbReducer extends
     boolean oldSet = false;
     byte[] signature = null;
     boolean multiple = false; // avoid deep copy when only single value exists
+    long skippedLinks = 0;
     linked.clear();
     org.apache.hadoop.io.MapWritable metaFromParse = null;
 
@@ -114,6 +135,12 @@ public class CrawlDbReducer extends
 
       switch (datum.getStatus()) { // collect other info
       case CrawlDatum.STATUS_LINKED:
+        if (skipInlinks && !linked.accepts(datum)) {
+          // queue is full and the link scores too low to be kept: skip it
+          // without copying the datum or decoding its metadata
+          skippedLinks++;
+          break;
+        }
         CrawlDatum link;
         if (multiple) {
           link = new CrawlDatum();
@@ -134,13 +161,19 @@ public class CrawlDbReducer extends
       }
     }
 
+    if (skippedLinks > 0) {
+      context.getCounter("CrawlDB update", "inlinks skipped")
+          .increment(skippedLinks);
+    }
+
     // copy the content of the queue into a List
-    // in reversed order
+    // in reversed order (best scoring link first)
     int numLinks = linked.size();
-    List<CrawlDatum> linkList = new ArrayList<>(numLinks);
+    CrawlDatum[] links = new CrawlDatum[numLinks];
     for (int i = numLinks - 1; i >= 0; i--) {
-      linkList.add(linked.pop());
+      links[i] = linked.pop();
     }
+    List<CrawlDatum> linkList = new ArrayList<>(Arrays.asList(links));
 
     // if it doesn't already exist, skip it
     if (!oldSet && !additionsAllowed)
@@ -335,18 +368,3 @@ public class CrawlDbReducer extends
   }
 
 }
-
-class InlinkPriorityQueue extends PriorityQueue<CrawlDatum> {
-
-  public InlinkPriorityQueue(int maxSize) {
-    initialize(maxSize);
-  }
-
-  /** Determines the ordering of objects in this priority queue. **/
-  protected boolean lessThan(Object arg0, Object arg1) {
-    CrawlDatum candidate = (CrawlDatum) arg0;
-    CrawlDatum least = (CrawlDatum) arg1;
-    return candidate.getScore() > least.getScore();
-  }
-
-}
@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.nutch.util.BloomMapFileOutputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tdunning.math.stats.MergingDigest;
+import com.tdunning.math.stats.TDigest;
+
+/**
+ * Statistics summary of a single CrawlDb part: status and retry counts,
+ * optionally status counts per host (<code>db.stats.summary.hosts</code>),
+ * min, max and sum of score, fetch time and fetch interval, and TDigests of
+ * scores and fetch intervals. The summary is written next to the
+ * MapFile of the part into the file <code>stats</code> by
+ * {@link SummaryOutputFormat}, in the same format (keys and
+ * {@link NutchWritable} values) as the output of
+ * {@link CrawlDbReader.CrawlDbStatReducer}. <code>readdb -stats</code> then
+ * merges the summaries of all parts instead of scanning the whole CrawlDb.
+ */
+public class CrawlDbStatsSummary {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Name of the summary file inside a CrawlDb part */
+  public static final String SUMMARY_FILE_NAME = "stats";
+
+  /**
+   * Key in the metadata of the summary file, set if the summary holds status
+   * counts per host
+   */
+  static final Text HOST_COUNTS = new Text("hostCounts");
+
+  private final boolean hostCounts;
+  private long total = 0;
+  private Map<String, long[]> counts = new HashMap<>();
+
+  private long scored = 0;
+  private float minScore = Float.MAX_VALUE;
+  private float maxScore = -Float.MAX_VALUE;
+  private float sumScore = 0.0f;
+  private MergingDigest scoreDigest;
+
+  private long minFetchTime = Long.MAX_VALUE;
+  private long maxFetchTime = Long.MIN_VALUE;
+  private long sumFetchTime = 0;
+
+  private long minFetchInterval = Long.MAX_VALUE;
+  private long maxFetchInterval = Long.MIN_VALUE;
+  private long sumFetchInterval = 0;
+  private MergingDigest fetchIntervalDigest;
+
+  /** Summary without status counts per host */
+  public CrawlDbStatsSummary() {
+    this(false);
+  }
+
+  /**
+   * @param hostCounts
+   *          whether to count the status per host. The number of counts is
+   *          unbounded, it grows with the number of hosts in the CrawlDb part
+   */
+  public CrawlDbStatsSummary(boolean hostCounts) {
+    this.hostCounts = hostCounts;
+  }
+
+  /**
+   * {@link MapFileOutputFormat} (or {@link BloomMapFileOutputFormat} if
+   * <code>db.bloom.filter</code> is true) writing a statistics summary next
+   * to every CrawlDb part.
+   */
+  public static class SummaryOutputFormat extends MapFileOutputFormat {
+
+    @Override
+    public RecordWriter<WritableComparable<?>, Writable> getRecordWriter(
+        TaskAttemptContext context) throws IOException {
+      Configuration conf = context.getConfiguration();
+      final RecordWriter<WritableComparable<?>, Writable> out;
+      if (conf.getBoolean(CrawlDb.CRAWLDB_BLOOM_FILTER, false)) {
+        out = new BloomMapFileOutputFormat().getRecordWriter(context);
+      } else {
+        out = super.getRecordWriter(context);
+      }
+      final Path summaryFile = new Path(getDefaultWorkFile(context, ""),
+          SUMMARY_FILE_NAME);
+      final CrawlDbStatsSummary summary = new CrawlDbStatsSummary(
+          conf.getBoolean(CrawlDb.CRAWLDB_STATS_SUMMARY_HOSTS, false));
+
+      return new RecordWriter<WritableComparable<?>, Writable>() {
+        @Override
+        public void write(WritableComparable<?> key, Writable value)
+            throws IOException, InterruptedException {
+          out.write(key, value);
+          summary.add((Text) key, (CrawlDatum) value);
+        }
+
+        @Override
+        public void close(TaskAttemptContext context)
+            throws IOException, InterruptedException {
+          out.close(context);
+          summary.write(summaryFile, conf);
+        }
+      };
+    }
+  }
+
+  /**
+   * Add a CrawlDb record to the summary.
+   *
+   * @param url
+   *          URL
+   * @param datum
+   *          CrawlDatum of the URL
+   */
+  public void add(Text url, CrawlDatum datum) {
+    total++;
+    count("status " + datum.getStatus());
+    count("retry " + datum.getRetriesSinceFetch());
+
+    float score = datum.getScore();
+    if (Float.isNaN(score)) {
+      count("scNaN");
+    } else {
+      scored++;
+      minScore = Math.min(minScore, score);
+      maxScore = Math.max(maxScore, score);
+      sumScore += score;
+      if (scoreDigest == null) {
+        scoreDigest = (MergingDigest) TDigest.createMergingDigest(100.0);
+      }
+      scoreDigest.add(score);
+    }
+
+    // fetch time (in minutes to prevent from overflows when summing up)
+    long fetchTime = datum.getFetchTime() / (1000 * 60);
+    minFetchTime = Math.min(minFetchTime, fetchTime);
+    maxFetchTime = Math.max(maxFetchTime, fetchTime);
+    sumFetchTime += fetchTime;
+
+    // fetch interval (in seconds)
+    long fetchInterval = datum.getFetchInterval();
+    minFetchInterval = Math.min(minFetchInterval, fetchInterval);
+    maxFetchInterval = Math.max(maxFetchInterval, fetchInterval);
+    sumFetchInterval += fetchInterval;
+    if (fetchIntervalDigest == null) {
+      fetchIntervalDigest = (MergingDigest) TDigest.createMergingDigest(100.0);
+    }
+    fetchIntervalDigest.add(fetchInterval);
+
+    if (hostCounts) {
+      try {
+        String host = new URL(url.toString()).getHost();
+        count("status " + datum.getStatus() + " " + host);
+      } catch (MalformedURLException e) {
+        LOG.debug("Failed to get host from URL {}: {}", url, e.getMessage());
+      }
+    }
+  }
+
+  private void count(String key) {
+    long[] count = counts.get(key);
+    if (count == null) {
+      counts.put(key, new long[] { 1 });
+    } else {
+      count[0]++;
+    }
+  }
+
+  /**
+   * Write the summary. Min. and max. values are written as two records with
+   * the same key, similar to {@link CrawlDbReader.CrawlDbStatReducer}.
+   *
+   * @param file
+   *          summary file
+   * @param conf
+   *          configuration
+   * @throws IOException
+   *           if the summary cannot be written
+   */
+  public void write(Path file, Configuration conf) throws IOException {
+    SequenceFile.Metadata metadata = new SequenceFile.Metadata();
+    if (hostCounts) {
+      metadata.set(HOST_COUNTS, new Text("true"));
+    }
+    try (SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(file),
+        SequenceFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(NutchWritable.class),
+        SequenceFile.Writer.metadata(metadata))) {
+      if (total == 0) {
+        return;
+      }
+      append(writer, "T", new LongWritable(total));
+      for (Map.Entry<String, long[]> e : new TreeMap<>(counts).entrySet()) {
+        append(writer, e.getKey(), new LongWritable(e.getValue()[0]));
+      }
+      if (scored > 0) {
+        append(writer, "sc", new FloatWritable(minScore));
+        append(writer, "sc", new FloatWritable(maxScore));
+        append(writer, "sct", new FloatWritable(sumScore));
+        append(writer, "scd", toBytes(scoreDigest));
+      }
+      append(writer, "ft", new LongWritable(minFetchTime));
+      append(writer, "ft", new LongWritable(maxFetchTime));
+      append(writer, "ftt", new LongWritable(sumFetchTime));
+      append(writer, "fi", new LongWritable(minFetchInterval));
+      append(writer, "fi", new LongWritable(maxFetchInterval));
+      append(writer, "fit", new LongWritable(sumFetchInterval));
+      append(writer, "fid", toBytes(fetchIntervalDigest));
+    }
+  }
+
+  private static void append(SequenceFile.Writer writer, String key,
+      Writable value) throws IOException {
+    writer.append(new Text(key), new NutchWritable(value));
+  }
+
+  private static BytesWritable toBytes(MergingDigest digest) {
+    ByteBuffer bytes = ByteBuffer.allocate(digest.smallByteSize());
+    digest.asSmallBytes(bytes);
+    return new BytesWritable(bytes.array());
+  }
+
+  /**
+   * @param reader
+   *          reader of a summary file
+   * @return true if the summary holds status counts per host
+   */
+  static boolean hasHostCounts(SequenceFile.Reader reader) {
+    return reader.getMetadata().get(HOST_COUNTS) != null;
+  }
+
+  /**
+   * Get the summary files of all parts of a CrawlDb.
+   *
+   * @param current
+   *          CrawlDb directory holding the parts (<code>crawldb/current</code>)
+   * @param conf
+   *          configuration
+   * @return summary files, null if there are no parts or if any part has no
+   *         summary (e.g., because it was written by a job or Nutch version
+   *         not writing summaries)
+   * @throws IOException
+   *           if the CrawlDb cannot be listed
+   */
+  public static Path[] getSummaries(Path current, Configuration conf)
+      throws IOException {
+    FileSystem fs = current.getFileSystem(conf);
+    if (!fs.exists(current)) {
+      return null;
+    }
+    Path[] parts = FileUtil.stat2Paths(fs.listStatus(current, path -> {
+      String name = path.getName();
+      return !name.startsWith("_") && !name.startsWith(".");
+    }));
+    if (parts.length == 0) {
+      return null;
+    }
+    Arrays.sort(parts);
+    Path[] summaries = new Path[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      summaries[i] = new Path(parts[i], SUMMARY_FILE_NAME);
+      if (!fs.exists(summaries[i])) {
+        LOG.info("No statistics summary found for CrawlDb part {}", parts[i]);
+        return null;
+      }
+    }
+    return summaries;
+  }
+
+}
@@ -30,20 +30,19 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
+import java.util.TreeMap;
 
 import org.apache.hadoop.conf.Configurable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.commons.jexl3.JexlScript;
-import org.apache.commons.jexl3.JexlContext;
-import org.apache.commons.jexl3.MapContext;
 import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
-import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
@@ -54,6 +53,7 @@ import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.FloatWritable;
 import org.apache.hadoop.io.IntWritable;
@@ -85,7 +85,8 @@ import org.apache.nutch.util.URLUtil;
  * (OldGenerator), the IP resolution is done ONLY on the entries which have been
  * selected for fetching. The URLs are partitioned by IP, domain or host within
  * a segment. We can chose separately how to count the URLS i.e. by domain or
- * host to limit the entries.
+ * host to limit the entries. The fetch lists of all segments are partitioned
+ * in a single job (see <code>generate.partition.single.job</code>).
  **/
 public class Generator extends NutchTool implements Tool {
 
@@ -112,6 +113,11 @@ public class Generator extends NutchTool implements Tool {
   public static final String GENERATOR_HOSTDB = "generate.hostdb";
   public static final String GENERATOR_MAX_COUNT_EXPR = "generate.max.count.expr";
   public static final String GENERATOR_FETCH_DELAY_EXPR = "generate.fetch.delay.expr";
+  /**
+   * Partition all segments in a single job instead of launching one partition
+   * job per segment
+   */
+  public static final String GENERATOR_PARTITION_SINGLE_JOB = "generate.partition.single.job";
 
   public static class SelectorEntry implements Writable {
     public Text url;
@@ -312,6 +318,11 @@ public class Generator extends NutchTool implements Tool {
     private JexlScript maxCountExpr = null;
     private JexlScript fetchDelayExpr = null;
     private Map<String, HostDatum> hostDatumCache = new HashMap<>();
+    private JexlUtil.HostDatumContext hostContext = new JexlUtil.HostDatumContext();
+    // results of host expressions are cached, URLs are sorted by score,
+    // not by host
+    private Map<String, Integer> maxCountCache = new HashMap<>();
+    private Map<String, LongWritable> fetchDelayCache = new HashMap<>();
     
     public void readHostDb() throws IOException {
       if (conf.get(GENERATOR_HOSTDB) == null) {
@@ -338,45 +349,20 @@ public class Generator extends NutchTool implements Tool {
       }
     }
 
-    private JexlContext createContext(HostDatum datum) {
-      JexlContext context = new MapContext();
-      context.set("dnsFailures", datum.getDnsFailures());
-      context.set("connectionFailures", datum.getConnectionFailures());
-      context.set("unfetched", datum.getUnfetched());
-      context.set("fetched", datum.getFetched());
-      context.set("notModified", datum.getNotModified());
-      context.set("redirTemp", datum.getRedirTemp());
-      context.set("redirPerm", datum.getRedirPerm());
-      context.set("gone", datum.getGone());
-      context.set("conf", conf);
-
-      // Set metadata variables
-      if (datum.hasMetaData()) {
-        for (Map.Entry<Writable, Writable> entry : datum.getMetaData()
-            .entrySet()) {
-          Object value = entry.getValue();
-
-          if (value instanceof FloatWritable) {
-            FloatWritable fvalue = (FloatWritable) value;
-            Text tkey = (Text) entry.getKey();
-            context.set(tkey.toString(), fvalue.get());
-          }
-
-          if (value instanceof IntWritable) {
-            IntWritable ivalue = (IntWritable) value;
-            Text tkey = (Text) entry.getKey();
-            context.set(tkey.toString(), ivalue.get());
-          }
-
-          if (value instanceof Text) {
-            Text tvalue = (Text) value;
-            Text tkey = (Text) entry.getKey();
-            context.set(tkey.toString().replace("-", "_"), tvalue.toString());
-          }
-        }
+    /**
+     * Evaluate an expression on host statistics.
+     * 
+     * @return result rounded to a long value or null if evaluation failed
+     */
+    private Long evaluate(JexlScript expr, HostDatum datum, String what) {
+      try {
+        Object result = expr.execute(hostContext.reset(datum));
+        return Math.round(((Number) result).doubleValue());
+      } catch (Exception e) {
+        LOG.error("Unable to execute {} expression because: {}", what,
+            e.getMessage(), e);
       }
-
-      return context;
+      return null;
     }
 
     @Override
@@ -401,6 +387,7 @@ public class Generator extends NutchTool implements Tool {
         normalizers = new URLNormalizers(conf,
             URLNormalizers.SCOPE_GENERATE_HOST_COUNT);
 
+      hostContext.setVariable("conf", conf);
       if (conf.get(GENERATOR_HOSTDB) != null) {
         maxCountExpr = JexlUtil
             .parseExpression(conf.get(GENERATOR_MAX_COUNT_EXPR, null));
@@ -436,26 +423,37 @@ public class Generator extends NutchTool implements Tool {
         if (!hostname.equals(currentHostname)) {
           currentHostname = hostname;
           host = hostDatumCache.get(hostname);
+          maxCount = this.maxCount;
+          variableFetchDelayWritable = null;
 
           // Got it?
           if (host != null) {
             if (maxCountExpr != null) {
-              try {
-                long variableMaxCount = Math.round((double)maxCountExpr.execute(createContext(host)));
-                LOG.info("Generator: variable maxCount: {} for {}", variableMaxCount, hostname);
-                maxCount = (int)variableMaxCount;
-              } catch (Exception e) {
-                LOG.error("Unable to execute variable maxCount expression because: " + e.getMessage(), e);
+              Integer variableMaxCount = maxCountCache.get(hostname);
+              if (variableMaxCount == null) {
+                Long result = evaluate(maxCountExpr, host, "variable maxCount");
+                variableMaxCount = (result == null ? this.maxCount
+                    : result.intValue());
+                LOG.info("Generator: variable maxCount: {} for {}",
+                    variableMaxCount, hostname);
+                maxCountCache.put(hostname, variableMaxCount);
               }
+              maxCount = variableMaxCount;
             }
 
             if (fetchDelayExpr != null) {
-              try {
-                long variableFetchDelay = Math.round((double)fetchDelayExpr.execute(createContext(host)));
-                LOG.debug("Generator: variable fetchDelay: {} ms for {}", variableFetchDelay, hostname);
-                variableFetchDelayWritable = new LongWritable(variableFetchDelay);
-              } catch (Exception e) {
-                LOG.error("Unable to execute fetch delay expression because: " + e.getMessage(), e);
+              if (fetchDelayCache.containsKey(hostname)) {
+                variableFetchDelayWritable = fetchDelayCache.get(hostname);
+              } else {
+                Long variableFetchDelay = evaluate(fetchDelayExpr, host,
+                    "fetch delay");
+                if (variableFetchDelay != null) {
+                  LOG.debug("Generator: variable fetchDelay: {} ms for {}",
+                      variableFetchDelay, hostname);
+                  variableFetchDelayWritable = new LongWritable(
+                      variableFetchDelay);
+                }
+                fetchDelayCache.put(hostname, variableFetchDelayWritable);
               }
             }
           }
@@ -593,6 +591,70 @@ public class Generator extends NutchTool implements Tool {
 
   }
 
+  /**
+   * Partition selected entries of all segments in a single job: every segment
+   * is assigned a contiguous range of <code>num.lists</code> partitions, within
+   * the range URLs are partitioned by host, domain or IP.
+   */
+  public static class SegmentPartitioner extends Partitioner<Text, SelectorEntry>
+      implements Configurable {
+
+    private final URLPartitioner partitioner = new URLPartitioner();
+    private int numLists = 1;
+
+    @Override
+    public int getPartition(Text key, SelectorEntry value, int numReduceTasks) {
+      int segment = value.segnum.get() - 1;
+      int partition = partitioner.getPartition(key, value.datum, numLists);
+      return (segment * numLists + partition) % numReduceTasks;
+    }
+
+    @Override
+    public Configuration getConf() {
+      return partitioner.getConf();
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+      partitioner.setConf(conf);
+      numLists = conf.getInt("num.lists", 1);
+    }
+  }
+
+  /**
+   * Write partitioned fetch lists of all segments into per-segment
+   * directories.
+   */
+  public static class SegmentPartitionReducer
+      extends Reducer<Text, SelectorEntry, Text, CrawlDatum> {
+
+    private MultipleOutputs<Text, CrawlDatum> mos;
+
+    @Override
+    public void setup(Context context) {
+      mos = new MultipleOutputs<Text, CrawlDatum>(context);
+    }
+
+    @Override
+    public void reduce(Text key, Iterable<SelectorEntry> values,
+        Context context) throws IOException, InterruptedException {
+      // if using HashComparator, we get only one input key in case of
+      // hash collision so use only URLs from values
+      for (SelectorEntry entry : values) {
+        mos.write("sequenceFiles", entry.url, entry.datum,
+            "fetchlist-" + entry.segnum.toString() + "/"
+                + CrawlDatum.GENERATE_DIR_NAME + "/part");
+      }
+    }
+
+    @Override
+    public void cleanup(Context context)
+        throws IOException, InterruptedException {
+      mos.close();
+    }
+
+  }
+
   /** Sort fetch lists by hash of URL. */
   public static class HashComparator extends WritableComparator {
     public HashComparator() {
@@ -913,13 +975,23 @@ public class Generator extends NutchTool implements Tool {
 
     FileStatus[] status = fs.listStatus(tempDir);
     try {
+      List<Path> inputDirs = new ArrayList<>();
       for (FileStatus stat : status) {
         Path subfetchlist = stat.getPath();
         if (!subfetchlist.getName().startsWith("fetchlist-"))
           continue;
-        // start a new partition job for this segment
-        Path newSeg = partitionSegment(segments, subfetchlist, numLists);
-        generatedSegments.add(newSeg);
+        inputDirs.add(subfetchlist);
+      }
+      if (inputDirs.size() > 1
+          && getConf().getBoolean(GENERATOR_PARTITION_SINGLE_JOB, false)) {
+        generatedSegments = partitionSegments(segments, tempDir, inputDirs,
+            numLists);
+      } else {
+        for (Path subfetchlist : inputDirs) {
+          // start a new partition job for this segment
+          Path newSeg = partitionSegment(segments, subfetchlist, numLists);
+          generatedSegments.add(newSeg);
+        }
       }
     } catch (Exception e) {
       LOG.warn("Generator: exception while partitioning segments, exiting ...");
@@ -950,7 +1022,7 @@ public class Generator extends NutchTool implements Tool {
       job.setMapperClass(CrawlDbUpdater.CrawlDbUpdateMapper.class);
       job.setReducerClass(CrawlDbUpdater.CrawlDbUpdateReducer.class);
       job.setJarByClass(CrawlDbUpdater.class);
-      job.setOutputFormatClass(MapFileOutputFormat.class);
+      CrawlDb.setOutputFormat(job);
       job.setOutputKeyClass(Text.class);
       job.setOutputValueClass(CrawlDatum.class);
       FileOutputFormat.setOutputPath(job, tempDir2);
@@ -1033,6 +1105,102 @@ public class Generator extends NutchTool implements Tool {
     return segment;
   }
 
+  /**
+   * Partition the fetch lists of all segments in a single job. Every segment
+   * gets its own range of reduce tasks, partitioned output is written into
+   * per-segment directories using {@link MultipleOutputs} and finally moved
+   * into the segments directory (copied if the segments directory is on a
+   * different file system).
+   */
+  private List<Path> partitionSegments(Path segmentsDir, Path tempDir,
+      List<Path> inputDirs, int numLists)
+      throws IOException, ClassNotFoundException, InterruptedException {
+    LOG.info(
+        "Generator: Partitioning selected urls of {} segments for politeness.",
+        inputDirs.size());
+
+    // sort fetch lists by segment number, the first segment holds the best
+    // scoring URLs and should also get the lowest segment name
+    TreeMap<Integer, Path> fetchLists = new TreeMap<>();
+    for (Path p : inputDirs) {
+      fetchLists.put(Integer.parseInt(
+          p.getName().substring("fetchlist-".length())), p);
+    }
+    int maxSegNum = fetchLists.lastKey();
+
+    Path output = new Path(tempDir, "partitioned");
+
+    Job job = NutchJob.getInstance(getConf());
+    job.setJobName("generate: partition " + fetchLists.size() + " segments");
+    Configuration conf = job.getConfiguration();
+    conf.setInt("partition.url.seed", RANDOM.nextInt());
+    conf.setInt("num.lists", numLists);
+    conf.setBoolean("mapreduce.fileoutputcommitter.marksuccessfuljobs", false);
+
+    for (Path p : fetchLists.values()) {
+      FileInputFormat.addInputPath(job, p);
+    }
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+
+    job.setJarByClass(Generator.class);
+    job.setMapperClass(SelectorInverseMapper.class);
+    job.setMapOutputKeyClass(Text.class);
+    job.setMapOutputValueClass(SelectorEntry.class);
+    job.setPartitionerClass(SegmentPartitioner.class);
+    job.setReducerClass(SegmentPartitionReducer.class);
+    job.setNumReduceTasks(maxSegNum * numLists);
+
+    FileOutputFormat.setOutputPath(job, output);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(CrawlDatum.class);
+    MultipleOutputs.addNamedOutput(job, "sequenceFiles",
+        SequenceFileOutputFormat.class, Text.class, CrawlDatum.class);
+    LazyOutputFormat.setOutputFormatClass(job,
+        SequenceFileOutputFormat.class);
+    job.setSortComparatorClass(HashComparator.class);
+    try {
+      boolean success = job.waitForCompletion(true);
+      if (!success) {
+        String message = NutchJob.getJobFailureLogMessage("Generator", job);
+        LOG.error(message);
+        throw new RuntimeException(message);
+      }
+    } catch (IOException | InterruptedException | ClassNotFoundException e) {
+      LOG.error(StringUtils.stringifyException(e));
+      throw e;
+    }
+
+    List<Path> generatedSegments = new ArrayList<>();
+    FileSystem fs = output.getFileSystem(getConf());
+    FileSystem segmentsFs = segmentsDir.getFileSystem(getConf());
+    // rename works only within one file system, otherwise copy
+    boolean sameFs = fs.getUri().equals(segmentsFs.getUri());
+    for (Integer segNum : fetchLists.keySet()) {
+      Path partitioned = new Path(new Path(output, "fetchlist-" + segNum),
+          CrawlDatum.GENERATE_DIR_NAME);
+      if (!fs.exists(partitioned)) {
+        continue;
+      }
+      Path segment = new Path(segmentsDir, generateSegmentName());
+      LOG.info("Generator: segment: " + segment);
+      segmentsFs.mkdirs(segment);
+      Path target = new Path(segment, CrawlDatum.GENERATE_DIR_NAME);
+      boolean moved;
+      if (sameFs) {
+        moved = fs.rename(partitioned, target);
+      } else {
+        moved = FileUtil.copy(fs, partitioned, segmentsFs, target, true,
+            getConf());
+      }
+      if (!moved) {
+        throw new IOException(
+            "Failed to move " + partitioned + " into segment " + segment);
+      }
+      generatedSegments.add(segment);
+    }
+    return generatedSegments;
+  }
+
   private static SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss");
 
   public static synchronized String generateSegmentName() {
@@ -16,15 +16,18 @@
  */
 package org.apache.nutch.crawl;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.lang.invoke.MethodHandles;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -44,6 +47,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.FloatWritable;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.io.WritableComparable;
@@ -63,6 +67,7 @@ import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.hadoop.util.hash.MurmurHash;
 import org.apache.nutch.crawl.Generator2.SelectorReducer.DomainLimits;
+import org.apache.nutch.hostdb.HostDatum;
 import org.apache.nutch.metadata.Nutch;
 import org.apache.nutch.net.URLFilterException;
 import org.apache.nutch.net.URLFilters;
@@ -71,7 +76,9 @@ import org.apache.nutch.scoring.ScoringFilterException;
 import org.apache.nutch.scoring.ScoringFilters;
 import org.apache.nutch.util.NutchConfiguration;
 import org.apache.nutch.util.NutchJob;
+import org.apache.nutch.util.SegmentReaderUtil;
 import org.apache.nutch.util.TimingUtil;
+import org.apache.nutch.util.URLUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -100,9 +107,8 @@ import org.slf4j.LoggerFactory;
  * same-host/domain URLs together minimizes the overhead caused by DNS lookups
  * and robots.txt fetches, parsing and storing robots.txt rules.
  * 
- * All segments are partitioned in a single job which saves time when many
- * segments (e.g., <code>-maxNumSegments 100</code>) are generated
- * ({@link Generator} launches one partition job per segment).
+ * All segments are partitioned in a single map-only job which saves time when
+ * many segments (e.g., <code>-maxNumSegments 100</code>) are generated.
  **/
 public class Generator2 extends Configured implements Tool {
 
@@ -134,6 +140,28 @@ public class Generator2 extends Configured implements Tool {
   public static final String GENERATOR_MAX_HOSTS_PER_DOMAIN = "generate.max.hosts.per.domain";
   /** Max. number of URLs per host (if generate.count.mode == domain) */
   public static final String GENERATOR_MAX_COUNT_PER_HOST = "generate.max.count.per.host.by.domain";
+  /** Path to HostDb, used to estimate fetch time per host */
+  public static final String GENERATOR_HOSTDB = "generate.hostdb";
+  /**
+   * Assign URLs to segments so that the estimated fetch time (derived from
+   * HostDb statistics) is balanced over segments and fetch lists
+   */
+  public static final String GENERATOR_BALANCE_FETCH_TIME = "generate.balance.fetch.time";
+  /** HostDb metadata field holding the average response time in ms */
+  public static final String GENERATOR_BALANCE_RESPONSE_TIME_FIELD = "generate.balance.response.time.field";
+  /** HostDb metadata field holding the crawl delay in seconds */
+  public static final String GENERATOR_BALANCE_CRAWL_DELAY_FIELD = "generate.balance.crawl.delay.field";
+  /**
+   * Seed used to partition segments into fetch lists, shared between selector
+   * and partition job if fetch time balancing is enabled
+   */
+  public static final String GENERATOR_BALANCE_PARTITION_SEED = "generate.balance.partition.seed";
+  /** Ratio of CrawlDb input splits sampled to estimate fetch lists */
+  public static final String GENERATOR_ESTIMATE_SAMPLE_RATIO = "generate.estimate.sample.ratio";
+  /** Seed to select the sampled input splits (random if not set) */
+  public static final String GENERATOR_ESTIMATE_SAMPLE_SEED = "generate.estimate.sample.seed";
+  /** Number of top overflowing and largest hosts/domains reported */
+  public static final String GENERATOR_ESTIMATE_TOP = "generate.estimate.top";
 
   protected static Random random = new Random();
 
@@ -466,6 +494,15 @@ public class Generator2 extends Configured implements Tool {
     private Selector selector = new Selector();
     private Map<String, DomainLimits> domainLimits = null;
 
+    // balance estimated fetch time over segments and fetch lists
+    private boolean balanceFetchTime = false;
+    Map<String, Float> hostFetchTimes = null;
+    private float defaultFetchTime;
+    private int numFetchLists = 1;
+    private URLPartitioner fetchListPartitioner = null;
+    /* estimated fetch time in ms, indexed by [segment][fetch list] */
+    double[][] segmentLoad = null;
+
     public static class DomainLimits {
       int maxURLs;
       int maxURLsPerHost;
@@ -492,7 +529,11 @@ public class Generator2 extends Configured implements Tool {
 
     @Override
     public void setup(Context context) throws IOException {
-      conf = context.getConfiguration();
+      configure(context.getConfiguration());
+    }
+
+    void configure(Configuration conf) throws IOException {
+      this.conf = conf;
       maxNumSegments = conf.getInt(GENERATOR_MAX_NUM_SEGMENTS, 1);
       maxCount = conf.getInt(GENERATOR_MAX_COUNT, -1);
       partition = conf.getInt("mapreduce.task.partition", -1);
@@ -522,21 +563,225 @@ public class Generator2 extends Configured implements Tool {
       currentSegment = 0;
       keepMinUrlsPerSegment = conf.getInt(GENERATOR_COUNT_KEEP_MIN_IN_SEGMENT,
           100);
-      segmentIncrement = 1; // increment to select next segment
+      segmentIncrement = getSegmentIncrement(maxNumSegments);
+      LOG.info("Segment increment for {} segments = {}", maxNumSegments,
+          segmentIncrement);
+
+      balanceFetchTime = conf.getBoolean(GENERATOR_BALANCE_FETCH_TIME, false);
+      if (balanceFetchTime) {
+        setupFetchTimeBalancing();
+      }
+    }
+
+    /**
+     * Load per-host fetch time estimates from HostDb and prepare the fetch
+     * list partitioner used to account the estimated load per segment and
+     * fetch list.
+     */
+    private void setupFetchTimeBalancing() throws IOException {
+      numFetchLists = Math.max(1, conf.getInt("num.lists", 1));
+      String partitionMode = conf.get(URLPartitioner.PARTITION_MODE_KEY,
+          URLPartitioner.PARTITION_MODE_HOST);
+      if (URLPartitioner.PARTITION_MODE_IP.equals(partitionMode)) {
+        // resolving IPs is too expensive here, balance only over segments
+        LOG.info(
+            "Fetch time balancing: partition mode {}, balancing over segments only",
+            partitionMode);
+        numFetchLists = 1;
+      } else if (numFetchLists > 1) {
+        Configuration partitionConf = new Configuration(conf);
+        partitionConf.setInt("partition.url.seed",
+            conf.getInt(GENERATOR_BALANCE_PARTITION_SEED, 0));
+        fetchListPartitioner = new URLPartitioner();
+        fetchListPartitioner.setConf(partitionConf);
+        fetchListPartitioner.setDomainLimits(domainLimits);
+      }
+      segmentLoad = new double[maxNumSegments][numFetchLists];
+
+      float serverDelay = conf.getFloat("fetcher.server.delay", 5.0f) * 1000;
+      defaultFetchTime = serverDelay;
+      hostFetchTimes = readHostDbFetchTimes();
+      if (hostFetchTimes != null && !hostFetchTimes.isEmpty()) {
+        double sum = 0.0;
+        for (Float t : hostFetchTimes.values()) {
+          sum += t;
+        }
+        defaultFetchTime = (float) (sum / hostFetchTimes.size());
+      }
+      LOG.info(
+          "Fetch time balancing enabled: {} segments, {} fetch lists, {} hosts with fetch time estimates, default = {} ms/URL",
+          maxNumSegments, numFetchLists,
+          (hostFetchTimes == null ? 0 : hostFetchTimes.size()),
+          defaultFetchTime);
+    }
+
+    /**
+     * Read HostDb and estimate for every host processed in the current
+     * partition the time required to fetch a single URL. The estimate
+     * combines the crawl delay (or <code>fetcher.server.delay</code>), the
+     * average response time and the ratio of failures which are accounted by
+     * <code>http.timeout</code>.
+     * 
+     * @return map &lt;host, estimated fetch time in ms per URL&gt; or null if no
+     *         HostDb is configured
+     */
+    private Map<String, Float> readHostDbFetchTimes() throws IOException {
+      String hostDb = conf.get(GENERATOR_HOSTDB);
+      if (hostDb == null) {
+        LOG.warn("Fetch time balancing: no HostDb configured ({})",
+            GENERATOR_HOSTDB);
+        return null;
+      }
+      Text responseTimeField = new Text(
+          conf.get(GENERATOR_BALANCE_RESPONSE_TIME_FIELD, "avg._rs_"));
+      Text crawlDelayField = null;
+      if (!conf.getTrimmed(GENERATOR_BALANCE_CRAWL_DELAY_FIELD, "").isEmpty()) {
+        crawlDelayField = new Text(
+            conf.getTrimmed(GENERATOR_BALANCE_CRAWL_DELAY_FIELD));
+      }
+      float serverDelay = conf.getFloat("fetcher.server.delay", 5.0f) * 1000;
+      float timeout = conf.getInt("http.timeout", 10000);
+      boolean byDomain = GENERATOR_COUNT_VALUE_DOMAIN
+          .equals(conf.get(GENERATOR_COUNT_MODE));
+
+      Path path = new Path(hostDb, "current");
+      LOG.info("Reading host statistics from {}", path);
+      Map<String, Float> fetchTimes = new HashMap<>();
+      DomainScorePair key = new DomainScorePair();
+      long skipped = 0;
+      for (SequenceFile.Reader reader : SegmentReaderUtil.getReaders(path,
+          conf)) {
+        try {
+          Text host = new Text();
+          HostDatum datum = new HostDatum();
+          while (reader.next(host, datum)) {
+            String hostName = host.toString().toLowerCase(Locale.ROOT);
+            if (partition >= 0) {
+              // keep only hosts processed in this partition
+              if (byDomain) {
+                key.set(URLPartitioner.getDomainName(hostName), .0f);
+              } else {
+                key.set(hostName, .0f);
+              }
+              if (selector.getPartition(key, null, numReduces) != partition) {
+                skipped++;
+                continue;
+              }
+            }
+            float delay = serverDelay;
+            if (crawlDelayField != null) {
+              Writable d = datum.getMetaData().get(crawlDelayField);
+              if (d != null) {
+                try {
+                  delay = Float.parseFloat(d.toString()) * 1000;
+                } catch (NumberFormatException e) {
+                  // keep default delay
+                }
+              }
+            }
+            float responseTime = 0.0f;
+            Writable rt = datum.getMetaData().get(responseTimeField);
+            if (rt != null) {
+              try {
+                responseTime = Float.parseFloat(rt.toString());
+              } catch (NumberFormatException e) {
+                // no response time
+              }
+            }
+            float failures = datum.numFailures();
+            float attempts = failures + datum.getFetched()
+                + datum.getNotModified();
+            float failureRatio = attempts > 0 ? (failures / attempts) : 0.0f;
+            float fetchTime = delay + (1.0f - failureRatio) * responseTime
+                + failureRatio * timeout;
+            fetchTimes.put(hostName, fetchTime);
+          }
+        } finally {
+          reader.close();
+        }
+      }
+      LOG.info("Loaded fetch time estimates for {} hosts ({} hosts skipped)",
+          fetchTimes.size(), skipped);
+      return fetchTimes;
+    }
+
+    /**
+     * @return estimated time in ms to fetch a single URL from host
+     */
+    float getFetchTime(String host) {
+      if (hostFetchTimes != null) {
+        Float fetchTime = hostFetchTimes.get(host);
+        if (fetchTime != null) {
+          return fetchTime;
+        }
+      }
+      return defaultFetchTime;
+    }
+
+    /**
+     * @return fetch list (partition in segment) the URL will be assigned to
+     */
+    int getFetchList(Text url) {
+      if (fetchListPartitioner == null) {
+        return 0;
+      }
+      return fetchListPartitioner.getPartition(url, null, numFetchLists);
+    }
+
+    /**
+     * Select the segment with the lowest estimated fetch time for the given
+     * fetch list. Ties are broken by the usual order of segments (see
+     * {@link #nextSegment()}) so that hosts are still spread over segments.
+     */
+    int selectBalancedSegment(int fetchList) {
+      int start = nextSegment();
+      int best = start;
+      for (int i = 1; i < maxNumSegments; i++) {
+        int s = (start + i) % maxNumSegments;
+        if (segmentLoad[s][fetchList] < segmentLoad[best][fetchList]) {
+          best = s;
+        }
+      }
+      return best;
+    }
+
+    @Override
+    public void cleanup(Context context) {
+      if (segmentLoad == null) {
+        return;
+      }
+      for (int s = 0; s < maxNumSegments; s++) {
+        double total = 0.0, max = 0.0;
+        for (int l = 0; l < numFetchLists; l++) {
+          total += segmentLoad[s][l];
+          max = Math.max(max, segmentLoad[s][l]);
+        }
+        LOG.info(
+            "Estimated fetch time for segment {}: total = {} s, max. per fetch list = {} s",
+            s, Math.round(total / 1000), Math.round(max / 1000));
+      }
+    }
+
+    /**
+     * Select next segment with a larger step, so that fetching of smaller
+     * sites is paused between consecutive segments.
+     *
+     * @param maxNumSegments
+     *          number of segments
+     * @return a prime number which is not bigger than 1/3 of the number of
+     *         segments and the number of segments isn't a multiple of, or 1
+     */
+    static int getSegmentIncrement(int maxNumSegments) {
+      int increment = 1;
       int prime[] = { 2, 3, 5, 7, 11, 13, 17, 23, 29 };
-      // select next segment with a larger step, so that fetching of smaller
-      // sites is paused between consecutive segments. Select a prime number
-      // - which is not bigger than 1/3 of the number of segments
-      // - number of segments isn't a multiple of
       for (int i = 0; i < prime.length; i++) {
         if (prime[i] >= (maxNumSegments / 3))
           break;
         if (0 == (maxNumSegments % prime[i]))
           continue;
-        segmentIncrement = prime[i];
+        increment = prime[i];
       }
-      LOG.info("Segment increment for {} segments = {}", maxNumSegments,
-          segmentIncrement);
+      return increment;
     }
 
     private int nextSegment(int segment) {
@@ -553,7 +798,9 @@ public class Generator2 extends Configured implements Tool {
     }
 
     /**
-     * Read domain-specific limits into a map
+     * Read domain-specific limits into a map. If the limits file is a binary
+     * limits file (see {@link CompactDomainLimits}) the limits for all
+     * domains are made available without applying the acceptor predicate.
      * 
      * @param conf
      * @param acceptor
@@ -570,15 +817,34 @@ public class Generator2 extends Configured implements Tool {
         Path limitsFilePath = new Path(limitsFile);
         if (limitsFilePath.toUri().getScheme() != null) {
           try {
+            if (CompactDomainLimits.isCompact(limitsFilePath, conf)) {
+              return CompactDomainLimits.open(limitsFilePath, conf);
+            }
             FileSystem fs = limitsFilePath.getFileSystem(conf);
-            Reader limitsReader = new InputStreamReader(fs.open(limitsFilePath));
+            Reader limitsReader = new InputStreamReader(
+                fs.open(limitsFilePath), StandardCharsets.UTF_8);
             return readLimitsFile(limitsReader, acceptor);
           } catch (IOException e) {
             LOG.error("Failed to read domain-specific limits", e);
           }
         }
-        try (Reader limitsReader = conf.getConfResourceAsReader(limitsFile)) {
-          return readLimitsFile(limitsReader, acceptor);
+        try (InputStream limitsStream = conf
+            .getConfResourceAsInputStream(limitsFile)) {
+          if (limitsStream == null) {
+            throw new IOException("Limits file not found: " + limitsFile);
+          }
+          BufferedInputStream in = new BufferedInputStream(limitsStream);
+          in.mark(4);
+          int magic = 0;
+          for (int i = 0, b; i < 4 && (b = in.read()) != -1; i++) {
+            magic = (magic << 8) | b;
+          }
+          in.reset();
+          if (magic == CompactDomainLimits.MAGIC) {
+            return CompactDomainLimits.read(in);
+          }
+          return readLimitsFile(
+              new InputStreamReader(in, StandardCharsets.UTF_8), acceptor);
         } catch (IOException e) {
           LOG.error("Failed to read domain-specific limits", e);
         }
@@ -602,7 +868,7 @@ public class Generator2 extends Configured implements Tool {
      *          Selector to determine partition ID for a given domain
      * @return map <domain, limits>
      */
-    private static Map<String, DomainLimits> readLimitsFile(Configuration conf,
+    static Map<String, DomainLimits> readLimitsFile(Configuration conf,
         int partition, int numReduces, Selector selector) {
       BiPredicate<String, DomainLimits> domainAcceptor = (String d,
           DomainLimits l) -> true;
@@ -618,7 +884,7 @@ public class Generator2 extends Configured implements Tool {
       return readLimitsFile(conf, domainAcceptor);
     }
 
-    private static Map<String, DomainLimits> readLimitsFile(Reader limitsReader,
+    static Map<String, DomainLimits> readLimitsFile(Reader limitsReader,
         BiPredicate<String, DomainLimits> acceptor) throws IOException {
 
       if (limitsReader == null) {
@@ -723,6 +989,9 @@ public class Generator2 extends Configured implements Tool {
         }
       }
 
+      float fetchTime = 0.0f;
+      int fetchList = 0;
+
       for (SelectorEntry entry : values) {
 
         if (maxCountTotal > 0 && hostOrDomainCount >= maxCountTotal) {
@@ -741,6 +1010,9 @@ public class Generator2 extends Configured implements Tool {
           String host = null;
           try {
             host = new URL(entry.url.toString()).getHost().toLowerCase(Locale.ROOT);
+            if (balanceFetchTime) {
+              fetchTime = getFetchTime(host);
+            }
             if (host.endsWith(domain)) {
               // clip common domain name suffix to save storage space in map keys
               host = host.substring(0, host.length()-domain.length());
@@ -759,9 +1031,12 @@ public class Generator2 extends Configured implements Tool {
               maxHostsOverflowCount++;
               continue;
             }
-            counts = new int[3];
+            counts = new int[4];
             counts[0] = 0;
-            if (hosts.isEmpty()) {
+            if (balanceFetchTime) {
+              counts[3] = getFetchList(entry.url);
+              counts[1] = selectBalancedSegment(counts[3]);
+            } else if (hosts.isEmpty()) {
               // first host in domain
               counts[1] = segment;
             } else {
@@ -784,7 +1059,11 @@ public class Generator2 extends Configured implements Tool {
             counts[0]++;
             continue;
           } else if ((counts[2] % keepMinUrlsPerSegment) == 0) {
-            counts[1] = nextSegment(counts[1]);
+            if (balanceFetchTime) {
+              counts[1] = selectBalancedSegment(counts[3]);
+            } else {
+              counts[1] = nextSegment(counts[1]);
+            }
             counts[2] = 0;
           }
           segment = counts[1];
@@ -802,6 +1081,18 @@ public class Generator2 extends Configured implements Tool {
           counts[0]++;
           counts[2]++;
           segments[segment]++;
+          if (balanceFetchTime) {
+            segmentLoad[segment][counts[3]] += fetchTime;
+          }
+          entry.segnum.set(segment);
+        } else if (balanceFetchTime) {
+          if (((hostOrDomainCount - 1) % keepMinUrlsPerSegment) == 0) {
+            // start a new chunk of URLs kept together in one segment
+            fetchTime = getFetchTime(URLUtil.getHost(entry.url.toString()));
+            fetchList = getFetchList(entry.url);
+            segment = selectBalancedSegment(fetchList);
+          }
+          segmentLoad[segment][fetchList] += fetchTime;
           entry.segnum.set(segment);
         } else {
           entry.segnum.set(segment);
@@ -1186,11 +1477,22 @@ public class Generator2 extends Configured implements Tool {
       conf.setBoolean(GENERATOR_NORMALISE, norm);
       conf.setInt(GENERATOR_MAX_NUM_SEGMENTS, maxNumSegments);
       conf.setInt("partition.url.seed", new Random().nextInt());
+      if (conf.getBoolean(GENERATOR_BALANCE_FETCH_TIME, false)) {
+        LOG.info("Generator: balancing estimated fetch time using HostDb {}",
+            conf.get(GENERATOR_HOSTDB));
+        // fetch lists must be partitioned in the same way as estimated
+        conf.setInt("num.lists", numLists);
+        getConf().setInt(GENERATOR_BALANCE_PARTITION_SEED,
+            new Random().nextInt());
+        conf.setInt(GENERATOR_BALANCE_PARTITION_SEED,
+            getConf().getInt(GENERATOR_BALANCE_PARTITION_SEED, 0));
+      }
       job.setSpeculativeExecution(true);
       job.setReduceSpeculativeExecution(true);
 
       FileInputFormat.addInputPath(job, new Path(dbDir, dbVersion));
       job.setInputFormatClass(SequenceFileInputFormat.class);
+      addDomainLimitsCacheFile(job);
 
       job.setMapperClass(SelectorMapper.class);
       job.setPartitionerClass(Selector.class);
@@ -1335,6 +1637,38 @@ public class Generator2 extends Configured implements Tool {
     return generatedSegments.toArray(patharray);
   }
 
+  /**
+   * If the domain limits file is a binary limits file, ship it via the
+   * distributed cache so that tasks memory-map a local copy.
+   */
+  private void addDomainLimitsCacheFile(Job job) throws IOException {
+    String limitsFile = job.getConfiguration()
+        .get(GENERATOR_DOMAIN_LIMITS_FILE);
+    if (limitsFile == null) {
+      return;
+    }
+    Path limitsFilePath = new Path(limitsFile);
+    if (limitsFilePath.toUri().getScheme() != null && CompactDomainLimits
+        .isCompact(limitsFilePath, job.getConfiguration())) {
+      LOG.info("Generator: using binary domain limits file {}", limitsFile);
+      CompactDomainLimits.addCacheFile(job, limitsFilePath);
+    }
+  }
+
+  /**
+   * Set the seed used by {@link URLPartitioner} to partition segments into
+   * fetch lists: the seed fetch times have been balanced for (see
+   * {@link #GENERATOR_BALANCE_PARTITION_SEED}), otherwise a random seed.
+   */
+  static void setPartitionSeed(Configuration conf) {
+    if (conf.get(GENERATOR_BALANCE_PARTITION_SEED) != null) {
+      conf.setInt("partition.url.seed",
+          conf.getInt(GENERATOR_BALANCE_PARTITION_SEED, 0));
+    } else {
+      conf.setInt("partition.url.seed", new Random().nextInt());
+    }
+  }
+
   /**
    * Partition segments: one partition is the fetch lists of a single fetcher
    * task.
@@ -1353,12 +1687,13 @@ public class Generator2 extends Configured implements Tool {
     job.setJobName("generate: partition " + segmentsDir);
 
     Configuration conf = job.getConfiguration();
-    conf.setInt("partition.url.seed", new Random().nextInt());
+    setPartitionSeed(conf);
 
     for (Path p : inputDirs) {
       FileInputFormat.addInputPath(job, p);
     }
     job.setInputFormatClass(SequenceFileInputFormat.class);
+    addDomainLimitsCacheFile(job);
 
     job.setSpeculativeExecution(false);
     job.setMapSpeculativeExecution(false);
@@ -1423,7 +1758,7 @@ public class Generator2 extends Configured implements Tool {
   public int run(String[] args) throws Exception {
     if (args.length < 2) {
       System.out.println(
-          "Usage: Generator2 <crawldb> <segments_dir> [-force] [-keep] [-numPerSegment N] [-numFetchers numFetchers] [-adddays numDays] [-noFilter] [-noNorm] [-maxNumSegments num]");
+          "Usage: Generator2 <crawldb> <segments_dir> [-force] [-keep] [-numPerSegment N] [-numFetchers numFetchers] [-adddays numDays] [-noFilter] [-noNorm] [-maxNumSegments num] [-hostdb <hostdb> [-balanceFetchTime]] [-estimate <report.json|-> [-sampleRatio ratio]]");
       return -1;
     }
 
@@ -1440,6 +1775,7 @@ public class Generator2 extends Configured implements Tool {
     String stage2 = null;
     String stage1 = null;
     String dbVersion = CrawlDb.CURRENT_NAME;
+    String estimate = null;
 
     for (int i = 2; i < args.length; i++) {
       if ("-numPerSegment".equals(args[i])) {
@@ -1467,7 +1803,29 @@ public class Generator2 extends Configured implements Tool {
         stage2 = args[++i];
       } else if ("-dbVersion".equals(args[i])) {
         dbVersion = args[++i];
+      } else if ("-hostdb".equals(args[i])) {
+        getConf().set(GENERATOR_HOSTDB, args[++i]);
+      } else if ("-balanceFetchTime".equals(args[i])) {
+        getConf().setBoolean(GENERATOR_BALANCE_FETCH_TIME, true);
+      } else if ("-estimate".equals(args[i])) {
+        estimate = args[++i];
+      } else if ("-sampleRatio".equals(args[i])) {
+        getConf().setFloat(GENERATOR_ESTIMATE_SAMPLE_RATIO,
+            Float.parseFloat(args[++i]));
+      }
+    }
+
+    if (estimate != null) {
+      // dry-run: estimate fetch lists from a sample, do not generate segments
+      try {
+        new Generator2Estimator(getConf()).estimate(dbDir, dbVersion, curTime,
+            filter, norm, maxNumSegments, topN,
+            "-".equals(estimate) ? null : new Path(estimate));
+      } catch (Exception e) {
+        LOG.error("Generator estimate failed with", e);
+        return -1;
       }
+      return 0;
     }
 
     try {
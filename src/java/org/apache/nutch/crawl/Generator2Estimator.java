@@ -0,0 +1,698 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.nutch.crawl.Generator2.DomainComparator;
+import org.apache.nutch.crawl.Generator2.DomainScorePair;
+import org.apache.nutch.crawl.Generator2.ScoreComparator;
+import org.apache.nutch.crawl.Generator2.Selector;
+import org.apache.nutch.crawl.Generator2.SelectorEntry;
+import org.apache.nutch.crawl.Generator2.SelectorMapper;
+import org.apache.nutch.crawl.Generator2.SelectorReducer;
+import org.apache.nutch.crawl.Generator2.SelectorReducer.DomainLimits;
+import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.util.NutchJob;
+import org.apache.nutch.util.TimingUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Dry-run estimation of the fetch lists {@link Generator2} would generate with
+ * the current <code>generate.*</code> settings. The {@link SelectorMapper} is
+ * run over a random sample of the CrawlDb input splits (see
+ * {@link Generator2#GENERATOR_ESTIMATE_SAMPLE_RATIO}). The reducers scale the
+ * sampled per-host/domain counts up by the ratio of total to sampled input
+ * size, apply the host and domain limits and simulate the assignment of URLs
+ * to segments. The result (URLs per segment, segment skew and the top
+ * overflowing and largest hosts/domains) is reported as JSON.
+ *
+ * Counts are extrapolated: hosts and domains with few URLs may be missed or
+ * over-represented by the sample, while large hosts/domains which are subject
+ * to limits are estimated well.
+ */
+public class Generator2Estimator extends Configured {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Factor to scale sampled counts up, set by the job client */
+  static final String GENERATOR_ESTIMATE_SCALE = "generate.estimate.scale";
+
+  /**
+   * Input format which selects a random sample of the splits returned by
+   * {@link SequenceFileInputFormat}.
+   */
+  public static class SampledInputFormat
+      extends SequenceFileInputFormat<Text, CrawlDatum> {
+
+    @Override
+    public List<InputSplit> getSplits(JobContext job) throws IOException {
+      Configuration conf = job.getConfiguration();
+      return sample(super.getSplits(job),
+          conf.getFloat(Generator2.GENERATOR_ESTIMATE_SAMPLE_RATIO, 0.05f),
+          conf.getLong(Generator2.GENERATOR_ESTIMATE_SAMPLE_SEED, 0));
+    }
+
+    /**
+     * Select a random sample of splits. The selection only depends on the
+     * list of splits, the ratio and the seed, so that the job client can
+     * calculate the sample size before the job is submitted.
+     *
+     * @param splits
+     *          all input splits
+     * @param ratio
+     *          ratio of splits to select, at least one split is selected
+     * @param seed
+     *          seed of the random number generator
+     * @return selected splits
+     */
+    public static List<InputSplit> sample(List<InputSplit> splits, float ratio,
+        long seed) {
+      if (ratio >= 1.0f || splits.size() <= 1) {
+        return splits;
+      }
+      List<InputSplit> sample = new ArrayList<>(splits);
+      Collections.shuffle(sample, new Random(seed));
+      int n = Math.max(1, (int) Math.ceil(ratio * splits.size()));
+      return new ArrayList<>(sample.subList(0, n));
+    }
+  }
+
+  /** Estimated counts for a single host or domain */
+  public static class Estimate {
+    String name;
+    long estimated;
+    long selected;
+    long overflow;
+    int hosts;
+
+    Estimate(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return name + "\t" + estimated + "\t" + selected + "\t" + overflow + "\t"
+          + hosts;
+    }
+
+    static Estimate parse(String line) {
+      String[] fields = line.split("\t");
+      Estimate e = new Estimate(fields[0]);
+      e.estimated = Long.parseLong(fields[1]);
+      e.selected = Long.parseLong(fields[2]);
+      e.overflow = Long.parseLong(fields[3]);
+      e.hosts = Integer.parseInt(fields[4]);
+      return e;
+    }
+
+    Map<String, Object> toMap() {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("name", name);
+      map.put("estimatedUrls", estimated);
+      map.put("selected", selected);
+      map.put("overflow", overflow);
+      if (hosts > 0) {
+        map.put("hosts", hosts);
+      }
+      return map;
+    }
+  }
+
+  private static final Comparator<Estimate> BY_OVERFLOW = Comparator
+      .comparingLong((Estimate e) -> e.overflow)
+      .thenComparing((Estimate e) -> e.name);
+
+  private static final Comparator<Estimate> BY_SELECTED = Comparator
+      .comparingLong((Estimate e) -> e.selected)
+      .thenComparing((Estimate e) -> e.name);
+
+  /**
+   * Counts sampled URLs per host or domain, scales them up and assigns the
+   * estimated URLs to segments following the limits and segment rotation of
+   * {@link SelectorReducer}. Per-segment totals and the top hosts/domains are
+   * written when the task is finished.
+   */
+  public static class EstimatorReducer
+      extends Reducer<DomainScorePair, SelectorEntry, Text, Text> {
+
+    private int maxCount;
+    private int maxNumSegments = 1;
+    private int currentSegment;
+    private int keepMinUrlsPerSegment;
+    private int segmentIncrement = 1;
+    private boolean byDomainWithHostLimits = false;
+    private int maxCountPerHost = -1;
+    private int maxHostsPerDomain = -1;
+    private Map<String, DomainLimits> domainLimits = null;
+    private double scale = 1.0;
+    private int topK;
+
+    long[] segmentCounts;
+    private long sampled = 0;
+    private long estimated = 0;
+    private long selected = 0;
+    private long overflow = 0;
+    private long numKeys = 0;
+    private PriorityQueue<Estimate> topOverflow;
+    private PriorityQueue<Estimate> topSelected;
+    private Text outputKey = new Text();
+    private Text outputValue = new Text();
+
+    @Override
+    public void setup(Context context) throws IOException {
+      configure(context.getConfiguration());
+    }
+
+    void configure(Configuration conf) {
+      maxNumSegments = conf.getInt(Generator2.GENERATOR_MAX_NUM_SEGMENTS, 1);
+      maxCount = conf.getInt(Generator2.GENERATOR_MAX_COUNT, -1);
+      keepMinUrlsPerSegment = conf
+          .getInt(Generator2.GENERATOR_COUNT_KEEP_MIN_IN_SEGMENT, 100);
+      segmentIncrement = SelectorReducer.getSegmentIncrement(maxNumSegments);
+      if (Generator2.GENERATOR_COUNT_VALUE_DOMAIN
+          .equals(conf.get(Generator2.GENERATOR_COUNT_MODE))) {
+        maxHostsPerDomain = conf
+            .getInt(Generator2.GENERATOR_MAX_HOSTS_PER_DOMAIN, -1);
+        maxCountPerHost = conf.getInt(Generator2.GENERATOR_MAX_COUNT_PER_HOST,
+            -1);
+        Selector selector = new Selector();
+        selector.setConf(conf);
+        domainLimits = SelectorReducer.readLimitsFile(conf,
+            conf.getInt("mapreduce.task.partition", -1),
+            conf.getInt("mapreduce.job.reduces", 1), selector);
+        byDomainWithHostLimits = (domainLimits != null
+            || maxHostsPerDomain > 0 || maxCountPerHost > 0);
+      }
+      scale = conf.getDouble(GENERATOR_ESTIMATE_SCALE, 1.0);
+      topK = conf.getInt(Generator2.GENERATOR_ESTIMATE_TOP, 20);
+      segmentCounts = new long[maxNumSegments];
+      topOverflow = new PriorityQueue<>(BY_OVERFLOW);
+      topSelected = new PriorityQueue<>(BY_SELECTED);
+    }
+
+    private long scaleUp(long count) {
+      return Math.round(count * scale);
+    }
+
+    private int nextSegment(int segment) {
+      return (segment + segmentIncrement) % maxNumSegments;
+    }
+
+    private int nextSegment() {
+      currentSegment = nextSegment(currentSegment);
+      return currentSegment;
+    }
+
+    @Override
+    public void reduce(DomainScorePair key, Iterable<SelectorEntry> values,
+        Context context) throws IOException, InterruptedException {
+
+      long count = 0;
+      // sampled URLs per host, in the order hosts are seen by the selector
+      Map<String, long[]> hosts = null;
+      if (byDomainWithHostLimits) {
+        hosts = new LinkedHashMap<>();
+      }
+      for (SelectorEntry entry : values) {
+        if (hosts != null) {
+          String host;
+          try {
+            host = new URL(entry.url.toString()).getHost()
+                .toLowerCase(Locale.ROOT);
+          } catch (MalformedURLException e) {
+            continue;
+          }
+          hosts.computeIfAbsent(host, h -> new long[1])[0]++;
+        }
+        count++;
+      }
+
+      Estimate estimate = estimate(key.getDomain().toString(), count, hosts);
+      if (estimate.overflow > 0) {
+        offer(topOverflow, estimate);
+      }
+      offer(topSelected, estimate);
+    }
+
+    /**
+     * Scale up sampled counts, apply limits and assign the estimated URLs of
+     * one host or domain to segments.
+     *
+     * @param name
+     *          host or domain name
+     * @param count
+     *          number of sampled URLs
+     * @param hosts
+     *          number of sampled URLs per host (if counting by domain with
+     *          host limits), null otherwise
+     * @return estimate for the host or domain
+     */
+    Estimate estimate(String name, long count, Map<String, long[]> hosts) {
+      Estimate estimate = new Estimate(name);
+
+      int maxCountPerSegment = maxCount;
+      long maxCountPerHostTotal = -1;
+      if (maxCountPerHost > 0) {
+        maxCountPerHostTotal = (long) maxCountPerHost * maxNumSegments;
+      }
+      int maxHosts = maxHostsPerDomain;
+      if (domainLimits != null) {
+        DomainLimits limits = domainLimits.get(estimate.name);
+        if (limits != null) {
+          maxCountPerSegment = limits.maxURLs;
+          maxCountPerHostTotal = (long) limits.maxURLsPerHost * maxNumSegments;
+          maxHosts = limits.maxHosts;
+        }
+      }
+      long maxCountTotal = -1;
+      if (maxCountPerSegment > 0) {
+        maxCountTotal = (long) maxCountPerSegment * maxNumSegments;
+        if (keepMinUrlsPerSegment > maxCountPerSegment) {
+          maxCountPerSegment = keepMinUrlsPerSegment;
+        }
+      }
+
+      estimate.estimated = scaleUp(count);
+      long[] segments = new long[maxNumSegments];
+      int segment = nextSegment();
+
+      if (hosts == null) {
+        long urls = estimate.estimated;
+        if (maxCountTotal > 0 && urls > maxCountTotal) {
+          estimate.overflow = urls - maxCountTotal;
+          urls = maxCountTotal;
+        }
+        estimate.selected = urls;
+        // chunks of URLs are assigned to segments in global rotation
+        long chunks = (urls + keepMinUrlsPerSegment - 1)
+            / keepMinUrlsPerSegment;
+        long rounds = (chunks - 1) / maxNumSegments;
+        if (rounds > 0) {
+          // every segment is visited once per full rotation
+          for (int s = 0; s < maxNumSegments; s++) {
+            segments[s] += rounds * keepMinUrlsPerSegment;
+          }
+          urls -= rounds * maxNumSegments * keepMinUrlsPerSegment;
+        }
+        while (urls > 0) {
+          long c = Math.min(urls, keepMinUrlsPerSegment);
+          segments[segment] += c;
+          urls -= c;
+          if (urls > 0) {
+            segment = nextSegment();
+          }
+        }
+      } else {
+        boolean first = true;
+        for (long[] hostCount : hosts.values()) {
+          long urls = scaleUp(hostCount[0]);
+          if (maxHosts > 0 && estimate.hosts >= maxHosts) {
+            estimate.overflow += urls;
+            continue;
+          }
+          if (maxCountTotal > 0 && estimate.selected >= maxCountTotal) {
+            estimate.overflow += urls;
+            continue;
+          }
+          estimate.hosts++;
+          if (maxCountPerHostTotal > 0 && urls > maxCountPerHostTotal) {
+            estimate.overflow += urls - maxCountPerHostTotal;
+            urls = maxCountPerHostTotal;
+          }
+          if (maxCountTotal > 0 && estimate.selected + urls > maxCountTotal) {
+            estimate.overflow += estimate.selected + urls - maxCountTotal;
+            urls = maxCountTotal - estimate.selected;
+          }
+          estimate.selected += urls;
+          int hostSegment = first ? segment : nextSegment();
+          first = false;
+          // chunks of URLs rotate per host, skipping segments which are full
+          // for the domain
+          while (urls > 0) {
+            if (maxNumSegments > 1 && maxCountPerSegment > 0
+                && segments[hostSegment] >= maxCountPerSegment) {
+              for (int i = 1; i < maxNumSegments; i++) {
+                int s = (hostSegment + i) % maxNumSegments;
+                if (segments[s] < maxCountPerSegment) {
+                  hostSegment = s;
+                  break;
+                }
+              }
+            }
+            long c = Math.min(urls, keepMinUrlsPerSegment);
+            segments[hostSegment] += c;
+            urls -= c;
+            hostSegment = nextSegment(hostSegment);
+          }
+        }
+      }
+
+      for (int s = 0; s < maxNumSegments; s++) {
+        segmentCounts[s] += segments[s];
+      }
+      sampled += count;
+      estimated += estimate.estimated;
+      selected += estimate.selected;
+      overflow += estimate.overflow;
+      numKeys++;
+      return estimate;
+    }
+
+    private void offer(PriorityQueue<Estimate> queue, Estimate estimate) {
+      queue.add(estimate);
+      if (queue.size() > topK) {
+        queue.poll();
+      }
+    }
+
+    private void write(Context context, String key, String value)
+        throws IOException, InterruptedException {
+      outputKey.set(key);
+      outputValue.set(value);
+      context.write(outputKey, outputValue);
+    }
+
+    @Override
+    public void cleanup(Context context)
+        throws IOException, InterruptedException {
+      write(context, "total", sampled + "\t" + estimated + "\t" + selected
+          + "\t" + overflow + "\t" + numKeys);
+      for (int s = 0; s < maxNumSegments; s++) {
+        write(context, "segment", s + "\t" + segmentCounts[s]);
+      }
+      for (Estimate e : topOverflow) {
+        write(context, "overflow", e.toString());
+      }
+      for (Estimate e : topSelected) {
+        write(context, "selected", e.toString());
+      }
+    }
+  }
+
+  public Generator2Estimator(Configuration conf) {
+    setConf(conf);
+  }
+
+  /**
+   * Estimate the fetch lists generated by {@link Generator2}.
+   *
+   * @param dbDir
+   *          Crawl database directory
+   * @param dbVersion
+   *          CrawlDb version (subdirectory), usually <code>current</code>
+   * @param curTime
+   *          Current time in milliseconds
+   * @param filter
+   *          whether to apply URL filters
+   * @param norm
+   *          whether to normalize URLs
+   * @param maxNumSegments
+   *          number of segments
+   * @param topN
+   *          max. number of URLs per segment
+   * @param report
+   *          path to write the JSON report to, if null the report is written
+   *          to stdout
+   * @return the report or null if the CrawlDb is empty
+   * @throws Exception
+   */
+  public Map<String, Object> estimate(Path dbDir, String dbVersion,
+      long curTime, boolean filter, boolean norm, int maxNumSegments,
+      long topN, Path report) throws Exception {
+
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    long start = System.currentTimeMillis();
+    LOG.info("Generator estimate: starting at {}", sdf.format(start));
+
+    Job job = NutchJob.getInstance(getConf());
+    job.setJobName("generate: estimate from " + dbDir);
+    Configuration conf = job.getConfiguration();
+    conf.setLong(Generator2.GENERATOR_CUR_TIME, curTime);
+    conf.setLong(Nutch.GENERATE_TIME_KEY, System.currentTimeMillis());
+    conf.setBoolean(Generator2.GENERATOR_FILTER, filter);
+    conf.setBoolean(Generator2.GENERATOR_NORMALISE, norm);
+    conf.setInt(Generator2.GENERATOR_MAX_NUM_SEGMENTS, maxNumSegments);
+    conf.setInt("partition.url.seed", new Random().nextInt());
+    float ratio = conf.getFloat(Generator2.GENERATOR_ESTIMATE_SAMPLE_RATIO,
+        0.05f);
+    long seed = conf.getLong(Generator2.GENERATOR_ESTIMATE_SAMPLE_SEED,
+        new Random().nextLong());
+    conf.setLong(Generator2.GENERATOR_ESTIMATE_SAMPLE_SEED, seed);
+
+    FileInputFormat.addInputPath(job, new Path(dbDir, dbVersion));
+    List<InputSplit> splits = new SequenceFileInputFormat<Text, CrawlDatum>()
+        .getSplits(job);
+    List<InputSplit> sample = SampledInputFormat.sample(splits, ratio, seed);
+    long totalBytes = 0, sampledBytes = 0;
+    for (InputSplit split : splits) {
+      totalBytes += split.getLength();
+    }
+    for (InputSplit split : sample) {
+      sampledBytes += split.getLength();
+    }
+    if (sampledBytes == 0) {
+      LOG.warn("Generator estimate: CrawlDb {} is empty", dbDir);
+      return null;
+    }
+    double scale = (double) totalBytes / sampledBytes;
+    conf.setDouble(GENERATOR_ESTIMATE_SCALE, scale);
+    LOG.info(
+        "Generator estimate: sampled {} of {} splits ({} of {} bytes), scaling counts by {}",
+        sample.size(), splits.size(), sampledBytes, totalBytes, scale);
+
+    job.setInputFormatClass(SampledInputFormat.class);
+    job.setMapperClass(SelectorMapper.class);
+    job.setPartitionerClass(Selector.class);
+    job.setReducerClass(EstimatorReducer.class);
+    job.setJarByClass(Generator2Estimator.class);
+    job.setMapOutputKeyClass(DomainScorePair.class);
+    job.setMapOutputValueClass(SelectorEntry.class);
+    job.setSortComparatorClass(ScoreComparator.class);
+    job.setGroupingComparatorClass(DomainComparator.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(Text.class);
+    job.setOutputFormatClass(TextOutputFormat.class);
+
+    Path tempDir = new Path(conf.get("mapreduce.cluster.temp.dir", ".")
+        + "/generate-estimate-" + System.currentTimeMillis());
+    FileSystem tempFs = tempDir.getFileSystem(conf);
+    FileOutputFormat.setOutputPath(job, tempDir);
+
+    Map<String, Object> result;
+    try {
+      boolean success = job.waitForCompletion(true);
+      if (!success) {
+        String message = "Generator estimate job did not succeed, job status:"
+            + job.getStatus().getState() + ", reason: "
+            + job.getStatus().getFailureInfo();
+        LOG.error(message);
+        throw new RuntimeException(message);
+      }
+      result = readReport(tempFs, tempDir, conf, topN);
+    } finally {
+      tempFs.delete(tempDir, true);
+    }
+
+    Map<String, Object> sampling = new LinkedHashMap<>();
+    sampling.put("ratio", ratio);
+    sampling.put("seed", seed);
+    sampling.put("sampledSplits", sample.size());
+    sampling.put("totalSplits", splits.size());
+    sampling.put("sampledBytes", sampledBytes);
+    sampling.put("totalBytes", totalBytes);
+    sampling.put("scale", scale);
+    Map<String, Object> settings = new LinkedHashMap<>();
+    settings.put("countMode",
+        conf.get(Generator2.GENERATOR_COUNT_MODE, "host"));
+    settings.put("maxNumSegments", maxNumSegments);
+    settings.put("maxCount", conf.getInt(Generator2.GENERATOR_MAX_COUNT, -1));
+    settings.put("numPerSegment", topN == Long.MAX_VALUE ? -1 : topN);
+    settings.put("keepMinUrlsPerSegment",
+        conf.getInt(Generator2.GENERATOR_COUNT_KEEP_MIN_IN_SEGMENT, 100));
+    settings.put("maxHostsPerDomain",
+        conf.getInt(Generator2.GENERATOR_MAX_HOSTS_PER_DOMAIN, -1));
+    settings.put("maxCountPerHost",
+        conf.getInt(Generator2.GENERATOR_MAX_COUNT_PER_HOST, -1));
+    settings.put("domainLimitsFile",
+        conf.get(Generator2.GENERATOR_DOMAIN_LIMITS_FILE));
+
+    Map<String, Object> estimate = new LinkedHashMap<>();
+    estimate.put("crawldb", dbDir.toString());
+    estimate.put("settings", settings);
+    estimate.put("sampling", sampling);
+    estimate.putAll(result);
+    long end = System.currentTimeMillis();
+    estimate.put("elapsedMs", end - start);
+
+    byte[] json = new ObjectMapper().writerWithDefaultPrettyPrinter()
+        .writeValueAsBytes(estimate);
+    if (report == null) {
+      System.out.write(json);
+      System.out.println();
+      System.out.flush();
+    } else {
+      try (OutputStream out = report.getFileSystem(getConf())
+          .create(report, true)) {
+        out.write(json);
+      }
+      LOG.info("Generator estimate: report written to {}", report);
+    }
+
+    LOG.info("Generator estimate: finished at {}, elapsed: {}",
+        sdf.format(end), TimingUtil.elapsedTime(start, end));
+    return estimate;
+  }
+
+  /**
+   * Merge the output of all reducers.
+   */
+  private Map<String, Object> readReport(FileSystem fs, Path outputDir,
+      Configuration conf, long topN) throws IOException {
+    int maxNumSegments = conf.getInt(Generator2.GENERATOR_MAX_NUM_SEGMENTS, 1);
+    int topK = conf.getInt(Generator2.GENERATOR_ESTIMATE_TOP, 20);
+    long[] segmentCounts = new long[maxNumSegments];
+    long[] totals = new long[5];
+    Map<String, Estimate> overflowing = new HashMap<>();
+    Map<String, Estimate> largest = new HashMap<>();
+
+    for (FileStatus stat : fs.listStatus(outputDir)) {
+      if (!stat.getPath().getName().startsWith("part-")) {
+        continue;
+      }
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+          fs.open(stat.getPath()), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          int tab = line.indexOf('\t');
+          String type = line.substring(0, tab);
+          String value = line.substring(tab + 1);
+          if ("total".equals(type)) {
+            String[] fields = value.split("\t");
+            for (int i = 0; i < totals.length; i++) {
+              totals[i] += Long.parseLong(fields[i]);
+            }
+          } else if ("segment".equals(type)) {
+            String[] fields = value.split("\t");
+            segmentCounts[Integer.parseInt(fields[0])] += Long
+                .parseLong(fields[1]);
+          } else if ("overflow".equals(type)) {
+            Estimate e = Estimate.parse(value);
+            overflowing.put(e.name, e);
+          } else if ("selected".equals(type)) {
+            Estimate e = Estimate.parse(value);
+            largest.put(e.name, e);
+          }
+        }
+      }
+    }
+
+    // apply the max. number of URLs per segment (-numPerSegment)
+    long topNOverflow = 0;
+    List<Map<String, Object>> segments = new ArrayList<>();
+    long min = Long.MAX_VALUE, max = 0, sum = 0;
+    for (int s = 0; s < maxNumSegments; s++) {
+      long count = segmentCounts[s];
+      if (count > topN) {
+        topNOverflow += count - topN;
+        count = topN;
+      }
+      Map<String, Object> segment = new LinkedHashMap<>();
+      segment.put("segment", s);
+      segment.put("urls", count);
+      segments.add(segment);
+      min = Math.min(min, count);
+      max = Math.max(max, count);
+      sum += count;
+    }
+    double mean = (double) sum / maxNumSegments;
+    double variance = 0.0;
+    for (int s = 0; s < maxNumSegments; s++) {
+      double d = Math.min(segmentCounts[s], topN) - mean;
+      variance += d * d;
+    }
+    variance /= maxNumSegments;
+    Map<String, Object> skew = new LinkedHashMap<>();
+    skew.put("min", min);
+    skew.put("max", max);
+    skew.put("mean", mean);
+    skew.put("maxToMean", mean > 0 ? max / mean : 0.0);
+    skew.put("coefficientOfVariation",
+        mean > 0 ? Math.sqrt(variance) / mean : 0.0);
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("sampledUrls", totals[0]);
+    result.put("estimatedUrls", totals[1]);
+    result.put("estimatedSelected", sum);
+    result.put("estimatedOverflow", totals[3]);
+    result.put("estimatedNumPerSegmentOverflow", topNOverflow);
+    result.put("hostsOrDomains", totals[4]);
+    result.put("segments", segments);
+    result.put("skew", skew);
+    result.put("topOverflowing", top(overflowing, BY_OVERFLOW, topK));
+    result.put("largest", top(largest, BY_SELECTED, topK));
+    return result;
+  }
+
+  private static List<Map<String, Object>> top(Map<String, Estimate> estimates,
+      Comparator<Estimate> comparator, int topK) {
+    List<Estimate> sorted = new ArrayList<>(estimates.values());
+    sorted.sort(comparator.reversed());
+    List<Map<String, Object>> top = new ArrayList<>();
+    for (Estimate e : sorted.subList(0, Math.min(topK, sorted.size()))) {
+      top.add(e.toMap());
+    }
+    return top;
+  }
+
+}
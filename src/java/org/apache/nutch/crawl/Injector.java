@@ -26,11 +26,11 @@ import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.hadoop.mapreduce.lib.input.KeyValueTextInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.MultipleInputs;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
-import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
@@ -53,7 +53,10 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
@@ -88,6 +91,12 @@ public class Injector extends NutchTool implements Tool {
   /** property to pass value of command-line option -filterNormalizeAll to mapper */
   public static final String URL_FILTER_NORMALIZE_ALL = "crawldb.inject.filter.normalize.all";
 
+  /**
+   * Inject seeds by a map-side merge join with the CrawlDb, see
+   * {@link CrawlDbMergeJoin#inject(Configuration, Path, List)}
+   */
+  public static final String INJECTOR_MERGE_JOIN = "db.injector.merge.join";
+
   /** metadata key reserved for setting a custom score for a specific URL */
   public static String nutchScoreMDName = "nutch.score";
 
@@ -278,7 +287,14 @@ public class Injector extends NutchTool implements Tool {
 
     @Override
     public void setup(Context context) {
-      Configuration conf = context.getConfiguration();
+      setup(context.getConfiguration());
+    }
+
+    /**
+     * Configure the reducer, also used if seeds are merged map-side, see
+     * {@link CrawlDbMergeJoin}.
+     */
+    void setup(Configuration conf) {
       overwrite = conf.getBoolean("db.injector.overwrite", false);
       update = conf.getBoolean("db.injector.update", false);
       LOG.info("Injector: overwrite: " + overwrite);
@@ -303,6 +319,16 @@ public class Injector extends NutchTool implements Tool {
     @Override
     public void reduce(Text key, Iterable<CrawlDatum> values, Context context)
         throws IOException, InterruptedException {
+      merge(key, values, context);
+    }
+
+    /**
+     * Merge the existing CrawlDb entry and the injected entries of a single
+     * URL and write the result, see {@link #reduce(Text, Iterable, Context)}.
+     */
+    void merge(Text key, Iterable<CrawlDatum> values,
+        TaskInputOutputContext<?, ?, Text, CrawlDatum> context)
+        throws IOException, InterruptedException {
 
       boolean oldSet = false;
       boolean injectedSet = false;
@@ -404,7 +430,7 @@ public class Injector extends NutchTool implements Tool {
     job.setJarByClass(Injector.class);
     job.setMapperClass(InjectMapper.class);
     job.setReducerClass(InjectReducer.class);
-    job.setOutputFormatClass(MapFileOutputFormat.class);
+    CrawlDb.setOutputFormat(job);
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(CrawlDatum.class);
     job.setSpeculativeExecution(false);
@@ -412,19 +438,19 @@ public class Injector extends NutchTool implements Tool {
     // set input and output paths of the job
     MultipleInputs.addInputPath(job, current, SequenceFileInputFormat.class);
     FileStatus[] seedFiles = urlDir.getFileSystem(getConf()).listStatus(urlDir);
-    int numSeedFiles = 0;
+    List<Path> seedPaths = new ArrayList<>();
     for (FileStatus seedFile : seedFiles) {
       if (seedFile.isFile()) {
         MultipleInputs.addInputPath(job, seedFile.getPath(),
             KeyValueTextInputFormat.class);
-        numSeedFiles++;
+        seedPaths.add(seedFile.getPath());
         LOG.info("Injecting seed URL file {}", seedFile.getPath());
       } else {
         LOG.warn("Skipped non-file input in {}: {}", urlDir,
             seedFile.getPath());
       }
     }
-    if (numSeedFiles == 0) {
+    if (seedPaths.isEmpty()) {
       LOG.error("No seed files to inject found in {}", urlDir);
       LockUtil.removeLockFile(fs, lock);
       return;
@@ -432,30 +458,44 @@ public class Injector extends NutchTool implements Tool {
     FileOutputFormat.setOutputPath(job, tempCrawlDb);
 
     try {
-      // run the job
-      boolean success = job.waitForCompletion(true);
-      if (!success) {
-        String message = NutchJob.getJobFailureLogMessage("Injector", job);
-        LOG.error(message);
-        NutchJob.cleanupAfterFailure(tempCrawlDb, lock, fs);
-        // throw exception so that calling routine can exit with error
-        throw new RuntimeException(message);
+      List<Job> jobs = null;
+      if (conf.getBoolean(INJECTOR_MERGE_JOIN, false)) {
+        try {
+          jobs = CrawlDbMergeJoin.inject(conf, crawlDb, seedPaths);
+        } catch (RuntimeException e) {
+          LockUtil.removeLockFile(fs, lock);
+          throw e;
+        }
       }
 
-      // save output and perform cleanup
-      CrawlDb.install(job, crawlDb);
+      if (jobs == null) {
+        // run the job
+        boolean success = job.waitForCompletion(true);
+        if (!success) {
+          String message = NutchJob.getJobFailureLogMessage("Injector", job);
+          LOG.error(message);
+          NutchJob.cleanupAfterFailure(tempCrawlDb, lock, fs);
+          // throw exception so that calling routine can exit with error
+          throw new RuntimeException(message);
+        }
+        jobs = Collections.singletonList(job);
+
+        // save output and perform cleanup
+        CrawlDb.install(job, crawlDb);
+      } else if (jobs.size() > 1) {
+        // merge join: install the CrawlDb written by the last job
+        CrawlDb.install(jobs.get(jobs.size() - 1), crawlDb);
+      } else {
+        LOG.info("Injector: no URLs left to inject, CrawlDb unchanged");
+        LockUtil.removeLockFile(fs, lock);
+      }
 
       if (LOG.isInfoEnabled()) {
-        long urlsInjected = job.getCounters()
-            .findCounter("injector", "urls_injected").getValue();
-        long urlsFiltered = job.getCounters()
-            .findCounter("injector", "urls_filtered").getValue();
-        long urlsMerged = job.getCounters()
-            .findCounter("injector", "urls_merged").getValue();
-        long urlsPurged404= job.getCounters()
-            .findCounter("injector", "urls_purged_404").getValue();
-        long urlsPurgedFilter= job.getCounters()
-            .findCounter("injector", "urls_purged_filter").getValue();
+        long urlsInjected = getCounter(jobs, "urls_injected");
+        long urlsFiltered = getCounter(jobs, "urls_filtered");
+        long urlsMerged = getCounter(jobs, "urls_merged");
+        long urlsPurged404 = getCounter(jobs, "urls_purged_404");
+        long urlsPurgedFilter = getCounter(jobs, "urls_purged_filter");
         LOG.info("Injector: Total urls rejected by filters: " + urlsFiltered);
         LOG.info(
             "Injector: Total urls injected after normalization and filtering: "
@@ -485,9 +525,19 @@ public class Injector extends NutchTool implements Tool {
     }
   }
 
+  /** Sum of an injector counter over all jobs */
+  private static long getCounter(List<Job> jobs, String name)
+      throws IOException {
+    long value = 0;
+    for (Job job : jobs) {
+      value += job.getCounters().findCounter("injector", name).getValue();
+    }
+    return value;
+  }
+
   public void usage() {
     System.err.println(
-        "Usage: Injector [-D...] <crawldb> <url_dir> [-overwrite|-update] [-noFilter] [-noNormalize] [-filterNormalizeAll]\n");
+        "Usage: Injector [-D...] <crawldb> <url_dir> [-overwrite|-update] [-noFilter] [-noNormalize] [-filterNormalizeAll] [-mergeJoin]\n");
     System.err.println(
         "  <crawldb>\tPath to a crawldb directory. If not present, a new one would be created.");
     System.err.println(
@@ -521,6 +571,10 @@ public class Injector extends NutchTool implements Tool {
     System.err.println(
         " -filterNormalizeAll\n"
         + "           \tNormalize and filter all URLs including the URLs of existing CrawlDb records");
+    System.err.println(
+        " -mergeJoin\tMerge the seeds into the CrawlDb by a map-side join: only the seeds\n"
+        + "           \tare shuffled, CrawlDb parts not receiving seeds are kept unchanged\n"
+        + "           \t(requires a hash-partitioned CrawlDb, not with -filterNormalizeAll)");
     System.err.println();
     System.err.println(
         " -D...     \tset or overwrite configuration property (property=value)");
@@ -558,6 +612,8 @@ public class Injector extends NutchTool implements Tool {
         filter = false;
       } else if (args[i].equalsIgnoreCase("-filterNormalizeAll")) {
         filterNormalizeAll = true;
+      } else if (args[i].equalsIgnoreCase("-mergeJoin")) {
+        getConf().setBoolean(INJECTOR_MERGE_JOIN, true);
       } else {
         LOG.error("Injector: Found invalid argument \"{}\"", args[i]);
         usage();
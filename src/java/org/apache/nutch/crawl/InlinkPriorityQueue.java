@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import org.apache.hadoop.util.PriorityQueue;
+
+/**
+ * Keeps the best scoring inlinks. The lowest scoring link is on top and is
+ * replaced first if the queue is full.
+ */
+class InlinkPriorityQueue extends PriorityQueue<CrawlDatum> {
+
+  private final int maxSize;
+
+  public InlinkPriorityQueue(int maxSize) {
+    this.maxSize = maxSize;
+    initialize(maxSize);
+  }
+
+  /** Determines the ordering of objects in this priority queue. **/
+  protected boolean lessThan(Object arg0, Object arg1) {
+    CrawlDatum candidate = (CrawlDatum) arg0;
+    CrawlDatum least = (CrawlDatum) arg1;
+    return candidate.getScore() < least.getScore();
+  }
+
+  /**
+   * Whether a link would be kept by {@link #insert(Object)}. Only the score
+   * is compared, so that links which are not kept can be skipped before
+   * they are copied.
+   *
+   * @param link
+   *          candidate link
+   * @return true if the queue is not full or the link scores better than the
+   *         lowest scoring link in the queue
+   */
+  boolean accepts(CrawlDatum link) {
+    return size() < maxSize
+        || (size() > 0 && !lessThan(link, top()));
+  }
+
+}
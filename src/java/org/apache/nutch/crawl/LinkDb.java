@@ -35,6 +35,7 @@ import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
@@ -49,6 +50,8 @@ import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
 import org.apache.nutch.parse.Outlink;
 import org.apache.nutch.parse.ParseData;
+import org.apache.nutch.parse.ParseOutlinks;
+import org.apache.nutch.util.BloomMapFileOutputFormat;
 import org.apache.nutch.util.HadoopFSUtil;
 import org.apache.nutch.util.LockUtil;
 import org.apache.nutch.util.NutchConfiguration;
@@ -65,6 +68,8 @@ public class LinkDb extends NutchTool implements Tool {
   public static final String IGNORE_INTERNAL_LINKS = "linkdb.ignore.internal.links";
   public static final String IGNORE_EXTERNAL_LINKS = "linkdb.ignore.external.links";
 
+  public static final String LINKDB_BLOOM_FILTER = "linkdb.bloom.filter";
+
   public static final String CURRENT_NAME = "current";
   public static final String LOCK_NAME = ".locked";
 
@@ -76,8 +81,12 @@ public class LinkDb extends NutchTool implements Tool {
     setConf(conf);
   }
 
+  /**
+   * Inverts the outlinks of the segments, read either from the parse data or,
+   * if stored separately, from the outlinks ({@link ParseOutlinks}).
+   */
   public static class LinkDbMapper extends 
-  Mapper<Text, ParseData, Text, Inlinks> {
+  Mapper<Text, Writable, Text, Inlinks> {
     private int maxAnchorLength;
     private boolean ignoreInternalLinks;
     private boolean ignoreExternalLinks;
@@ -85,7 +94,7 @@ public class LinkDb extends NutchTool implements Tool {
     private URLNormalizers urlNormalizers;
 
     @Override
-    public void setup(Mapper<Text, ParseData, Text, Inlinks>.Context context) {
+    public void setup(Mapper<Text, Writable, Text, Inlinks>.Context context) {
       Configuration conf = context.getConfiguration();
       maxAnchorLength = conf.getInt("linkdb.max.anchor.length", 100);
       ignoreInternalLinks = conf.getBoolean(IGNORE_INTERNAL_LINKS, true);
@@ -100,7 +109,7 @@ public class LinkDb extends NutchTool implements Tool {
     } 
 
     @Override
-   public void map(Text key, ParseData parseData,
+   public void map(Text key, Writable value,
             Context context)
                     throws IOException, InterruptedException {
       String fromUrl = key.toString();
@@ -124,7 +133,13 @@ public class LinkDb extends NutchTool implements Tool {
       }
       if (fromUrl == null)
         return; // discard all outlinks
-      Outlink[] outlinks = parseData.getOutlinks();
+      Outlink[] outlinks;
+      if (value instanceof ParseOutlinks) {
+        // stored relative to the original (not normalized) URL
+        outlinks = ((ParseOutlinks) value).getOutlinks(key.toString());
+      } else {
+        outlinks = ((ParseData) value).getOutlinks();
+      }
       Inlinks inlinks = new Inlinks();
       for (int i = 0; i < outlinks.length; i++) {
         Outlink outlink = outlinks[i];
@@ -218,8 +233,14 @@ public class LinkDb extends NutchTool implements Tool {
 
     for (int i = 0; i < segments.length; i++) {
       LOG.info("LinkDb: adding segment: {}", segments[i]);
-      FileInputFormat.addInputPath(job, new Path(segments[i],
-              ParseData.DIR_NAME));
+      // read only the outlinks if stored separately
+      Path outlinks = new Path(segments[i], ParseOutlinks.DIR_NAME);
+      if (outlinks.getFileSystem(conf).exists(outlinks)) {
+        FileInputFormat.addInputPath(job, outlinks);
+      } else {
+        FileInputFormat.addInputPath(job, new Path(segments[i],
+                ParseData.DIR_NAME));
+      }
     }
     try {
       boolean success = job.waitForCompletion(true);
@@ -295,7 +316,7 @@ public class LinkDb extends NutchTool implements Tool {
     job.setReducerClass(LinkDbMerger.LinkDbMergeReducer.class);
 
     FileOutputFormat.setOutputPath(job, newLinkDb);
-    job.setOutputFormatClass(MapFileOutputFormat.class);
+    setOutputFormat(job);
     conf.setBoolean("mapreduce.output.fileoutputformat.compress", true);
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(Inlinks.class);
@@ -303,6 +324,21 @@ public class LinkDb extends NutchTool implements Tool {
     return job;
   }
 
+  /**
+   * Set the output format of a job writing a new LinkDb: a MapFile per part,
+   * with a Bloom filter sidecar if <code>linkdb.bloom.filter</code> is true.
+   *
+   * @param job
+   *          job writing a LinkDb
+   */
+  public static void setOutputFormat(Job job) {
+    if (job.getConfiguration().getBoolean(LINKDB_BLOOM_FILTER, false)) {
+      job.setOutputFormatClass(BloomMapFileOutputFormat.class);
+    } else {
+      job.setOutputFormatClass(MapFileOutputFormat.class);
+    }
+  }
+
   public static void install(Job job, Path linkDb) throws IOException {
     Configuration conf = job.getConfiguration();
     Path newLinkDb = FileOutputFormat.getOutputPath(job);
@@ -34,7 +34,6 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
-import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
@@ -160,7 +159,7 @@ public class LinkDbMerger extends Configured implements Tool {
     job.setReducerClass(LinkDbMergeReducer.class);
 
     FileOutputFormat.setOutputPath(job, newLinkDb);
-    job.setOutputFormatClass(MapFileOutputFormat.class);
+    LinkDb.setOutputFormat(job);
     conf.setBoolean("mapreduce.output.fileoutputformat.compress", true);
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(Inlinks.class);
@@ -44,6 +44,7 @@ import org.apache.hadoop.util.ToolRunner;
 import org.apache.hadoop.conf.Configuration;
 
 import org.apache.nutch.util.AbstractChecker;
+import org.apache.nutch.util.BloomMapFileOutputFormat;
 import org.apache.nutch.util.NutchConfiguration;
 import org.apache.nutch.util.NutchJob;
 import org.apache.nutch.util.TimingUtil;
@@ -97,7 +98,7 @@ public class LinkDbReader extends AbstractChecker implements Closeable {
       }
 
       this.lastModified = lastModified;
-      readers = MapFileOutputFormat.getReaders(linkDbPath, getConf());
+      readers = BloomMapFileOutputFormat.getReaders(linkDbPath, getConf());
     }
   }
 
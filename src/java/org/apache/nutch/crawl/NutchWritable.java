@@ -49,7 +49,8 @@ public class NutchWritable extends GenericWritableConfigurable {
         org.apache.nutch.protocol.ProtocolStatus.class,
         org.apache.nutch.scoring.webgraph.LinkDatum.class,
         org.apache.nutch.hostdb.HostDatum.class,
-        org.commoncrawl.util.WarcCapture.class
+        org.commoncrawl.util.WarcCapture.class,
+        org.apache.nutch.parse.ParseOutlinks.class
     };
   }
 
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.fetcher.FetchItem;
+import org.apache.nutch.fetcher.FetchItemQueue;
+import org.apache.nutch.fetcher.FetchItemQueues;
+import org.apache.nutch.util.ObjectCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules sitemap fetches following the politeness model of the fetcher:
+ * fetches are queued per host (or domain or IP, see
+ * <code>fetcher.queue.mode</code>) in {@link FetchItemQueues}. Fetches of the
+ * same queue are delayed by <code>fetcher.server.delay</code> or the
+ * robots.txt Crawl-Delay and limited to <code>fetcher.threads.per.queue</code>
+ * parallel fetches, while fetches from different queues run in parallel.
+ *
+ * One scheduler is shared by all threads of a map task (see
+ * {@link #get(Configuration)}), so that fetches of sitemaps from the same host
+ * but different mapper inputs are queued together.
+ */
+class SitemapFetchScheduler {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Max. time to wait before checking whether a queue became ready */
+  private static final long POLL_INTERVAL = 50;
+
+  private final FetchItemQueues queues;
+  private final long maxCrawlDelay;
+  private final long minCrawlDelay;
+
+  /** Items taken from the queues, waiting to be picked up by their caller */
+  private final Set<FetchItem> granted = Collections
+      .newSetFromMap(new IdentityHashMap<>());
+  /** Items of callers which have been interrupted while waiting */
+  private final Set<FetchItem> abandoned = Collections
+      .newSetFromMap(new IdentityHashMap<>());
+
+  SitemapFetchScheduler(Configuration conf) {
+    queues = new FetchItemQueues(conf);
+    maxCrawlDelay = conf.getInt("fetcher.max.crawl.delay", 30) * 1000L;
+    float crawlDelay = conf.getFloat("fetcher.server.delay", 1.0f);
+    minCrawlDelay = (long) (conf.getFloat("fetcher.min.crawl.delay",
+        crawlDelay) * 1000);
+  }
+
+  /**
+   * Get the scheduler shared by all users of the given configuration.
+   */
+  static SitemapFetchScheduler get(Configuration conf) {
+    ObjectCache objectCache = ObjectCache.get(conf);
+    String key = SitemapFetchScheduler.class.getName();
+    synchronized (objectCache) {
+      SitemapFetchScheduler scheduler = (SitemapFetchScheduler) objectCache
+          .getObject(key);
+      if (scheduler == null) {
+        scheduler = new SitemapFetchScheduler(conf);
+        objectCache.setObject(key, scheduler);
+      }
+      return scheduler;
+    }
+  }
+
+  /**
+   * Wait until the URL may be fetched politely. Every item returned must be
+   * passed to {@link #finish(FetchItem)} after the fetch.
+   *
+   * @param url
+   *          URL to be fetched
+   * @return fetch item holding the queue slot, null if no queue could be
+   *         assigned to the URL (the URL is then fetched without delay)
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  FetchItem acquire(String url) throws InterruptedException {
+    FetchItem item = FetchItem.create(new Text(url), new CrawlDatum(),
+        queues.getQueueMode());
+    if (item == null) {
+      return null;
+    }
+    synchronized (this) {
+      queues.addFetchItem(item);
+      try {
+        while (!granted.remove(item)) {
+          dispatch();
+          if (granted.remove(item)) {
+            break;
+          }
+          wait(POLL_INTERVAL);
+        }
+      } catch (InterruptedException e) {
+        if (granted.remove(item)) {
+          queues.finishFetchItem(item, true);
+        } else {
+          // release the queue slot when the item is dispatched
+          abandoned.add(item);
+        }
+        throw e;
+      }
+    }
+    return item;
+  }
+
+  /**
+   * Release the queue slot after the URL has been fetched. The next fetch from
+   * the same queue is delayed by the queue's crawl delay.
+   *
+   * @param item
+   *          item returned by {@link #acquire(String)}, may be null
+   */
+  synchronized void finish(FetchItem item) {
+    if (item == null) {
+      return;
+    }
+    queues.finishFetchItem(item);
+    notifyAll();
+  }
+
+  /**
+   * Apply the Crawl-Delay from the robots.txt to the queue of the given item.
+   * Similar as in the fetcher the delay is bound by
+   * <code>fetcher.min.crawl.delay</code>. Instead of skipping the URL, a delay
+   * longer than <code>fetcher.max.crawl.delay</code> is capped to this value:
+   * there are only few sitemaps per host.
+   *
+   * @param item
+   *          item returned by {@link #acquire(String)}, may be null
+   * @param crawlDelay
+   *          Crawl-Delay (milliseconds) as defined in the robots.txt
+   */
+  void setCrawlDelay(FetchItem item, long crawlDelay) {
+    if (item == null || crawlDelay <= 0) {
+      return;
+    }
+    if (crawlDelay < minCrawlDelay) {
+      crawlDelay = minCrawlDelay;
+    } else if (maxCrawlDelay >= 0 && crawlDelay > maxCrawlDelay) {
+      crawlDelay = maxCrawlDelay;
+    }
+    FetchItemQueue fiq = queues.getFetchItemQueue(item.getQueueID());
+    if (fiq.getCrawlDelay() != crawlDelay) {
+      LOG.debug("Crawl delay for queue {} is set to {} as per robots.txt",
+          item.getQueueID(), crawlDelay);
+      fiq.setCrawlDelay(crawlDelay);
+    }
+  }
+
+  /** Number of queued items not yet dispatched */
+  int getQueuedSize() {
+    return queues.getTotalSize();
+  }
+
+  /**
+   * Take all items ready to be fetched from the queues and hand them over to
+   * the waiting callers. Must be called holding the scheduler's lock.
+   */
+  private void dispatch() {
+    FetchItem item;
+    boolean dispatched = false;
+    while ((item = queues.getFetchItem()) != null) {
+      if (abandoned.remove(item)) {
+        queues.finishFetchItem(item, true);
+      } else {
+        granted.add(item);
+        dispatched = true;
+      }
+    }
+    if (dispatched) {
+      notifyAll();
+    }
+  }
+
+}
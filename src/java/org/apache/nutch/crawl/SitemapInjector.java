@@ -21,10 +21,14 @@ import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Date;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +36,8 @@ import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -39,26 +45,43 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Job;
-import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.KeyValueTextInputFormat;
 import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
 import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.ToolRunner;
+import org.apache.nutch.fetcher.FetchItem;
+import org.apache.nutch.metadata.HttpHeaders;
 import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.net.protocols.HttpDateFormat;
 import org.apache.nutch.protocol.Content;
 import org.apache.nutch.protocol.Protocol;
 import org.apache.nutch.protocol.ProtocolFactory;
 import org.apache.nutch.protocol.ProtocolNotFound;
 import org.apache.nutch.protocol.ProtocolOutput;
+import org.apache.nutch.protocol.ProtocolStatus;
 import org.apache.nutch.scoring.ScoringFilterException;
+import org.apache.nutch.util.BloomMapFileOutputFormat;
+import org.apache.nutch.util.LockUtil;
 import org.apache.nutch.util.NutchConfiguration;
 import org.apache.nutch.util.NutchJob;
 import org.apache.nutch.util.TimingUtil;
@@ -115,6 +138,28 @@ import crawlercommons.sitemaps.SiteMapURL;
  * The behavior how entries in CrawlDb are overwritten by injected entries does
  * not differ from {@link Injector}.
  *
+ * <h2>Incremental injection</h2>
+ *
+ * <p>
+ * If a sitemap DB is given (option <code>-sitemapDb</code> or property
+ * <code>db.injector.sitemap.db</code>) the state of every processed sitemap is
+ * recorded there: time of processing, Last-Modified and ETag, content digest
+ * and the latest &lt;lastmod&gt; of the contained URLs. The sitemap DB has the
+ * same layout as the CrawlDb and can be inspected by {@link CrawlDbReader}.
+ * Following runs
+ * <ul>
+ * <li>send conditional requests (If-Modified-Since)</li>
+ * <li>skip subsitemaps whose &lt;lastmod&gt; in the sitemap index is older
+ * than the last processing</li>
+ * <li>skip sitemaps with an unchanged content digest</li>
+ * <li>inject from changed sitemaps only URLs without a &lt;lastmod&gt; or
+ * with a &lt;lastmod&gt; not older than the latest &lt;lastmod&gt; seen by
+ * the last run</li>
+ * </ul>
+ * The sitemap DB is updated only when the injected URLs are merged into the
+ * CrawlDb (step 2).
+ * </p>
+ *
  * <h2>Limitations</h2>
  *
  * <p>
@@ -122,8 +167,8 @@ import crawlercommons.sitemaps.SiteMapURL;
  * <ul>
  * <li>[done/implemented] follow redirects</li>
  * <li>no retry scheduling if fetching a sitemap fails</li>
- * <li>be polite and add delays between fetching sitemaps. Usually, there is
- * only one sitemap per host, so this does not matter that much.</li>
+ * <li>[done/implemented] be polite and add delays between fetching sitemaps
+ * from the same host (<code>db.injector.sitemap.politeness</code>)</li>
  * <li>[done/implemented] check for
  * &quot;<a href="http://www.sitemaps.org/protocol.html#location">cross
  * submits</a>&quot;: if a sitemap URL is explicitly given it is assumed the
@@ -136,6 +181,12 @@ public class SitemapInjector extends Injector {
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
+  /** Path of the sitemap DB holding the state of processed sitemaps */
+  public static final String SITEMAP_DB = "db.injector.sitemap.db";
+
+  /** Prefix of files in the output of step 1 holding sitemap states */
+  private static final String SITEMAP_STATE_PREFIX = "sitemaps";
+
   protected int threads = 8;
   protected boolean keepTemp;
   protected boolean runStepOneOnly;
@@ -149,6 +200,36 @@ public class SitemapInjector extends Injector {
     private static final String SITEMAP_CROSS_SUBMIT_CHECK = "db.injector.sitemap.check-cross-submits";
     private static final String SITEMAP_CROSS_SUBMIT_CHECK_TYPE = "db.injector.sitemap.check-cross-submit.type";
     private static final String SITEMAP_CROSS_SUBMITS = "db.injector.sitemap.cross-submits";
+    /**
+     * Parse XML and plain-text sitemaps by a streaming parser, URLs are
+     * injected while the sitemap is parsed (default: false)
+     */
+    private static final String SITEMAP_STREAMING = "db.injector.sitemap.streaming";
+    /**
+     * Number of subsitemaps of a sitemap index fetched concurrently, per map
+     * thread (default: 4)
+     */
+    private static final String SITEMAP_FETCH_THREADS = "db.injector.sitemap.fetch.threads";
+    /**
+     * Queue sitemap fetches per host and delay successive fetches from the
+     * same host, following the fetcher's politeness settings
+     * (<code>fetcher.queue.mode</code>, <code>fetcher.server.delay</code>,
+     * <code>fetcher.threads.per.queue</code>, robots.txt Crawl-Delay). The
+     * queues are shared by all threads of a map task. Default: false
+     */
+    private static final String SITEMAP_POLITENESS = "db.injector.sitemap.politeness";
+
+    /** Sitemap DB metadata: ETag of the sitemap */
+    static final Text SITEMAP_ETAG = new Text("_etag_");
+    /** Sitemap DB metadata: latest &lt;lastmod&gt; of URLs in the sitemap */
+    static final Text SITEMAP_MAX_LASTMOD = new Text("_maxlm_");
+    /** Sitemap DB metadata: the sitemap is a sitemap index */
+    static final Text SITEMAP_IS_INDEX = new Text("_index_");
+    /**
+     * Tolerance applied to &lt;lastmod&gt; dates of subsitemaps in a sitemap
+     * index, the date is often given without time
+     */
+    private static final long LASTMOD_TOLERANCE = 24 * 3600 * 1000L;
 
     protected float minInterval;
     protected float maxInterval;
@@ -180,10 +261,25 @@ public class SitemapInjector extends Injector {
     protected int maxFailuresPerHost = 5;
     protected int maxRedirect = 3;
 
+    /** Number of subsitemaps of a sitemap index fetched concurrently */
+    protected int fetchThreads = 4;
+
     private ProtocolFactory protocolFactory;
     private SiteMapParser sitemapParser;
+    /** Streaming parser, null if streaming is disabled */
+    private SitemapStreamParser sitemapStreamParser;
+    /** Runs fetch and parse tasks bounded by a timeout */
     private ExecutorService executorService;
-    private Map<String, Integer> failuresPerHost = new HashMap<>();
+    /** Fetches subsitemaps ahead of processing */
+    private ExecutorService prefetchExecutorService;
+    private Map<String, Integer> failuresPerHost = new ConcurrentHashMap<>();
+    /** Per-host fetch queues, null if politeness is disabled */
+    private SitemapFetchScheduler fetchScheduler;
+    /** Record the state of sitemaps in the sitemap DB */
+    private boolean incremental = false;
+    /** Readers of the sitemap DB, null if not incremental or no DB yet */
+    private MapFile.Reader[] sitemapDbReaders;
+    private HashPartitioner<Text, CrawlDatum> sitemapDbPartitioner = new HashPartitioner<>();
 
     @Override
     public void setup(Context context) {
@@ -208,6 +304,16 @@ public class SitemapInjector extends Injector {
           .addAcceptedNamespace(crawlercommons.sitemaps.Namespace.NEWS);
       sitemapParser
           .addAcceptedNamespace(crawlercommons.sitemaps.Namespace.EMPTY);
+      if (conf.getBoolean(SITEMAP_STREAMING, false)) {
+        Set<String> namespaces = new HashSet<>();
+        namespaces.add(crawlercommons.sitemaps.Namespace.SITEMAP);
+        namespaces.addAll(
+            Arrays.asList(crawlercommons.sitemaps.Namespace.SITEMAP_LEGACY));
+        namespaces.addAll(
+            Arrays.asList(crawlercommons.sitemaps.Namespace.NEWS));
+        namespaces.add(crawlercommons.sitemaps.Namespace.EMPTY);
+        sitemapStreamParser = new SitemapStreamParser(strict, namespaces);
+      }
 
       maxRecursiveSitemaps = conf.getInt("db.injector.sitemap.index_max_size",
           50001);
@@ -254,8 +360,75 @@ public class SitemapInjector extends Injector {
         conf.setInt(contentLimitProperties[i], SiteMapParser.MAX_BYTES_ALLOWED);
       }
 
-      executorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
-          .setNameFormat("sitemapinj-%d").setDaemon(true).build());
+      // the timed fetch tasks are submitted by the prefetch threads and the
+      // mapper thread, parse tasks by the mapper thread: one more thread than
+      // prefetch threads makes sure no task needs to wait for a free thread
+      fetchThreads = Math.max(1, conf.getInt(SITEMAP_FETCH_THREADS, 4));
+      executorService = Executors.newFixedThreadPool(fetchThreads + 1,
+          new ThreadFactoryBuilder().setNameFormat("sitemapinj-%d")
+              .setDaemon(true).build());
+      prefetchExecutorService = Executors.newFixedThreadPool(fetchThreads,
+          new ThreadFactoryBuilder().setNameFormat("sitemapinj-prefetch-%d")
+              .setDaemon(true).build());
+      if (conf.getBoolean(SITEMAP_POLITENESS, false)) {
+        fetchScheduler = SitemapFetchScheduler.get(conf);
+      }
+
+      String sitemapDb = conf.get(SITEMAP_DB);
+      if (sitemapDb != null) {
+        incremental = true;
+        Path current = new Path(sitemapDb, CrawlDb.CURRENT_NAME);
+        try {
+          if (current.getFileSystem(conf).exists(current)) {
+            sitemapDbReaders = BloomMapFileOutputFormat.getReaders(current,
+                conf);
+          }
+        } catch (IOException e) {
+          throw new RuntimeException("Failed to open sitemap DB " + sitemapDb,
+              e);
+        }
+      }
+    }
+
+    @Override
+    public void cleanup(Context context) {
+      prefetchExecutorService.shutdownNow();
+      executorService.shutdownNow();
+      if (sitemapDbReaders != null) {
+        for (MapFile.Reader reader : sitemapDbReaders) {
+          try {
+            reader.close();
+          } catch (IOException e) {
+            // ignore
+          }
+        }
+      }
+    }
+
+    /**
+     * Look up the state of a sitemap recorded in the sitemap DB by the last
+     * run.
+     *
+     * @return the state or null if unknown or not incremental
+     */
+    private CrawlDatum getSitemapState(String url) {
+      if (sitemapDbReaders == null) {
+        return null;
+      }
+      CrawlDatum state = new CrawlDatum();
+      try {
+        synchronized (sitemapDbReaders) {
+          if (MapFileOutputFormat.getEntry(sitemapDbReaders,
+              sitemapDbPartitioner, new Text(url), state) == null) {
+            return null;
+          }
+        }
+      } catch (IOException e) {
+        LOG.warn("Failed to look up sitemap {} in sitemap DB: {}", url,
+            e.getMessage());
+        return null;
+      }
+      return state;
     }
 
     public void map(Text key, Writable value, Context context)
@@ -329,12 +502,16 @@ public class SitemapInjector extends Injector {
       private Protocol protocol;
       private String url;
       private Context context;
+      private FetchItem fetchItem;
+      private CrawlDatum datum;
 
       public FetchSitemapCallable(Protocol protocol, String url,
-          Context context) {
+          Context context, FetchItem fetchItem, CrawlDatum datum) {
         this.protocol = protocol;
         this.url = url;
         this.context = context;
+        this.fetchItem = fetchItem;
+        this.datum = datum;
       }
 
       @Override
@@ -350,8 +527,11 @@ public class SitemapInjector extends Injector {
                 .increment(1);
             return null;
           }
+          if (fetchScheduler != null) {
+            fetchScheduler.setCrawlDelay(fetchItem, rules.getCrawlDelay());
+          }
         }
-        return protocol.getProtocolOutput(turl, new CrawlDatum());
+        return protocol.getProtocolOutput(turl, datum);
       }
     }
 
@@ -399,11 +579,43 @@ public class SitemapInjector extends Injector {
     }
 
     private void incrementFailuresPerHost(String hostName) {
-      int failures = 1;
-      if (failuresPerHost.containsKey(hostName)) {
-        failures += failuresPerHost.get(hostName);
+      failuresPerHost.merge(hostName, 1, Integer::sum);
+    }
+
+    /**
+     * Filter and normalize a URL. Sitemaps are fetched concurrently, URL
+     * filters and normalizers are not required to be thread-safe.
+     */
+    private synchronized String filterNormalizeSynchronized(String url) {
+      return filterNormalize(url);
+    }
+
+    /** A subsitemap of a sitemap index and its (pending) content */
+    /** Result of a sitemap fetch */
+    private static class FetchedSitemap {
+      /** sitemap URL (before redirects), key in the sitemap DB */
+      String url;
+      /** content, null if not modified since the last run */
+      Content content;
+      /** state recorded by the last run, null if not known */
+      CrawlDatum lastState;
+
+      FetchedSitemap(String url, Content content, CrawlDatum lastState) {
+        this.url = url;
+        this.content = content;
+        this.lastState = lastState;
+      }
+    }
+
+    private static class PendingSitemap {
+      AbstractSiteMap sitemap;
+      Future<FetchedSitemap> content;
+
+      PendingSitemap(AbstractSiteMap sitemap,
+          Future<FetchedSitemap> content) {
+        this.sitemap = sitemap;
+        this.content = content;
       }
-      failuresPerHost.put(hostName, failures);
     }
 
     /** Wrapper for (recursively) fetching and parsing a sitemap */
@@ -418,6 +630,21 @@ public class SitemapInjector extends Injector {
       Set<String> injectedHosts = new HashSet<>();
       Set<String> crossSubmits;
 
+      /** URLs of the current sitemap rejected by cross-submit checks */
+      int crossSubmitsRejected = 0;
+      /** URLs of the current sitemap rejected by the host limit */
+      int hostLimitRejected = 0;
+
+      /**
+       * Inject only URLs of the current sitemap with a &lt;lastmod&gt; not
+       * before this time, -1 to inject all URLs
+       */
+      long minLastModified = -1;
+      /** Latest &lt;lastmod&gt; of URLs in the current sitemap */
+      long maxLastModified = -1;
+      /** Not all URLs of the current sitemap have been processed */
+      boolean incomplete = false;
+
       public SitemapProcessor(Context context, float customScore, long maxUrls,
           int maxHosts, Set<String> crossSubmits) {
         this.context = context;
@@ -436,8 +663,38 @@ public class SitemapInjector extends Injector {
        * of a sitemap index) and inject URLs
        */
       public void process(String url) {
-        Content content = getContent(url);
-        if (content == null) {
+        FetchedSitemap fetched = getContent(url, null);
+        if (fetched == null) {
+          return;
+        }
+        Content content = fetched.content;
+        boolean skip;
+        try {
+          skip = !beginSitemap(fetched);
+        } catch (IOException | InterruptedException e) {
+          LOG.warn("failed to process sitemap {}: {}", url,
+              StringUtils.stringifyException(e));
+          return;
+        }
+        if (skip) {
+          return;
+        }
+
+        try {
+          URL sitemapUrl = new URL(url);
+          if (sitemapStreamParser != null && checkCrossSubmits) {
+            addCrossSubmit(sitemapUrl.getHost());
+          }
+          if (streamSitemap(sitemapUrl, content)) {
+            recordState(fetched, false);
+            LOG.info("Injected total {} URLs for {}", totalUrls, url);
+            return;
+          }
+        } catch (Exception e) {
+          context.getCounter("SitemapInjector", "sitemaps failed to parse")
+              .increment(1);
+          LOG.warn("failed to parse sitemap {}: {}", url,
+              StringUtils.stringifyException(e));
           return;
         }
 
@@ -457,22 +714,12 @@ public class SitemapInjector extends Injector {
             .increment(1);
 
         if (checkCrossSubmits) {
-          String host = sitemap.getUrl().getHost();
-          String crossSubmit = host;
-          if (checkCrossSubmitsType == CrossSubmitType.PRIVATE_DOMAIN) {
-            crossSubmit = EffectiveTldFinder.getAssignedDomain(host, false,
-                false);
-          } else if (checkCrossSubmitsType == CrossSubmitType.PUBLIC_DOMAIN) {
-            crossSubmit = EffectiveTldFinder.getAssignedDomain(host, false,
-                true);
-          }
-          if (crossSubmit != null) {
-            crossSubmits.add(crossSubmit);
-          }
+          addCrossSubmit(sitemap.getUrl().getHost());
         }
 
         try {
           processSitemap(sitemap, null, 0);
+          recordState(fetched, sitemap.isIndex());
         } catch (IOException | InterruptedException e) {
           LOG.warn("failed to process sitemap {}: {}", url,
               StringUtils.stringifyException(e));
@@ -481,6 +728,177 @@ public class SitemapInjector extends Injector {
 
       }
 
+      private void addCrossSubmit(String host) {
+        String crossSubmit = getCrossSubmit(host);
+        if (crossSubmit != null) {
+          crossSubmits.add(crossSubmit);
+        }
+      }
+
+      private String getCrossSubmit(String host) {
+        if (checkCrossSubmitsType == CrossSubmitType.PRIVATE_DOMAIN) {
+          return EffectiveTldFinder.getAssignedDomain(host, false, false);
+        } else if (checkCrossSubmitsType == CrossSubmitType.PUBLIC_DOMAIN) {
+          return EffectiveTldFinder.getAssignedDomain(host, false, true);
+        }
+        return host;
+      }
+
+      /**
+       * Prepare incremental processing of a sitemap based on the state
+       * recorded in the sitemap DB by the last run. Sitemaps not modified
+       * since the last run are skipped, in changed sitemaps only URLs with a
+       * &lt;lastmod&gt; not before the latest &lt;lastmod&gt; seen by the last
+       * run are injected. Sitemap indexes are always processed, subsitemaps
+       * may have changed even if the index did not.
+       *
+       * @return false if the sitemap is unchanged and needs no processing
+       */
+      private boolean beginSitemap(FetchedSitemap fetched)
+          throws IOException, InterruptedException {
+        minLastModified = -1;
+        maxLastModified = -1;
+        incomplete = false;
+        CrawlDatum lastState = fetched.lastState;
+        if (fetched.content == null) {
+          // not modified (HTTP 304 or lastmod in sitemap index)
+          recordState(fetched, false);
+          return false;
+        }
+        if (lastState == null
+            || lastState.getMetaData().containsKey(SITEMAP_IS_INDEX)) {
+          return true;
+        }
+        if (Arrays.equals(lastState.getSignature(),
+            MD5Hash.digest(fetched.content.getContent()).getDigest())) {
+          LOG.info("Sitemap {} unchanged since last run", fetched.url);
+          context.getCounter("SitemapInjector", "sitemap unchanged (digest)")
+              .increment(1);
+          recordState(fetched, false);
+          return false;
+        }
+        Writable lastMod = lastState.getMetaData().get(SITEMAP_MAX_LASTMOD);
+        if (lastMod != null) {
+          minLastModified = ((LongWritable) lastMod).get();
+        }
+        return true;
+      }
+
+      /**
+       * Record the state of a processed sitemap in the sitemap DB. The state
+       * is not recorded if limits did not allow to process all URLs of the
+       * sitemap.
+       */
+      private void recordState(FetchedSitemap fetched, boolean isIndex)
+          throws IOException, InterruptedException {
+        if (!incremental) {
+          return;
+        }
+        CrawlDatum state = new CrawlDatum();
+        if (fetched.content == null) {
+          // not modified: keep the recorded state
+          state.set(fetched.lastState);
+          state.setStatus(CrawlDatum.STATUS_FETCH_NOTMODIFIED);
+        } else {
+          if (incomplete
+              || (!isIndex && (totalUrls >= maxUrls || ((System
+                  .currentTimeMillis() - startTime)
+                  / 1000) > maxSitemapProcessingTime))) {
+            return;
+          }
+          Content content = fetched.content;
+          state.setStatus(CrawlDatum.STATUS_FETCH_SUCCESS);
+          state.setSignature(MD5Hash.digest(content.getContent()).getDigest());
+          if (isIndex) {
+            // always fetch sitemap indexes unconditionally
+            state.getMetaData().put(SITEMAP_IS_INDEX, new BooleanWritable(true));
+          } else {
+            String lastModified = content.getMetadata()
+                .get(HttpHeaders.LAST_MODIFIED);
+            if (lastModified != null) {
+              try {
+                state.setModifiedTime(HttpDateFormat.toLong(lastModified));
+              } catch (ParseException e) {
+                // ignore
+              }
+            }
+            String etag = content.getMetadata().get("ETag");
+            if (etag != null) {
+              state.getMetaData().put(SITEMAP_ETAG, new Text(etag));
+            }
+            if (fetched.lastState != null) {
+              Writable lastMod = fetched.lastState.getMetaData()
+                  .get(SITEMAP_MAX_LASTMOD);
+              if (lastMod != null) {
+                maxLastModified = Math.max(maxLastModified,
+                    ((LongWritable) lastMod).get());
+              }
+            }
+            if (maxLastModified > 0) {
+              state.getMetaData().put(SITEMAP_MAX_LASTMOD,
+                  new LongWritable(maxLastModified));
+            }
+          }
+        }
+        state.setFetchTime(curTime);
+        context.write(new Text(fetched.url), state);
+      }
+
+      /**
+       * Parse a sitemap by the streaming parser and inject the URLs while the
+       * sitemap is parsed. URLs are injected in the order of the sitemap until
+       * the URL limit is reached, there is no random selection of URLs.
+       *
+       * @return true if the sitemap was processed, false if streaming is
+       *         disabled or the sitemap format is not supported by the
+       *         streaming parser
+       */
+      private boolean streamSitemap(URL sitemapUrl, Content content)
+          throws IOException, InterruptedException {
+        if (sitemapStreamParser == null) {
+          return false;
+        }
+        long urlsBefore = totalUrls;
+        crossSubmitsRejected = 0;
+        hostLimitRejected = 0;
+        boolean parsed = sitemapStreamParser.parse(sitemapUrl,
+            content.getContentType(), content.getContent(), siteMapURL -> {
+              if (((System.currentTimeMillis() - startTime)
+                  / 1000) > maxSitemapProcessingTime) {
+                LOG.warn(
+                    "Max. processing time reached, skipped remaining URLs of {}",
+                    sitemapUrl);
+                context.getCounter("SitemapInjector",
+                    "sitemap: time limit reached").increment(1);
+                incomplete = true;
+                return false;
+              }
+              return injectURL(siteMapURL, sitemapUrl);
+            });
+        if (!parsed) {
+          return false;
+        }
+        context.getCounter("SitemapInjector", "sitemaps processed")
+            .increment(1);
+        context.getCounter("SitemapInjector", "sitemaps streamed")
+            .increment(1);
+        if (totalUrls == urlsBefore) {
+          LOG.info("No URLs injected from sitemap {}", sitemapUrl);
+        } else {
+          LOG.info("Injected {} URLs from {}", (totalUrls - urlsBefore),
+              sitemapUrl);
+        }
+        if (totalUrls >= maxUrls) {
+          LOG.warn("URL limit reached, skipped remaining urls of {}",
+              sitemapUrl);
+          context
+              .getCounter("SitemapInjector", "sitemap index: URL limit reached")
+              .increment(1);
+        }
+        logRejected(sitemapUrl, "streamed");
+        return true;
+      }
+
       /**
        * Parse a sitemap and inject all contained URLs. In case of a sitemap
        * index, sitemaps are fetched and processed recursively until one of the
@@ -568,96 +986,144 @@ public class SitemapInjector extends Injector {
         }
 
         int failedSubSitemaps = 0;
-        while (sitemaps.size() > 0) {
+        // subsitemaps being fetched ahead of processing
+        Deque<PendingSitemap> pending = new ArrayDeque<>();
+        try {
+          while (sitemaps.size() > 0 || pending.size() > 0) {
 
-          long elapsed = (System.currentTimeMillis() - startTime) / 1000;
-          if (elapsed > maxSitemapProcessingTime) {
-            LOG.warn(
-                "Max. processing time reached, skipped remaining sitemaps of sitemap index {}",
-                sitemapIndex.getUrl());
-            context.getCounter("SitemapInjector",
-                "sitemap index: time limit reached").increment(1);
-            return;
-          }
-          if ((totalUrls == 0)
-              && (elapsed > (maxSitemapProcessingTime / 2))) {
-            LOG.warn(
-                "Half of processing time elapsed and no URLs injected, skipped remaining sitemaps of sitemap index {}",
-                sitemapIndex.getUrl());
-            context
-                .getCounter("SitemapInjector",
-                    "sitemap index: no URLs after 50% of time limit")
-                .increment(1);
-            return;
-          }
-          if (failedSubSitemaps > (maxRecursiveSitemaps / 2)) {
-            // do not spend too much time to fetch broken subsitemaps
-            LOG.warn(
-                "Too many failures, skipped remaining sitemaps of sitemap index {}",
-                sitemapIndex.getUrl());
-            context.getCounter("SitemapInjector",
-                "sitemap index: too many failures").increment(1);
-            return;
-          }
+            long elapsed = (System.currentTimeMillis() - startTime) / 1000;
+            if (elapsed > maxSitemapProcessingTime) {
+              LOG.warn(
+                  "Max. processing time reached, skipped remaining sitemaps of sitemap index {}",
+                  sitemapIndex.getUrl());
+              context.getCounter("SitemapInjector",
+                  "sitemap index: time limit reached").increment(1);
+              return;
+            }
+            if ((totalUrls == 0)
+                && (elapsed > (maxSitemapProcessingTime / 2))) {
+              LOG.warn(
+                  "Half of processing time elapsed and no URLs injected, skipped remaining sitemaps of sitemap index {}",
+                  sitemapIndex.getUrl());
+              context
+                  .getCounter("SitemapInjector",
+                      "sitemap index: no URLs after 50% of time limit")
+                  .increment(1);
+              return;
+            }
+            if (failedSubSitemaps > (maxRecursiveSitemaps / 2)) {
+              // do not spend too much time to fetch broken subsitemaps
+              LOG.warn(
+                  "Too many failures, skipped remaining sitemaps of sitemap index {}",
+                  sitemapIndex.getUrl());
+              context.getCounter("SitemapInjector",
+                  "sitemap index: too many failures").increment(1);
+              return;
+            }
+            if (totalUrls >= maxUrls) {
+              LOG.warn(
+                  "URL limit reached, skipped remaining sitemaps of sitemap index {}",
+                  sitemapIndex.getUrl());
+              context.getCounter("SitemapInjector",
+                  "sitemap index: URL limit reached").increment(1);
+              return;
+            }
 
-          AbstractSiteMap nextSitemap = sitemaps.poll().sitemap;
-          context.getCounter("SitemapInjector", "sitemap index: processed sitemaps")
-              .increment(1);
+            // keep up to fetchThreads subsitemaps fetching ahead
+            while (pending.size() < fetchThreads && sitemaps.size() > 0) {
+              AbstractSiteMap nextSitemap = sitemaps.poll().sitemap;
+              context.getCounter("SitemapInjector",
+                  "sitemap index: processed sitemaps").increment(1);
+
+              String url = nextSitemap.getUrl().toString();
+              if (processedSitemaps.contains(url)) {
+                LOG.warn("skipped duplicated or recursive sitemap URL {}", url);
+                context.getCounter("SitemapInjector",
+                    "skipped duplicated or recursive sitemap URLs").increment(1);
+                nextSitemap.setProcessed(true);
+                continue;
+              }
+              if (processedSitemaps.size() > maxRecursiveSitemaps) {
+                LOG.warn(
+                    "{} sitemaps processed for {}, skipped remaining sitemaps",
+                    processedSitemaps.size(), sitemapIndex.getUrl());
+                context
+                    .getCounter("SitemapInjector", "sitemap index limit reached")
+                    .increment(1);
+                sitemaps.clear();
+                break;
+              }
 
-          String url = nextSitemap.getUrl().toString();
-          if (processedSitemaps.contains(url)) {
-            LOG.warn("skipped duplicated or recursive sitemap URL {}", url);
-            context.getCounter("SitemapInjector",
-                "skipped duplicated or recursive sitemap URLs").increment(1);
-            nextSitemap.setProcessed(true);
-            continue;
-          }
-          if (processedSitemaps.size() > maxRecursiveSitemaps) {
-            LOG.warn(
-                "{} sitemaps processed for {}, skipped remaining sitemaps",
-                processedSitemaps.size(), sitemapIndex.getUrl());
-            context
-                .getCounter("SitemapInjector", "sitemap index limit reached")
-                .increment(1);
-            return;
-          }
-          if (totalUrls >= maxUrls) {
-            LOG.warn(
-                "URL limit reached, skipped remaining sitemaps of sitemap index {}",
-                sitemapIndex.getUrl());
-            context.getCounter("SitemapInjector",
-                "sitemap index: URL limit reached").increment(1);
-            return;
-          }
+              processedSitemaps.add(url);
+              Date lastModified = nextSitemap.getLastModified();
+              pending.add(new PendingSitemap(nextSitemap,
+                  prefetchExecutorService
+                      .submit(() -> getContent(url, lastModified))));
+            }
+            if (pending.isEmpty()) {
+              break;
+            }
 
-          processedSitemaps.add(url);
+            PendingSitemap next = pending.poll();
+            AbstractSiteMap nextSitemap = next.sitemap;
+            FetchedSitemap fetched = null;
+            try {
+              fetched = next.content.get();
+            } catch (ExecutionException e) {
+              LOG.error("fetch of sitemap {} failed with: {}",
+                  nextSitemap.getUrl(), StringUtils.stringifyException(e));
+            }
+            if (fetched == null) {
+              nextSitemap.setProcessed(true);
+              context.getCounter("SitemapInjector", "sitemaps failed to fetch")
+                  .increment(1);
+              failedSubSitemaps++;
+              continue;
+            }
 
-          Content content = getContent(url);
-          if (content == null) {
+            try {
+              if (beginSitemap(fetched)) {
+                Content content = fetched.content;
+                if (streamSitemap(nextSitemap.getUrl(), content)) {
+                  recordState(fetched, false);
+                } else {
+                  AbstractSiteMap parsedSitemap = parseSitemap(content,
+                      nextSitemap);
+                  processSitemap(parsedSitemap, processedSitemaps, depth);
+                  recordState(fetched, parsedSitemap.isIndex());
+                }
+              }
+            } catch (Exception e) {
+              LOG.warn("failed to parse sitemap {}: {}", nextSitemap.getUrl(),
+                  StringUtils.stringifyException(e));
+              context.getCounter("SitemapInjector", "sitemaps failed to parse")
+                  .increment(1);
+              failedSubSitemaps++;
+            }
             nextSitemap.setProcessed(true);
-            context.getCounter("SitemapInjector", "sitemaps failed to fetch")
-                .increment(1);
-            failedSubSitemaps++;
-            continue;
           }
-
-          try {
-            AbstractSiteMap parsedSitemap = parseSitemap(content,
-                nextSitemap);
-            processSitemap(parsedSitemap, processedSitemaps, depth);
-          } catch (Exception e) {
-            LOG.warn("failed to parse sitemap {}: {}", nextSitemap.getUrl(),
-                StringUtils.stringifyException(e));
-            context.getCounter("SitemapInjector", "sitemaps failed to parse")
-                .increment(1);
-            failedSubSitemaps++;
+        } finally {
+          for (PendingSitemap p : pending) {
+            p.content.cancel(true);
           }
-          nextSitemap.setProcessed(true);
         }
         sitemapIndex.setProcessed(true);
       }
 
-      private Content getContent(String url) {
+      /**
+       * Fetch a sitemap. If incremental, a conditional request is sent using
+       * the Last-Modified time recorded by the last run. The fetch is skipped
+       * if the sitemap has been processed after its &lt;lastmod&gt; date given
+       * in a sitemap index.
+       *
+       * @param url
+       *          sitemap URL
+       * @param indexLastModified
+       *          &lt;lastmod&gt; of the sitemap given in a sitemap index, null
+       *          if not given
+       * @return fetched sitemap or null if the fetch failed
+       */
+      private FetchedSitemap getContent(String url, Date indexLastModified) {
         if (url.length() > maxUrlLength) {
           LOG.warn(
               "Not fetching sitemap with overlong URL: {} ... (truncated, length = {} characters)",
@@ -667,7 +1133,7 @@ public class SitemapInjector extends Injector {
           return null;
         }
         String origUrl = url;
-        url = filterNormalize(url);
+        url = filterNormalizeSynchronized(url);
         if (url == null) {
           LOG.warn("Sitemap rejected by URL filters: {}", origUrl);
           context
@@ -688,6 +1154,22 @@ public class SitemapInjector extends Injector {
               "skipped, too many failures per host").increment(1);
           return null;
         }
+        String stateUrl = url;
+        CrawlDatum lastState = getSitemapState(url);
+        CrawlDatum datum = new CrawlDatum();
+        if (lastState != null) {
+          if (indexLastModified != null
+              && !lastState.getMetaData().containsKey(SITEMAP_IS_INDEX)
+              && (indexLastModified.getTime()
+                  + LASTMOD_TOLERANCE) < lastState.getFetchTime()) {
+            LOG.info("Sitemap {} not modified since last run (lastmod: {})",
+                url, indexLastModified);
+            context.getCounter("SitemapInjector",
+                "sitemap not modified (lastmod in sitemap index)").increment(1);
+            return new FetchedSitemap(stateUrl, null, lastState);
+          }
+          datum.setModifiedTime(lastState.getModifiedTime());
+        }
         Protocol protocol = null;
         try {
           protocol = protocolFactory.getProtocol(url);
@@ -708,8 +1190,18 @@ public class SitemapInjector extends Injector {
           if (redirects > 0) {
             LOG.info("fetching redirected sitemap " + url);
           }
+          FetchItem fetchItem = null;
+          if (fetchScheduler != null) {
+            try {
+              fetchItem = fetchScheduler.acquire(url);
+            } catch (InterruptedException e) {
+              // fetch canceled
+              Thread.currentThread().interrupt();
+              return null;
+            }
+          }
           FetchSitemapCallable fetch = new FetchSitemapCallable(protocol, url,
-              context);
+              context, fetchItem, datum);
           Future<ProtocolOutput> task = executorService.submit(fetch);
           try {
             protocolOutput = task.get(maxSitemapFetchTime, TimeUnit.SECONDS);
@@ -731,6 +1223,9 @@ public class SitemapInjector extends Injector {
             return null;
           } finally {
             fetch = null;
+            if (fetchScheduler != null) {
+              fetchScheduler.finish(fetchItem);
+            }
           }
 
           if (protocolOutput == null) {
@@ -741,7 +1236,7 @@ public class SitemapInjector extends Injector {
             context.getCounter("SitemapInjector", "sitemap redirect")
                 .increment(1);
             String redirUrl = protocolOutput.getStatus().getArgs()[0];
-            url = filterNormalize(redirUrl);
+            url = filterNormalizeSynchronized(redirUrl);
             if (url == null) {
               LOG.info(
                   "Redirect target of sitemap {} rejected by URL filters: {}",
@@ -777,6 +1272,14 @@ public class SitemapInjector extends Injector {
         } while (protocolOutput.getStatus().isRedirect()
             && redirects < maxRedirect);
 
+        if (protocolOutput.getStatus().getCode() == ProtocolStatus.NOTMODIFIED
+            && lastState != null) {
+          LOG.info("Sitemap {} not modified since last run", url);
+          context.getCounter("SitemapInjector", "sitemap not modified (304)")
+              .increment(1);
+          return new FetchedSitemap(stateUrl, null, lastState);
+        }
+
         if (!protocolOutput.getStatus().isSuccess()) {
           LOG.error("fetch of sitemap {} failed with status code {}", url,
               protocolOutput.getStatus().getCode());
@@ -799,7 +1302,7 @@ public class SitemapInjector extends Injector {
           incrementFailuresPerHost(hostName);
           return null;
         }
-        return content;
+        return new FetchedSitemap(stateUrl, content, lastState);
       }
 
       private AbstractSiteMap parseSitemap(Content content, Object urlOrSitemap)
@@ -848,118 +1351,137 @@ public class SitemapInjector extends Injector {
           }
         }
 
-        int crossSubmitsRejected = 0;
-        int hostLimitRejected = 0;
+        crossSubmitsRejected = 0;
+        hostLimitRejected = 0;
         for (SiteMapURL siteMapURL : sitemapURLs) {
 
-          if (totalUrls >= maxUrls) {
-            context.getCounter("SitemapInjector", "sitemap URL limit reached")
-                .increment(1);
-            LOG.info("URL limit ({}) reached for {}", maxUrls,
-                sitemap.getUrl());
-            break;
-          }
-
-          if (random != null) {
+          if (random != null && totalUrls < maxUrls) {
             if (randomSelect > random.nextFloat()) {
               context.getCounter("SitemapInjector", "random skip").increment(1);
+              incomplete = true;
               continue;
             }
           }
 
-          // TODO: score and fetch interval should be transparently overridable
-          float sitemapScore = (float) siteMapURL.getPriority();
-          sitemapScore *= customScore;
-          int sitemapInterval = getChangeFrequencySeconds(
-              siteMapURL.getChangeFrequency());
-          long lastModified = -1;
-          if (siteMapURL.getLastModified() != null) {
-            lastModified = siteMapURL.getLastModified().getTime();
+          if (!injectURL(siteMapURL, sitemap.getUrl())) {
+            break;
           }
-          URL u = siteMapURL.getUrl();
-          String url = u.toString();
-          if (url.length() > maxUrlLength) {
-            LOG.warn(
-                "Skipping overlong URL: {} ... (truncated, length = {} characters)",
-                url.substring(0, maxUrlLength), url.length());
-            continue;
+        }
+        logRejected(sitemap.getUrl(), sitemap.getType().toString());
+      }
+
+      /**
+       * Inject one URL found in a sitemap.
+       *
+       * @return false if the URL limit is reached and no more URLs are
+       *         accepted
+       */
+      private boolean injectURL(SiteMapURL siteMapURL, URL sitemapUrl)
+          throws IOException, InterruptedException {
+
+        if (totalUrls >= maxUrls) {
+          context.getCounter("SitemapInjector", "sitemap URL limit reached")
+              .increment(1);
+          LOG.info("URL limit ({}) reached for {}", maxUrls, sitemapUrl);
+          return false;
+        }
+
+        // TODO: score and fetch interval should be transparently overridable
+        float sitemapScore = (float) siteMapURL.getPriority();
+        sitemapScore *= customScore;
+        int sitemapInterval = getChangeFrequencySeconds(
+            siteMapURL.getChangeFrequency());
+        long lastModified = -1;
+        if (siteMapURL.getLastModified() != null) {
+          lastModified = siteMapURL.getLastModified().getTime();
+          if (lastModified > maxLastModified) {
+            maxLastModified = lastModified;
           }
-          // for simplicity do host and domain checks before normalization
-          String host = u.getHost();
-          if (injectedHosts.size() >= maxHosts
-              && !injectedHosts.contains(host)) {
-            hostLimitRejected++;
-            context
-                .getCounter("SitemapInjector",
-                    "urls from sitemaps rejected, host limit reached")
+          if (lastModified < minLastModified) {
+            context.getCounter("SitemapInjector",
+                "urls from sitemaps skipped, not modified since last run")
                 .increment(1);
-            continue;
+            return true;
           }
-          if (checkCrossSubmits) {
-            String crossSubmit = host;
-            if (checkCrossSubmitsType == CrossSubmitType.PRIVATE_DOMAIN) {
-              crossSubmit = EffectiveTldFinder.getAssignedDomain(host, false,
-                  false);
-            } else if (checkCrossSubmitsType == CrossSubmitType.PUBLIC_DOMAIN) {
-              crossSubmit = EffectiveTldFinder.getAssignedDomain(host, false,
-                  true);
-            }
-            if (crossSubmit == null || !crossSubmits.contains(crossSubmit)) {
-              crossSubmitsRejected++;
-              context.getCounter("SitemapInjector",
-                  "urls from sitemaps rejected, target not allowed by cross-submits")
-                  .increment(1);
-              continue;
-            }
+        }
+        URL u = siteMapURL.getUrl();
+        String url = u.toString();
+        if (url.length() > maxUrlLength) {
+          LOG.warn(
+              "Skipping overlong URL: {} ... (truncated, length = {} characters)",
+              url.substring(0, maxUrlLength), url.length());
+          return true;
+        }
+        // for simplicity do host and domain checks before normalization
+        String host = u.getHost();
+        if (injectedHosts.size() >= maxHosts
+            && !injectedHosts.contains(host)) {
+          hostLimitRejected++;
+          context
+              .getCounter("SitemapInjector",
+                  "urls from sitemaps rejected, host limit reached")
+              .increment(1);
+          return true;
+        }
+        if (checkCrossSubmits) {
+          String crossSubmit = getCrossSubmit(host);
+          if (crossSubmit == null || !crossSubmits.contains(crossSubmit)) {
+            crossSubmitsRejected++;
+            context.getCounter("SitemapInjector",
+                "urls from sitemaps rejected, target not allowed by cross-submits")
+                .increment(1);
+            return true;
+          }
+        }
+        try {
+          url = filterNormalizeSynchronized(url);
+        } catch (Exception e) {
+          if (LOG.isWarnEnabled()) {
+            LOG.warn("Skipping {}: {}", url,
+                StringUtils.stringifyException(e));
           }
+          url = null;
+        }
+        if (url == null) {
+          context.getCounter("SitemapInjector",
+              "urls from sitemaps rejected by URL filters").increment(1);
+        } else {
+          // URL passed normalizers and filters
+          totalUrls++;
+          Text value = new Text(url);
+          CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_INJECTED,
+              sitemapInterval, sitemapScore);
+          if (lastModified != -1) {
+            // datum.setModifiedTime(lastModified);
+          }
+          datum.setFetchTime(curTime);
+
           try {
-            url = filterNormalize(url);
-          } catch (Exception e) {
+            scfilters.injectedScore(value, datum);
+          } catch (ScoringFilterException e) {
             if (LOG.isWarnEnabled()) {
-              LOG.warn("Skipping {}: {}", url,
-                  StringUtils.stringifyException(e));
+              LOG.warn("Cannot filter injected score for url " + url
+                  + ", using default (" + e.getMessage() + ")");
             }
-            url = null;
           }
-          if (url == null) {
-            context.getCounter("SitemapInjector",
-                "urls from sitemaps rejected by URL filters").increment(1);
-          } else {
-            // URL passed normalizers and filters
-            totalUrls++;
-            Text value = new Text(url);
-            CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_INJECTED,
-                sitemapInterval, sitemapScore);
-            if (lastModified != -1) {
-              // datum.setModifiedTime(lastModified);
-            }
-            datum.setFetchTime(curTime);
-
-            try {
-              scfilters.injectedScore(value, datum);
-            } catch (ScoringFilterException e) {
-              if (LOG.isWarnEnabled()) {
-                LOG.warn("Cannot filter injected score for url " + url
-                    + ", using default (" + e.getMessage() + ")");
-              }
-            }
 
-            context.getCounter("SitemapInjector", "urls from sitemaps injected")
-                .increment(1);
-            context.write(value, datum);
-            injectedHosts.add(host);
-          }
+          context.getCounter("SitemapInjector", "urls from sitemaps injected")
+              .increment(1);
+          context.write(value, datum);
+          injectedHosts.add(host);
         }
+        return true;
+      }
+
+      private void logRejected(URL sitemapUrl, String type) {
         if (crossSubmitsRejected > 0) {
           LOG.info("Rejected {} cross-submits for {} ({})",
-              crossSubmitsRejected, sitemap.getUrl(),
-              sitemap.getType().toString());
+              crossSubmitsRejected, sitemapUrl, type);
         }
         if (hostLimitRejected > 0) {
           LOG.info(
               "Rejected {} URLs because max. number of linked hosts is reached for {} ({})",
-              hostLimitRejected, sitemap.getUrl(),
-              sitemap.getType().toString());
+              hostLimitRejected, sitemapUrl, type);
         }
       }
 
@@ -1010,6 +1532,136 @@ public class SitemapInjector extends Injector {
 
   }
 
+  /**
+   * Writes injected URLs into the <code>part-*</code> files and the states of
+   * processed sitemaps (records with a fetch status) into separate
+   * <code>sitemaps-*</code> files.
+   */
+  public static class SitemapInjectOutputFormat
+      extends SequenceFileOutputFormat<Text, CrawlDatum> {
+
+    @Override
+    public RecordWriter<Text, CrawlDatum> getRecordWriter(
+        TaskAttemptContext context) throws IOException, InterruptedException {
+      final RecordWriter<Text, CrawlDatum> urlWriter = super.getRecordWriter(
+          context);
+      final Path stateFile = new Path(
+          getDefaultWorkFile(context, "").getParent(),
+          getUniqueFile(context, SITEMAP_STATE_PREFIX, ""));
+      final Configuration conf = context.getConfiguration();
+
+      return new RecordWriter<Text, CrawlDatum>() {
+        private SequenceFile.Writer stateWriter;
+
+        @Override
+        public void write(Text key, CrawlDatum value)
+            throws IOException, InterruptedException {
+          if (!CrawlDatum.hasFetchStatus(value)) {
+            urlWriter.write(key, value);
+            return;
+          }
+          if (stateWriter == null) {
+            stateWriter = SequenceFile.createWriter(conf,
+                SequenceFile.Writer.file(stateFile),
+                SequenceFile.Writer.keyClass(Text.class),
+                SequenceFile.Writer.valueClass(CrawlDatum.class));
+          }
+          stateWriter.append(key, value);
+        }
+
+        @Override
+        public void close(TaskAttemptContext context)
+            throws IOException, InterruptedException {
+          urlWriter.close(context);
+          if (stateWriter != null) {
+            stateWriter.close();
+          }
+        }
+      };
+    }
+  }
+
+  /**
+   * Merges the states of sitemaps processed by the current run into the
+   * sitemap DB, keeping the most recent state of every sitemap.
+   */
+  public static class SitemapDbReducer
+      extends Reducer<Text, CrawlDatum, Text, CrawlDatum> {
+
+    private CrawlDatum result = new CrawlDatum();
+
+    @Override
+    public void reduce(Text key, Iterable<CrawlDatum> values, Context context)
+        throws IOException, InterruptedException {
+      boolean found = false;
+      for (CrawlDatum datum : values) {
+        if (!found || datum.getFetchTime() > result.getFetchTime()) {
+          result.set(datum);
+          found = true;
+        }
+      }
+      if (result.getStatus() == CrawlDatum.STATUS_FETCH_SUCCESS) {
+        result.setStatus(CrawlDatum.STATUS_DB_FETCHED);
+      } else if (result.getStatus() == CrawlDatum.STATUS_FETCH_NOTMODIFIED) {
+        result.setStatus(CrawlDatum.STATUS_DB_NOTMODIFIED);
+      }
+      context.write(key, result);
+    }
+  }
+
+  /**
+   * Merge the sitemap states written by step 1 into the sitemap DB.
+   *
+   * @param sitemapDb
+   *          path of the sitemap DB
+   * @param stepOneOutput
+   *          output of step 1
+   */
+  public void updateSitemapDb(Path sitemapDb, Path stepOneOutput)
+      throws IOException, ClassNotFoundException, InterruptedException {
+    Configuration conf = getConf();
+    FileSystem fs = sitemapDb.getFileSystem(conf);
+    FileStatus[] states = stepOneOutput.getFileSystem(conf).globStatus(
+        new Path(stepOneOutput, SITEMAP_STATE_PREFIX + "-*"));
+    if (states == null || states.length == 0) {
+      LOG.info("SitemapInjector: no sitemap states to update sitemap DB {}",
+          sitemapDb);
+      return;
+    }
+    LOG.info("SitemapInjector: updating sitemap DB {}", sitemapDb);
+
+    Path lock = CrawlDb.lock(conf, sitemapDb, false);
+    Job job = CrawlDb.createJob(conf, sitemapDb);
+    job.setJobName("update sitemap db " + sitemapDb);
+    for (FileStatus state : states) {
+      FileInputFormat.addInputPath(job, state.getPath());
+    }
+    job.setReducerClass(SitemapDbReducer.class);
+    Configuration jobConf = job.getConfiguration();
+    jobConf.setBoolean(CrawlDbFilter.URL_FILTERING, false);
+    jobConf.setBoolean(CrawlDbFilter.URL_NORMALIZING, false);
+    jobConf.setBoolean(CrawlDb.CRAWLDB_PURGE_404, false);
+    jobConf.setBoolean(CrawlDb.CRAWLDB_PURGE_ORPHANS, false);
+    try {
+      boolean success = job.waitForCompletion(true);
+      if (!success) {
+        String message = "SitemapInjector job did not succeed, job status: "
+            + job.getStatus().getState() + ", reason: "
+            + job.getStatus().getFailureInfo();
+        LOG.error(message);
+        NutchJob.cleanupAfterFailure(FileOutputFormat.getOutputPath(job), lock,
+            fs);
+        throw new RuntimeException(message);
+      }
+    } catch (IOException | InterruptedException | ClassNotFoundException e) {
+      LOG.error("SitemapInjector job failed: {}", e.getMessage());
+      NutchJob.cleanupAfterFailure(FileOutputFormat.getOutputPath(job), lock,
+          fs);
+      throw e;
+    }
+    CrawlDb.install(job, sitemapDb);
+  }
+
   public void inject(Path crawlDb, Path urlDir, boolean overwrite,
       boolean update, boolean normalize, boolean filter,
       boolean filterNormalizeAll)
@@ -1038,6 +1690,12 @@ public class SitemapInjector extends Injector {
     conf.setBoolean(URL_FILTER_NORMALIZE_ALL, filterNormalizeAll);
     conf.setBoolean("mapreduce.fileoutputcommitter.marksuccessfuljobs", false);
 
+    Path sitemapDb = null;
+    if (conf.get(SITEMAP_DB) != null) {
+      sitemapDb = new Path(conf.get(SITEMAP_DB));
+      LOG.info("SitemapInjector: sitemapDb: " + sitemapDb);
+    }
+
     Path tempDir;
     Path lock = null;
     if (runStepOneOnly) {
@@ -1068,7 +1726,7 @@ public class SitemapInjector extends Injector {
                                                     // sitemaps
 
       FileOutputFormat.setOutputPath(sitemapJob, tempDir);
-      sitemapJob.setOutputFormatClass(SequenceFileOutputFormat.class);
+      sitemapJob.setOutputFormatClass(SitemapInjectOutputFormat.class);
       sitemapJob.setOutputKeyClass(Text.class);
       sitemapJob.setOutputValueClass(CrawlDatum.class);
 
@@ -1109,11 +1767,20 @@ public class SitemapInjector extends Injector {
         return;
       }
 
-      long numOutputRecords = sitemapJob.getCounters()
-          .findCounter(TaskCounter.REDUCE_OUTPUT_RECORDS).getValue();
-      if (numOutputRecords == 0) {
+      long numInjected = sitemapJob.getCounters()
+          .findCounter("SitemapInjector", "urls from sitemaps injected")
+          .getValue();
+      if (numInjected == 0) {
         LOG.warn(
             "No URLs found in sitemaps, skipping step 2 merging URLs into CrawlDb");
+        FileSystem fs = tempDir.getFileSystem(conf);
+        LockUtil.removeLockFile(fs, lock);
+        if (sitemapDb != null) {
+          updateSitemapDb(sitemapDb, tempDir);
+        }
+        if (!keepTemp) {
+          fs.delete(tempDir, true);
+        }
         return;
       }
     }
@@ -1123,7 +1790,8 @@ public class SitemapInjector extends Injector {
       LOG.info("SitemapInjector: Merging injected urls into crawl db.");
     }
     Job mergeJob = CrawlDb.createJob(getConf(), crawlDb);
-    FileInputFormat.addInputPath(mergeJob, tempDir);
+    // skip sitemap states
+    FileInputFormat.addInputPath(mergeJob, new Path(tempDir, "part-*"));
     mergeJob.setReducerClass(InjectReducer.class);
     conf = mergeJob.getConfiguration();
     if (filterNormalizeAll) {
@@ -1156,6 +1824,10 @@ public class SitemapInjector extends Injector {
 
     CrawlDb.install(mergeJob, crawlDb);
 
+    if (sitemapDb != null) {
+      updateSitemapDb(sitemapDb, tempDir);
+    }
+
     // clean up
     if (!(keepTemp || runStepOneOnly || runStepTwoOnly)) {
       tempDir.getFileSystem(conf).delete(tempDir, true);
@@ -1173,7 +1845,7 @@ public class SitemapInjector extends Injector {
 
   public void usage() {
     System.err.println(
-        "Usage: SitemapInjector [-D...] <crawldb> <url_dir> [-threads <n>] [-overwrite|-update] [-noFilter] [-noNormalize] [-filterNormalizeAll]\n");
+        "Usage: SitemapInjector [-D...] <crawldb> <url_dir> [-threads <n>] [-sitemapDb <sitemapdb>] [-overwrite|-update] [-noFilter] [-noNormalize] [-filterNormalizeAll]\n");
     System.err.println("\nFor sitemap URLs listed in seed input files:");
     System.err.println("\t- fetch and parse the sitemap (step 1)");
     System.err.println("\t- inject URLs from sitemaps into the CrawlDb (step 2)");
@@ -1182,6 +1854,8 @@ public class SitemapInjector extends Injector {
     System.err.println("Options and properties of SitemapInjector");
     System.err.println(
         "\t-threads <threads>\tNumber of threads created per mapper to fetch sitemap urls (default: 8)");
+    System.err.println(
+        "\t-sitemapDb <sitemapdb>\tRecord the state of processed sitemaps and skip unchanged sitemaps and URLs in following runs");
     System.err.println(
         "\t-keepTemp\tDo not delete the temporary directory which contains the output of step 1");
     System.err.println(
@@ -1222,6 +1896,14 @@ public class SitemapInjector extends Injector {
         case "-keepTemp":
           keepTemp = true;
           break;
+        case "-sitemapDb":
+          i++;
+          if (i == args.length) {
+            usage("Argument -sitemapDb requires parameter");
+            return -1;
+          }
+          getConf().set(SITEMAP_DB, args[i]);
+          break;
         case "-step1":
           runStepOneOnly = true;
           break;
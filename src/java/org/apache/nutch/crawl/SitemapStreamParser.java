@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import crawlercommons.sitemaps.SiteMapParser;
+import crawlercommons.sitemaps.SiteMapURL;
+
+/**
+ * Streaming parser for XML (<code>&lt;urlset&gt;</code>) and plain-text
+ * sitemaps, optionally gzip-compressed. In contrast to {@link SiteMapParser}
+ * URLs are passed to a consumer while the sitemap is parsed, the memory used
+ * does not depend on the number of URLs in the sitemap.
+ *
+ * Sitemap indexes, RSS and Atom feeds are not handled, these are left to
+ * {@link SiteMapParser}. Sitemap extensions (images, videos, news, etc.) are
+ * ignored.
+ */
+class SitemapStreamParser {
+
+  /** Receives the URLs of a sitemap */
+  interface SitemapUrlConsumer {
+    /**
+     * @param url
+     *          URL found in the sitemap
+     * @return false to stop parsing the sitemap
+     */
+    boolean accept(SiteMapURL url) throws IOException, InterruptedException;
+  }
+
+  private static final XMLInputFactory XML_INPUT_FACTORY;
+  static {
+    XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    XML_INPUT_FACTORY.setProperty(
+        XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+  }
+
+  private final boolean strict;
+  private final Set<String> acceptedNamespaces;
+
+  /**
+   * @param strict
+   *          accept only URLs below the sitemap location, see
+   *          <a href="https://www.sitemaps.org/protocol.html#location">sitemap
+   *          location</a>
+   * @param acceptedNamespaces
+   *          namespaces accepted for the <code>&lt;urlset&gt;</code> element
+   */
+  SitemapStreamParser(boolean strict, Set<String> acceptedNamespaces) {
+    this.strict = strict;
+    this.acceptedNamespaces = acceptedNamespaces;
+  }
+
+  /**
+   * Parse a sitemap and pass all URLs to the consumer.
+   *
+   * @param sitemapUrl
+   *          URL of the sitemap
+   * @param contentType
+   *          content type of the sitemap
+   * @param content
+   *          sitemap content
+   * @param consumer
+   *          consumer receiving the URLs
+   * @return true if the sitemap has been parsed, false if it is not a
+   *         <code>&lt;urlset&gt;</code> or plain-text sitemap and needs to be
+   *         parsed by {@link SiteMapParser}
+   * @throws IOException
+   *           if the sitemap cannot be parsed
+   */
+  boolean parse(URL sitemapUrl, String contentType, byte[] content,
+      SitemapUrlConsumer consumer) throws IOException, InterruptedException {
+    InputStream in = new BufferedInputStream(new ByteArrayInputStream(content));
+    if (isGzip(in)) {
+      in = new BufferedInputStream(new GZIPInputStream(in));
+    }
+    int first = skipWhitespace(in);
+    if (first == '<') {
+      return parseXml(sitemapUrl, in, consumer);
+    } else if (contentType != null && contentType.startsWith("text/plain")) {
+      parseText(sitemapUrl, in, consumer);
+      return true;
+    }
+    return false;
+  }
+
+  private static boolean isGzip(InputStream in) throws IOException {
+    in.mark(2);
+    int b1 = in.read();
+    int b2 = in.read();
+    in.reset();
+    return b1 == 0x1f && b2 == 0x8b;
+  }
+
+  /**
+   * Skip white space and a UTF-8 byte order mark, return the next byte (not
+   * consumed) or -1. Skipped bytes are consumed so that any amount of white
+   * space is skipped without exceeding the mark limit.
+   */
+  private static int skipWhitespace(InputStream in) throws IOException {
+    int b;
+    while (true) {
+      in.mark(3);
+      b = in.read();
+      if (b == 0xef) {
+        if (in.read() == 0xbb && in.read() == 0xbf) {
+          continue;
+        }
+        break;
+      }
+      if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+        break;
+      }
+    }
+    in.reset();
+    return b;
+  }
+
+  private boolean isValid(String baseUrl, String url) {
+    return !strict || SiteMapParser.urlIsValid(baseUrl, url);
+  }
+
+  private static String getBaseUrl(URL sitemapUrl) {
+    String url = sitemapUrl.toString();
+    return url.substring(0, url.lastIndexOf('/') + 1);
+  }
+
+  private void parseText(URL sitemapUrl, InputStream in,
+      SitemapUrlConsumer consumer) throws IOException, InterruptedException {
+    String baseUrl = getBaseUrl(sitemapUrl);
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(in, StandardCharsets.UTF_8));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+      if (line.charAt(0) == '\uFEFF') {
+        line = line.substring(1);
+      }
+      SiteMapURL url = new SiteMapURL(line, isValid(baseUrl, line));
+      if (url.getUrl() != null && url.isValid() && !consumer.accept(url)) {
+        return;
+      }
+    }
+  }
+
+  private boolean parseXml(URL sitemapUrl, InputStream in,
+      SitemapUrlConsumer consumer) throws IOException, InterruptedException {
+    String baseUrl = getBaseUrl(sitemapUrl);
+    XMLStreamReader reader = null;
+    try {
+      reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+      // root element
+      while (reader.hasNext()
+          && reader.next() != XMLStreamConstants.START_ELEMENT) {
+      }
+      if (!reader.isStartElement()
+          || !"urlset".equals(reader.getLocalName())) {
+        return false;
+      }
+      String ns = reader.getNamespaceURI();
+      if (ns == null) {
+        ns = "";
+      }
+      if (acceptedNamespaces != null && !acceptedNamespaces.contains(ns)) {
+        return false;
+      }
+
+      int depth = 1;
+      String loc = null, lastMod = null, changeFreq = null, priority = null;
+      String field = null;
+      StringBuilder text = new StringBuilder();
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+          String name = reader.getLocalName();
+          boolean sameNs = ns.equals(
+              reader.getNamespaceURI() == null ? "" : reader.getNamespaceURI());
+          if (depth == 2 && "url".equals(name) && sameNs) {
+            loc = lastMod = changeFreq = priority = null;
+          } else if (depth == 3 && sameNs) {
+            field = name;
+            text.setLength(0);
+          }
+        } else if (event == XMLStreamConstants.CHARACTERS
+            || event == XMLStreamConstants.CDATA) {
+          if (field != null) {
+            text.append(reader.getText());
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          if (depth == 3 && field != null) {
+            String value = text.toString().trim();
+            switch (field) {
+            case "loc":
+              loc = value;
+              break;
+            case "lastmod":
+              lastMod = value;
+              break;
+            case "changefreq":
+              changeFreq = value;
+              break;
+            case "priority":
+              priority = value;
+              break;
+            default:
+            }
+            field = null;
+          } else if (depth == 2 && "url".equals(reader.getLocalName())
+              && loc != null && !loc.isEmpty()) {
+            SiteMapURL url = new SiteMapURL(loc, lastMod, changeFreq, priority,
+                isValid(baseUrl, loc));
+            if (url.getUrl() != null && url.isValid()
+                && !consumer.accept(url)) {
+              return true;
+            }
+            loc = null;
+          }
+          depth--;
+        }
+      }
+      return true;
+    } catch (XMLStreamException e) {
+      throw new IOException("Failed to parse sitemap " + sitemapUrl, e);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (XMLStreamException e) {
+          // ignore
+        }
+      }
+    }
+  }
+
+}
@@ -57,6 +57,7 @@ public class URLPartitioner extends Partitioner<Text, Writable> implements Confi
   private String mode = PARTITION_MODE_HOST;
 
   private Map<String, Integer> partitionsPerDomain = null;
+  private CompactDomainLimits compactDomainLimits = null;
 
   private Configuration conf;
 
@@ -85,6 +86,12 @@ public class URLPartitioner extends Partitioner<Text, Writable> implements Confi
     if (limits == null) {
       return;
     }
+    if (limits instanceof CompactDomainLimits) {
+      // look up partitions directly, avoid to copy limits of all domains
+      compactDomainLimits = (CompactDomainLimits) limits;
+      LOG.info("Using binary domain limits for {} domains", limits.size());
+      return;
+    }
     for (Map.Entry<String, SelectorReducer.DomainLimits> e : limits.entrySet()) {
       if (e.getValue().numPartitions > 1) {
         if (partitionsPerDomain == null) {
@@ -129,6 +136,11 @@ public class URLPartitioner extends Partitioner<Text, Writable> implements Confi
       hashCode = domainName.hashCode();
       if (partitionsPerDomain != null && partitionsPerDomain.containsKey(domainName)) {
         hashCode += ((url.getHost().toLowerCase(Locale.ROOT).hashCode() & Integer.MAX_VALUE) % partitionsPerDomain.get(domainName));
+      } else if (compactDomainLimits != null) {
+        int numPartitions = compactDomainLimits.getNumPartitions(domainName);
+        if (numPartitions > 1) {
+          hashCode += ((url.getHost().toLowerCase(Locale.ROOT).hashCode() & Integer.MAX_VALUE) % numPartitions);
+        }
       }
     } else if (mode.equals(PARTITION_MODE_IP)) {
       try {
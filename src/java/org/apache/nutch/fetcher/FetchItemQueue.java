@@ -46,7 +46,7 @@ public class FetchItemQueue {
   AtomicInteger inProgress = new AtomicInteger();
   AtomicLong nextFetchTime = new AtomicLong();
   AtomicInteger exceptionCounter = new AtomicInteger();
-  long crawlDelay;
+  volatile long crawlDelay;
   long minCrawlDelay;
   int maxThreads;
   Text cookie;
@@ -144,6 +144,14 @@ public class FetchItemQueue {
     return cookie;
   }
 
+  public long getCrawlDelay() {
+    return crawlDelay;
+  }
+
+  public void setCrawlDelay(long crawlDelay) {
+    this.crawlDelay = crawlDelay;
+  }
+
   public synchronized void dump() {
     LOG.info("  maxThreads    = " + maxThreads);
     LOG.info("  inProgress    = " + inProgress.get());
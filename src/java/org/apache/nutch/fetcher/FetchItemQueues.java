@@ -118,6 +118,10 @@ public class FetchItemQueues {
     return queueMode;
   }
 
+  public String getQueueMode() {
+    return queueMode;
+  }
+
   public int getTotalSize() {
     return totalSize.get();
   }
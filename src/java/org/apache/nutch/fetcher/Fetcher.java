@@ -46,6 +46,7 @@ import org.apache.hadoop.util.ToolRunner;
 import org.apache.nutch.crawl.CrawlDatum;
 import org.apache.nutch.crawl.NutchWritable;
 import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.parse.ParseProfile;
 import org.apache.nutch.util.MimeUtil;
 import org.apache.nutch.util.NutchConfiguration;
 import org.apache.nutch.util.NutchJob;
@@ -521,6 +522,23 @@ public class Fetcher extends NutchTool implements Tool {
           totalOutlinksToFollow);
     }
 
+    if (isParsing(getConf())) {
+      ParseProfile profile = ParseProfile.get(getConf());
+      if (profile != ParseProfile.FULL) {
+        LOG.info("Fetcher: parse profile: {}", profile);
+      }
+      if (maxOutlinkDepth > 0 && !profile.needsOutlinks()) {
+        LOG.warn(
+            "Fetcher: parse profile {} does not extract outlinks, outlinks are not followed",
+            profile);
+      }
+      if (!profile.supportsSignature(getConf())) {
+        LOG.warn(
+            "Fetcher: parse profile {} does not extract the text used by {}, all pages get the same signature",
+            profile, getConf().get("db.signature.class"));
+      }
+    }
+
     Job job = NutchJob.getInstance(getConf());
     job.setJobName("FetchData");
     Configuration conf = job.getConfiguration();
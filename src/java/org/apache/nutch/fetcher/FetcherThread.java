@@ -727,6 +727,8 @@ public class FetcherThread extends Thread {
             LOG.warn("{} {} Error parsing: {}: {}", getName(),
                 Thread.currentThread().getId(), key,
                 StringUtils.stringifyException(e));
+          } finally {
+            this.parseUtil.updateCounters(context);
           }
         }
 
@@ -19,18 +19,14 @@ package org.apache.nutch.hostdb;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.text.SimpleDateFormat;
-import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.FloatWritable;
-import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
-import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
@@ -40,16 +36,14 @@ import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
+import org.apache.nutch.util.JexlUtil;
 import org.apache.nutch.util.NutchConfiguration;
 import org.apache.nutch.util.NutchJob;
 import org.apache.nutch.util.TimingUtil;
 import org.apache.nutch.util.SegmentReaderUtil;
 
-import org.apache.commons.jexl3.JexlBuilder;
 import org.apache.commons.jexl3.JexlContext;
 import org.apache.commons.jexl3.JexlScript;
-import org.apache.commons.jexl3.JexlEngine;
-import org.apache.commons.jexl3.MapContext;
 
 /**
  * @see <a href='https://commons.apache.org/proper/commons-jexl/reference/syntax.html'>Commons</a>
@@ -70,6 +64,7 @@ public class ReadHostDb extends Configured implements Tool {
     protected boolean fieldHeader = true;
     protected Text emptyText = new Text();
     protected JexlScript expr = null;
+    protected JexlUtil.HostDatumContext hostContext = new JexlUtil.HostDatumContext();
 
     @Override
     public void setup(Context context) {
@@ -78,11 +73,7 @@ public class ReadHostDb extends Configured implements Tool {
       fieldHeader = context.getConfiguration().getBoolean(HOSTDB_DUMP_HEADER, true);
       String expr = context.getConfiguration().get(HOSTDB_FILTER_EXPRESSION);
       if (expr != null) {
-        // Create or retrieve a JexlEngine
-        JexlEngine jexl = new JexlBuilder().silent(true).strict(true).create();
-        
-        // Create an expression object
-        this.expr = jexl.createScript(expr);
+        this.expr = JexlUtil.parseExpression(expr);
       }
     }
 
@@ -94,42 +85,8 @@ public class ReadHostDb extends Configured implements Tool {
       }
       
       if (expr != null) {
-        // Create a context and add data
-        JexlContext jcontext = new MapContext();
-        
-        // Set some fixed variables
-        jcontext.set("unfetched", datum.getUnfetched());
-        jcontext.set("fetched", datum.getFetched());
-        jcontext.set("gone", datum.getGone());
-        jcontext.set("redirTemp", datum.getRedirTemp());
-        jcontext.set("redirPerm", datum.getRedirPerm());
-        jcontext.set("redirs", datum.getRedirPerm() + datum.getRedirTemp());
-        jcontext.set("notModified", datum.getNotModified());
-        jcontext.set("ok", datum.getFetched() + datum.getNotModified());
-        jcontext.set("numRecords", datum.numRecords());
-        jcontext.set("dnsFailures", datum.getDnsFailures());
-        jcontext.set("connectionFailures", datum.getConnectionFailures());
-        
-        // Set metadata variables
-        if (datum.hasMetaData()) {
-          for (Map.Entry<Writable, Writable> entry : datum.getMetaData()
-              .entrySet()) {
-            Object value = entry.getValue();
+        JexlContext jcontext = hostContext.reset(datum);
 
-            if (value instanceof FloatWritable) {
-              FloatWritable fvalue = (FloatWritable) value;
-              Text tkey = (Text) entry.getKey();
-              jcontext.set(tkey.toString(), fvalue.get());
-            }
-
-            if (value instanceof IntWritable) {
-              IntWritable ivalue = (IntWritable) value;
-              Text tkey = (Text) entry.getKey();
-              jcontext.set(tkey.toString(), ivalue.get());
-            }
-          }
-        }
-        
         // Filter this record if evaluation did not pass
         try {
           if (!Boolean.TRUE.equals(expr.execute(jcontext))) {
@@ -46,6 +46,7 @@ import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
 import org.apache.nutch.parse.Parse;
 import org.apache.nutch.parse.ParseData;
+import org.apache.nutch.parse.ParseOutlinks;
 import org.apache.nutch.parse.ParseImpl;
 import org.apache.nutch.parse.ParseText;
 import org.apache.nutch.protocol.Content;
@@ -183,7 +184,8 @@ public class IndexerMapReduce extends Configured {
     public void map(Text key, Writable value,
         Context context) throws IOException, InterruptedException {
 
-      String urlString = filterUrl(normalizeUrl(key.toString(), normalize, 
+      String origUrl = key.toString();
+      String urlString = filterUrl(normalizeUrl(origUrl, normalize, 
                                      urlNormalizers), filter, urlFilters);
       if (urlString == null) {
         return;
@@ -191,6 +193,13 @@ public class IndexerMapReduce extends Configured {
         key.set(urlString);
       }
 
+      if (value instanceof ParseOutlinks && !urlString.equals(origUrl)) {
+        // outlinks are stored relative to the source URL
+        ParseOutlinks outlinks = (ParseOutlinks) value;
+        value = new ParseOutlinks(urlString, outlinks.getOutlinks(origUrl),
+            outlinks.getFetchTime());
+      }
+
       context.write(key, new NutchWritable(value));
     }
   }
@@ -249,6 +258,7 @@ public class IndexerMapReduce extends Configured {
       Content content = null;
       ParseData parseData = null;
       ParseText parseText = null;
+      ParseOutlinks parseOutlinks = null;
 
       for (NutchWritable val : values) {
         final Writable value = val.get(); // unwrap
@@ -289,6 +299,8 @@ public class IndexerMapReduce extends Configured {
           }
         } else if (value instanceof ParseText) {
           parseText = (ParseText) value;
+        } else if (value instanceof ParseOutlinks) {
+          parseOutlinks = (ParseOutlinks) value;
         } else if (value instanceof Content) {
           content = (Content)value;
         } else {
@@ -319,6 +331,11 @@ public class IndexerMapReduce extends Configured {
         return; // only have inlinks
       }
 
+      if (parseOutlinks != null) {
+        // outlinks stored separately
+        parseData = parseOutlinks.addTo(key.toString(), parseData);
+      }
+
       // Whether to delete pages marked as duplicates
       if (delete && dbDatum != null && dbDatum.getStatus() == CrawlDatum.STATUS_DB_DUPLICATE) {
         context.getCounter("IndexerStatus", "deleted (duplicates)").increment(1);
@@ -462,6 +479,10 @@ public class IndexerMapReduce extends Configured {
           CrawlDatum.PARSE_DIR_NAME));
       FileInputFormat.addInputPath(job, new Path(segment, ParseData.DIR_NAME));
       FileInputFormat.addInputPath(job, new Path(segment, ParseText.DIR_NAME));
+      Path parseOutlinks = new Path(segment, ParseOutlinks.DIR_NAME);
+      if (parseOutlinks.getFileSystem(conf).exists(parseOutlinks)) {
+        FileInputFormat.addInputPath(job, parseOutlinks);
+      }
 
       if (addBinaryContent) {
         FileInputFormat.addInputPath(job, new Path(segment, Content.DIR_NAME));
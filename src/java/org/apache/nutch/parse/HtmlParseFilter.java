@@ -46,4 +46,15 @@ public interface HtmlParseFilter extends Pluggable, Configurable {
    */
   ParseResult filter(Content content, ParseResult parseResult,
       HTMLMetaTags metaTags, DocumentFragment doc);
+
+  /**
+   * Whether the filter requires the DOM tree of the page. If no configured
+   * filter needs the DOM, HTML parsers may extract text and links without
+   * building a DOM tree and pass <code>null</code> as document to
+   * {@link #filter(Content, ParseResult, HTMLMetaTags, DocumentFragment)}.
+   * @return true if the filter reads the DOM (default), false otherwise
+   */
+  default boolean needsDocument() {
+    return true;
+  }
 }
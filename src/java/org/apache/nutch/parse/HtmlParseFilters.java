@@ -27,12 +27,32 @@ public class HtmlParseFilters {
 
   private HtmlParseFilter[] htmlParseFilters;
 
+  /** Whether filters are applied, see {@link ParseProfile#needsMetadata()} */
+  private boolean enabled;
+
   public static final String HTMLPARSEFILTER_ORDER = "htmlparsefilter.order";
 
   public HtmlParseFilters(Configuration conf) {
     htmlParseFilters = (HtmlParseFilter[]) PluginRepository.get(conf)
         .getOrderedPlugins(HtmlParseFilter.class, HtmlParseFilter.X_POINT_ID,
             HTMLPARSEFILTER_ORDER);
+    enabled = ParseProfile.get(conf).needsMetadata();
+  }
+
+  /**
+   * @return true if any of the configured filters requires the DOM tree of
+   *         the page, see {@link HtmlParseFilter#needsDocument()}
+   */
+  public boolean needsDocument() {
+    if (!enabled) {
+      return false;
+    }
+    for (HtmlParseFilter filter : htmlParseFilters) {
+      if (filter.needsDocument()) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
@@ -43,12 +63,18 @@ public class HtmlParseFilters {
    * @see Parser#getParse(Content)
    * @param metaTags a populated {@link HTMLMetaTags} object
    * @param doc a {@link DocumentFragment} (DOM) which can be processed in
-   * the filtering process.
-   * @return a filtered {@link ParseResult}
+   * the filtering process, null if no filter needs the DOM
+   * @return a filtered {@link ParseResult}, the unfiltered result if the
+   * configured {@link ParseProfile} does not need the metadata added by filters
    */
   public ParseResult filter(Content content, ParseResult parseResult,
       HTMLMetaTags metaTags, DocumentFragment doc) {
 
+    if (!enabled) {
+      // not needed by the parse profile
+      return parseResult;
+    }
+
     // loop on each filter
     for (int i = 0; i < this.htmlParseFilters.length; i++) {
       // call filter interface
@@ -0,0 +1,389 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.nutch.net.URLExemptionFilters;
+import org.apache.nutch.net.URLFilters;
+import org.apache.nutch.net.URLNormalizers;
+import org.apache.nutch.util.URLUtil;
+
+/**
+ * Filters, normalizes and deduplicates the outlinks of a page in one pass,
+ * see {@link #process(String, String, Outlink[], int, boolean)}. The result is
+ * the same as calling
+ * {@link #filterNormalize(String, String, String, boolean, boolean, boolean, URLFilters, URLExemptionFilters, URLNormalizers, String)}
+ * for every outlink, except that duplicate outlinks (same target URL and
+ * anchor) are kept only once. As before, duplicates count against the max.
+ * number of outlinks, so that the same outlinks are considered. Work is
+ * shared between outlinks:
+ * <ul>
+ * <li>the decision whether links to a host are internal or external (and
+ * ignored) is made once per host and page</li>
+ * <li>the results of URL normalizers and filters are cached in an LRU cache of
+ * <code>parser.outlinks.cache.size</code> URLs, shared by all pages processed
+ * by the same task. Normalizers and filters must not depend on the source
+ * page which is true for all URL normalizers and filters, in contrast to
+ * exemption filters.</li>
+ * </ul>
+ * The time spent in each stage is reported as counters, see
+ * {@link #updateCounters(TaskAttemptContext)}.
+ */
+public class OutlinkProcessor {
+
+  /**
+   * Max. number of URLs for which the result of normalizers and filters is
+   * cached, 0 to cache only per page
+   */
+  public static final String PARSER_OUTLINKS_CACHE_SIZE = "parser.outlinks.cache.size";
+
+  /** Counter group for the counters reported by {@link #updateCounters} */
+  public static final String COUNTER_GROUP = "OutlinkProcessing";
+
+  /** Cached result of a URL rejected by normalizers or filters */
+  private static final String REJECTED = "\u0000";
+
+  /** Decision about links to a host */
+  private enum HostDecision {
+    KEEP, SKIP, CHECK_EXEMPTION
+  }
+
+  private final URLFilters filters;
+  private final URLExemptionFilters exemptionFilters;
+  private final URLNormalizers normalizers;
+  private final boolean ignoreInternalLinks;
+  private final boolean ignoreExternalLinks;
+  private final boolean byDomain;
+  private final int maxOutlinkLength;
+  private final int cacheSize;
+
+  /** Results of normalizers and filters by original URL */
+  private final Map<String, String> cache;
+  /** Decisions about internal / external links by host, for the current page */
+  private final Map<String, HostDecision> hostDecisions = new HashMap<>();
+
+  /* not yet reported counts and times (nanoseconds) */
+  private long outlinks;
+  private long duplicates;
+  private long rejected;
+  private long cacheHits;
+  private long hostTime;
+  private long normalizeFilterTime;
+  private long dedupTime;
+
+  /**
+   * @param conf
+   *          configuration
+   * @param filters
+   *          URL filters, null if outlinks are not filtered
+   * @param exemptionFilters
+   *          URL exemption filters, null if not used
+   * @param normalizers
+   *          URL normalizers (scope outlink), null if outlinks are not
+   *          normalized
+   */
+  public OutlinkProcessor(Configuration conf, URLFilters filters,
+      URLExemptionFilters exemptionFilters, URLNormalizers normalizers) {
+    this.filters = filters;
+    this.exemptionFilters = exemptionFilters;
+    this.normalizers = normalizers;
+    ignoreInternalLinks = conf.getBoolean("db.ignore.internal.links", false);
+    ignoreExternalLinks = conf.getBoolean("db.ignore.external.links", false);
+    byDomain = "bydomain".equalsIgnoreCase(
+        conf.get("db.ignore.external.links.mode", "byHost"));
+    int maxLength = conf.getInt("db.max.outlink.length", 4096);
+    maxOutlinkLength = (maxLength < 0) ? Integer.MAX_VALUE : maxLength;
+    cacheSize = conf.getInt(PARSER_OUTLINKS_CACHE_SIZE, 10000);
+    if (cacheSize > 0) {
+      cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+          return size() > cacheSize;
+        }
+      };
+    } else {
+      cache = new HashMap<>();
+    }
+  }
+
+  /**
+   * Process the outlinks of a page. The URLs of the returned outlinks are
+   * replaced by the normalized URLs.
+   *
+   * @param fromUrl
+   *          URL of the source page
+   * @param origin
+   *          lower-cased host or domain name of the source page, only required
+   *          if internal or external links are ignored
+   * @param links
+   *          outlinks of the page
+   * @param maxOutlinks
+   *          max. number of accepted outlinks to consider, including
+   *          duplicates
+   * @param filterNormalize
+   *          whether to filter and normalize the outlinks. If false, outlinks
+   *          are only deduplicated (e.g. because they have been filtered and
+   *          normalized by the fetcher already).
+   * @return accepted outlinks
+   */
+  public synchronized List<Outlink> process(String fromUrl, String origin,
+      Outlink[] links, int maxOutlinks, boolean filterNormalize) {
+    int outlinksToStore = Math.min(maxOutlinks, links.length);
+    int validCount = 0;
+    List<Outlink> outlinkList = new ArrayList<>(outlinksToStore);
+    Set<Outlink> seen = new HashSet<>(outlinksToStore);
+    hostDecisions.clear();
+    if (cacheSize <= 0) {
+      cache.clear();
+    }
+    for (int i = 0; i < links.length && validCount < outlinksToStore; i++) {
+      outlinks++;
+      String toUrl = links[i].getToUrl();
+      if (filterNormalize) {
+        toUrl = filterNormalize(fromUrl, toUrl, origin);
+        if (toUrl == null) {
+          rejected++;
+          continue;
+        }
+      }
+      validCount++;
+
+      long start = System.nanoTime();
+      links[i].setUrl(toUrl);
+      boolean added = seen.add(links[i]);
+      dedupTime += System.nanoTime() - start;
+      if (!added) {
+        duplicates++;
+        continue;
+      }
+      outlinkList.add(links[i]);
+    }
+    return outlinkList;
+  }
+
+  private String filterNormalize(String fromUrl, String toUrl, String origin) {
+    if (toUrl.length() > maxOutlinkLength) {
+      return null;
+    }
+    // ignore links to self (or anchors within the page)
+    if (fromUrl.equals(toUrl)) {
+      return null;
+    }
+
+    if (ignoreExternalLinks || ignoreInternalLinks) {
+      long start = System.nanoTime();
+      boolean keep = checkHost(fromUrl, toUrl, origin);
+      hostTime += System.nanoTime() - start;
+      if (!keep) {
+        return null;
+      }
+    }
+
+    long start = System.nanoTime();
+    try {
+      String result = cache.get(toUrl);
+      if (result != null) {
+        cacheHits++;
+      } else {
+        result = normalizeFilter(toUrl, normalizers, filters,
+            URLNormalizers.SCOPE_OUTLINK);
+        if (result == null) {
+          result = REJECTED;
+        }
+        cache.put(toUrl, result);
+      }
+      return REJECTED.equals(result) ? null : result;
+    } finally {
+      normalizeFilterTime += System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * @return false if the link is ignored because it is internal resp. external
+   */
+  private boolean checkHost(String fromUrl, String toUrl, String origin) {
+    URL targetURL;
+    try {
+      targetURL = new URL(toUrl);
+    } catch (MalformedURLException e) {
+      return false;
+    }
+    String host = targetURL.getHost();
+    HostDecision decision = hostDecisions.get(host);
+    if (decision == null) {
+      decision = decideHost(targetURL, origin, ignoreInternalLinks,
+          ignoreExternalLinks, byDomain, exemptionFilters != null);
+      hostDecisions.put(host, decision);
+    }
+    return accept(decision, fromUrl, toUrl, exemptionFilters);
+  }
+
+  private static boolean accept(HostDecision decision, String fromUrl,
+      String toUrl, URLExemptionFilters exemptionFilters) {
+    switch (decision) {
+    case KEEP:
+      return true;
+    case CHECK_EXEMPTION:
+      return exemptionFilters.isExempted(fromUrl, toUrl);
+    default:
+      return false;
+    }
+  }
+
+  private static HostDecision decideHost(URL targetURL, String origin,
+      boolean ignoreInternalLinks, boolean ignoreExternalLinks,
+      boolean byDomain, boolean hasExemptionFilters) {
+    String target;
+    if (byDomain) {
+      target = URLUtil.getDomainName(targetURL).toLowerCase();
+    } else {
+      target = targetURL.getHost().toLowerCase();
+    }
+    boolean internal = target.equals(origin);
+    if (ignoreExternalLinks && !internal) {
+      if (!byDomain && hasExemptionFilters) {
+        // exemptions depend on the URLs, not only on the host
+        return HostDecision.CHECK_EXEMPTION;
+      }
+      return HostDecision.SKIP;
+    }
+    if (ignoreInternalLinks && internal) {
+      return HostDecision.SKIP;
+    }
+    return HostDecision.KEEP;
+  }
+
+  /**
+   * @return normalized URL, or null if rejected by normalizers or filters
+   */
+  private static String normalizeFilter(String url, URLNormalizers normalizers,
+      URLFilters filters, String scope) {
+    try {
+      if (normalizers != null) {
+        url = normalizers.normalize(url, scope);
+      }
+      if (filters != null && url != null) {
+        url = filters.filter(url);
+      }
+      return url;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Filter and normalize a single link without caching, e.g. a redirect or
+   * an outlink of a page parsed by the fetcher. Internal and external links
+   * are ignored the same way as by
+   * {@link #process(String, String, Outlink[], int, boolean)}, but the length
+   * of the link is not checked.
+   *
+   * @param fromUrl
+   *          URL of the source page
+   * @param toUrl
+   *          URL of the link target
+   * @param origin
+   *          lower-cased host or domain name of the source page, only required
+   *          if internal or external links are ignored
+   * @param ignoreInternalLinks
+   *          whether to ignore links to the same host resp. domain
+   * @param ignoreExternalLinks
+   *          whether to ignore links to other hosts resp. domains
+   * @param byDomain
+   *          whether links are internal by domain and not by host
+   * @param filters
+   *          URL filters, null if the link is not filtered
+   * @param exemptionFilters
+   *          URL exemption filters, null if not used
+   * @param normalizers
+   *          URL normalizers, null if the link is not normalized
+   * @param urlNormalizerScope
+   *          scope of the URL normalizers
+   * @return normalized URL, or null if the link is rejected
+   */
+  public static String filterNormalize(String fromUrl, String toUrl,
+      String origin, boolean ignoreInternalLinks, boolean ignoreExternalLinks,
+      boolean byDomain, URLFilters filters,
+      URLExemptionFilters exemptionFilters, URLNormalizers normalizers,
+      String urlNormalizerScope) {
+    // ignore links to self (or anchors within the page)
+    if (fromUrl.equals(toUrl)) {
+      return null;
+    }
+    if (ignoreExternalLinks || ignoreInternalLinks) {
+      URL targetURL;
+      try {
+        targetURL = new URL(toUrl);
+      } catch (MalformedURLException e) {
+        return null;
+      }
+      HostDecision decision = decideHost(targetURL, origin,
+          ignoreInternalLinks, ignoreExternalLinks, byDomain,
+          exemptionFilters != null);
+      if (!accept(decision, fromUrl, toUrl, exemptionFilters)) {
+        return null;
+      }
+    }
+    return normalizeFilter(toUrl, normalizers, filters, urlNormalizerScope);
+  }
+
+  /**
+   * Increment the counters (outlinks processed, rejected and duplicate
+   * outlinks, cache hits and the time spent in every stage) by the values
+   * accumulated since the last update.
+   *
+   * @param context
+   *          task context
+   */
+  public synchronized void updateCounters(TaskAttemptContext context) {
+    increment(context, "outlinks", outlinks);
+    increment(context, "rejected", rejected);
+    increment(context, "duplicates", duplicates);
+    increment(context, "cache_hits", cacheHits);
+    increment(context, "host_check_ms", toMillis(hostTime));
+    increment(context, "normalize_filter_ms", toMillis(normalizeFilterTime));
+    increment(context, "dedup_ms", toMillis(dedupTime));
+    outlinks = rejected = duplicates = cacheHits = 0;
+    hostTime = normalizeFilterTime = dedupTime = 0;
+  }
+
+  private static long toMillis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  private static void increment(TaskAttemptContext context, String name,
+      long n) {
+    if (n > 0) {
+      context.getCounter(COUNTER_GROUP, name).increment(n);
+    }
+  }
+
+}
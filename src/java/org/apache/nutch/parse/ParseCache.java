@@ -0,0 +1,385 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.protocol.Content;
+import org.apache.nutch.util.ObjectCache;
+import org.apache.nutch.util.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of parse results, so that byte-identical documents fetched again are
+ * not parsed again. Results are keyed by a digest of URL, content type,
+ * content and the parser configuration (see {@link #getKey(Content)}).
+ *
+ * The cache is an in-memory LRU map of <code>parser.cache.size</code> entries
+ * shared by all users of the same configuration (all fetcher threads resp.
+ * the parse task). Optionally, results missing in the in-memory cache are
+ * looked up in the parse data and text of a previous segment
+ * (<code>parser.cache.segment</code>): the key of every cached parse is stored
+ * in the parse metadata (as {@link #PARSE_CACHE_KEY}) and a parse of the
+ * previous segment is used if the key is the same.
+ */
+public class ParseCache {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Max. number of parse results held in memory, 0 to disable the cache */
+  public static final String PARSER_CACHE_SIZE = "parser.cache.size";
+
+  /** Segment to look up parse results missing in the in-memory cache */
+  public static final String PARSER_CACHE_SEGMENT = "parser.cache.segment";
+
+  /** Parse metadata key holding the cache key of a parse */
+  public static final String PARSE_CACHE_KEY = "nutch.parse.cache.key";
+
+  /**
+   * Prefixes of configuration properties which may change the parse result
+   * and are included in the cache key
+   */
+  private static final String[] CONF_PREFIXES = { "plugin.", "parse.",
+      "parser.", "parsefilter.", "htmlparsefilter.", "tika.", "mime." };
+
+  /** Properties not affecting the parse result */
+  private static final String[] CONF_EXCLUDED_PREFIXES = { "parser.cache.",
+      "parser.timeout", "parser.threads.", "parser.budget." };
+
+  private static final HashPartitioner<Text, Writable> PARTITIONER =
+      new HashPartitioner<>();
+
+  private final Configuration conf;
+  private final byte[] confDigest;
+  private final Map<String, ParseResult> cache;
+  private MapFile.Reader[] textReaders;
+  private MapFile.Reader[] dataReaders;
+  private MapFile.Reader[] outlinksReaders;
+
+  /* counters not yet reported */
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong segmentHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  ParseCache(Configuration conf) {
+    this.conf = conf;
+    confDigest = getConfDigest(conf);
+    final int size = conf.getInt(PARSER_CACHE_SIZE, 0);
+    cache = new LinkedHashMap<String, ParseResult>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<String, ParseResult> eldest) {
+        return size() > size;
+      }
+    };
+
+    String segment = conf.get(PARSER_CACHE_SEGMENT);
+    if (segment != null && !segment.isEmpty()) {
+      try {
+        openSegment(new Path(segment));
+      } catch (IOException e) {
+        LOG.warn("Failed to open segment {} to seed parse cache: {}", segment,
+            e.getMessage());
+        textReaders = null;
+        dataReaders = null;
+      }
+    }
+  }
+
+  private void openSegment(Path segment) throws IOException {
+    FileSystem fs = segment.getFileSystem(conf);
+    Path text = new Path(segment, ParseText.DIR_NAME);
+    Path data = new Path(segment, ParseData.DIR_NAME);
+    if (!fs.exists(text) || !fs.exists(data)) {
+      LOG.warn("Segment {} has no parse text or data, not used to seed parse cache",
+          segment);
+      return;
+    }
+    LOG.info("Seeding parse cache from segment {}", segment);
+    textReaders = MapFileOutputFormat.getReaders(text, conf);
+    dataReaders = MapFileOutputFormat.getReaders(data, conf);
+    Path outlinks = new Path(segment, ParseOutlinks.DIR_NAME);
+    if (fs.exists(outlinks)) {
+      outlinksReaders = MapFileOutputFormat.getReaders(outlinks, conf);
+    }
+  }
+
+  /**
+   * Get the cache shared by all users of the given configuration.
+   *
+   * @param conf
+   *          configuration
+   * @return shared cache, null if the cache is disabled
+   */
+  static ParseCache get(Configuration conf) {
+    if (conf.getInt(PARSER_CACHE_SIZE, 0) <= 0) {
+      return null;
+    }
+    ObjectCache objectCache = ObjectCache.get(conf);
+    String key = ParseCache.class.getName();
+    synchronized (objectCache) {
+      ParseCache cache = (ParseCache) objectCache.getObject(key);
+      if (cache == null) {
+        cache = new ParseCache(conf);
+        objectCache.setObject(key, cache);
+      }
+      return cache;
+    }
+  }
+
+  private static MessageDigest getDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Digest of all properties which may change the parse result */
+  private static byte[] getConfDigest(Configuration conf) {
+    TreeMap<String, String> props = new TreeMap<>();
+    for (Map.Entry<String, String> e : conf) {
+      String name = e.getKey();
+      if (startsWithAny(name, CONF_PREFIXES)
+          && !startsWithAny(name, CONF_EXCLUDED_PREFIXES)) {
+        props.put(name, e.getValue());
+      }
+    }
+    MessageDigest digest = getDigest();
+    for (Map.Entry<String, String> e : props.entrySet()) {
+      digest.update(e.getKey().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+      digest.update(e.getValue().getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    return digest.digest();
+  }
+
+  private static boolean startsWithAny(String name, String[] prefixes) {
+    for (String prefix : prefixes) {
+      if (name.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Get the cache key of a document: the hexadecimal MD5 digest of the URL,
+   * content type, content and the parser configuration. The full URL is part
+   * of the key because relative links (including links consisting only of a
+   * query or fragment) are resolved against it, and links to the document
+   * itself are detected by comparing with it.
+   *
+   * @param content
+   *          document to parse
+   * @return cache key
+   */
+  public String getKey(Content content) {
+    MessageDigest digest = getDigest();
+    digest.update(content.getUrl().getBytes(StandardCharsets.UTF_8));
+    digest.update((byte) 0);
+    String contentType = content.getContentType();
+    if (contentType != null) {
+      digest.update(contentType.getBytes(StandardCharsets.UTF_8));
+    }
+    digest.update((byte) 0);
+    if (content.getContent() != null) {
+      digest.update(content.getContent());
+    }
+    digest.update(confDigest);
+    return StringUtil.toHexString(digest.digest());
+  }
+
+  /**
+   * Look up the parse result of a document, first in memory, then in the
+   * segment configured by <code>parser.cache.segment</code>.
+   *
+   * @param key
+   *          cache key, see {@link #getKey(Content)}
+   * @param content
+   *          document to parse
+   * @return a copy of the cached parse result holding the metadata of the
+   *         given content, null if no parse result is cached
+   */
+  public ParseResult get(String key, Content content) {
+    ParseResult cached;
+    synchronized (this) {
+      cached = cache.get(key);
+    }
+    if (cached != null) {
+      hits.incrementAndGet();
+    } else if (dataReaders != null) {
+      // read the segment without holding the cache lock
+      cached = getFromSegment(key, content.getUrl());
+      if (cached != null) {
+        segmentHits.incrementAndGet();
+        synchronized (this) {
+          cache.put(key, cached);
+        }
+      }
+    }
+    if (cached == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    LOG.debug("Parse cache hit for {}", content.getUrl());
+    return copy(cached, content.getUrl(), content.getMetadata());
+  }
+
+  private ParseResult getFromSegment(String key, String url) {
+    Text urlKey = new Text(url);
+    ParseData data = new ParseData();
+    try {
+      // segments written by ParseSegment are partitioned by hash of URL, try
+      // the part of the URL first, then the other parts (e.g., if parsed by
+      // the fetcher)
+      int numParts = dataReaders.length;
+      int first = PARTITIONER.getPartition(urlKey, null, numParts);
+      for (int n = 0; n < numParts; n++) {
+        int i = (first + n) % numParts;
+        if (get(dataReaders[i], urlKey, data) == null) {
+          continue;
+        }
+        if (!key.equals(data.getParseMeta().get(PARSE_CACHE_KEY))) {
+          return null;
+        }
+        // parse text and outlinks are written into parts with the same
+        // number as the parse data
+        if (outlinksReaders != null && i < outlinksReaders.length) {
+          ParseOutlinks outlinks = new ParseOutlinks();
+          if (get(outlinksReaders[i], urlKey, outlinks) != null) {
+            data = outlinks.addTo(url, data);
+          }
+        }
+        ParseText text = new ParseText();
+        if (i < textReaders.length
+            && get(textReaders[i], urlKey, text) != null) {
+          ParseResult result = new ParseResult(url);
+          result.put(urlKey, text, data);
+          return result;
+        }
+        return null;
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to look up {} in parse cache segment: {}", url,
+          e.getMessage());
+    }
+    return null;
+  }
+
+  /** MapFile readers are not thread-safe, lookups are synchronized per part */
+  private static Writable get(MapFile.Reader reader, Text key, Writable value)
+      throws IOException {
+    synchronized (reader) {
+      return reader.get(key, value);
+    }
+  }
+
+  /**
+   * Cache a parse result. Only successful results are cached. The cache key
+   * is written into the parse metadata of the given result (not a copy of
+   * it), so that it is stored in the segment and the parse can be looked up
+   * by a later fetch or parse job via <code>parser.cache.segment</code>.
+   *
+   * @param key
+   *          cache key, see {@link #getKey(Content)}
+   * @param content
+   *          parsed document
+   * @param result
+   *          parse result
+   */
+  public void put(String key, Content content, ParseResult result) {
+    if (result == null || !result.isSuccess()) {
+      return;
+    }
+    Parse parse = result.get(content.getUrl());
+    if (parse != null) {
+      parse.getData().getParseMeta().set(PARSE_CACHE_KEY, key);
+    }
+    // the result is modified later (metadata added, outlinks normalized)
+    ParseResult copy = copy(result, content.getUrl(), null);
+    synchronized (this) {
+      cache.put(key, copy);
+    }
+  }
+
+  /**
+   * Deep copy of a parse result. If content metadata is given, it replaces
+   * the content metadata of the parse of the document URL.
+   */
+  private ParseResult copy(ParseResult result, String url,
+      Metadata contentMeta) {
+    ParseResult copy = new ParseResult(url);
+    for (Map.Entry<Text, Parse> entry : result) {
+      Parse parse = entry.getValue();
+      ParseData data = WritableUtils.clone(parse.getData(), conf);
+      Text key = new Text(entry.getKey());
+      if (contentMeta != null && url.equals(entry.getKey().toString())) {
+        data = new ParseData(data.getStatus(), data.getTitle(),
+            data.getOutlinks(), contentMeta, data.getParseMeta());
+      }
+      copy.put(key, new ParseText(parse.getText()), data);
+    }
+    return copy;
+  }
+
+  /**
+   * Increment the counters of cache hits and misses by the lookups which
+   * happened since the last update.
+   *
+   * @param context
+   *          task context
+   */
+  void updateCounters(TaskInputOutputContext<?, ?, ?, ?> context) {
+    increment(context, "cache_hit", hits);
+    increment(context, "cache_hit_segment", segmentHits);
+    increment(context, "cache_miss", misses);
+  }
+
+  private static void increment(TaskInputOutputContext<?, ?, ?, ?> context,
+      String name, AtomicLong count) {
+    long n = count.getAndSet(0);
+    if (n > 0) {
+      context.getCounter(ParseExecutor.COUNTER_GROUP, name).increment(n);
+    }
+  }
+
+}
@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.nutch.protocol.Content;
+import org.apache.nutch.util.ObjectCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Bounded pool of parser threads shared by all {@link ParseUtil} instances
+ * using the same configuration, see {@link #get(Configuration)}.
+ *
+ * Parsers which do not react on interruption keep running after they have
+ * been cancelled because of <code>parser.timeout</code> or because they
+ * exceeded their CPU time (<code>parser.budget.cpu</code>) or memory
+ * allocation budget (<code>parser.budget.allocation</code>). Such abandoned
+ * parses are quarantined: they keep their slot in the pool until they
+ * eventually finish. The pool size (<code>parser.threads.max</code>) thus
+ * limits the number of threads (and CPUs) runaway parses may occupy. If all
+ * slots are taken, a parse waits up to <code>parser.timeout</code> for a free
+ * slot and fails otherwise.
+ */
+public class ParseExecutor {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /** Max. number of parser threads, including abandoned ones */
+  public static final String PARSER_THREADS_MAX = "parser.threads.max";
+
+  /** CPU time budget of a single parse (seconds), -1 if unlimited */
+  public static final String PARSER_BUDGET_CPU = "parser.budget.cpu";
+
+  /** Memory allocation budget of a single parse (bytes), -1 if unlimited */
+  public static final String PARSER_BUDGET_ALLOCATION = "parser.budget.allocation";
+
+  /** Counter group for the counters reported by {@link #updateCounters} */
+  public static final String COUNTER_GROUP = "ParserStatus";
+
+  /** Interval to check the CPU time and allocation budgets (milliseconds) */
+  private static final long BUDGET_CHECK_INTERVAL = 500;
+
+  private final ThreadPoolExecutor executor;
+  private final Semaphore slots;
+  private final int maxThreads;
+  private final long cpuBudget;
+  private final long allocationBudget;
+  private final ThreadMXBean threadBean;
+  private final com.sun.management.ThreadMXBean allocationBean;
+
+  /** Currently running abandoned parses */
+  private final AtomicInteger abandonedRunning = new AtomicInteger();
+
+  /* counters not yet reported */
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong budgetExceeded = new AtomicLong();
+  private final AtomicLong abandoned = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+
+  /** Parse task, knows the thread it is running in */
+  private class ParseTask extends ParseCallable {
+    private Thread thread;
+    private long cpuStart;
+    private long allocationStart;
+    private boolean finished = false;
+    private boolean isAbandoned = false;
+    private boolean cancelled = false;
+    private long abandonedTime;
+    private final String url;
+
+    ParseTask(Parser p, Content content) {
+      super(p, content);
+      url = content.getUrl();
+    }
+
+    @Override
+    public ParseResult call() throws Exception {
+      synchronized (this) {
+        if (cancelled) {
+          // cancelled before it started, slot already released
+          return null;
+        }
+        thread = Thread.currentThread();
+        if (cpuBudget > 0) {
+          cpuStart = threadBean.getThreadCpuTime(thread.getId());
+        }
+        if (allocationBudget > 0) {
+          allocationStart = allocationBean
+              .getThreadAllocatedBytes(thread.getId());
+        }
+      }
+      try {
+        return super.call();
+      } finally {
+        synchronized (this) {
+          finished = true;
+          thread = null;
+          if (isAbandoned) {
+            int running = abandonedRunning.decrementAndGet();
+            LOG.info(
+                "Abandoned parse of {} finished after {} ms, {} abandoned parses still running",
+                url, (System.currentTimeMillis() - abandonedTime), running);
+          }
+        }
+        slots.release();
+      }
+    }
+
+    /**
+     * @return a description of the exceeded budget, null if the parse is
+     *         within its budgets
+     */
+    synchronized String checkBudgets() {
+      if (thread == null) {
+        return null;
+      }
+      long id = thread.getId();
+      if (cpuBudget > 0) {
+        long cpuTime = threadBean.getThreadCpuTime(id) - cpuStart;
+        if (cpuTime > cpuBudget) {
+          return "CPU time budget exceeded (" + (cpuTime / 1000000) + " ms)";
+        }
+      }
+      if (allocationBudget > 0) {
+        long allocated = allocationBean.getThreadAllocatedBytes(id)
+            - allocationStart;
+        if (allocated > allocationBudget) {
+          return "allocation budget exceeded (" + allocated + " bytes)";
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Mark the task as abandoned if it is still running.
+     */
+    synchronized void abandon() {
+      if (finished || isAbandoned || cancelled) {
+        return;
+      }
+      if (thread == null) {
+        // cancelled before it started
+        cancelled = true;
+        slots.release();
+        return;
+      }
+      isAbandoned = true;
+      abandonedTime = System.currentTimeMillis();
+      abandoned.incrementAndGet();
+      int running = abandonedRunning.incrementAndGet();
+      LOG.warn("Abandoned parse of {} still running in thread {}, {} of {} parser threads abandoned",
+          url, thread.getName(), running, maxThreads);
+    }
+  }
+
+  ParseExecutor(Configuration conf) {
+    maxThreads = conf.getInt(PARSER_THREADS_MAX, 64);
+    slots = new Semaphore(maxThreads);
+    executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+        new ThreadFactoryBuilder().setNameFormat("parse-%d").setDaemon(true)
+            .build());
+    executor.allowCoreThreadTimeOut(true);
+
+    threadBean = ManagementFactory.getThreadMXBean();
+    long cpu = conf.getLong(PARSER_BUDGET_CPU, -1);
+    if (cpu > 0 && !threadBean.isThreadCpuTimeSupported()) {
+      LOG.warn("Thread CPU time not supported by JVM, ignoring {}",
+          PARSER_BUDGET_CPU);
+      cpu = -1;
+    } else if (cpu > 0) {
+      threadBean.setThreadCpuTimeEnabled(true);
+    }
+    cpuBudget = cpu > 0 ? TimeUnit.SECONDS.toNanos(cpu) : -1;
+
+    long allocation = conf.getLong(PARSER_BUDGET_ALLOCATION, -1);
+    if (threadBean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) threadBean)
+            .isThreadAllocatedMemorySupported()) {
+      allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+      if (allocation > 0) {
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+      }
+    } else {
+      if (allocation > 0) {
+        LOG.warn("Thread allocated memory not supported by JVM, ignoring {}",
+            PARSER_BUDGET_ALLOCATION);
+        allocation = -1;
+      }
+      allocationBean = null;
+    }
+    allocationBudget = allocation;
+  }
+
+  /**
+   * Get the executor shared by all users of the given configuration.
+   *
+   * @param conf
+   *          configuration
+   * @return shared executor
+   */
+  static ParseExecutor get(Configuration conf) {
+    ObjectCache objectCache = ObjectCache.get(conf);
+    String key = ParseExecutor.class.getName();
+    synchronized (objectCache) {
+      ParseExecutor executor = (ParseExecutor) objectCache.getObject(key);
+      if (executor == null) {
+        executor = new ParseExecutor(conf);
+        objectCache.setObject(key, executor);
+      }
+      return executor;
+    }
+  }
+
+  /**
+   * Run a parser in a thread of the pool. The parse is cancelled (and, if
+   * still running, abandoned) if it does not finish within the timeout or
+   * exceeds its budgets.
+   *
+   * @param p
+   *          parser
+   * @param content
+   *          content to parse
+   * @param timeout
+   *          max. time (seconds) to wait for a free parser thread and again
+   *          for the parse to finish
+   * @return parse result, null if the parse failed, timed out, exceeded its
+   *         budgets or no parser thread became available in time
+   */
+  ParseResult parse(Parser p, Content content, int timeout) {
+    String url = content.getUrl();
+    try {
+      if (!slots.tryAcquire(timeout, TimeUnit.SECONDS)) {
+        rejected.incrementAndGet();
+        LOG.warn(
+            "No parser thread available for {}, {} of {} parser threads abandoned",
+            url, abandonedRunning.get(), maxThreads);
+        return null;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+
+    ParseTask task = new ParseTask(p, content);
+    Future<ParseResult> future;
+    try {
+      future = executor.submit(task);
+    } catch (RuntimeException e) {
+      slots.release();
+      throw e;
+    }
+    long deadline = System.currentTimeMillis()
+        + TimeUnit.SECONDS.toMillis(timeout);
+    boolean checkBudgets = (cpuBudget > 0 || allocationBudget > 0);
+    try {
+      while (true) {
+        long wait = deadline - System.currentTimeMillis();
+        if (checkBudgets) {
+          wait = Math.min(wait, BUDGET_CHECK_INTERVAL);
+        }
+        try {
+          return future.get(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+          if (System.currentTimeMillis() >= deadline) {
+            timeouts.incrementAndGet();
+            LOG.warn("Parsing of {} with {} timed out after {} s", url,
+                p.getClass().getName(), timeout);
+            break;
+          }
+          String exceeded = task.checkBudgets();
+          if (exceeded != null) {
+            budgetExceeded.incrementAndGet();
+            LOG.warn("Parsing of {} with {}: {}", url, p.getClass().getName(),
+                exceeded);
+            break;
+          }
+        }
+      }
+    } catch (ExecutionException e) {
+      LOG.warn("Error parsing " + url + " with " + p.getClass().getName(),
+          e.getCause());
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    future.cancel(true);
+    task.abandon();
+    return null;
+  }
+
+  /** @return number of currently running abandoned parses */
+  int getAbandonedRunning() {
+    return abandonedRunning.get();
+  }
+
+  /**
+   * Increment the counters (timeouts, exceeded budgets, abandoned threads and
+   * rejected parses) by the events which happened since the last update. Every
+   * event is reported only once, even if multiple threads update the counters
+   * of a shared executor.
+   *
+   * @param context
+   *          task context
+   */
+  void updateCounters(TaskInputOutputContext<?, ?, ?, ?> context) {
+    increment(context, "timeout", timeouts);
+    increment(context, "budget_exceeded", budgetExceeded);
+    increment(context, "abandoned_threads", abandoned);
+    increment(context, "no_thread_available", rejected);
+  }
+
+  private static void increment(TaskInputOutputContext<?, ?, ?, ?> context,
+      String name, AtomicLong count) {
+    long n = count.getAndSet(0);
+    if (n > 0) {
+      context.getCounter(COUNTER_GROUP, name).increment(n);
+    }
+  }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.MalformedURLException;
+
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.VersionMismatchException;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * The outlinks of a page, stored separately from the {@link ParseData} in
+ * the segment subdirectory <code>parse_outlinks</code> if
+ * <code>parser.store.outlinks.separate</code> is true. Tools which need only
+ * the outlinks (LinkDb, WebGraph) then read this column instead of the
+ * complete parse data.
+ *
+ * Outlink URLs are stored as the length of the prefix shared with the URL of
+ * the source page and the remaining suffix. Because the source URL is the key
+ * of the record, it must be passed to {@link #getOutlinks(String)} to restore
+ * the outlinks.
+ */
+public final class ParseOutlinks implements Writable {
+
+  public static final String DIR_NAME = "parse_outlinks";
+
+  /** Whether to store outlinks in <code>parse_outlinks</code> */
+  public static final String STORE_SEPARATE = "parser.store.outlinks.separate";
+
+  private static final byte VERSION = 1;
+
+  private static final int[] EMPTY_PREFIXES = new int[0];
+  private static final String[] EMPTY_STRINGS = new String[0];
+  private static final MapWritable[] EMPTY_METADATA = new MapWritable[0];
+
+  private long fetchTime;
+  private int[] prefixLengths = EMPTY_PREFIXES;
+  private String[] suffixes = EMPTY_STRINGS;
+  private String[] anchors = EMPTY_STRINGS;
+  private MapWritable[] metadata = EMPTY_METADATA;
+
+  public ParseOutlinks() {
+  }
+
+  /**
+   * @param fromUrl
+   *          URL of the source page
+   * @param outlinks
+   *          outlinks of the source page
+   * @param fetchTime
+   *          fetch time of the source page, used as link timestamp
+   */
+  public ParseOutlinks(String fromUrl, Outlink[] outlinks, long fetchTime) {
+    this.fetchTime = fetchTime;
+    int n = outlinks.length;
+    prefixLengths = new int[n];
+    suffixes = new String[n];
+    anchors = new String[n];
+    metadata = new MapWritable[n];
+    for (int i = 0; i < n; i++) {
+      String toUrl = outlinks[i].getToUrl();
+      int prefix = commonPrefixLength(fromUrl, toUrl);
+      prefixLengths[i] = prefix;
+      suffixes[i] = toUrl.substring(prefix);
+      anchors[i] = outlinks[i].getAnchor();
+      MapWritable md = outlinks[i].getMetadata();
+      metadata[i] = (md != null && md.size() > 0) ? md : null;
+    }
+  }
+
+  /**
+   * Length of the common prefix of two strings, not splitting a surrogate
+   * pair.
+   */
+  static int commonPrefixLength(String a, String b) {
+    int max = Math.min(a.length(), b.length());
+    int i = 0;
+    while (i < max && a.charAt(i) == b.charAt(i)) {
+      i++;
+    }
+    if (i > 0 && Character.isHighSurrogate(a.charAt(i - 1))) {
+      i--;
+    }
+    return i;
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    byte version = in.readByte();
+    if (version != VERSION) {
+      throw new VersionMismatchException(VERSION, version);
+    }
+    fetchTime = WritableUtils.readVLong(in);
+    int n = WritableUtils.readVInt(in);
+    prefixLengths = new int[n];
+    suffixes = new String[n];
+    anchors = new String[n];
+    metadata = new MapWritable[n];
+    for (int i = 0; i < n; i++) {
+      prefixLengths[i] = WritableUtils.readVInt(in);
+      suffixes[i] = Text.readString(in);
+      anchors[i] = Text.readString(in);
+      if (in.readBoolean()) {
+        metadata[i] = new MapWritable();
+        metadata[i].readFields(in);
+      }
+    }
+  }
+
+  public void write(DataOutput out) throws IOException {
+    out.writeByte(VERSION);
+    WritableUtils.writeVLong(out, fetchTime);
+    WritableUtils.writeVInt(out, suffixes.length);
+    for (int i = 0; i < suffixes.length; i++) {
+      WritableUtils.writeVInt(out, prefixLengths[i]);
+      Text.writeString(out, suffixes[i]);
+      Text.writeString(out, anchors[i]);
+      if (metadata[i] != null) {
+        out.writeBoolean(true);
+        metadata[i].write(out);
+      } else {
+        out.writeBoolean(false);
+      }
+    }
+  }
+
+  public static ParseOutlinks read(DataInput in) throws IOException {
+    ParseOutlinks outlinks = new ParseOutlinks();
+    outlinks.readFields(in);
+    return outlinks;
+  }
+
+  /**
+   * Restore the outlinks.
+   *
+   * @param fromUrl
+   *          URL of the source page (the key of the record)
+   * @return outlinks
+   * @throws IOException
+   *           if the outlinks do not match the source URL
+   */
+  public Outlink[] getOutlinks(String fromUrl) throws IOException {
+    Outlink[] outlinks = new Outlink[suffixes.length];
+    for (int i = 0; i < outlinks.length; i++) {
+      if (prefixLengths[i] > fromUrl.length()) {
+        throw new IOException("Outlinks not stored for source URL " + fromUrl);
+      }
+      String toUrl = fromUrl.substring(0, prefixLengths[i]) + suffixes[i];
+      try {
+        outlinks[i] = new Outlink(toUrl, anchors[i]);
+      } catch (MalformedURLException e) {
+        // not thrown
+        throw new IOException(e);
+      }
+      outlinks[i].setMetadata(metadata[i]);
+    }
+    return outlinks;
+  }
+
+  /**
+   * Add the outlinks to parse data stored without outlinks.
+   *
+   * @param fromUrl
+   *          URL of the source page
+   * @param parseData
+   *          parse data of the source page
+   * @return parse data holding the outlinks
+   * @throws IOException
+   *           if the outlinks do not match the source URL
+   */
+  public ParseData addTo(String fromUrl, ParseData parseData)
+      throws IOException {
+    return new ParseData(parseData.getStatus(), parseData.getTitle(),
+        getOutlinks(fromUrl), parseData.getContentMeta(),
+        parseData.getParseMeta());
+  }
+
+  /** @return fetch time of the source page */
+  public long getFetchTime() {
+    return fetchTime;
+  }
+
+  /** @return number of outlinks */
+  public int size() {
+    return suffixes.length;
+  }
+
+}
@@ -54,7 +54,6 @@ import org.apache.nutch.net.URLNormalizers;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
@@ -158,14 +157,17 @@ public class ParseOutputFormat extends OutputFormat<Text, Parse> {
     // NUTCH-2435 - parameter "parser.store.text" allowing to choose whether to
     // store 'parse_text' directory or not:
     final boolean storeText = conf.getBoolean("parser.store.text", true);
+    // store outlinks in 'parse_outlinks' instead of 'parse_data'
+    final boolean storeOutlinksSeparate = conf
+        .getBoolean(ParseOutlinks.STORE_SEPARATE, false);
 
     int maxOutlinksPerPage = conf.getInt("db.max.outlinks.per.page", 100);
     final int maxOutlinks = (maxOutlinksPerPage < 0) ? Integer.MAX_VALUE
         : maxOutlinksPerPage;
-    int maxOutlinkL = conf.getInt("db.max.outlink.length", 4096);
-    final int maxOutlinkLength = (maxOutlinkL < 0) ? Integer.MAX_VALUE
-        : maxOutlinkL;
     final boolean isParsing = conf.getBoolean("fetcher.parse", true);
+    // outlinks are filtered and normalized in a batch per page
+    final OutlinkProcessor outlinkProcessor = new OutlinkProcessor(conf,
+        filters, exemptionFilters, normalizers);
     final CompressionType compType = SequenceFileOutputFormat
         .getOutputCompressionType(context);
     Path out = FileOutputFormat.getOutputPath(context);
@@ -173,6 +175,7 @@ public class ParseOutputFormat extends OutputFormat<Text, Parse> {
     Path text = new Path(new Path(out, ParseText.DIR_NAME), name);
     Path data = new Path(new Path(out, ParseData.DIR_NAME), name);
     Path crawl = new Path(new Path(out, CrawlDatum.PARSE_DIR_NAME), name);
+    Path outlinks = new Path(new Path(out, ParseOutlinks.DIR_NAME), name);
 
     final String[] parseMDtoCrawlDB = conf.get("db.parsemeta.to.crawldb", "")
         .split(" *, *");
@@ -202,7 +205,18 @@ public class ParseOutputFormat extends OutputFormat<Text, Parse> {
 
     final MapFile.Writer dataOut = new MapFile.Writer(conf, data,
         dKeyClassOpt, dValClassOpt, dCompOpt, dProgressOpt);
-    
+
+    final MapFile.Writer outlinksOut;
+    if (storeOutlinksSeparate) {
+      outlinksOut = new MapFile.Writer(conf, outlinks,
+          MapFile.Writer.keyClass(Text.class),
+          SequenceFile.Writer.valueClass(ParseOutlinks.class),
+          SequenceFile.Writer.compression(compType),
+          SequenceFile.Writer.progressable((Progressable) context));
+    } else {
+      outlinksOut = null;
+    }
+
     final SequenceFile.Writer crawlOut = SequenceFile.createWriter(conf, SequenceFile.Writer.file(crawl),
         SequenceFile.Writer.keyClass(Text.class),
         SequenceFile.Writer.valueClass(CrawlDatum.class),
@@ -292,36 +306,23 @@ public class ParseOutputFormat extends OutputFormat<Text, Parse> {
 
         // collect outlinks for subsequent db update
         Outlink[] links = parseData.getOutlinks();
-        int outlinksToStore = Math.min(maxOutlinks, links.length);
 
-        int validCount = 0;
+        // only normalize and filter if fetcher.parse = false
+        List<Outlink> outlinkList = outlinkProcessor.process(fromUrl, origin,
+            links, maxOutlinks, !isParsing);
+
         CrawlDatum adjust = null;
         List<Entry<Text, CrawlDatum>> targets = new ArrayList<>(
-            outlinksToStore);
-        List<Outlink> outlinkList = new ArrayList<>(outlinksToStore);
-        for (int i = 0; i < links.length && validCount < outlinksToStore; i++) {
-          String toUrl = links[i].getToUrl();
-
-          // only normalize and filter if fetcher.parse = false
-          if (!isParsing) {
-            if (toUrl.length() > maxOutlinkLength) {
-              continue;
-            }
-            toUrl = ParseOutputFormat.filterNormalize(fromUrl, toUrl, origin,
-                ignoreInternalLinks, ignoreExternalLinks, ignoreExternalLinksMode, filters, exemptionFilters, normalizers);
-            if (toUrl == null) {
-              continue;
-            }
-          }
-
+            outlinkList.size());
+        for (Outlink outlink : outlinkList) {
           CrawlDatum target = new CrawlDatum(CrawlDatum.STATUS_LINKED, interval);
           target.setParentLink(fromUrl);
-          Text targetUrl = new Text(toUrl);
+          Text targetUrl = new Text(outlink.getToUrl());
 
           // see if the outlink has any metadata attached
           // and if so pass that to the crawldatum so that
           // the initial score or distribution can use that
-          MapWritable outlinkMD = links[i].getMetadata();
+          MapWritable outlinkMD = outlink.getMetadata();
           if (outlinkMD != null) {
             target.getMetaData().putAll(outlinkMD);
           }
@@ -335,11 +336,6 @@ public class ParseOutputFormat extends OutputFormat<Text, Parse> {
           }
 
           targets.add(new SimpleEntry(targetUrl, target));
-
-          // overwrite URL in Outlink object with normalized URL (NUTCH-1174)
-          links[i].setUrl(toUrl);
-          outlinkList.add(links[i]);
-          validCount++;
         }
 
         try {
@@ -358,6 +354,11 @@ public class ParseOutputFormat extends OutputFormat<Text, Parse> {
 
         Outlink[] filteredLinks = outlinkList.toArray(new Outlink[outlinkList
             .size()]);
+        if (outlinksOut != null) {
+          outlinksOut.append(key, new ParseOutlinks(fromUrl, filteredLinks,
+              getFetchTime(parseData)));
+          filteredLinks = new Outlink[0];
+        }
         parseData = new ParseData(parseData.getStatus(), parseData.getTitle(),
             filteredLinks, parseData.getContentMeta(), parseData.getParseMeta());
         dataOut.append(key, parseData);
@@ -381,7 +382,20 @@ public class ParseOutputFormat extends OutputFormat<Text, Parse> {
         if (textOut != null)
           textOut.close();
         dataOut.close();
+        if (outlinksOut != null)
+          outlinksOut.close();
         crawlOut.close();
+        outlinkProcessor.updateCounters(context);
+      }
+
+      private long getFetchTime(ParseData parseData) {
+        String timeString = parseData.getContentMeta()
+            .get(Nutch.FETCH_TIME_KEY);
+        try {
+          return Long.parseLong(timeString);
+        } catch (Exception e) {
+          return System.currentTimeMillis();
+        }
       }
 
     };
@@ -402,67 +416,10 @@ public class ParseOutputFormat extends OutputFormat<Text, Parse> {
        String ignoreExternalLinksMode, URLFilters filters,
        URLExemptionFilters exemptionFilters, URLNormalizers normalizers,
         String urlNormalizerScope) {
-    // ignore links to self (or anchors within the page)
-    if (fromUrl.equals(toUrl)) {
-      return null;
-    }
-    if (ignoreExternalLinks || ignoreInternalLinks) {
-      URL targetURL = null;
-      try {
-        targetURL = new URL(toUrl);
-      } catch (MalformedURLException e1) {
-        return null; // skip it
-      }
-      if (ignoreExternalLinks) {
-        if ("bydomain".equalsIgnoreCase(ignoreExternalLinksMode)) {
-          String toDomain = URLUtil.getDomainName(targetURL).toLowerCase();
-          //FIXME: toDomain will never be null, correct?
-          if (toDomain == null || !toDomain.equals(origin)) {
-            return null; // skip it
-          }
-        } else {
-          String toHost = targetURL.getHost().toLowerCase();
-          if (!toHost.equals(origin)) { // external host link
-            if (exemptionFilters == null // check if it is exempted?
-                || !exemptionFilters.isExempted(fromUrl, toUrl)) {
-              return null; ///skip it, This external url is not exempted.
-            }
-          }
-        }
-      }
-      if (ignoreInternalLinks) {
-        if ("bydomain".equalsIgnoreCase(ignoreExternalLinksMode)) {
-          String toDomain = URLUtil.getDomainName(targetURL).toLowerCase();
-          //FIXME: toDomain will never be null, correct?
-          if (toDomain == null || toDomain.equals(origin)) {
-            return null; // skip it
-          }
-        } else {
-          String toHost = targetURL.getHost().toLowerCase();
-          //FIXME: toDomain will never be null, correct?
-          if (toHost == null || toHost.equals(origin)) {
-            return null; // skip it
-          }
-        }
-      }
-    }
-
-    try {
-      if (normalizers != null) {
-        toUrl = normalizers.normalize(toUrl, urlNormalizerScope); // normalize
-                                                                  // the url
-      }
-      if (filters != null) {
-        toUrl = filters.filter(toUrl); // filter the url
-      }
-      if (toUrl == null) {
-        return null;
-      }
-    } catch (Exception e) {
-      return null;
-    }
-
-    return toUrl;
+    return OutlinkProcessor.filterNormalize(fromUrl, toUrl, origin,
+        ignoreInternalLinks, ignoreExternalLinks,
+        "bydomain".equalsIgnoreCase(ignoreExternalLinksMode), filters,
+        exemptionFilters, normalizers, urlNormalizerScope);
   }
 
 }
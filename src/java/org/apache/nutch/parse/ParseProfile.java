@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Locale;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.crawl.MD5Signature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Declares which parts of a {@link Parse} are needed downstream, so that
+ * parsers can skip unused work. The profile is configured by
+ * <code>parser.profile</code>. Parsers may ignore the profile and always
+ * return the full parse; parts not needed are then simply not used.
+ *
+ * Independent of the profile, parsers always process the HTML meta
+ * directives (robots, refresh) and report the parse status.
+ */
+public enum ParseProfile {
+
+  /** Text, title, outlinks and metadata, all HTML parse filters applied */
+  FULL(true, true, true),
+
+  /**
+   * Only outlinks (as needed to update the CrawlDb), no text, no title and no
+   * HTML parse filters applied. Outlinks added by HTML parse filters (e.g.
+   * parse-js) are missing. Because the text is empty, text-based signatures
+   * cannot be calculated, see {@link #OUTLINKS_SIGNATURE}.
+   */
+  OUTLINKS(false, true, false),
+
+  /**
+   * Outlinks and the text (as needed to update the CrawlDb with a text-based
+   * signature), no title and no HTML parse filters applied. Outlinks added by
+   * HTML parse filters (e.g. parse-js) are missing.
+   */
+  OUTLINKS_SIGNATURE(true, true, false),
+
+  /**
+   * Only the text (as needed by text-based signatures, e.g.
+   * {@link org.apache.nutch.crawl.TextProfileSignature}), no outlinks and no
+   * HTML parse filters applied
+   */
+  SIGNATURE(true, false, false),
+
+  /**
+   * Title and metadata including the metadata added by HTML parse filters, no
+   * text and no outlinks
+   */
+  METADATA(false, false, true);
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  /**
+   * Parse profile, one of full, outlinks, outlinks_signature, signature or
+   * metadata
+   */
+  public static final String PARSER_PROFILE = "parser.profile";
+
+  private final boolean text;
+  private final boolean outlinks;
+  private final boolean metadata;
+
+  private ParseProfile(boolean text, boolean outlinks, boolean metadata) {
+    this.text = text;
+    this.outlinks = outlinks;
+    this.metadata = metadata;
+  }
+
+  /** @return true if the text needs to be extracted */
+  public boolean needsText() {
+    return text;
+  }
+
+  /** @return true if outlinks need to be extracted */
+  public boolean needsOutlinks() {
+    return outlinks;
+  }
+
+  /**
+   * @return true if the title and metadata need to be extracted and HTML parse
+   *         filters are applied
+   */
+  public boolean needsMetadata() {
+    return metadata;
+  }
+
+  /**
+   * Check whether the signature configured by <code>db.signature.class</code>
+   * can be calculated from a parse of this profile. Except for
+   * {@link MD5Signature}, which is calculated from the raw content,
+   * signatures may use the parse text.
+   *
+   * @param conf
+   *          configuration
+   * @return true if the profile extracts the text or the signature does not
+   *         need it
+   */
+  public boolean supportsSignature(Configuration conf) {
+    return text || MD5Signature.class.getName().equals(
+        conf.get("db.signature.class", MD5Signature.class.getName()));
+  }
+
+  /**
+   * Get the configured parse profile.
+   *
+   * @param conf
+   *          configuration
+   * @return configured profile, {@link #FULL} if not or wrongly configured
+   */
+  public static ParseProfile get(Configuration conf) {
+    String name = conf.getTrimmed(PARSER_PROFILE, "full");
+    try {
+      return valueOf(name.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      LOG.warn("Unknown {} \"{}\", using full", PARSER_PROFILE, name);
+      return FULL;
+    }
+  }
+
+}
@@ -28,6 +28,7 @@ import org.apache.nutch.util.StringUtil;
 import org.apache.nutch.util.TimingUtil;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.StringUtils;
@@ -66,6 +67,9 @@ public class ParseSegment extends NutchTool implements Tool {
 
   public static final String SKIP_TRUNCATED = "parser.skip.truncated";
 
+  /** Number of threads parsing in parallel in every map task */
+  public static final String PARSE_THREADS = "parser.segment.threads";
+
   public ParseSegment() {
     this(null);
   }
@@ -77,6 +81,13 @@ public class ParseSegment extends NutchTool implements Tool {
   public static class ParseSegmentMapper extends
      Mapper<WritableComparable<?>, Content, Text, ParseImpl> {
 
+    /*
+     * With parser.segment.threads > 1 the MultithreadedMapper creates one
+     * mapper instance per thread, so the fields below are never shared. The
+     * objects they use from the ObjectCache (ParseCache, ParseExecutor,
+     * parser and scoring plugins) are shared between the threads and are
+     * thread-safe, as when parsing in the fetcher.
+     */
     private ParseUtil parseUtil;
     private Text newKey = new Text();
     private ScoringFilters scfilters;
@@ -124,6 +135,10 @@ public class ParseSegment extends NutchTool implements Tool {
         LOG.warn("Error parsing: " + key + ": "
             + StringUtils.stringifyException(e));
         return;
+      } finally {
+        if (parseUtil != null) {
+          parseUtil.updateCounters(context);
+        }
       }
 
       for (Entry<Text, Parse> entry : parseResult) {
@@ -235,6 +250,13 @@ public class ParseSegment extends NutchTool implements Tool {
       LOG.info("ParseSegment: segment: {}", segment);
     }
 
+    ParseProfile profile = ParseProfile.get(getConf());
+    if (!profile.supportsSignature(getConf())) {
+      LOG.warn(
+          "ParseSegment: parse profile {} does not extract the text used by {}, all pages get the same signature",
+          profile, getConf().get("db.signature.class"));
+    }
+
     Job job = NutchJob.getInstance(getConf());
     job.setJobName("parse " + segment);
 
@@ -243,7 +265,23 @@ public class ParseSegment extends NutchTool implements Tool {
     conf.set(Nutch.SEGMENT_NAME_KEY, segment.getName());
     job.setInputFormatClass(SequenceFileInputFormat.class);
     job.setJarByClass(ParseSegment.class);
-    job.setMapperClass(ParseSegment.ParseSegmentMapper.class);
+    int threads = conf.getInt(PARSE_THREADS, 1);
+    if (threads > 1) {
+      // records are parsed and emitted in any order, sorted by the reducer
+      LOG.info("ParseSegment: threads: {}", threads);
+      job.setMapperClass(MultithreadedMapper.class);
+      MultithreadedMapper.setMapperClass(job,
+          ParseSegment.ParseSegmentMapper.class);
+      MultithreadedMapper.setNumberOfThreads(job, threads);
+      int maxParserThreads = conf.getInt(ParseExecutor.PARSER_THREADS_MAX, 64);
+      if (conf.getInt("parser.timeout", 30) != -1
+          && maxParserThreads < threads) {
+        LOG.warn("ParseSegment: {} ({}) is less than the number of threads",
+            ParseExecutor.PARSER_THREADS_MAX, maxParserThreads);
+      }
+    } else {
+      job.setMapperClass(ParseSegment.ParseSegmentMapper.class);
+    }
     job.setReducerClass(ParseSegment.ParseSegmentReducer.class);
 
     FileOutputFormat.setOutputPath(job, segment);
@@ -278,7 +316,7 @@ public class ParseSegment extends NutchTool implements Tool {
   public int run(String[] args) throws Exception {
     Path segment;
 
-    String usage = "Usage: ParseSegment segment [-noFilter] [-noNormalize]";
+    String usage = "Usage: ParseSegment segment [-noFilter] [-noNormalize] [-threads <n>]";
 
     if (args.length == 0) {
       System.err.println(usage);
@@ -293,6 +331,8 @@ public class ParseSegment extends NutchTool implements Tool {
           getConf().setBoolean("parse.filter.urls", false);
         } else if ("-nonormalize".equalsIgnoreCase(param)) {
           getConf().setBoolean("parse.normalize.urls", false);
+        } else if ("-threads".equalsIgnoreCase(param)) {
+          getConf().setInt(PARSE_THREADS, Integer.parseInt(args[++i]));
         }
       }
     }
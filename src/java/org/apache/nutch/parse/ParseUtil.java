@@ -17,17 +17,13 @@
 package org.apache.nutch.parse;
 
 import java.lang.invoke.MethodHandles;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.nutch.protocol.Content;
-
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.nutch.util.EncodingDetector;
 
 /**
  * A Utility class containing methods to simply perform parsing utilities such
@@ -43,7 +39,8 @@ public class ParseUtil {
   private ParserFactory parserFactory;
   /** Parser timeout set to 30 sec by default. Set -1 to deactivate **/
   private int maxParseTime = 30;
-  private ExecutorService executorService;
+  private ParseExecutor executor;
+  private ParseCache cache;
 
   /**
    * Overloaded constructor
@@ -52,15 +49,37 @@ public class ParseUtil {
   public ParseUtil(Configuration conf) {
     this.parserFactory = new ParserFactory(conf);
     maxParseTime = conf.getInt("parser.timeout", 30);
-    executorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
-        .setNameFormat("parse-%d").setDaemon(true).build());
+    if (maxParseTime != -1) {
+      executor = ParseExecutor.get(conf);
+    }
+    cache = ParseCache.get(conf);
+  }
+
+  /**
+   * Report parser timeouts, exceeded parser budgets, abandoned parser threads
+   * parse cache hits and misses, and fast and fallback charset detections as
+   * counters of the group <code>ParserStatus</code>.
+   * 
+   * @param context
+   *          task context to report the counters to
+   */
+  public void updateCounters(TaskInputOutputContext<?, ?, ?, ?> context) {
+    if (executor != null) {
+      executor.updateCounters(context);
+    }
+    if (cache != null) {
+      cache.updateCounters(context);
+    }
+    EncodingDetector.updateCounters(context);
   }
 
   /**
    * Performs a parse by iterating through a List of preferred {@link Parser}s
    * until a successful parse is performed and a {@link Parse} object is
    * returned. If the parse is unsuccessful, a message is logged to the
-   * <code>WARNING</code> level, and an empty parse is returned.
+   * <code>WARNING</code> level, and an empty parse is returned. If the parse
+   * cache is enabled (see {@link ParseCache}) and holds a parse result of the
+   * same content, the cached result is returned without running any parser.
    * 
    * @param content
    *          The content to try and parse.
@@ -69,6 +88,19 @@ public class ParseUtil {
    *           If no suitable parser is found to perform the parse.
    */
   public ParseResult parse(Content content) throws ParseException {
+    if (cache == null) {
+      return parseUncached(content);
+    }
+    String key = cache.getKey(content);
+    ParseResult parseResult = cache.get(key, content);
+    if (parseResult == null) {
+      parseResult = parseUncached(content);
+      cache.put(key, content, parseResult);
+    }
+    return parseResult;
+  }
+
+  private ParseResult parseUncached(Content content) throws ParseException {
     Parser[] parsers = null;
 
     try {
@@ -181,19 +213,7 @@ public class ParseUtil {
   }
 
   private ParseResult runParser(Parser p, Content content) {
-    ParseCallable pc = new ParseCallable(p, content);
-    Future<ParseResult> task = executorService.submit(pc);
-    ParseResult res = null;
-    try {
-      res = task.get(maxParseTime, TimeUnit.SECONDS);
-    } catch (Exception e) {
-      LOG.warn("Error parsing " + content.getUrl() + " with "
-          + p.getClass().getName(), e);
-      task.cancel(true);
-    } finally {
-      pc = null;
-    }
-    return res;
+    return executor.parse(p, content, maxParseTime);
   }
 
 }
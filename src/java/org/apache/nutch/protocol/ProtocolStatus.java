@@ -19,6 +19,7 @@ package org.apache.nutch.protocol;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import org.apache.hadoop.io.VersionMismatchException;
@@ -279,6 +280,10 @@ public class ProtocolStatus implements Writable {
     return true;
   }
 
+  public int hashCode() {
+    return code ^ Long.hashCode(lastModified) ^ Arrays.hashCode(args);
+  }
+
   public String toString() {
     StringBuffer res = new StringBuffer();
     res.append(codeToName.get(Integer.valueOf(code)) + "(" + code
@@ -40,7 +40,6 @@ import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.mapreduce.Job;
-import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
@@ -183,7 +182,7 @@ public class ScoreUpdater extends Configured implements Tool{
     updater.setMapOutputValueClass(ObjectWritable.class);
     updater.setOutputKeyClass(Text.class);
     updater.setOutputValueClass(CrawlDatum.class);
-    updater.setOutputFormatClass(MapFileOutputFormat.class);
+    CrawlDb.setOutputFormat(updater);
 
     try {
       boolean success = updater.waitForCompletion(true);
@@ -62,6 +62,7 @@ import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
 import org.apache.nutch.parse.Outlink;
 import org.apache.nutch.parse.ParseData;
+import org.apache.nutch.parse.ParseOutlinks;
 import org.apache.nutch.util.FSUtils;
 import org.apache.nutch.util.HadoopFSUtil;
 import org.apache.nutch.util.LockUtil;
@@ -242,7 +243,8 @@ public class WebGraph extends Configured implements Tool {
           throws IOException, InterruptedException {
 
         // normalize url, stop processing if null
-        String url = normalizeUrl(key.toString());
+        String origUrl = key.toString();
+        String url = normalizeUrl(origUrl);
         if (url == null) {
           return;
         }
@@ -265,12 +267,21 @@ public class WebGraph extends Configured implements Tool {
             // Tell the reducer to get rid of all instances of this key
             context.write(key, new NutchWritable(new BooleanWritable(true)));
           }
-        } else if (value instanceof ParseData) {
-          // get the parse data and the outlinks from the parse data, along with
-          // the fetch time for those links
-          ParseData data = (ParseData) value;
-          long fetchTime = getFetchTime(data);
-          Outlink[] outlinkAr = data.getOutlinks();
+        } else if (value instanceof ParseData
+            || value instanceof ParseOutlinks) {
+          // get the outlinks from the parse data (or the separately stored
+          // outlinks), along with the fetch time for those links
+          long fetchTime;
+          Outlink[] outlinkAr;
+          if (value instanceof ParseOutlinks) {
+            ParseOutlinks outlinks = (ParseOutlinks) value;
+            fetchTime = outlinks.getFetchTime();
+            outlinkAr = outlinks.getOutlinks(origUrl);
+          } else {
+            ParseData data = (ParseData) value;
+            fetchTime = getFetchTime(data);
+            outlinkAr = data.getOutlinks();
+          }
           Map<String, String> outlinkMap = new LinkedHashMap<>();
 
           // normalize urls and put into map
@@ -563,7 +574,12 @@ public class WebGraph extends Configured implements Tool {
       for (int i = 0; i < segments.length; i++) {
         FileSystem sfs = segments[i].getFileSystem(outlinkJobConf);
         Path parseData = new Path(segments[i], ParseData.DIR_NAME);
-        if (sfs.exists(parseData)) {
+        Path parseOutlinks = new Path(segments[i], ParseOutlinks.DIR_NAME);
+        if (sfs.exists(parseOutlinks)) {
+          // read only the outlinks if stored separately
+          LOG.info("OutlinkDb: adding input: " + parseOutlinks);
+          FileInputFormat.addInputPath(outlinkJob, parseOutlinks);
+        } else if (sfs.exists(parseData)) {
           LOG.info("OutlinkDb: adding input: " + parseData);
           FileInputFormat.addInputPath(outlinkJob, parseData);
         }
@@ -62,7 +62,9 @@ import org.apache.nutch.metadata.MetaWrapper;
 import org.apache.nutch.metadata.Nutch;
 import org.apache.nutch.net.URLFilters;
 import org.apache.nutch.net.URLNormalizers;
+import org.apache.nutch.parse.Outlink;
 import org.apache.nutch.parse.ParseData;
+import org.apache.nutch.parse.ParseOutlinks;
 import org.apache.nutch.parse.ParseText;
 import org.apache.nutch.protocol.Content;
 import org.apache.nutch.util.HadoopFSUtil;
@@ -110,6 +112,13 @@ import org.apache.nutch.util.NutchJob;
  * segments be named in an increasing lexicographic order as their creation time
  * increases.
  * </p>
+ * <h3>Outlinks stored separately</h3>
+ * <p>
+ * If any of the input segments stores the outlinks in
+ * <code>parse_outlinks</code> (see {@link ParseOutlinks}), the outlinks of all
+ * records are written to <code>parse_outlinks</code> in the merged segment,
+ * also those read from the parse data of the other segments.
+ * </p>
  * <h3>Merging and indexes</h3>
  * <p>
  * Merged segment gets a different name. Since Indexer embeds segment names in
@@ -126,6 +135,7 @@ public class SegmentMerger extends Configured implements Tool{
 
   private static final String SEGMENT_PART_KEY = "part";
   private static final String SEGMENT_SLICE_KEY = "slice";
+  private static final String SEGMENT_OUTLINKS_KEY = "segment.merger.outlinks.separate";
 
   /**
    * Wraps inputs in an {@link MetaWrapper}, to permit merging different types
@@ -222,6 +232,7 @@ public class SegmentMerger extends Configured implements Tool{
         MapFile.Writer fOut = null;
         MapFile.Writer pdOut = null;
         MapFile.Writer ptOut = null;
+        MapFile.Writer poOut = null;
         SequenceFile.Writer gOut = null;
         SequenceFile.Writer pOut = null;
         HashMap<String, Closeable> sliceWriters = new HashMap<>();
@@ -264,6 +275,10 @@ public class SegmentMerger extends Configured implements Tool{
           } else if (o instanceof ParseText) {
             ptOut = ensureMapFile(slice, ParseText.DIR_NAME, ParseText.class);
             ptOut.append(key, o);
+          } else if (o instanceof ParseOutlinks) {
+            poOut = ensureMapFile(slice, ParseOutlinks.DIR_NAME,
+                    ParseOutlinks.class);
+            poOut.append(key, o);
           }
         }
 
@@ -403,6 +418,14 @@ public class SegmentMerger extends Configured implements Tool{
         }
       }
       if (url != null) {
+        Writable o = value.get();
+        if (o instanceof ParseOutlinks && !url.equals(key.toString())) {
+          // outlinks are stored relative to the URL of the source page
+          ParseOutlinks outlinks = (ParseOutlinks) o;
+          value.set(new ParseOutlinks(url,
+                  outlinks.getOutlinks(key.toString()),
+                  outlinks.getFetchTime()));
+        }
         newKey.set(url);
         context.write(newKey, value);
       }
@@ -421,10 +444,12 @@ public class SegmentMerger extends Configured implements Tool{
     private SegmentMergeFilters mergeFilters = null;
     private long sliceSize = -1;
     private long curCount = 0; 
+    private boolean outlinksSeparate = false;
 
     @Override
     public void setup(Reducer<Text, MetaWrapper, Text, MetaWrapper>.Context context) {
       Configuration conf = context.getConfiguration();
+      outlinksSeparate = conf.getBoolean(SEGMENT_OUTLINKS_KEY, false);
       if (conf.getBoolean("segment.merger.filter", false)) {
         mergeFilters = new SegmentMergeFilters(conf);
       }      
@@ -446,12 +471,14 @@ public class SegmentMerger extends Configured implements Tool{
       Content lastC = null;
       ParseData lastPD = null;
       ParseText lastPT = null;
+      ParseOutlinks lastPO = null;
       String lastGname = null;
       String lastFname = null;
       String lastSigname = null;
       String lastCname = null;
       String lastPDname = null;
       String lastPTname = null;
+      String lastPOname = null;
       TreeMap<String, ArrayList<CrawlDatum>> linked = new TreeMap<>();
       for (MetaWrapper wrapper : values) {
         Object o = wrapper.get();
@@ -545,8 +572,22 @@ public class SegmentMerger extends Configured implements Tool{
               lastPTname = sp.segmentName;
             }
           }
+        } else if (o instanceof ParseOutlinks) {
+          if (lastPO == null) {
+            lastPO = (ParseOutlinks) o;
+            lastPOname = sp.segmentName;
+          } else {
+            if (lastPOname.compareTo(sp.segmentName) < 0) {
+              lastPO = (ParseOutlinks) o;
+              lastPOname = sp.segmentName;
+            }
+          }
         }
       }
+      // add outlinks stored separately to the parse data of the same segment
+      if (lastPD != null && lastPO != null && lastPDname.equals(lastPOname)) {
+        lastPD = lastPO.addTo(key.toString(), lastPD);
+      }
       // perform filtering based on full merge record
       if (mergeFilters != null
               && !mergeFilters.filter(key, lastG, lastF, lastSig, lastC, lastPD,
@@ -592,11 +633,25 @@ public class SegmentMerger extends Configured implements Tool{
         context.write(key, wrapper);
       }
       if (lastPD != null) {
+        ParseOutlinks outlinks = null;
+        if (outlinksSeparate) {
+          outlinks = new ParseOutlinks(key.toString(), lastPD.getOutlinks(),
+                  getFetchTime(lastPD));
+          lastPD = new ParseData(lastPD.getStatus(), lastPD.getTitle(),
+                  new Outlink[0], lastPD.getContentMeta(),
+                  lastPD.getParseMeta());
+        }
         wrapper.set(lastPD);
         sp.partName = ParseData.DIR_NAME;
         sp.segmentName = lastPDname;
         wrapper.setMeta(SEGMENT_PART_KEY, sp.toString());
         context.write(key, wrapper);
+        if (outlinks != null) {
+          wrapper.set(outlinks);
+          sp.partName = ParseOutlinks.DIR_NAME;
+          wrapper.setMeta(SEGMENT_PART_KEY, sp.toString());
+          context.write(key, wrapper);
+        }
       }
       if (lastPT != null) {
         wrapper.set(lastPT);
@@ -620,6 +675,15 @@ public class SegmentMerger extends Configured implements Tool{
     }
   }
 
+  private static long getFetchTime(ParseData parseData) {
+    String timeString = parseData.getContentMeta().get(Nutch.FETCH_TIME_KEY);
+    try {
+      return Long.parseLong(timeString);
+    } catch (Exception e) {
+      return System.currentTimeMillis();
+    }
+  }
+
   public void merge(Path out, Path[] segs, boolean filter, boolean normalize,
           long slice) throws IOException, ClassNotFoundException, InterruptedException {
     String segmentName = Generator.generateSegmentName();
@@ -638,6 +702,8 @@ public class SegmentMerger extends Configured implements Tool{
     boolean c = true;
     boolean pd = true;
     boolean pt = true;
+    // outlinks stored separately in any of the segments
+    boolean po = false;
 
     // These contain previous values, we use it to track changes in the loop
     boolean pg = true;
@@ -668,6 +734,7 @@ public class SegmentMerger extends Configured implements Tool{
       p = p && fs.exists(pDir);
       pd = pd && fs.exists(pdDir);
       pt = pt && fs.exists(ptDir);
+      po = po || fs.exists(new Path(segs[i], ParseOutlinks.DIR_NAME));
 
       // Input changed?
       if (g != pg || f != pf || p != pp || c != pc || pd != ppd || pt != ppt) {
@@ -690,6 +757,8 @@ public class SegmentMerger extends Configured implements Tool{
         sb.append(" " + ParseData.DIR_NAME);
       if (pt)
         sb.append(" " + ParseText.DIR_NAME);
+      if (pd && po)
+        sb.append(" " + ParseOutlinks.DIR_NAME);
       LOG.info("SegmentMerger: using segment data from: {}", sb.toString());
     }
     for (int i = 0; i < segs.length; i++) {
@@ -714,12 +783,17 @@ public class SegmentMerger extends Configured implements Tool{
       if (pd) {
         Path pdDir = new Path(segs[i], ParseData.DIR_NAME);
         FileInputFormat.addInputPath(job, pdDir);
+        Path poDir = new Path(segs[i], ParseOutlinks.DIR_NAME);
+        if (po && poDir.getFileSystem(conf).exists(poDir)) {
+          FileInputFormat.addInputPath(job, poDir);
+        }
       }
       if (pt) {
         Path ptDir = new Path(segs[i], ParseText.DIR_NAME);
         FileInputFormat.addInputPath(job, ptDir);
       }
     }
+    conf.setBoolean(SEGMENT_OUTLINKS_KEY, pd && po);
     job.setInputFormatClass(ObjectInputFormat.class);
     job.setJarByClass(SegmentMerger.class);
     job.setMapperClass(SegmentMerger.SegmentMergerMapper.class);
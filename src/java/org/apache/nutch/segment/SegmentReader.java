@@ -65,6 +65,7 @@ import org.apache.nutch.crawl.CrawlDatum;
 import org.apache.nutch.crawl.NutchWritable;
 import org.apache.nutch.metadata.Metadata;
 import org.apache.nutch.parse.ParseData;
+import org.apache.nutch.parse.ParseOutlinks;
 import org.apache.nutch.parse.ParseText;
 import org.apache.nutch.protocol.Content;
 import org.apache.nutch.util.HadoopFSUtil;
@@ -164,6 +165,8 @@ public class SegmentReader extends Configured implements Tool {
       dump.append("URL:: " + key.toString() + "\n");
       Content content = null;
       Charset charset = null;
+      ParseData parseData = null;
+      ParseOutlinks outlinks = null;
       for (NutchWritable val : values) {
         Writable value = val.get(); // unwrap
         if (value instanceof CrawlDatum) {
@@ -175,16 +178,25 @@ public class SegmentReader extends Configured implements Tool {
             dump.append("\nContent::\n").append(((Content) value).toString());
           }
         } else if (value instanceof ParseData) {
-          dump.append("\nParseData::\n").append(((ParseData) value).toString());
+          parseData = (ParseData) value;
           if (recodeContent) {
-            charset = getCharset(((ParseData) value).getParseMeta());
+            charset = getCharset(parseData.getParseMeta());
           }
+        } else if (value instanceof ParseOutlinks) {
+          outlinks = (ParseOutlinks) value;
         } else if (value instanceof ParseText) {
           dump.append("\nParseText::\n").append(((ParseText) value).toString());
         } else if (LOG.isWarnEnabled()) {
           LOG.warn("Unrecognized type: " + value.getClass());
         }
       }
+      if (parseData != null) {
+        // show the outlinks stored separately as part of the parse data
+        if (outlinks != null) {
+          parseData = outlinks.addTo(key.toString(), parseData);
+        }
+        dump.append("\nParseData::\n").append(parseData.toString());
+      }
       if (recodeContent && content != null) {
         dump.append("\nContent::\n").append(content.toString(charset));
       }
@@ -212,8 +224,13 @@ public class SegmentReader extends Configured implements Tool {
           CrawlDatum.PARSE_DIR_NAME));
     if (co)
       FileInputFormat.addInputPath(job, new Path(segment, Content.DIR_NAME));
-    if (pd)
+    if (pd) {
       FileInputFormat.addInputPath(job, new Path(segment, ParseData.DIR_NAME));
+      Path outlinks = new Path(segment, ParseOutlinks.DIR_NAME);
+      if (outlinks.getFileSystem(conf).exists(outlinks)) {
+        FileInputFormat.addInputPath(job, outlinks);
+      }
+    }
     if (pt)
       FileInputFormat.addInputPath(job, new Path(segment, ParseText.DIR_NAME));
 
@@ -365,6 +382,18 @@ public class SegmentReader extends Configured implements Tool {
           }
         }
       });
+    final Path outlinksDir = new Path(segment, ParseOutlinks.DIR_NAME);
+    if (pd && outlinksDir.getFileSystem(getConf()).exists(outlinksDir))
+      threads.add(new Thread() {
+        public void run() {
+          try {
+            List<Writable> res = getMapRecords(outlinksDir, key);
+            results.put("po", res);
+          } catch (Exception e) {
+            LOG.error("Exception:", e);
+          }
+        }
+      });
     if (pt)
       threads.add(new Thread() {
         public void run() {
@@ -397,6 +426,15 @@ public class SegmentReader extends Configured implements Tool {
         LOG.debug("(" + cnt + " to retrieve)");
       }
     } while (cnt > 0);
+    // show the outlinks stored separately as part of the parse data
+    List<Writable> outlinks = results.remove("po");
+    List<Writable> parseData = results.get("pd");
+    if (outlinks != null && parseData != null) {
+      for (int k = 0; k < parseData.size() && k < outlinks.size(); k++) {
+        parseData.set(k, ((ParseOutlinks) outlinks.get(k))
+            .addTo(key.toString(), (ParseData) parseData.get(k)));
+      }
+    }
     for (int i = 0; i < keys.length; i++) {
       List<Writable> res = results.get(keys[i][0]);
       if (res != null && res.size() > 0) {
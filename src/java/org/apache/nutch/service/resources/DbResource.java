@@ -41,6 +41,12 @@ import org.apache.nutch.service.model.response.FetchNodeDbInfo;
 @Path(value = "/db")
 public class DbResource extends AbstractResource {
 
+  /**
+   * Shared reader for URL lookups, keeps the CrawlDb readers open between
+   * requests
+   */
+  private static final CrawlDbReader urlReader = new CrawlDbReader();
+
   @POST
   @Path(value = "/crawldb")
   @Consumes(MediaType.APPLICATION_JSON)
@@ -66,8 +72,8 @@ public class DbResource extends AbstractResource {
     if(type.equalsIgnoreCase("topN")){
       return crawlDbTopN(conf, dbQuery.getArgs(), dbQuery.getCrawlId());
     }
-    if(type.equalsIgnoreCase("url")){
-      return crawlDbUrl(conf, dbQuery.getArgs(), dbQuery.getCrawlId());
+    if(type.equalsIgnoreCase("url") || type.equalsIgnoreCase("urls")){
+      return crawlDbUrl(conf, dbQuery.getArgs(), dbQuery.getCrawlId(), type);
     }
     return null;
 
@@ -132,11 +138,9 @@ public class DbResource extends AbstractResource {
     }		
   }
 
-  private Response crawlDbUrl(Configuration conf, Map<String, String> args, String crawlId){
-    @SuppressWarnings("resource")
-    CrawlDbReader dbr = new CrawlDbReader();
+  private Response crawlDbUrl(Configuration conf, Map<String, String> args, String crawlId, String type){
     try{
-      return Response.ok(dbr.query(args, conf, "url", crawlId)).build();
+      return Response.ok(urlReader.query(args, conf, type, crawlId)).build();
     }catch(Exception e){
       e.printStackTrace();
       return Response.serverError().entity(e.getMessage()).type(MediaType.TEXT_PLAIN).build();
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.BloomMapFile;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * {@link MapFileOutputFormat} writing every part as {@link BloomMapFile}: in
+ * addition to the MapFile's <code>data</code> and <code>index</code> files a
+ * Bloom filter holding all keys is written into the file <code>bloom</code>.
+ * The part stays readable as MapFile by readers and input formats not aware of
+ * the Bloom filter. The filter size is configured by the Hadoop properties
+ * <code>io.mapfile.bloom.size</code> (expected number of keys per part) and
+ * <code>io.mapfile.bloom.error.rate</code>.
+ */
+public class BloomMapFileOutputFormat extends MapFileOutputFormat {
+
+  @Override
+  public RecordWriter<WritableComparable<?>, Writable> getRecordWriter(
+      TaskAttemptContext context) throws IOException {
+    Configuration conf = context.getConfiguration();
+    CompressionCodec codec = null;
+    CompressionType compressionType = CompressionType.NONE;
+    if (getCompressOutput(context)) {
+      compressionType = SequenceFileOutputFormat
+          .getOutputCompressionType(context);
+      Class<?> codecClass = getOutputCompressorClass(context,
+          DefaultCodec.class);
+      codec = (CompressionCodec) ReflectionUtils.newInstance(codecClass, conf);
+    }
+
+    Path file = getDefaultWorkFile(context, "");
+    final BloomMapFile.Writer out = new BloomMapFile.Writer(conf, file,
+        MapFile.Writer.keyClass(
+            context.getOutputKeyClass().asSubclass(WritableComparable.class)),
+        MapFile.Writer.valueClass(
+            context.getOutputValueClass().asSubclass(Writable.class)),
+        MapFile.Writer.compression(compressionType, codec),
+        MapFile.Writer.progressable(context));
+
+    return new RecordWriter<WritableComparable<?>, Writable>() {
+      @Override
+      public void write(WritableComparable<?> key, Writable value)
+          throws IOException {
+        out.append(key, value);
+      }
+
+      @Override
+      public void close(TaskAttemptContext context) throws IOException {
+        out.close();
+      }
+    };
+  }
+
+  /**
+   * Open the output parts of a job written by {@link MapFileOutputFormat} or
+   * {@link BloomMapFileOutputFormat}. Parts with a Bloom filter are opened as
+   * {@link BloomMapFile.Reader} which consults the filter before the MapFile
+   * index and data are read to look up a key.
+   *
+   * @param dir
+   *          output directory holding the parts
+   * @param conf
+   *          configuration
+   * @return readers, ordered by part name
+   * @throws IOException
+   *           if the parts cannot be opened
+   */
+  public static MapFile.Reader[] getReaders(Path dir, Configuration conf)
+      throws IOException {
+    FileSystem fs = dir.getFileSystem(conf);
+    PathFilter filter = path -> {
+      String name = path.getName();
+      return !name.startsWith("_") && !name.startsWith(".");
+    };
+    Path[] names = FileUtil.stat2Paths(fs.listStatus(dir, filter));
+    Arrays.sort(names);
+    MapFile.Reader[] parts = new MapFile.Reader[names.length];
+    for (int i = 0; i < names.length; i++) {
+      if (fs.exists(new Path(names[i], BloomMapFile.BLOOM_FILE_NAME))) {
+        parts[i] = new BloomMapFile.Reader(names[i], conf);
+      } else {
+        parts[i] = new MapFile.Reader(names[i], conf);
+      }
+    }
+    return parts;
+  }
+}
@@ -22,14 +22,17 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
 import org.apache.nutch.metadata.Metadata;
 import org.apache.nutch.net.protocols.Response;
 import org.apache.nutch.protocol.Content;
@@ -60,6 +63,12 @@ import com.ibm.icu.text.CharsetMatch;
  * <li>Combine these clues with the caller-dependent "extra clues" available;</li>
  * <li>Run step (2) to guess what the most probable answer is.</li>
  * </ul>
+ * 
+ * <p>
+ * If <code>encodingdetector.fast</code> is true, the common cases (byte order
+ * mark, pure ASCII, valid UTF-8, or a charset declared in a meta tag for
+ * content which is not UTF-8) are detected in a single pass over the bytes,
+ * and ICU's charset detection is only run for the remaining ambiguous content.
  */
 public class EncodingDetector {
 
@@ -110,6 +119,15 @@ public class EncodingDetector {
 
   public static final String MIN_CONFIDENCE_KEY = "encodingdetector.charset.min.confidence";
 
+  /**
+   * Detect the common cases (byte order mark, pure ASCII, valid UTF-8,
+   * declared charset) before running ICU's charset detection
+   */
+  public static final String FAST_DETECTION_KEY = "encodingdetector.fast";
+
+  /** Counter group for the counters reported by {@link #updateCounters} */
+  public static final String COUNTER_GROUP = "ParserStatus";
+
   private static final HashMap<String, String> ALIASES = new HashMap<>();
 
   private static final HashSet<String> DETECTABLES = new HashSet<>();
@@ -117,6 +135,21 @@ public class EncodingDetector {
   // CharsetDetector will die without a minimum amount of data.
   private static final int MIN_LENGTH = 4;
 
+  // NUTCH-2042 (cf. TIKA-357): look for a declared charset in the first 8 kB
+  private static final int CHUNK_SIZE = 8192;
+
+  /* results of checkUTF8(byte[]) */
+  static final int ASCII = 0;
+  static final int UTF8 = 1;
+  static final int NOT_UTF8 = 2;
+
+  private static final byte[] META = "<meta".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] CHARSET = "charset".getBytes(StandardCharsets.US_ASCII);
+
+  /* counters not yet reported */
+  private static final AtomicLong fastDetections = new AtomicLong();
+  private static final AtomicLong fallbacks = new AtomicLong();
+
   static {
     DETECTABLES.add("text/html");
     DETECTABLES.add("text/plain");
@@ -149,37 +182,38 @@ public class EncodingDetector {
 
   private int minConfidence;
 
+  private boolean fastDetection;
+
+  /* created on demand, not needed if the fast detection succeeds */
   private CharsetDetector detector;
 
   private List<EncodingClue> clues;
 
+  /* charset declared in a meta tag or given by a BOM */
+  private String sniffed;
+
   public EncodingDetector(Configuration conf) {
     minConfidence = conf.getInt(MIN_CONFIDENCE_KEY, -1);
-    detector = new CharsetDetector();
+    fastDetection = conf.getBoolean(FAST_DETECTION_KEY, false);
     clues = new ArrayList<>();
   }
 
   public void autoDetectClues(Content content, boolean filter) {
     byte[] data = content.getContent();
 
-    if (minConfidence >= 0 && DETECTABLES.contains(content.getContentType())
-        && data.length > MIN_LENGTH) {
-      CharsetMatch[] matches = null;
-
-      // do all these in a try/catch; setText and detect/detectAll
-      // will sometimes throw exceptions
-      try {
-        detector.enableInputFilter(filter);
-        detector.setText(data);
-        matches = detector.detectAll();
-      } catch (Exception e) {
-        LOG.debug("Exception from ICU4J (ignoring): ", e);
-      }
+    // sniff independent of the content type: parsers take the sniffed charset
+    // as clue also for content types not passed to the detection
+    sniffed = fastDetection ? sniffCharacterEncoding(data) : null;
+    boolean detectable = DETECTABLES.contains(content.getContentType());
 
-      if (matches != null) {
-        for (CharsetMatch match : matches) {
-          addClue(match.getName(), "detect", match.getConfidence());
+    if (minConfidence >= 0 && detectable && data.length > MIN_LENGTH) {
+      if (fastDetection && detectFast(data)) {
+        fastDetections.incrementAndGet();
+      } else {
+        if (fastDetection) {
+          fallbacks.incrementAndGet();
         }
+        detectICU(data, filter);
       }
     }
 
@@ -189,6 +223,290 @@ public class EncodingDetector {
         "header");
   }
 
+  /**
+   * Detect the charset without ICU if the content starts with a byte order
+   * mark, is pure ASCII or valid UTF-8, or declares a charset in a meta tag
+   * and is not UTF-8. Content with NUL bytes (e.g. UTF-16 without byte order
+   * mark) is left to ICU.
+   * 
+   * @return true if the content is handled, false if ambiguous
+   */
+  private boolean detectFast(byte[] data) {
+    String bom = detectBOM(data);
+    if (bom != null) {
+      addClue(bom, "detect", 100);
+      return true;
+    }
+    if (containsNul(data)) {
+      return false;
+    }
+    int utf8 = checkUTF8(data);
+    if (utf8 == ASCII) {
+      // all ASCII-compatible charsets decode the content the same way, leave
+      // the decision to the other clues
+      return true;
+    } else if (utf8 == UTF8) {
+      addClue("UTF-8", "detect", 100);
+      return true;
+    }
+    String declared = resolveEncodingAlias(sniffed);
+    if (declared != null && !declared.startsWith("UTF-")) {
+      addClue(declared, "detect", 100);
+      return true;
+    }
+    return false;
+  }
+
+  private void detectICU(byte[] data, boolean filter) {
+    CharsetMatch[] matches = null;
+
+    // do all these in a try/catch; setText and detect/detectAll
+    // will sometimes throw exceptions
+    try {
+      if (detector == null) {
+        detector = new CharsetDetector();
+      }
+      detector.enableInputFilter(filter);
+      detector.setText(data);
+      matches = detector.detectAll();
+    } catch (Exception e) {
+      LOG.debug("Exception from ICU4J (ignoring): ", e);
+    }
+
+    if (matches != null) {
+      for (CharsetMatch match : matches) {
+        addClue(match.getName(), "detect", match.getConfidence());
+      }
+    }
+  }
+
+  /**
+   * Get the charset sniffed from the content by
+   * {@link #autoDetectClues(Content, boolean)} if the fast detection is
+   * enabled, see {@link #sniffCharacterEncoding(byte[])}.
+   * 
+   * @return sniffed charset or null
+   */
+  public String getSniffedEncoding() {
+    return sniffed;
+  }
+
+  /** @return true if the fast detection is enabled */
+  public boolean isFastDetection() {
+    return fastDetection;
+  }
+
+  /**
+   * Read the charset declared in a meta tag (<code>&lt;meta charset=...&gt;</code>
+   * or <code>&lt;meta http-equiv="Content-Type" content="...; charset=..."&gt;</code>)
+   * within the first 8 kB of the content. If no charset is declared, check for
+   * a byte order mark.
+   * 
+   * @param data
+   *          content
+   * @return the declared charset, or null if none is found
+   */
+  public static String sniffCharacterEncoding(byte[] data) {
+    String encoding = detectMetaCharset(data,
+        Math.min(data.length, CHUNK_SIZE));
+    if (encoding == null) {
+      encoding = detectBOM(data);
+    }
+    return encoding;
+  }
+
+  /**
+   * @return the Unicode charset given by the byte order mark, null if the
+   *         content does not start with a BOM
+   */
+  static String detectBOM(byte[] data) {
+    if (data.length >= 3 && data[0] == (byte) 0xEF && data[1] == (byte) 0xBB
+        && data[2] == (byte) 0xBF) {
+      return "UTF-8";
+    } else if (data.length >= 2) {
+      if (data[0] == (byte) 0xFF && data[1] == (byte) 0xFE) {
+        return "UTF-16LE";
+      } else if (data[0] == (byte) 0xFE && data[1] == (byte) 0xFF) {
+        return "UTF-16BE";
+      }
+    }
+    return null;
+  }
+
+  /** @return true if the content contains a NUL byte */
+  static boolean containsNul(byte[] data) {
+    for (byte b : data) {
+      if (b == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Check whether the content is pure ASCII, valid UTF-8 or neither. An
+   * incomplete multi-byte sequence at the end of the content (truncated
+   * content) is accepted.
+   * 
+   * @param data
+   *          content
+   * @return {@link #ASCII}, {@link #UTF8} or {@link #NOT_UTF8}
+   */
+  static int checkUTF8(byte[] data) {
+    int len = data.length;
+    int i = skipASCII(data, 0, len);
+    if (i == len) {
+      return ASCII;
+    }
+    while (i < len) {
+      int b = data[i] & 0xff;
+      if (b < 0x80) {
+        i = skipASCII(data, i + 1, len);
+        continue;
+      }
+      int n;
+      int min = 0x80, max = 0xbf; // allowed range of the second byte
+      if (b >= 0xc2 && b <= 0xdf) {
+        n = 1;
+      } else if (b >= 0xe0 && b <= 0xef) {
+        n = 2;
+        if (b == 0xe0) {
+          min = 0xa0; // overlong
+        } else if (b == 0xed) {
+          max = 0x9f; // surrogates
+        }
+      } else if (b >= 0xf0 && b <= 0xf4) {
+        n = 3;
+        if (b == 0xf0) {
+          min = 0x90; // overlong
+        } else if (b == 0xf4) {
+          max = 0x8f; // > U+10FFFF
+        }
+      } else {
+        return NOT_UTF8;
+      }
+      for (int j = 1; j <= n; j++) {
+        if (i + j >= len) {
+          // truncated
+          return UTF8;
+        }
+        int c = data[i + j] & 0xff;
+        if (j == 1 ? (c < min || c > max) : (c < 0x80 || c > 0xbf)) {
+          return NOT_UTF8;
+        }
+      }
+      i += n + 1;
+    }
+    return UTF8;
+  }
+
+  /**
+   * @return the index of the first non-ASCII byte at or after <code>i</code>,
+   *         <code>len</code> if there is none
+   */
+  private static int skipASCII(byte[] data, int i, int len) {
+    // check blocks of 8 bytes, simple enough to be unrolled and vectorized by
+    // the JIT compiler
+    while (i + 8 <= len) {
+      if ((data[i] | data[i + 1] | data[i + 2] | data[i + 3] | data[i + 4]
+          | data[i + 5] | data[i + 6] | data[i + 7]) < 0) {
+        break;
+      }
+      i += 8;
+    }
+    while (i < len && data[i] >= 0) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Find the charset declared in the first meta tag holding a
+   * <code>charset</code> attribute or parameter.
+   */
+  private static String detectMetaCharset(byte[] data, int len) {
+    int i = 0;
+    while ((i = indexOfIgnoreCase(data, META, i, len)) >= 0) {
+      i += META.length;
+      int end = i;
+      while (end < len && data[end] != '>') {
+        end++;
+      }
+      int c = indexOfIgnoreCase(data, CHARSET, i, end);
+      if (c >= 0) {
+        c += CHARSET.length;
+        while (c < end && isSpace(data[c])) {
+          c++;
+        }
+        if (c < end && data[c] == '=') {
+          c++;
+          while (c < end
+              && (isSpace(data[c]) || data[c] == '"' || data[c] == '\'')) {
+            c++;
+          }
+          int start = c;
+          while (c < end && isCharsetChar(data[c])) {
+            c++;
+          }
+          if (c > start) {
+            return new String(data, start, c - start,
+                StandardCharsets.US_ASCII);
+          }
+        }
+      }
+      i = end;
+    }
+    return null;
+  }
+
+  private static int indexOfIgnoreCase(byte[] data, byte[] lowerCase,
+      int from, int to) {
+    int last = to - lowerCase.length;
+    outer: for (int i = from; i <= last; i++) {
+      for (int j = 0; j < lowerCase.length; j++) {
+        byte b = data[i + j];
+        if (b >= 'A' && b <= 'Z') {
+          b += 'a' - 'A';
+        }
+        if (b != lowerCase[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+  }
+
+  private static boolean isCharsetChar(byte b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z')
+        || (b >= '0' && b <= '9') || b == '-' || b == '_' || b == '.'
+        || b == ':';
+  }
+
+  /**
+   * Increment the counters of documents handled by the fast detection and of
+   * documents falling back to ICU's charset detection by the detections which
+   * happened since the last update.
+   * 
+   * @param context
+   *          task context
+   */
+  public static void updateCounters(TaskInputOutputContext<?, ?, ?, ?> context) {
+    long n = fastDetections.getAndSet(0);
+    if (n > 0) {
+      context.getCounter(COUNTER_GROUP, "charset_detected_fast").increment(n);
+    }
+    n = fallbacks.getAndSet(0);
+    if (n > 0) {
+      context.getCounter(COUNTER_GROUP, "charset_detection_fallback")
+          .increment(n);
+    }
+  }
+
   public void addClue(String value, String source, int confidence) {
     if (value == null || "".equals(value)) {
       return;
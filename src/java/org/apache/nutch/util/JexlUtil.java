@@ -18,13 +18,29 @@ package org.apache.nutch.util;
 
 import java.lang.invoke.MethodHandles;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.jexl3.JexlBuilder;
+import org.apache.commons.jexl3.JexlContext;
 import org.apache.commons.jexl3.JexlEngine;
 import org.apache.commons.jexl3.JexlScript;
 import org.apache.commons.lang.time.DateUtils;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.hostdb.HostDatum;
+import org.apache.nutch.indexer.NutchDocument;
+import org.apache.nutch.indexer.NutchField;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.protocol.ProtocolStatus;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,16 +56,35 @@ public class JexlUtil {
   /** Supported format for date parsing yyyy-MM-ddTHH:mm:ssZ */
   private static final Pattern DATE_PATTERN = Pattern.compile("\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}Z");
 
+  /** JEXL engine shared by all scripts, the engine is thread-safe */
+  private static final JexlEngine JEXL = new JexlBuilder().silent(true)
+      .strict(true).create();
+
+  /** Compiled scripts by expression string, scripts are immutable */
+  private static final Map<String, JexlScript> SCRIPTS = new ConcurrentHashMap<>();
+
   /**
    * Parses the given expression to a JEXL expression. This supports
-   * date parsing.
+   * date parsing. Scripts are compiled only once and shared between all
+   * callers within a task.
    *
    * @param expr string JEXL expression
    * @return parsed JEXL expression or null in case of parse error
    */
   public static JexlScript parseExpression(String expr) {
     if (expr == null) return null;
-    
+
+    JexlScript script = SCRIPTS.get(expr);
+    if (script == null) {
+      script = compileExpression(expr);
+      if (script != null) {
+        SCRIPTS.put(expr, script);
+      }
+    }
+    return script;
+  }
+
+  private static JexlScript compileExpression(String expr) {
     try {
       // Translate any date object into a long. Dates must be in the DATE_PATTERN
       // format. For example: 2016-03-20T00:00:00Z
@@ -66,13 +101,336 @@ public class JexlUtil {
         expr = expr.replace(date, Long.toString(time));
       }
 
-      JexlEngine jexl = new JexlBuilder().silent(true).strict(true).create();
-
-      return jexl.createScript(expr);
+      return JEXL.createScript(expr);
     } catch (Exception e) {
       LOG.error(e.getMessage());
     }
     
     return null;
   }
+
+  /**
+   * Base class of reusable JEXL contexts which expose the fields of a datum
+   * as typed variables. Fields are read on demand when a script accesses a
+   * variable, instead of copying all fields and metadata into a
+   * {@link org.apache.commons.jexl3.MapContext} for every evaluation.
+   * Additional variables (e.g., <code>conf</code>) are provided via
+   * {@link #setVariable(String, Object)} and kept when the datum is replaced.
+   * Variables assigned by a script via {@link #set(String, Object)} take
+   * precedence over fields and are discarded when the datum is replaced.
+   */
+  public abstract static class DatumContext implements JexlContext {
+
+    /** Returned by {@link #getField(String)} for unknown fields */
+    protected static final Object UNDEFINED = new Object();
+
+    private final Map<String, Object> variables = new HashMap<>();
+    private final Map<String, Object> assigned = new HashMap<>();
+    private Map<String, Object> metaVariables = null;
+
+    /**
+     * @param name
+     *          variable name
+     * @return value of the field or {@link #UNDEFINED} if there is no field
+     *         with this name
+     */
+    protected abstract Object getField(String name);
+
+    /**
+     * @return datum metadata or null
+     */
+    protected abstract MapWritable getMetaData();
+
+    /**
+     * Must be called by subclasses if the datum is replaced: clears the
+     * variables assigned by scripts and the cached metadata variables.
+     */
+    protected void clearVariables() {
+      assigned.clear();
+      if (metaVariables != null) {
+        metaVariables.clear();
+      }
+    }
+
+    /**
+     * Set a variable which is kept when the datum is replaced.
+     *
+     * @param name
+     *          variable name
+     * @param value
+     *          variable value
+     */
+    public void setVariable(String name, Object value) {
+      variables.put(name, value);
+    }
+
+    /**
+     * Metadata values are mapped lazily into variables: float and int values
+     * by metadata key, text values (and protocol status) as strings with
+     * <code>-</code> in the key replaced by <code>_</code>.
+     */
+    private Map<String, Object> getMetaVariables() {
+      if (metaVariables == null) {
+        metaVariables = new HashMap<>();
+      }
+      if (metaVariables.isEmpty()) {
+        MapWritable metaData = getMetaData();
+        if (metaData == null || metaData.isEmpty()) {
+          return metaVariables;
+        }
+        for (Map.Entry<Writable, Writable> entry : metaData.entrySet()) {
+          Writable value = entry.getValue();
+          String key = entry.getKey().toString();
+          if (value instanceof FloatWritable) {
+            metaVariables.put(key, ((FloatWritable) value).get());
+          } else if (value instanceof IntWritable) {
+            metaVariables.put(key, ((IntWritable) value).get());
+          } else if (value instanceof Text
+              || value instanceof ProtocolStatus) {
+            metaVariables.put(key.replace("-", "_"), value.toString());
+          }
+        }
+      }
+      return metaVariables;
+    }
+
+    @Override
+    public Object get(String name) {
+      if (assigned.containsKey(name)) {
+        return assigned.get(name);
+      }
+      Object value = getField(name);
+      if (value != UNDEFINED) {
+        return value;
+      }
+      if (variables.containsKey(name)) {
+        return variables.get(name);
+      }
+      return getMetaVariables().get(name);
+    }
+
+    @Override
+    public boolean has(String name) {
+      return assigned.containsKey(name) || getField(name) != UNDEFINED
+          || variables.containsKey(name)
+          || getMetaVariables().containsKey(name);
+    }
+
+    @Override
+    public void set(String name, Object value) {
+      assigned.put(name, value);
+    }
+  }
+
+  /**
+   * Reusable JEXL context over the fields of a {@link HostDatum}: host
+   * statistics (<code>unfetched</code>, <code>fetched</code>,
+   * <code>gone</code>, <code>redirTemp</code>, <code>redirPerm</code>,
+   * <code>redirs</code>, <code>notModified</code>, <code>ok</code>,
+   * <code>numRecords</code>, <code>dnsFailures</code>,
+   * <code>connectionFailures</code>) and host metadata.
+   */
+  public static class HostDatumContext extends DatumContext {
+
+    private HostDatum datum;
+
+    /**
+     * @param datum
+     *          host datum the variables are read from
+     * @return this context
+     */
+    public HostDatumContext reset(HostDatum datum) {
+      this.datum = datum;
+      clearVariables();
+      return this;
+    }
+
+    @Override
+    protected Object getField(String name) {
+      switch (name) {
+      case "unfetched":
+        return datum.getUnfetched();
+      case "fetched":
+        return datum.getFetched();
+      case "gone":
+        return datum.getGone();
+      case "redirTemp":
+        return datum.getRedirTemp();
+      case "redirPerm":
+        return datum.getRedirPerm();
+      case "redirs":
+        return datum.getRedirPerm() + datum.getRedirTemp();
+      case "notModified":
+        return datum.getNotModified();
+      case "ok":
+        return datum.getFetched() + datum.getNotModified();
+      case "numRecords":
+        return datum.numRecords();
+      case "dnsFailures":
+        return datum.getDnsFailures();
+      case "connectionFailures":
+        return datum.getConnectionFailures();
+      default:
+        return UNDEFINED;
+      }
+    }
+
+    @Override
+    protected MapWritable getMetaData() {
+      return datum.hasMetaData() ? datum.getMetaData() : null;
+    }
+  }
+
+  /**
+   * Reusable JEXL context over the URL and the fields of a
+   * {@link CrawlDatum}: <code>url</code>, <code>status</code> (name),
+   * <code>fetchTime</code>, <code>modifiedTime</code>, <code>retries</code>,
+   * <code>interval</code>, <code>score</code>, <code>signature</code> (hex),
+   * <code>parentlink</code> and the datum's metadata.
+   */
+  public static class CrawlDatumContext extends DatumContext {
+
+    private String url;
+    private CrawlDatum datum;
+
+    /**
+     * @param url
+     *          URL of the datum
+     * @param datum
+     *          datum the variables are read from
+     * @return this context
+     */
+    public CrawlDatumContext reset(String url, CrawlDatum datum) {
+      this.url = url;
+      this.datum = datum;
+      clearVariables();
+      return this;
+    }
+
+    @Override
+    protected Object getField(String name) {
+      switch (name) {
+      case "url":
+        return url;
+      case "status":
+        return CrawlDatum.getStatusName(datum.getStatus());
+      case "fetchTime":
+        return datum.getFetchTime();
+      case "modifiedTime":
+        return datum.getModifiedTime();
+      case "retries":
+        return datum.getRetriesSinceFetch();
+      case "interval":
+        return datum.getFetchInterval();
+      case "score":
+        return datum.getScore();
+      case "signature":
+        return StringUtil.toHexString(datum.getSignature());
+      case "parentlink":
+        return datum.getParentLink();
+      default:
+        return UNDEFINED;
+      }
+    }
+
+    @Override
+    protected MapWritable getMetaData() {
+      return datum.getMetaData();
+    }
+  }
+
+  /**
+   * JEXL context view on the fields of a {@link NutchDocument}: single-valued
+   * fields are mapped to the value, multi-valued fields to the list of
+   * values. The document is never modified: variables assigned by a script
+   * are kept in the context and discarded when the document is replaced.
+   */
+  public static class NutchDocumentContext implements JexlContext {
+
+    private NutchDocument doc;
+    private final Map<String, Object> assigned = new HashMap<>();
+
+    /**
+     * @param doc
+     *          document the variables are read from
+     * @return this context
+     */
+    public NutchDocumentContext reset(NutchDocument doc) {
+      this.doc = doc;
+      assigned.clear();
+      return this;
+    }
+
+    @Override
+    public Object get(String name) {
+      if (assigned.containsKey(name)) {
+        return assigned.get(name);
+      }
+      NutchField field = doc.getField(name);
+      if (field == null) {
+        return null;
+      }
+      List<Object> values = field.getValues();
+      return values.size() > 1 ? values : values.get(0);
+    }
+
+    @Override
+    public boolean has(String name) {
+      if (assigned.containsKey(name)) {
+        return true;
+      }
+      NutchField field = doc.getField(name);
+      return field != null && !field.getValues().isEmpty();
+    }
+
+    @Override
+    public void set(String name, Object value) {
+      assigned.put(name, value);
+    }
+  }
+
+  /**
+   * JEXL context view on {@link Metadata}: single-valued keys are mapped to
+   * the value, multi-valued keys to the array of values. The metadata is
+   * never modified: variables assigned by a script are kept in the context and
+   * discarded when the metadata is replaced.
+   */
+  public static class MetadataContext implements JexlContext {
+
+    private Metadata metadata;
+    private final Map<String, Object> assigned = new HashMap<>();
+
+    /**
+     * @param metadata
+     *          metadata the variables are read from
+     * @return this context
+     */
+    public MetadataContext reset(Metadata metadata) {
+      this.metadata = metadata;
+      assigned.clear();
+      return this;
+    }
+
+    @Override
+    public Object get(String name) {
+      if (assigned.containsKey(name)) {
+        return assigned.get(name);
+      }
+      String[] values = metadata.getValues(name);
+      if (values.length == 0) {
+        return null;
+      }
+      return values.length > 1 ? values : values[0];
+    }
+
+    @Override
+    public boolean has(String name) {
+      return assigned.containsKey(name) || metadata.get(name) != null;
+    }
+
+    @Override
+    public void set(String name, Object value) {
+      assigned.put(name, value);
+    }
+  }
 }
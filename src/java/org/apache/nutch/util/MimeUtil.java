@@ -20,6 +20,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.nutch.protocol.ProtocolOutput;
@@ -55,6 +60,93 @@ public final class MimeUtil {
   /* whether or not magic should be employed or not */
   private boolean mimeMagic;
 
+  /* whether to check common signatures before Tika's magic detection */
+  private boolean fastMagic;
+
+  /*
+   * documents of a host with agreeing Content-Type and magic before magic
+   * detection is skipped for the host, 0 if never skipped
+   */
+  private int hostTrust;
+
+  /* consistency of Content-Type header and magic per host */
+  private HostConsistency hostConsistency;
+
+  /** Max. number of hosts tracked by {@link HostConsistency} */
+  private static final int MAX_HOSTS = 10000;
+
+  /** Max. number of leading white space bytes skipped to detect HTML */
+  private static final int MAX_LEADING_WHITESPACE = 64;
+
+  private static final byte[] PDF = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n',
+      0x1a, '\n' };
+  private static final byte[] GIF87 = "GIF87a".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] GIF89 = "GIF89a".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] JPEG = { (byte) 0xff, (byte) 0xd8, (byte) 0xff };
+  private static final byte[] UTF8_BOM = { (byte) 0xef, (byte) 0xbb,
+      (byte) 0xbf };
+  private static final byte[] HTML_DOCTYPE = "<!doctype html"
+      .getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] HTML_TAG = "<html"
+      .getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * Tracks per host whether the Content-Type sent in the HTTP header agrees
+   * with the MIME type detected by magic. Once the header of a host agreed
+   * for <code>mime.type.magic.host.trust</code> documents in a row, magic
+   * detection is only applied to every n-th document of the host. A
+   * disagreement resets the count.
+   */
+  private static class HostConsistency {
+
+    private final int trust;
+
+    /* per host: agreeing documents in a row, documents since last check */
+    private final Map<String, int[]> hosts = new LinkedHashMap<String, int[]>(
+        16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+        return size() > MAX_HOSTS;
+      }
+    };
+
+    HostConsistency(int trust) {
+      this.trust = trust;
+    }
+
+    /** @return true if magic detection should be skipped for the host */
+    synchronized boolean skipMagic(String host) {
+      int[] stats = hosts.get(host);
+      if (stats == null || stats[0] < trust) {
+        return false;
+      }
+      stats[1]++;
+      if (stats[1] < trust) {
+        return true;
+      }
+      // check again
+      stats[1] = 0;
+      return false;
+    }
+
+    synchronized void record(String host, boolean agree) {
+      int[] stats = hosts.get(host);
+      if (stats == null) {
+        stats = new int[2];
+        hosts.put(host, stats);
+      }
+      if (agree) {
+        stats[0]++;
+      } else {
+        stats[0] = 0;
+        stats[1] = 0;
+      }
+    }
+  }
+
   /* our log stream */
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
@@ -101,6 +193,18 @@ public final class MimeUtil {
 
     this.mimeTypes = mimeTypez;
     this.mimeMagic = conf.getBoolean("mime.type.magic", true);
+    this.fastMagic = conf.getBoolean("mime.type.magic.fast", false);
+    this.hostTrust = conf.getInt("mime.type.magic.host.trust", 20);
+    if (mimeMagic && fastMagic && hostTrust > 0) {
+      String key = HostConsistency.class.getName();
+      synchronized (objectCache) {
+        hostConsistency = (HostConsistency) objectCache.getObject(key);
+        if (hostConsistency == null) {
+          hostConsistency = new HostConsistency(hostTrust);
+          objectCache.setObject(key, hostConsistency);
+        }
+      }
+    }
   }
 
   /**
@@ -141,6 +245,10 @@ public final class MimeUtil {
    * the mime type. However, if <code>mime.type.magic</code> is enabled in
    * {@link NutchConfiguration}, then mime type magic resolution is used to try
    * and obtain a better-than-the-default approximation of the {@link MimeType}.
+   * If <code>mime.type.magic.fast</code> is enabled, common signatures are
+   * checked first and Tika's magic detection is only used if none is found
+   * and the Content-Type header of the host has not proven consistent with
+   * magic detection (see <code>mime.type.magic.host.trust</code>).
    * 
    * @param typeName
    *          The original mime type, returned from a {@link ProtocolOutput}.
@@ -172,7 +280,7 @@ public final class MimeUtil {
       // If no mime-type header, or cannot find a corresponding registered
       // mime-type, then guess a mime-type from the url pattern
       try {
-        retType = tika.detect(url) != null ? tika.detect(url) : null;
+        retType = tika.detect(url);
       } catch (Exception e) {
         String message = "Problem loading default Tika configuration";
         LOG.error(message, e);
@@ -188,16 +296,37 @@ public final class MimeUtil {
     // returned by the magic
     if (this.mimeMagic) {
       String magicType = null;
-      // pass URL (file name) and (cleansed) content type from protocol to Tika
-      Metadata tikaMeta = new Metadata();
-      tikaMeta.add(TikaCoreProperties.RESOURCE_NAME_KEY, url);
-      tikaMeta.add(Metadata.CONTENT_TYPE,
-          (cleanedMimeType != null ? cleanedMimeType : typeName));
-      try {
-        try (InputStream stream = TikaInputStream.get(data)) {
-          magicType = mimeTypes.detect(stream, tikaMeta).toString();
+      String host = null;
+      if (fastMagic) {
+        magicType = detectCommonSignatures(data, retType);
+        if (magicType == null && hostConsistency != null && type != null
+            && type.getName().equals(retType)) {
+          // Content-Type sent by the server is known
+          host = getHost(url);
+        }
+      }
+      if (magicType != null) {
+        // common signature found
+      } else if (host != null && hostConsistency.skipMagic(host)) {
+        // Content-Type header of this host is trustworthy
+      } else {
+        // pass URL (file name) and (cleansed) content type from protocol to
+        // Tika
+        Metadata tikaMeta = new Metadata();
+        tikaMeta.add(TikaCoreProperties.RESOURCE_NAME_KEY, url);
+        tikaMeta.add(Metadata.CONTENT_TYPE,
+            (cleanedMimeType != null ? cleanedMimeType : typeName));
+        try {
+          try (InputStream stream = TikaInputStream.get(data)) {
+            magicType = mimeTypes.detect(stream, tikaMeta).toString();
+          }
+        } catch (IOException ignore) {
+        }
+        if (host != null) {
+          hostConsistency.record(host, magicType == null
+              || magicType.equals(MimeTypes.OCTET_STREAM)
+              || magicType.equals(retType));
         }
-      } catch (IOException ignore) {
       }
 
       if (magicType != null && !magicType.equals(MimeTypes.OCTET_STREAM)
@@ -221,6 +350,92 @@ public final class MimeUtil {
     return retType;
   }
 
+  /**
+   * Detect the MIME type of common formats (PDF, PNG, GIF, JPEG and HTML)
+   * from the leading bytes of the content without calling Tika.
+   * 
+   * @param data
+   *          content
+   * @param type
+   *          MIME type determined so far from the Content-Type or URL
+   * @return the detected MIME type, or null if the content does not start
+   *         with any of the known signatures. HTML documents are reported as
+   *         <code>text/html</code> unless the given type is already an HTML
+   *         type.
+   */
+  static String detectCommonSignatures(byte[] data, String type) {
+    if (data == null || data.length == 0) {
+      return null;
+    }
+    if (startsWith(data, 0, PDF)) {
+      return "application/pdf";
+    } else if (startsWith(data, 0, PNG)) {
+      return "image/png";
+    } else if (startsWith(data, 0, GIF87) || startsWith(data, 0, GIF89)) {
+      return "image/gif";
+    } else if (startsWith(data, 0, JPEG)) {
+      return "image/jpeg";
+    }
+    int start = startsWith(data, 0, UTF8_BOM) ? UTF8_BOM.length : 0;
+    int max = Math.min(data.length, start + MAX_LEADING_WHITESPACE);
+    while (start < max && isWhitespace(data[start])) {
+      start++;
+    }
+    if (startsWithTag(data, start, HTML_DOCTYPE)
+        || startsWithTag(data, start, HTML_TAG)) {
+      if ("text/html".equals(type) || "application/xhtml+xml".equals(type)) {
+        return type;
+      }
+      return "text/html";
+    }
+    return null;
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+  }
+
+  private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+    if (data.length - offset < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (data[offset + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Case-insensitive match of a lower-case ASCII tag prefix followed by white
+   * space or <code>&gt;</code>
+   */
+  private static boolean startsWithTag(byte[] data, int offset, byte[] tag) {
+    if (data.length - offset <= tag.length) {
+      return false;
+    }
+    for (int i = 0; i < tag.length; i++) {
+      byte b = data[offset + i];
+      if (b >= 'A' && b <= 'Z') {
+        b += 'a' - 'A';
+      }
+      if (b != tag[i]) {
+        return false;
+      }
+    }
+    byte next = data[offset + tag.length];
+    return next == '>' || isWhitespace(next);
+  }
+
+  private static String getHost(String url) {
+    try {
+      return new URL(url).getHost();
+    } catch (MalformedURLException e) {
+      return null;
+    }
+  }
+
   /**
    * Facade interface to Tika's underlying {@link MimeTypes#getMimeType(String)}
    * method.
@@ -17,8 +17,6 @@
 package org.apache.nutch.indexer.jexl;
 
 import java.lang.invoke.MethodHandles;
-import java.util.List;
-import java.util.Map.Entry;
 
 import org.apache.commons.jexl3.JexlScript;
 import org.apache.commons.jexl3.JexlContext;
@@ -30,11 +28,8 @@ import org.apache.nutch.crawl.Inlinks;
 import org.apache.nutch.indexer.IndexingException;
 import org.apache.nutch.indexer.IndexingFilter;
 import org.apache.nutch.indexer.NutchDocument;
-import org.apache.nutch.indexer.NutchField;
-import org.apache.nutch.metadata.Metadata;
 import org.apache.nutch.parse.Parse;
 import org.apache.nutch.util.JexlUtil;
-import org.apache.nutch.util.StringUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,46 +45,40 @@ public class JexlIndexingFilter implements IndexingFilter {
   private Configuration conf;
   private JexlScript expr;
 
+  private final JexlUtil.CrawlDatumContext datumContext = new JexlUtil.CrawlDatumContext();
+  private final JexlContext httpStatusContext = new MapContext();
+  private final JexlUtil.MetadataContext documentMetaContext = new JexlUtil.MetadataContext();
+  private final JexlUtil.MetadataContext contentMetaContext = new JexlUtil.MetadataContext();
+  private final JexlUtil.MetadataContext parseMetaContext = new JexlUtil.MetadataContext();
+  private final JexlUtil.NutchDocumentContext docContext = new JexlUtil.NutchDocumentContext();
+
+  public JexlIndexingFilter() {
+    datumContext.setVariable("httpStatus", httpStatusContext);
+    datumContext.setVariable("documentMeta", documentMetaContext);
+    datumContext.setVariable("contentMeta", contentMetaContext);
+    datumContext.setVariable("parseMeta", parseMetaContext);
+    datumContext.setVariable("doc", docContext);
+  }
+
   @Override
   public NutchDocument filter(NutchDocument doc, Parse parse, Text url,
       CrawlDatum datum, Inlinks inlinks) throws IndexingException {
-    // Create a context and add data
-    JexlContext jcontext = new MapContext();
-
-    jcontext.set("status", CrawlDatum.getStatusName(datum.getStatus()));
-    jcontext.set("fetchTime", (long) (datum.getFetchTime()));
-    jcontext.set("modifiedTime", (long) (datum.getModifiedTime()));
-    jcontext.set("retries", datum.getRetriesSinceFetch());
-    jcontext.set("interval", Integer.valueOf(datum.getFetchInterval()));
-    jcontext.set("score", datum.getScore());
-    jcontext.set("signature", StringUtil.toHexString(datum.getSignature()));
-    jcontext.set("url", url.toString());
-
-    jcontext.set("text", parse.getText());
-    jcontext.set("title", parse.getData().getTitle());
-
-    JexlContext httpStatusContext = new MapContext();
+    // Reuse the contexts and add data
+    JexlContext jcontext = datumContext.reset(url.toString(), datum);
+
+    datumContext.setVariable("text", parse.getText());
+    datumContext.setVariable("title", parse.getData().getTitle());
+
     httpStatusContext.set("majorCode",
         parse.getData().getStatus().getMajorCode());
     httpStatusContext.set("minorCode",
         parse.getData().getStatus().getMinorCode());
     httpStatusContext.set("message", parse.getData().getStatus().getMessage());
-    jcontext.set("httpStatus", httpStatusContext);
 
-    jcontext.set("documentMeta", metadataToContext(doc.getDocumentMeta()));
-    jcontext.set("contentMeta",
-        metadataToContext(parse.getData().getContentMeta()));
-    jcontext.set("parseMeta",
-        metadataToContext(parse.getData().getParseMeta()));
-
-    JexlContext context = new MapContext();
-
-    for (Entry<String, NutchField> entry : doc) {
-      List<Object> values = entry.getValue().getValues();
-      context.set(entry.getKey(), values.size() > 1 ? values : values.get(0));
-    }
-
-    jcontext.set("doc", context);
+    documentMetaContext.reset(doc.getDocumentMeta());
+    contentMetaContext.reset(parse.getData().getContentMeta());
+    parseMetaContext.reset(parse.getData().getParseMeta());
+    docContext.reset(doc);
 
     try {
       if (Boolean.TRUE.equals(expr.execute(jcontext))) {
@@ -127,15 +116,4 @@ public class JexlIndexingFilter implements IndexingFilter {
   public Configuration getConf() {
     return this.conf;
   }
-
-  private JexlContext metadataToContext(Metadata metadata) {
-    JexlContext context = new MapContext();
-
-    for (String name : metadata.names()) {
-      String[] values = metadata.getValues(name);
-      context.set(name, values.length > 1 ? values : values[0]);
-    }
-
-    return context;
-  }
 }
@@ -45,7 +45,7 @@ import org.apache.hadoop.io.Text;
  */
 public class DOMContentUtils {
 
-  private static Pattern NOFOLLOW_PATTERN = Pattern.compile("\\bnofollow\\b",
+  static final Pattern NOFOLLOW_PATTERN = Pattern.compile("\\bnofollow\\b",
       Pattern.CASE_INSENSITIVE);
 
   private String srcTagMetaName;
@@ -109,6 +109,33 @@ public class DOMContentUtils {
     blockNodes = new HashSet<>(conf.getTrimmedStringCollection("parser.html.line.separators"));
   }
 
+  /**
+   * @param elName
+   *          lower-cased element name
+   * @return how to extract outlinks from the element, null if the element
+   *         does not hold an outlink
+   */
+  LinkParams getLinkParams(String elName) {
+    return linkParams.get(elName);
+  }
+
+  /**
+   * @param elName
+   *          lower-cased element name
+   * @return true if the element causes a line break in the extracted text
+   */
+  boolean isBlockNode(String elName) {
+    return blockNodes.contains(elName);
+  }
+
+  /**
+   * @return name of the outlink metadata holding the element the outlink was
+   *         found in, null if the element is not kept
+   */
+  String getOutlinkNodeMetaName() {
+    return keepNodenames ? srcTagMetaName : null;
+  }
+
   /**
    * This method takes a {@link StringBuffer} and a DOM {@link Node}, and will
    * append all the content text found beneath the DOM node to the
@@ -209,7 +236,7 @@ public class DOMContentUtils {
    * @param buffer
    *          StringBuffer to append paragraph break
    */
-  private void appendParagraphSeparator(StringBuffer buffer) {
+  static void appendParagraphSeparator(StringBuffer buffer) {
     if (buffer.length() == 0) {
       return;
     }
@@ -233,7 +260,7 @@ public class DOMContentUtils {
    * @param buffer
    *          StringBuffer to append space
    */
-  private void appendSpace(StringBuffer buffer) {
+  static void appendSpace(StringBuffer buffer) {
     if (buffer.length() == 0) {
       return;
     }
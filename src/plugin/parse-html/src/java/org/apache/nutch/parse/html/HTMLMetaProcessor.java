@@ -80,138 +80,172 @@ public class HTMLMetaProcessor {
           }
         }
 
-        if (nameNode != null) {
-          if (contentNode != null) {
-            String name = nameNode.getNodeValue().toLowerCase();
-            metaTags.getGeneralTags().add(name, contentNode.getNodeValue());
-            if (Nutch.ROBOTS_METATAG.equals(name)) {
-              String directives = contentNode.getNodeValue().toLowerCase();
-              int index = directives.indexOf("none");
-
-              if (index >= 0) {
-                metaTags.setNoIndex();
-                metaTags.setNoFollow();
-              }
+        processMetaTag(metaTags,
+            nameNode == null ? null : nameNode.getNodeValue(),
+            equivNode == null ? null : equivNode.getNodeValue(),
+            contentNode == null ? null : contentNode.getNodeValue(), currURL);
 
-              index = directives.indexOf("all");
-              if (index >= 0) {
-                // do nothing...
-              }
+      } else if ("base".equalsIgnoreCase(node.getNodeName())) {
+        NamedNodeMap attrs = node.getAttributes();
+        Node hrefNode = attrs.getNamedItem("href");
 
-              index = directives.indexOf("noindex");
-              if (index >= 0) {
-                metaTags.setNoIndex();
-              }
+        if (hrefNode != null) {
+          processBaseHref(metaTags, hrefNode.getNodeValue(), currURL);
+        }
+      }
 
-              index = directives.indexOf("nofollow");
-              if (index >= 0) {
-                metaTags.setNoFollow();
-              }
+    }
 
-              index = directives.indexOf("noarchive");
-              if (index >= 0) {
-                metaTags.setNoCache();
-              }
+    NodeList children = node.getChildNodes();
+    if (children != null) {
+      int len = children.getLength();
+      for (int i = 0; i < len; i++) {
+        getMetaTagsHelper(metaTags, children.item(i), currURL);
+      }
+    }
+  }
 
-            } // end if (name == robots)
+  /**
+   * Process the attributes of a META tag.
+   *
+   * @param metaTags
+   *          a {@link HTMLMetaTags} to populate
+   * @param name
+   *          value of the <code>name</code> attribute, null if not present
+   * @param httpEquiv
+   *          value of the <code>http-equiv</code> attribute, null if not
+   *          present
+   * @param content
+   *          value of the <code>content</code> attribute, null if not present
+   * @param currURL
+   *          the canonical URL associated with the metatags
+   */
+  static void processMetaTag(HTMLMetaTags metaTags, String name,
+      String httpEquiv, String content, URL currURL) {
+    if (name != null) {
+      if (content != null) {
+        name = name.toLowerCase();
+        metaTags.getGeneralTags().add(name, content);
+        if (Nutch.ROBOTS_METATAG.equals(name)) {
+          String directives = content.toLowerCase();
+          int index = directives.indexOf("none");
+
+          if (index >= 0) {
+            metaTags.setNoIndex();
+            metaTags.setNoFollow();
           }
-        }
 
-        if (equivNode != null) {
-          if (contentNode != null) {
-            String name = equivNode.getNodeValue().toLowerCase();
-            String content = contentNode.getNodeValue();
-            metaTags.getHttpEquivTags().setProperty(name, content);
-            if ("pragma".equals(name)) {
-              content = content.toLowerCase();
-              int index = content.indexOf("no-cache");
-              if (index >= 0)
-                metaTags.setNoCache();
-            } else if ("refresh".equals(name)) {
-              int idx = content.indexOf(';');
-              String time = null;
-              if (idx == -1) { // just the refresh time
-                time = content;
-              } else
-                time = content.substring(0, idx);
-              try {
-                metaTags.setRefreshTime(Integer.parseInt(time));
-                // skip this if we couldn't parse the time
-                metaTags.setRefresh(true);
-              } catch (Exception e) {
-                ;
-              }
-              URL refreshUrl = null;
-              if (metaTags.getRefresh() && idx != -1) { // set the URL
-                idx = content.toLowerCase().indexOf("url=");
-                if (idx == -1) { // assume a mis-formatted entry with just the
-                                 // url
-                  idx = content.indexOf(';') + 1;
-                } else
-                  idx += 4;
-                if (idx != -1) {
-                  String url = content.substring(idx);
-                  try {
-                    refreshUrl = new URL(url);
-                  } catch (Exception e) {
-                    // XXX according to the spec, this has to be an absolute
-                    // XXX url. However, many websites use relative URLs and
-                    // XXX expect browsers to handle that.
-                    // XXX Unfortunately, in some cases this may create a
-                    // XXX infinitely recursive paths (a crawler trap)...
-                    // if (!url.startsWith("/")) url = "/" + url;
-                    try {
-                      refreshUrl = new URL(currURL, url);
-                    } catch (Exception e1) {
-                      refreshUrl = null;
-                    }
-                  }
-                }
-              }
-              if (metaTags.getRefresh()) {
-                if (refreshUrl == null) {
-                  // apparently only refresh time was present. set the URL
-                  // to the same URL.
-                  refreshUrl = currURL;
-                }
-                metaTags.setRefreshHref(refreshUrl);
-              }
-            }
+          index = directives.indexOf("all");
+          if (index >= 0) {
+            // do nothing...
           }
-        }
 
-      } else if ("base".equalsIgnoreCase(node.getNodeName())) {
-        NamedNodeMap attrs = node.getAttributes();
-        Node hrefNode = attrs.getNamedItem("href");
+          index = directives.indexOf("noindex");
+          if (index >= 0) {
+            metaTags.setNoIndex();
+          }
 
-        if (hrefNode != null) {
-          String urlString = hrefNode.getNodeValue();
+          index = directives.indexOf("nofollow");
+          if (index >= 0) {
+            metaTags.setNoFollow();
+          }
+
+          index = directives.indexOf("noarchive");
+          if (index >= 0) {
+            metaTags.setNoCache();
+          }
+
+        } // end if (name == robots)
+      }
+    }
 
-          URL url = null;
+    if (httpEquiv != null) {
+      if (content != null) {
+        String equiv = httpEquiv.toLowerCase();
+        metaTags.getHttpEquivTags().setProperty(equiv, content);
+        if ("pragma".equals(equiv)) {
+          content = content.toLowerCase();
+          int index = content.indexOf("no-cache");
+          if (index >= 0)
+            metaTags.setNoCache();
+        } else if ("refresh".equals(equiv)) {
+          int idx = content.indexOf(';');
+          String time = null;
+          if (idx == -1) { // just the refresh time
+            time = content;
+          } else
+            time = content.substring(0, idx);
           try {
-            if (currURL == null)
-              url = new URL(urlString);
-            else
-              url = new URL(currURL, urlString);
+            metaTags.setRefreshTime(Integer.parseInt(time));
+            // skip this if we couldn't parse the time
+            metaTags.setRefresh(true);
           } catch (Exception e) {
             ;
           }
-
-          if (url != null)
-            metaTags.setBaseHref(url);
+          URL refreshUrl = null;
+          if (metaTags.getRefresh() && idx != -1) { // set the URL
+            idx = content.toLowerCase().indexOf("url=");
+            if (idx == -1) { // assume a mis-formatted entry with just the
+                             // url
+              idx = content.indexOf(';') + 1;
+            } else
+              idx += 4;
+            if (idx != -1) {
+              String url = content.substring(idx);
+              try {
+                refreshUrl = new URL(url);
+              } catch (Exception e) {
+                // XXX according to the spec, this has to be an absolute
+                // XXX url. However, many websites use relative URLs and
+                // XXX expect browsers to handle that.
+                // XXX Unfortunately, in some cases this may create a
+                // XXX infinitely recursive paths (a crawler trap)...
+                // if (!url.startsWith("/")) url = "/" + url;
+                try {
+                  refreshUrl = new URL(currURL, url);
+                } catch (Exception e1) {
+                  refreshUrl = null;
+                }
+              }
+            }
+          }
+          if (metaTags.getRefresh()) {
+            if (refreshUrl == null) {
+              // apparently only refresh time was present. set the URL
+              // to the same URL.
+              refreshUrl = currURL;
+            }
+            metaTags.setRefreshHref(refreshUrl);
+          }
         }
-
       }
-
     }
+  }
 
-    NodeList children = node.getChildNodes();
-    if (children != null) {
-      int len = children.getLength();
-      for (int i = 0; i < len; i++) {
-        getMetaTagsHelper(metaTags, children.item(i), currURL);
-      }
+  /**
+   * Process the <code>href</code> attribute of a BASE tag.
+   *
+   * @param metaTags
+   *          a {@link HTMLMetaTags} to populate
+   * @param urlString
+   *          value of the <code>href</code> attribute
+   * @param currURL
+   *          the canonical URL associated with the metatags
+   */
+  static void processBaseHref(HTMLMetaTags metaTags, String urlString,
+      URL currURL) {
+    URL url = null;
+    try {
+      if (currURL == null)
+        url = new URL(urlString);
+      else
+        url = new URL(currURL, urlString);
+    } catch (Exception e) {
+      ;
     }
+
+    if (url != null)
+      metaTags.setBaseHref(url);
   }
 
 }
@@ -30,8 +30,10 @@ import java.net.URL;
 import java.net.MalformedURLException;
 import java.nio.charset.StandardCharsets;
 
+import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.DOMException;
@@ -46,6 +48,7 @@ import org.apache.nutch.parse.Outlink;
 import org.apache.nutch.parse.Parse;
 import org.apache.nutch.parse.ParseData;
 import org.apache.nutch.parse.ParseImpl;
+import org.apache.nutch.parse.ParseProfile;
 import org.apache.nutch.parse.ParseResult;
 import org.apache.nutch.parse.ParseStatus;
 import org.apache.nutch.parse.Parser;
@@ -53,11 +56,18 @@ import org.apache.nutch.protocol.Content;
 import org.apache.nutch.util.EncodingDetector;
 import org.apache.nutch.util.NutchConfiguration;
 import org.cyberneko.html.parsers.DOMFragmentParser;
+import org.cyberneko.html.parsers.SAXParser;
 
 public class HtmlParser implements Parser {
   private static final Logger LOG = LoggerFactory
       .getLogger(MethodHandles.lookup().lookupClass());
 
+  /**
+   * Extract text, title and outlinks from SAX events without building a DOM
+   * tree, unless an HTML parse filter needs the DOM
+   */
+  public static final String PARSER_HTML_STREAMING = "parser.html.streaming";
+
   // I used 1000 bytes at first, but found that some documents have
   // meta tag well past the first 1000 bytes.
   // (e.g. http://cn.promo.yahoo.com/customcare/music.html)
@@ -143,6 +153,10 @@ public class HtmlParser implements Parser {
 
   private String cachingPolicy;
 
+  private boolean streaming;
+
+  private ParseProfile profile;
+
   @Override
   public ParseResult getParse(Content content) {
     HTMLMetaTags metaTags = new HTMLMetaTags();
@@ -161,7 +175,8 @@ public class HtmlParser implements Parser {
     Metadata metadata = new Metadata();
 
     // parse the content
-    DocumentFragment root;
+    DocumentFragment root = null;
+    StreamingContentHandler handler = null;
     try {
       byte[] contentInOctets = content.getContent();
       InputSource input = new InputSource(new ByteArrayInputStream(
@@ -169,7 +184,10 @@ public class HtmlParser implements Parser {
 
       EncodingDetector detector = new EncodingDetector(conf);
       detector.autoDetectClues(content, true);
-      detector.addClue(sniffCharacterEncoding(contentInOctets), "sniffed");
+      // the fast detection has already sniffed the content
+      detector.addClue(detector.isFastDetection()
+          ? detector.getSniffedEncoding()
+          : sniffCharacterEncoding(contentInOctets), "sniffed");
       String encoding = detector.guessEncoding(content, defaultCharEncoding);
 
       metadata.set(Metadata.ORIGINAL_CHAR_ENCODING, encoding);
@@ -179,7 +197,13 @@ public class HtmlParser implements Parser {
       if (LOG.isTraceEnabled()) {
         LOG.trace("Parsing...");
       }
-      root = parse(input);
+      if (streaming && !htmlParseFilters.needsDocument()) {
+        handler = new StreamingContentHandler(utils, base, metaTags,
+            profile.needsText());
+        parse(input, handler);
+      } else {
+        root = parse(input);
+      }
     } catch (IOException e) {
       return new ParseStatus(e)
           .getEmptyParseResult(content.getUrl(), getConf());
@@ -196,7 +220,9 @@ public class HtmlParser implements Parser {
     }
 
     // get meta directives
-    HTMLMetaProcessor.getMetaTags(metaTags, root, base);
+    if (root != null) {
+      HTMLMetaProcessor.getMetaTags(metaTags, root, base);
+    }
 
     // populate Nutch metadata with HTML meta directives
     metadata.addAll(metaTags.getGeneralTags());
@@ -205,25 +231,34 @@ public class HtmlParser implements Parser {
       LOG.trace("Meta tags for " + base + ": " + metaTags.toString());
     }
     // check meta directives
-    if (!metaTags.getNoIndex()) { // okay to index
+    if (!metaTags.getNoIndex() && handler != null) {
+      text = handler.getText();
+      title = handler.getTitle();
+    } else if (!metaTags.getNoIndex()) { // okay to index
       StringBuffer sb = new StringBuffer();
-      if (LOG.isTraceEnabled()) {
-        LOG.trace("Getting text...");
+      if (profile.needsText()) {
+        if (LOG.isTraceEnabled()) {
+          LOG.trace("Getting text...");
+        }
+        utils.getText(sb, root); // extract text
+        text = sb.toString();
+        sb.setLength(0);
       }
-      utils.getText(sb, root); // extract text
-      text = sb.toString();
-      sb.setLength(0);
-      if (LOG.isTraceEnabled()) {
-        LOG.trace("Getting title...");
+      if (profile.needsMetadata()) {
+        if (LOG.isTraceEnabled()) {
+          LOG.trace("Getting title...");
+        }
+        utils.getTitle(sb, root); // extract title
+        title = sb.toString().trim();
       }
-      utils.getTitle(sb, root); // extract title
-      title = sb.toString().trim();
     }
 
-    if (!metaTags.getNoFollow()) { // okay to follow links
+    // okay to follow links, and needed
+    if (!metaTags.getNoFollow() && profile.needsOutlinks()) {
       ArrayList<Outlink> l = new ArrayList<Outlink>(); // extract outlinks
       URL baseTag = base;
-      String baseTagHref = utils.getBase(root);
+      String baseTagHref = handler != null ? handler.getBase()
+          : utils.getBase(root);
       if (baseTagHref != null) {
         try {
           baseTag = new URL(base, baseTagHref);
@@ -234,7 +269,11 @@ public class HtmlParser implements Parser {
       if (LOG.isTraceEnabled()) {
         LOG.trace("Getting links...");
       }
-      utils.getOutlinks(baseTag, l, root);
+      if (handler != null) {
+        handler.getOutlinks(baseTag, l);
+      } else {
+        utils.getOutlinks(baseTag, l, root);
+      }
       outlinks = l.toArray(new Outlink[l.size()]);
       if (LOG.isTraceEnabled()) {
         LOG.trace("found " + outlinks.length + " outlinks in "
@@ -271,6 +310,43 @@ public class HtmlParser implements Parser {
       return parseNeko(input);
   }
 
+  /**
+   * Parse the input and pass the SAX events to the handler, no DOM tree is
+   * built.
+   */
+  private void parse(InputSource input, ContentHandler handler)
+      throws Exception {
+    XMLReader reader;
+    if ("tagsoup".equalsIgnoreCase(parserImpl)) {
+      reader = new org.ccil.cowan.tagsoup.Parser();
+      reader.setFeature(org.ccil.cowan.tagsoup.Parser.ignoreBogonsFeature,
+          true);
+      reader.setFeature(org.ccil.cowan.tagsoup.Parser.bogonsEmptyFeature,
+          false);
+    } else {
+      reader = new SAXParser();
+      try {
+        reader.setFeature(
+            "http://cyberneko.org/html/features/scanner/allow-selfclosing-iframe",
+            true);
+        reader.setProperty(
+            "http://cyberneko.org/html/properties/default-encoding",
+            defaultCharEncoding);
+        reader.setFeature(
+            "http://cyberneko.org/html/features/scanner/ignore-specified-charset",
+            true);
+        reader.setFeature(
+            "http://cyberneko.org/html/features/balance-tags/ignore-outside-content",
+            false);
+        reader.setFeature("http://cyberneko.org/html/features/report-errors",
+            LOG.isTraceEnabled());
+      } catch (SAXException e) {
+      }
+    }
+    reader.setContentHandler(handler);
+    reader.parse(input);
+  }
+
   private DocumentFragment parseTagSoup(InputSource input) throws Exception {
     HTMLDocumentImpl doc = new HTMLDocumentImpl();
     DocumentFragment frag = doc.createDocumentFragment();
@@ -367,6 +443,8 @@ public class HtmlParser implements Parser {
     this.defaultCharEncoding = getConf().get(
         "parser.character.encoding.default", "windows-1252");
     this.utils = new DOMContentUtils(conf);
+    this.streaming = getConf().getBoolean(PARSER_HTML_STREAMING, false);
+    this.profile = ParseProfile.get(getConf());
     this.cachingPolicy = getConf().get("parser.caching.forbidden.policy",
         Nutch.CACHING_FORBIDDEN_CONTENT);
   }
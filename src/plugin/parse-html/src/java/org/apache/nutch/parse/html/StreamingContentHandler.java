@@ -0,0 +1,380 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse.html;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.parse.HTMLMetaTags;
+import org.apache.nutch.parse.Outlink;
+import org.apache.nutch.parse.html.DOMContentUtils.LinkParams;
+import org.apache.nutch.util.URLUtil;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * SAX content handler extracting text, title, outlinks, meta tags and the
+ * base URL of a HTML document in a single pass, without building a DOM tree.
+ * The extraction follows {@link DOMContentUtils} and
+ * {@link HTMLMetaProcessor}: text is normalized and broken into lines the
+ * same way, title, meta and base tags are only taken from the document head,
+ * outlinks are extracted from the elements configured in {@link LinkParams}
+ * and links marked as <code>nofollow</code> are skipped.
+ */
+class StreamingContentHandler extends DefaultHandler {
+
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  /** Outlink element, collects its anchor text until the element is closed */
+  private static class Link {
+    final LinkParams params;
+    final String elName;
+    final int depth;
+    String target;
+    boolean noFollow;
+    boolean post;
+    final StringBuffer anchor = new StringBuffer();
+    final StringBuilder alt = new StringBuilder();
+    int anchors;
+    int children;
+    int nestedLinks;
+    boolean onlyWhiteSpaceText = true;
+    boolean thrownAway;
+
+    Link(LinkParams params, String elName, int depth) {
+      this.params = params;
+      this.elName = elName;
+      this.depth = depth;
+      this.anchors = "a".equals(elName) ? 1 : 0;
+    }
+
+    boolean isAborted() {
+      return anchors > 1;
+    }
+  }
+
+  private final DOMContentUtils utils;
+  private final URL base;
+  private final HTMLMetaTags metaTags;
+  private final boolean extractText;
+
+  private final StringBuffer text = new StringBuffer();
+  private final StringBuilder pendingText = new StringBuilder();
+  private StringBuffer title;
+  private int titleDepth = -1;
+  private String baseHref;
+  private boolean inBody = false;
+
+  private int depth = 0;
+  /** depth of script or style element whose content is skipped */
+  private int skipDepth = -1;
+  /** depth of a closed line-breaking element, next sibling adds a line break */
+  private int blockSiblingDepth = -1;
+
+  private final List<Link> links = new ArrayList<>();
+  private final List<Link> openLinks = new ArrayList<>();
+
+  /**
+   * @param utils
+   *          configured content extraction utils, provides the outlink and
+   *          line-breaking elements
+   * @param base
+   *          URL of the document
+   * @param metaTags
+   *          meta tags to populate while parsing
+   * @param extractText
+   *          whether to extract the text, if false only title, outlinks and
+   *          meta tags are extracted
+   */
+  StreamingContentHandler(DOMContentUtils utils, URL base,
+      HTMLMetaTags metaTags, boolean extractText) {
+    this.utils = utils;
+    this.base = base;
+    this.metaTags = metaTags;
+    this.extractText = extractText;
+  }
+
+  private static String getName(String localName, String qName) {
+    String name = (localName == null || localName.isEmpty()) ? qName
+        : localName;
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  private static String getAttribute(Attributes atts, String attName) {
+    for (int i = 0; i < atts.getLength(); i++) {
+      if (attName.equals(getName(atts.getLocalName(i), atts.getQName(i)))) {
+        return atts.getValue(i);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void startElement(String uri, String localName, String qName,
+      Attributes atts) {
+    flushText();
+    String name = getName(localName, qName);
+
+    if (depth == blockSiblingDepth || utils.isBlockNode(name)) {
+      appendToText(DOMContentUtils::appendParagraphSeparator);
+    }
+    blockSiblingDepth = -1;
+
+    for (Link link : openLinks) {
+      if (depth == link.depth) {
+        link.children++;
+        if (link.elName.equals(name)) {
+          link.nestedLinks++;
+        } else {
+          // other element child: keep the link
+          link.nestedLinks = Integer.MIN_VALUE;
+        }
+      }
+      if ("a".equals(name)) {
+        link.anchors++;
+      }
+      if ("img".equals(name)) {
+        String alt = getAttribute(atts, "alt");
+        if (alt != null && alt.trim().length() > 0) {
+          if (link.alt.length() > 0) {
+            link.alt.append(' ');
+          }
+          link.alt.append(alt);
+        }
+      }
+    }
+
+    depth++;
+
+    if (skipDepth == -1 && ("script".equals(name) || "style".equals(name))) {
+      skipDepth = depth;
+    }
+
+    if ("body".equals(name)) {
+      inBody = true;
+    } else if (!inBody) {
+      if ("title".equals(name)) {
+        if (title == null) {
+          title = new StringBuffer();
+          titleDepth = depth;
+        }
+      } else if ("meta".equals(name)) {
+        HTMLMetaProcessor.processMetaTag(metaTags, getAttribute(atts, "name"),
+            getAttribute(atts, "http-equiv"), getAttribute(atts, "content"),
+            base);
+      } else if ("base".equals(name)) {
+        String href = getAttribute(atts, "href");
+        if (href != null) {
+          if (baseHref == null) {
+            baseHref = href;
+          }
+          HTMLMetaProcessor.processBaseHref(metaTags, href, base);
+        }
+      }
+    }
+
+    LinkParams params = utils.getLinkParams(name);
+    if (params != null) {
+      Link link = new Link(params, name, depth);
+      for (int i = 0; i < atts.getLength(); i++) {
+        String attName = getName(atts.getLocalName(i), atts.getQName(i));
+        String value = atts.getValue(i);
+        if (params.attrName.equals(attName)) {
+          link.target = value;
+        } else if ("rel".equals(attName)
+            && DOMContentUtils.NOFOLLOW_PATTERN.matcher(value).find()) {
+          link.noFollow = true;
+        } else if ("method".equals(attName) && "post".equalsIgnoreCase(value)) {
+          link.post = true;
+        }
+      }
+      if ("img".equals(name)) {
+        String alt = getAttribute(atts, "alt");
+        if (alt != null && alt.trim().length() > 0) {
+          link.alt.append(alt);
+        }
+      }
+      links.add(link);
+      openLinks.add(link);
+    }
+  }
+
+  @Override
+  public void endElement(String uri, String localName, String qName) {
+    flushText();
+    String name = getName(localName, qName);
+
+    if (depth == skipDepth) {
+      skipDepth = -1;
+    }
+    if (depth == titleDepth) {
+      titleDepth = -1;
+    }
+
+    for (int i = openLinks.size() - 1; i >= 0; i--) {
+      Link link = openLinks.get(i);
+      if (link.depth == depth) {
+        link.thrownAway = shouldThrowAwayLink(link);
+        openLinks.remove(i);
+      }
+    }
+
+    depth--;
+    blockSiblingDepth = utils.isBlockNode(name) ? depth : -1;
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length) {
+    if (skipDepth == -1) {
+      pendingText.append(ch, start, length);
+    }
+  }
+
+  @Override
+  public void ignorableWhitespace(char[] ch, int start, int length) {
+    characters(ch, start, length);
+  }
+
+  @Override
+  public void endDocument() {
+    flushText();
+    // links not closed
+    for (Link link : openLinks) {
+      link.thrownAway = shouldThrowAwayLink(link);
+    }
+    openLinks.clear();
+  }
+
+  /** Add a text node, i.e. all characters between two tags */
+  private void flushText() {
+    if (pendingText.length() == 0) {
+      return;
+    }
+    if (depth == blockSiblingDepth) {
+      appendToText(DOMContentUtils::appendParagraphSeparator);
+    }
+    blockSiblingDepth = -1;
+
+    String value = WHITESPACE.matcher(pendingText).replaceAll(" ").trim();
+    pendingText.setLength(0);
+    if (value.length() > 0) {
+      appendToText(buffer -> {
+        DOMContentUtils.appendSpace(buffer);
+        buffer.append(value);
+      });
+    } else {
+      appendToText(DOMContentUtils::appendParagraphSeparator);
+    }
+
+    for (Link link : openLinks) {
+      if (depth == link.depth) {
+        link.children++;
+        if (value.length() > 0) {
+          link.onlyWhiteSpaceText = false;
+        }
+      }
+    }
+  }
+
+  private interface TextAppender {
+    void append(StringBuffer buffer);
+  }
+
+  /** Append to the text, the title and the anchor texts of open links */
+  private void appendToText(TextAppender appender) {
+    if (extractText) {
+      appender.append(text);
+    }
+    if (titleDepth != -1) {
+      appender.append(title);
+    }
+    for (Link link : openLinks) {
+      if (!link.isAborted()) {
+        appender.append(link.anchor);
+      }
+    }
+  }
+
+  /**
+   * Similar to DOMContentUtils#shouldThrowAwayLink: skip links without inner
+   * structure and links holding only a single nested link surrounded by white
+   * space.
+   */
+  private static boolean shouldThrowAwayLink(Link link) {
+    if (link.children == 0) {
+      return link.params.childLen != 0;
+    }
+    return link.children <= 3 && link.nestedLinks == 1
+        && link.onlyWhiteSpaceText;
+  }
+
+  /** @return the extracted text */
+  String getText() {
+    return text.toString();
+  }
+
+  /** @return the extracted title, empty if there is no title */
+  String getTitle() {
+    return title == null ? "" : title.toString().trim();
+  }
+
+  /** @return the href of the first BASE tag in the document head */
+  String getBase() {
+    return baseHref;
+  }
+
+  /**
+   * Add the outlinks in document order.
+   *
+   * @param baseUrl
+   *          URL to resolve relative links
+   * @param outlinks
+   *          list to add outlinks to
+   */
+  void getOutlinks(URL baseUrl, List<Outlink> outlinks) {
+    String nodeMetaName = utils.getOutlinkNodeMetaName();
+    for (Link link : links) {
+      if (link.thrownAway || link.target == null
+          || link.noFollow || link.post) {
+        continue;
+      }
+      String anchor = link.anchor.toString();
+      if (anchor.trim().length() == 0) {
+        anchor = link.alt.toString();
+      }
+      try {
+        URL url = URLUtil.resolveURL(baseUrl, link.target);
+        Outlink outlink = new Outlink(url.toString(), anchor.trim());
+        outlinks.add(outlink);
+        if (nodeMetaName != null) {
+          MapWritable metadata = new MapWritable();
+          metadata.put(new Text(nodeMetaName), new Text(link.elName));
+          outlink.setMetadata(metadata);
+        }
+      } catch (MalformedURLException e) {
+        // don't care
+      }
+    }
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse.html;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.parse.ParseResult;
+import org.apache.nutch.protocol.Content;
+import org.apache.nutch.util.NutchConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Micro-benchmark comparing the DOM-based and the streaming (SAX) parse path
+ * of {@link HtmlParser} on a corpus of HTML pages. Every benchmark invocation
+ * parses all pages of the corpus.
+ *
+ * The corpus is a directory of HTML files, e.g. pages dumped from a segment
+ * (<code>bin/nutch readseg -dump ... -nofetch -nogenerate -noparse
+ * -noparsedata -noparsetext</code>). Run with
+ * <code>java -cp ... org.apache.nutch.parse.html.HtmlParserBenchmark
+ * &lt;corpus_dir&gt;</code> after compiling the test classes with the JMH
+ * annotation processor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class HtmlParserBenchmark {
+
+  @Param({ "src/testresources/fetch-test-site" })
+  public String corpus;
+
+  @Param({ "neko", "tagsoup" })
+  public String parserImpl;
+
+  private List<Content> pages;
+  private HtmlParser domParser;
+  private HtmlParser streamingParser;
+
+  @Setup
+  public void setup() throws IOException {
+    Configuration conf = NutchConfiguration.create();
+    conf.set("plugin.includes", "parse-html");
+    conf.set("parser.html.impl", parserImpl);
+    pages = new ArrayList<>();
+    File[] files = new File(corpus).listFiles();
+    if (files == null) {
+      throw new IOException("Corpus directory " + corpus + " not found");
+    }
+    for (File file : files) {
+      if (!file.isFile()) {
+        continue;
+      }
+      String url = "http://example.com/" + file.getName();
+      pages.add(new Content(url, url, Files.readAllBytes(file.toPath()),
+          "text/html", new Metadata(), conf));
+    }
+
+    domParser = new HtmlParser();
+    domParser.setConf(conf);
+    Configuration streamingConf = new Configuration(conf);
+    streamingConf.setBoolean(HtmlParser.PARSER_HTML_STREAMING, true);
+    streamingParser = new HtmlParser();
+    streamingParser.setConf(streamingConf);
+  }
+
+  private static void parse(HtmlParser parser, List<Content> pages,
+      Blackhole blackhole) {
+    for (Content page : pages) {
+      ParseResult result = parser.getParse(page);
+      blackhole.consume(result.get(page.getUrl()));
+    }
+  }
+
+  @Benchmark
+  public void dom(Blackhole blackhole) {
+    parse(domParser, pages, blackhole);
+  }
+
+  @Benchmark
+  public void streaming(Blackhole blackhole) {
+    parse(streamingParser, pages, blackhole);
+  }
+
+  public static void main(String[] args) throws Exception {
+    OptionsBuilder options = new OptionsBuilder();
+    options.include(HtmlParserBenchmark.class.getSimpleName());
+    if (args.length > 0) {
+      options.param("corpus", args[0]);
+    }
+    new Runner(options.build()).run();
+  }
+
+}
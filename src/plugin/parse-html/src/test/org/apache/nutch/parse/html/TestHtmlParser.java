@@ -25,6 +25,7 @@ import org.apache.nutch.metadata.Metadata;
 import org.apache.nutch.parse.html.HtmlParser;
 import org.apache.nutch.parse.Outlink;
 import org.apache.nutch.parse.Parse;
+import org.apache.nutch.parse.ParseProfile;
 import org.apache.nutch.parse.Parser;
 import org.apache.nutch.protocol.Content;
 import org.apache.nutch.util.NutchConfiguration;
@@ -87,6 +88,30 @@ public class TestHtmlParser {
       "  <a href=\"index.html\">outlink</a>\n" + //
       "</body>\n</html>";
 
+  private static final String streamingTestContent = //
+      "<html>\n<head>\n" + //
+      "  <title>Test  streaming\n parser</title>\n" + //
+      "  <meta name=\"keywords\" content=\"streaming, sax\"/>\n" + //
+      "  <base href=\"http://www.example.com/dir/\"/>\n" + //
+      "  <style>p { color: red; }</style>\n" + //
+      "</head>\n<body>\n" + //
+      "  <h1>Heading</h1>\n" + //
+      "  <p>First <b>paragraph</b> with a <a href=\"a.html\">link</a>.</p>\n" + //
+      "  <div>Second paragraph<script>var x = 1;</script></div>\n" + //
+      "  <p><a href=\"b.html\" rel=\"nofollow\">nofollow</a>" + //
+      "  <a href=\"c.html\"><img src=\"c.png\" alt=\"image link\"/></a>" + //
+      "  <a href=\"empty.html\"></a></p>\n" + //
+      "  <ul><li>one</li><li>two <a href=\"/d.html\">d</a></li></ul>\n" + //
+      "</body>\n</html>";
+
+  private static final String streamingNoIndexContent = //
+      "<html>\n<head>\n" + //
+      "  <title>Not indexed</title>\n" + //
+      "  <meta name=\"robots\" content=\"noindex\"/>\n" + //
+      "</head>\n<body>\n" + //
+      "  <p>Text <a href=\"a.html\">link</a></p>\n" + //
+      "</body>\n</html>";
+
   private Configuration conf;
   private Parser parser;
 
@@ -143,4 +168,84 @@ public class TestHtmlParser {
         outlinks[0].getToUrl());
   }
 
+  @Test
+  public void testStreaming() {
+    Configuration streamingConf = NutchConfiguration.create();
+    streamingConf.set("plugin.includes", "parse-html");
+    streamingConf.setBoolean(HtmlParser.PARSER_HTML_STREAMING, true);
+    Parser streamingParser = new HtmlParser();
+    streamingParser.setConf(streamingConf);
+
+    for (String page : new String[] { streamingTestContent,
+        streamingNoIndexContent, resolveBaseUrlTestContent }) {
+      byte[] contentBytes = page.getBytes(StandardCharsets.UTF_8);
+      String url = "http://example.com/";
+      Parse expected = parse(contentBytes);
+      Parse parse = streamingParser.getParse(new Content(url, url,
+          contentBytes, "text/html", new Metadata(), streamingConf)).get(url);
+      LOG.info("text:\t" + parse.getText());
+      Assert.assertEquals(expected.getData().getTitle(),
+          parse.getData().getTitle());
+      Assert.assertEquals(expected.getText(), parse.getText());
+      Assert.assertEquals(expected.getData().getParseMeta(),
+          parse.getData().getParseMeta());
+      Assert.assertArrayEquals(expected.getData().getOutlinks(),
+          parse.getData().getOutlinks());
+    }
+
+    String url = "http://example.com/";
+    Parse parse = streamingParser.getParse(new Content(url, url,
+        streamingTestContent.getBytes(StandardCharsets.UTF_8), "text/html",
+        new Metadata(), streamingConf)).get(url);
+    Assert.assertEquals("Test streaming parser", parse.getData().getTitle());
+    Outlink[] outlinks = parse.getData().getOutlinks();
+    // a.html, c.html, c.png and d.html: no nofollow and empty links
+    Assert.assertEquals(4, outlinks.length);
+    Assert.assertEquals("http://www.example.com/dir/a.html",
+        outlinks[0].getToUrl());
+    Assert.assertEquals("http://www.example.com/dir/c.html",
+        outlinks[1].getToUrl());
+    Assert.assertEquals("image link", outlinks[1].getAnchor());
+    Assert.assertEquals("http://www.example.com/d.html",
+        outlinks[3].getToUrl());
+    Assert.assertFalse(parse.getText().contains("var x"));
+  }
+
+  @Test
+  public void testParseProfile() {
+    String url = "http://example.com/";
+    byte[] contentBytes = streamingTestContent.getBytes(StandardCharsets.UTF_8);
+    for (boolean streaming : new boolean[] { false, true }) {
+      Configuration profileConf = NutchConfiguration.create();
+      profileConf.set("plugin.includes", "parse-html");
+      profileConf.setBoolean(HtmlParser.PARSER_HTML_STREAMING, streaming);
+
+      profileConf.set(ParseProfile.PARSER_PROFILE, "outlinks");
+      Parser profileParser = new HtmlParser();
+      profileParser.setConf(profileConf);
+      Parse parse = profileParser.getParse(new Content(url, url, contentBytes,
+          "text/html", new Metadata(), profileConf)).get(url);
+      Assert.assertEquals("", parse.getText());
+      Assert.assertEquals(4, parse.getData().getOutlinks().length);
+
+      profileConf.set(ParseProfile.PARSER_PROFILE, "outlinks_signature");
+      profileParser = new HtmlParser();
+      profileParser.setConf(profileConf);
+      parse = profileParser.getParse(new Content(url, url, contentBytes,
+          "text/html", new Metadata(), profileConf)).get(url);
+      Assert.assertTrue(parse.getText().contains("Second paragraph"));
+      Assert.assertEquals(4, parse.getData().getOutlinks().length);
+
+      profileConf.set(ParseProfile.PARSER_PROFILE, "metadata");
+      profileParser = new HtmlParser();
+      profileParser.setConf(profileConf);
+      parse = profileParser.getParse(new Content(url, url, contentBytes,
+          "text/html", new Metadata(), profileConf)).get(url);
+      Assert.assertEquals("", parse.getText());
+      Assert.assertEquals("Test streaming parser", parse.getData().getTitle());
+      Assert.assertEquals(0, parse.getData().getOutlinks().length);
+      Assert.assertEquals("streaming, sax", parse.getData().getMeta("keywords"));
+    }
+  }
+
 }
@@ -97,6 +97,12 @@ public class MetaTagsParser implements HtmlParseFilter {
     }
   }
 
+  /** Uses only the meta tags, no DOM required */
+  @Override
+  public boolean needsDocument() {
+    return false;
+  }
+
   @Override
   public ParseResult filter(Content content, ParseResult parseResult,
       HTMLMetaTags metaTags, DocumentFragment doc) {
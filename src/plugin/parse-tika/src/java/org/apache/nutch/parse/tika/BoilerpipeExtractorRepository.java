@@ -18,44 +18,59 @@ package org.apache.nutch.parse.tika;
 
 import java.lang.invoke.MethodHandles;
 import java.util.HashMap;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.l3s.boilerpipe.BoilerpipeExtractor;
 
+/**
+ * Holds instances of Boilerpipe extractors. Every thread uses its own
+ * instances, so that parser threads do not need to synchronize when
+ * looking up the extractor.
+ */
 class BoilerpipeExtractorRepository {
 
   private static final Logger LOG = LoggerFactory
-		      .getLogger(MethodHandles.lookup().lookupClass());
-  public static final HashMap<String, BoilerpipeExtractor> extractorRepository = new HashMap<>();
- 
-    /**
-     * Returns an instance of the specified extractor
-     */
-  public static synchronized BoilerpipeExtractor getExtractor(String boilerpipeExtractorName) {
-      // Check if there's no instance of this extractor
-    if (!extractorRepository.containsKey(boilerpipeExtractorName)) {
-        // FQCN
-      boilerpipeExtractorName = "de.l3s.boilerpipe.extractors." + boilerpipeExtractorName;
-
-        // Attempt to load the class
-      try {
-        ClassLoader loader = BoilerpipeExtractor.class.getClassLoader();
-        Class extractorClass = loader.loadClass(boilerpipeExtractorName);
-
-          // Add an instance to the repository
-        extractorRepository.put(boilerpipeExtractorName, (BoilerpipeExtractor)extractorClass.getConstructor().newInstance());
-
-      } catch (ClassNotFoundException e) {
-        LOG.error("BoilerpipeExtractor " + boilerpipeExtractorName + " not found!");
-      } catch (InstantiationException e) {
-        LOG.error("Could not instantiate " + boilerpipeExtractorName);
-      } catch (Exception e) {
-        LOG.error(e.getLocalizedMessage());
+      .getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final ThreadLocal<Map<String, BoilerpipeExtractor>> extractorRepository = ThreadLocal
+      .withInitial(HashMap::new);
+
+  /**
+   * Returns an instance of the specified extractor, owned by the calling
+   * thread
+   */
+  public static BoilerpipeExtractor getExtractor(String boilerpipeExtractorName) {
+    Map<String, BoilerpipeExtractor> extractors = extractorRepository.get();
+    BoilerpipeExtractor extractor = extractors.get(boilerpipeExtractorName);
+    if (extractor == null) {
+      extractor = createExtractor(boilerpipeExtractorName);
+      if (extractor != null) {
+        extractors.put(boilerpipeExtractorName, extractor);
       }
     }
+    return extractor;
+  }
+
+  private static BoilerpipeExtractor createExtractor(String boilerpipeExtractorName) {
+    // FQCN
+    String className = "de.l3s.boilerpipe.extractors." + boilerpipeExtractorName;
 
-    return extractorRepository.get(boilerpipeExtractorName);
+    // Attempt to load the class
+    try {
+      ClassLoader loader = BoilerpipeExtractor.class.getClassLoader();
+      Class<?> extractorClass = loader.loadClass(className);
+      return (BoilerpipeExtractor) extractorClass.getConstructor().newInstance();
+    } catch (ClassNotFoundException e) {
+      LOG.error("BoilerpipeExtractor " + className + " not found!");
+    } catch (InstantiationException e) {
+      LOG.error("Could not instantiate " + className);
+    } catch (Exception e) {
+      LOG.error(e.getLocalizedMessage());
+    }
+    return null;
   }
 
 }
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse.tika;
+
+/**
+ * Estimates the text density of a HTML document from the raw bytes in a
+ * single pass, without parsing the document: the share of bytes which are
+ * neither whitespace nor part of tags, comments, scripts or style sheets.
+ */
+class TextDensity {
+
+  private static final byte[] SCRIPT = "script".getBytes();
+  private static final byte[] STYLE = "style".getBytes();
+  private static final byte[] END_SCRIPT = "</script".getBytes();
+  private static final byte[] END_STYLE = "</style".getBytes();
+  private static final byte[] COMMENT = "!--".getBytes();
+  private static final byte[] END_COMMENT = "-->".getBytes();
+
+  private TextDensity() {
+  }
+
+  /**
+   * @param raw
+   *          HTML document
+   * @return share of text bytes, between 0.0 and 1.0
+   */
+  static float estimate(byte[] raw) {
+    int n = raw.length;
+    if (n == 0) {
+      return 0.0f;
+    }
+    long text = 0;
+    int i = 0;
+    while (i < n) {
+      byte b = raw[i];
+      if (b == '<') {
+        if (matches(raw, i + 1, COMMENT)) {
+          i = indexOf(raw, i + 4, END_COMMENT) + END_COMMENT.length;
+          continue;
+        } else if (matches(raw, i + 1, SCRIPT)) {
+          i = indexOf(raw, i + 1, END_SCRIPT);
+        } else if (matches(raw, i + 1, STYLE)) {
+          i = indexOf(raw, i + 1, END_STYLE);
+        }
+        // skip the tag
+        while (i < n && raw[i] != '>') {
+          i++;
+        }
+        i++;
+      } else {
+        if ((b & 0xff) > ' ') {
+          text++;
+        }
+        i++;
+      }
+    }
+    return (float) text / n;
+  }
+
+  /** Case-insensitive match of an ASCII lower-case pattern */
+  private static boolean matches(byte[] raw, int offset, byte[] pattern) {
+    if (offset + pattern.length > raw.length) {
+      return false;
+    }
+    for (int j = 0; j < pattern.length; j++) {
+      byte b = raw[offset + j];
+      if (b >= 'A' && b <= 'Z') {
+        b += 'a' - 'A';
+      }
+      if (b != pattern[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return position of the pattern, length of the input if not found */
+  private static int indexOf(byte[] raw, int from, byte[] pattern) {
+    for (int i = from; i < raw.length; i++) {
+      if (raw[i] == pattern[0] && matches(raw, i, pattern)) {
+        return i;
+      }
+    }
+    return raw.length;
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse.tika;
+
+import org.apache.tika.sax.ContentHandlerDecorator;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * Passes only the first characters of a document to the decorated handler.
+ * All element events are still passed, so that the decorated handler sees a
+ * well-formed document whose text is truncated.
+ */
+class TextLimitContentHandler extends ContentHandlerDecorator {
+
+  private final long maxChars;
+  private long chars = 0;
+
+  /**
+   * @param handler
+   *          decorated handler
+   * @param maxChars
+   *          max. number of characters (including whitespace) to pass
+   */
+  TextLimitContentHandler(ContentHandler handler, long maxChars) {
+    super(handler);
+    this.maxChars = maxChars;
+  }
+
+  @Override
+  public void characters(char[] ch, int start, int length)
+      throws SAXException {
+    int n = limit(length);
+    if (n > 0) {
+      super.characters(ch, start, n);
+    }
+  }
+
+  @Override
+  public void ignorableWhitespace(char[] ch, int start, int length)
+      throws SAXException {
+    int n = limit(length);
+    if (n > 0) {
+      super.ignorableWhitespace(ch, start, n);
+    }
+  }
+
+  private int limit(int length) {
+    int n = (int) Math.min(length, Math.max(maxChars - chars, 0));
+    chars += length;
+    return n;
+  }
+
+  /** @return true if characters have been dropped */
+  boolean isTruncated() {
+    return chars > maxChars;
+  }
+
+}
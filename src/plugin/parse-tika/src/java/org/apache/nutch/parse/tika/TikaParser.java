@@ -38,6 +38,7 @@ import org.apache.nutch.parse.OutlinkExtractor;
 import org.apache.nutch.parse.Parse;
 import org.apache.nutch.parse.ParseData;
 import org.apache.nutch.parse.ParseImpl;
+import org.apache.nutch.parse.ParseProfile;
 import org.apache.nutch.parse.ParseResult;
 import org.apache.nutch.parse.ParseStatus;
 import org.apache.nutch.protocol.Content;
@@ -80,6 +81,10 @@ public class TikaParser implements org.apache.nutch.parse.Parser {
   private boolean useBoilerpipe;
   private String boilerpipeExtractorName;
   private Set<String> boilerpipeMimeTypes;
+  private long boilerpipeMaxSize;
+  private long boilerpipeMaxText;
+  private float boilerpipeMinTextDensity;
+  private ParseProfile profile;
 
   @Override
   public ParseResult getParse(Content content) {
@@ -121,12 +126,16 @@ public class TikaParser implements org.apache.nutch.parse.Parser {
     ContentHandler domHandler;
 
     // Check whether to use Tika's BoilerplateContentHandler
-    if (useBoilerpipe && boilerpipeMimeTypes.contains(mimeType)) {
+    if (profile.needsText() && useBoilerpipe(content.getUrl(), mimeType, raw)) {
       BoilerpipeContentHandler bpHandler = new BoilerpipeContentHandler(
           (ContentHandler) new DOMBuilder(doc, root),
           BoilerpipeExtractorRepository.getExtractor(boilerpipeExtractorName));
       bpHandler.setIncludeMarkup(true);
       domHandler = (ContentHandler) bpHandler;
+      if (boilerpipeMaxText >= 0) {
+        // pass only the beginning of the text to Boilerpipe
+        domHandler = new TextLimitContentHandler(bpHandler, boilerpipeMaxText);
+      }
     } else {
       DOMBuilder domBuilder = new DOMBuilder(doc, root);
       domBuilder.setUpperCaseElementNames(upperCaseElementNames);
@@ -141,8 +150,11 @@ public class TikaParser implements org.apache.nutch.parse.Parser {
       context.set(Parser.class, new AutoDetectParser(tikaConfig));
     }
 
-    TeeContentHandler teeContentHandler = new TeeContentHandler(domHandler,
-        linkContentHandler);
+    ContentHandler teeContentHandler = domHandler;
+    if (profile.needsOutlinks()) {
+      teeContentHandler = new TeeContentHandler(domHandler,
+          linkContentHandler);
+    }
 
     if (HTMLMapper != null)
       context.set(HtmlMapper.class, HTMLMapper);
@@ -173,20 +185,25 @@ public class TikaParser implements org.apache.nutch.parse.Parser {
     // check meta directives
     if (!metaTags.getNoIndex()) { // okay to index
       StringBuffer sb = new StringBuffer();
-      if (LOG.isTraceEnabled()) {
-        LOG.trace("Getting text...");
+      if (profile.needsText()) {
+        if (LOG.isTraceEnabled()) {
+          LOG.trace("Getting text...");
+        }
+        utils.getText(sb, root); // extract text
+        text = sb.toString();
+        sb.setLength(0);
       }
-      utils.getText(sb, root); // extract text
-      text = sb.toString();
-      sb.setLength(0);
-      if (LOG.isTraceEnabled()) {
-        LOG.trace("Getting title...");
+      if (profile.needsMetadata()) {
+        if (LOG.isTraceEnabled()) {
+          LOG.trace("Getting title...");
+        }
+        utils.getTitle(sb, root); // extract title
+        title = sb.toString().trim();
       }
-      utils.getTitle(sb, root); // extract title
-      title = sb.toString().trim();
     }
 
-    if (!metaTags.getNoFollow()) { // okay to follow links
+    // okay to follow links, and needed
+    if (!metaTags.getNoFollow() && profile.needsOutlinks()) {
       ArrayList<Outlink> l = new ArrayList<Outlink>(); // extract outlinks
       URL baseTag = base;
       String baseTagHref = tikamd.get("Content-Location");
@@ -232,8 +249,15 @@ public class TikaParser implements org.apache.nutch.parse.Parser {
     // no outlinks? try OutlinkExtractor e.g works for mime types where no
     // explicit markup for anchors
 
-    if (outlinks.length == 0) {
-      outlinks = OutlinkExtractor.getOutlinks(text, getConf());
+    if (outlinks.length == 0 && profile.needsOutlinks()) {
+      String linkText = text;
+      if (!profile.needsText() && !metaTags.getNoIndex()) {
+        // text not extracted but needed to find links in plain text
+        StringBuffer sb = new StringBuffer();
+        utils.getText(sb, root);
+        linkText = sb.toString();
+      }
+      outlinks = OutlinkExtractor.getOutlinks(linkText, getConf());
     }
 
     ParseStatus status = new ParseStatus(ParseStatus.SUCCESS);
@@ -258,6 +282,33 @@ public class TikaParser implements org.apache.nutch.parse.Parser {
     return filteredParse;
   }
 
+  /**
+   * Whether to extract the main content using Boilerpipe. Boilerpipe is not
+   * used for documents larger than
+   * <code>tika.extractor.boilerpipe.max.size</code> or with a text density
+   * (see {@link TextDensity}) below
+   * <code>tika.extractor.boilerpipe.min.text.density</code>.
+   */
+  private boolean useBoilerpipe(String url, String mimeType, byte[] raw) {
+    if (!useBoilerpipe || !boilerpipeMimeTypes.contains(mimeType)) {
+      return false;
+    }
+    if (boilerpipeMaxSize >= 0 && raw.length > boilerpipeMaxSize) {
+      LOG.debug("Not using Boilerpipe for {}: size {} exceeds limit", url,
+          raw.length);
+      return false;
+    }
+    if (boilerpipeMinTextDensity > 0.0f) {
+      float density = TextDensity.estimate(raw);
+      if (density < boilerpipeMinTextDensity) {
+        LOG.debug("Not using Boilerpipe for {}: text density {} below limit",
+            url, density);
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   public void setConf(Configuration conf) {
     this.conf = conf;
@@ -323,7 +374,12 @@ public class TikaParser implements org.apache.nutch.parse.Parser {
     boilerpipeMimeTypes = new HashSet<>(Arrays
         .asList(conf.getTrimmedStrings("tika.extractor.boilerpipe.mime.types",
             "text/html", "application/xhtml+xml")));
+    boilerpipeMaxSize = conf.getLong("tika.extractor.boilerpipe.max.size", -1);
+    boilerpipeMaxText = conf.getLong("tika.extractor.boilerpipe.max.text", -1);
+    boilerpipeMinTextDensity = conf
+        .getFloat("tika.extractor.boilerpipe.min.text.density", 0.0f);
     parseEmbedded = conf.getBoolean("tika.parse.embedded", true);
+    profile = ParseProfile.get(conf);
   }
 
   @Override
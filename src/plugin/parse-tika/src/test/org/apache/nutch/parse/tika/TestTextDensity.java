@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse.tika;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.tika.sax.ToTextContentHandler;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for the pre-filters applied before Boilerpipe extraction. */
+public class TestTextDensity {
+
+  private static float density(String html) {
+    return TextDensity.estimate(html.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testTextDensity() {
+    Assert.assertEquals(0.0f, density(""), 0.0001f);
+    Assert.assertEquals(1.0f, density("text"), 0.0001f);
+    Assert.assertEquals(4.0f / 11, density("<p>text</p>"), 0.0001f);
+    Assert.assertEquals(0.0f,
+        density("<SCRIPT>var a = '<p>';</script><!-- <p>comment</p> -->"
+            + "<style>p { color: red }</style>   "),
+        0.0001f);
+    Assert.assertTrue(density("<div><a href='/a'>a</a><a href='/b'>b</a></div>")
+        < density("<div><p>A paragraph with some text.</p></div>"));
+  }
+
+  @Test
+  public void testTextLimit() throws Exception {
+    ToTextContentHandler text = new ToTextContentHandler();
+    TextLimitContentHandler handler = new TextLimitContentHandler(text, 6);
+    handler.characters("abcd".toCharArray(), 0, 4);
+    Assert.assertFalse(handler.isTruncated());
+    handler.characters("efgh".toCharArray(), 0, 4);
+    handler.characters("ijkl".toCharArray(), 0, 4);
+    Assert.assertTrue(handler.isTruncated());
+    Assert.assertEquals("abcdef", text.toString());
+  }
+
+}
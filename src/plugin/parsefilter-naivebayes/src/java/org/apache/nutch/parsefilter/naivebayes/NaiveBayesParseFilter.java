@@ -156,6 +156,12 @@ public class NaiveBayesParseFilter implements HtmlParseFilter {
     return this.conf;
   }
 
+  /** Classifies text and outlinks, no DOM required */
+  @Override
+  public boolean needsDocument() {
+    return false;
+  }
+
   @Override
   public ParseResult filter(Content content, ParseResult parseResult,
       HTMLMetaTags metaTags, DocumentFragment doc) {
@@ -56,6 +56,12 @@ public class RegexParseFilter implements HtmlParseFilter {
   
   private static final Map<String,RegexRule> rules = new HashMap<>();
   
+  /** Matches the raw HTML or the text, no DOM required */
+  @Override
+  public boolean needsDocument() {
+    return false;
+  }
+
   @Override
   public ParseResult filter(Content content, ParseResult parseResult, HTMLMetaTags metaTags, DocumentFragment doc) {
     Parse parse = parseResult.get(content.getUrl());
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.crawl.Generator2.SelectorReducer;
+import org.apache.nutch.crawl.Generator2.SelectorReducer.DomainLimits;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCompactDomainLimits {
+
+  private static final String LIMITS = "# comment\n"
+      + "wikipedia.org\t5000\t500\t20\t1\n"
+      + "example.com\t100\t10\t2\t4\n"
+      + "bücher.de\t7\t6\t5\t3\n"
+      + "a.b\t1\t2\t3\t4\n";
+
+  @Test
+  public void testLookup() throws Exception {
+    Map<String, DomainLimits> limits = SelectorReducer.readLimitsFile(
+        new StringReader(LIMITS), (String d, DomainLimits l) -> true);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CompactDomainLimits.write(limits, out);
+    CompactDomainLimits compact = CompactDomainLimits
+        .read(new ByteArrayInputStream(out.toByteArray()));
+
+    Assert.assertEquals(limits.size(), compact.size());
+    for (Map.Entry<String, DomainLimits> e : limits.entrySet()) {
+      DomainLimits l = compact.get(e.getKey());
+      Assert.assertNotNull(e.getKey(), l);
+      Assert.assertEquals(e.getValue().toString(), l.toString());
+      Assert.assertEquals(e.getValue().toString(),
+          compact.get(new Text(e.getKey())).toString());
+    }
+    Assert.assertEquals(4, compact.getNumPartitions("example.com"));
+    Assert.assertEquals(0, compact.getNumPartitions("example.org"));
+    Assert.assertNull(compact.get("example.co"));
+    Assert.assertNull(compact.get("example.comm"));
+    Assert.assertNull(compact.get(""));
+    Assert.assertFalse(compact.containsKey("a"));
+    Assert.assertTrue(compact.containsKey("a.b"));
+
+    int n = 0;
+    for (String domain : compact.keySet()) {
+      Assert.assertTrue(domain, limits.containsKey(domain));
+      n++;
+    }
+    Assert.assertEquals(limits.size(), n);
+  }
+
+  @Test
+  public void testCorruptSize() throws Exception {
+    // 4 * (n + 1) + 16 * n overflows int and wraps to 4
+    int n = 214748365;
+    Configuration conf = new Configuration();
+    FileSystem fs = FileSystem.getLocal(conf);
+    Path file = new Path(System.getProperty("java.io.tmpdir"),
+        "corrupt-limits-" + System.currentTimeMillis());
+    try (DataOutputStream out = fs.create(file)) {
+      out.writeInt(CompactDomainLimits.MAGIC);
+      out.writeInt(n);
+      out.writeInt(0);
+      out.writeLong(0);
+    }
+    try {
+      CompactDomainLimits.open(file, conf);
+      Assert.fail("corrupt size not detected");
+    } catch (IOException e) {
+      // expected
+    } finally {
+      fs.delete(file, false);
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.protocol.ProtocolStatus;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCrawlDatum {
+
+  private static CrawlDatum createDatum() {
+    CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_DB_FETCHED, 86400,
+        0.5f);
+    datum.setFetchTime(1700000000000L);
+    datum.setModifiedTime(1690000000000L);
+    datum.setSignature(new byte[] { 1, 2, 3, 4 });
+    MapWritable meta = datum.getMetaData();
+    meta.put(Nutch.WRITABLE_GENERATE_TIME_KEY, new LongWritable(1700000000123L));
+    meta.put(Nutch.WRITABLE_PROTO_STATUS_KEY,
+        new ProtocolStatus(ProtocolStatus.MOVED, "https://example.com/", 17L));
+    meta.put(new Text("_rs_"), new IntWritable(245));
+    meta.put(new Text("custom"), new Text("value"));
+    meta.put(new Text("float"), new FloatWritable(0.25f));
+    meta.put(new Text("bytes"), new BytesWritable(new byte[] { 7, 8 }));
+    return datum;
+  }
+
+  private static byte[] write(CrawlDatum datum) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    datum.write(out);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private static CrawlDatum read(byte[] bytes) throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(bytes, bytes.length);
+    return CrawlDatum.read(in);
+  }
+
+  /** Serialize as version 7, metadata as MapWritable */
+  private static byte[] writeVersion7(CrawlDatum datum) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    out.writeByte(7);
+    out.writeByte(datum.getStatus());
+    out.writeLong(datum.getFetchTime());
+    out.writeByte(datum.getRetriesSinceFetch());
+    out.writeInt(datum.getFetchInterval());
+    out.writeFloat(datum.getScore());
+    out.writeLong(datum.getModifiedTime());
+    out.writeByte(datum.getSignature().length);
+    out.write(datum.getSignature());
+    out.writeInt(0);
+    out.writeBoolean(true);
+    datum.getMetaData().write(out);
+    byte[] bytes = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  @Test
+  public void testCompactMetaData() throws Exception {
+    CrawlDatum datum = createDatum();
+    byte[] compact = write(datum);
+    byte[] old = writeVersion7(datum);
+    Assert.assertTrue(compact.length < old.length);
+
+    CrawlDatum copy = read(compact);
+    Assert.assertEquals(datum, copy);
+    Assert.assertEquals(datum.getMetaData(), copy.getMetaData());
+
+    // metadata passed through without being decoded
+    CrawlDatum passThrough = read(compact);
+    Assert.assertArrayEquals(compact, write(passThrough));
+    passThrough.getMetaData().remove(new Text("custom"));
+    Assert.assertEquals(5, read(write(passThrough)).getMetaData().size());
+  }
+
+  @Test
+  public void testReadVersion7() throws Exception {
+    CrawlDatum datum = createDatum();
+    CrawlDatum copy = read(writeVersion7(datum));
+    Assert.assertEquals(datum, copy);
+    Assert.assertEquals(datum, read(write(copy)));
+  }
+
+  @Test
+  public void testNoMetaData() throws Exception {
+    CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_DB_UNFETCHED, 3600);
+    CrawlDatum copy = read(write(datum));
+    Assert.assertEquals(datum, copy);
+    Assert.assertTrue(copy.getMetaData().isEmpty());
+  }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCrawlDbMergeJoin {
+
+  private static final Path testdir = new Path(
+      "build/test/crawldb-merge-join-test");
+
+  private Configuration conf;
+  private LocalFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = CrawlDBTestUtil.createContext().getConfiguration();
+    fs = FileSystem.getLocal(conf);
+    fs.delete(testdir, true);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    fs.delete(testdir, true);
+  }
+
+  /** Write URLs into CrawlDb parts, part i holding the URLs of partition p[i] */
+  private void createCrawlDb(Path current, int numParts, int[] partitions)
+      throws Exception {
+    HashPartitioner<Text, CrawlDatum> partitioner = new HashPartitioner<>();
+    List<TreeSet<Text>> keys = new ArrayList<>();
+    for (int i = 0; i < numParts; i++) {
+      keys.add(new TreeSet<>());
+    }
+    for (int i = 0; i < 100; i++) {
+      Text url = new Text("https://example" + i + ".com/");
+      keys.get(partitioner.getPartition(url, null, numParts)).add(url);
+    }
+    for (int i = 0; i < numParts; i++) {
+      MapFile.Writer writer = new MapFile.Writer(conf,
+          new Path(current, String.format("part-r-%05d", i)),
+          MapFile.Writer.keyClass(Text.class),
+          SequenceFile.Writer.valueClass(CrawlDatum.class));
+      for (Text url : keys.get(partitions[i])) {
+        writer.append(url, new CrawlDatum(CrawlDatum.STATUS_DB_UNFETCHED, 0));
+      }
+      writer.close();
+    }
+  }
+
+  @Test
+  public void testCheckPartitioning() throws Exception {
+    Path current = new Path(testdir, "crawldb/current");
+    Assert.assertEquals(-1, CrawlDbMergeJoin.checkPartitioning(conf, current));
+
+    createCrawlDb(current, 3, new int[] { 0, 1, 2 });
+    Assert.assertEquals(3, CrawlDbMergeJoin.checkPartitioning(conf, current));
+
+    fs.delete(current, true);
+    createCrawlDb(current, 3, new int[] { 0, 2, 1 });
+    Assert.assertEquals(-1, CrawlDbMergeJoin.checkPartitioning(conf, current));
+
+    // only the last key of part 0 is in the wrong partition
+    fs.delete(current, true);
+    createCrawlDb(current, 3, new int[] { 0, 1, 2 });
+    Path part = new Path(current, "part-r-00000");
+    List<Text> keys = new ArrayList<>();
+    try (MapFile.Reader reader = new MapFile.Reader(part, conf)) {
+      Text key = new Text();
+      while (reader.next(key, new CrawlDatum())) {
+        keys.add(new Text(key));
+      }
+    }
+    HashPartitioner<Text, CrawlDatum> partitioner = new HashPartitioner<>();
+    Text last = new Text();
+    for (int i = 0; partitioner.getPartition(last, null, 3) == 0
+        || last.getLength() == 0; i++) {
+      last.set("https://zzz" + i + ".com/");
+    }
+    keys.add(last);
+    fs.delete(part, true);
+    try (MapFile.Writer writer = new MapFile.Writer(conf, part,
+        MapFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(CrawlDatum.class))) {
+      for (Text url : keys) {
+        writer.append(url, new CrawlDatum(CrawlDatum.STATUS_DB_UNFETCHED, 0));
+      }
+    }
+    Assert.assertEquals(-1, CrawlDbMergeJoin.checkPartitioning(conf, current));
+  }
+
+  @Test
+  public void testGetPartition() {
+    Assert.assertEquals(0, CrawlDbMergeJoin.getPartition("part-r-00000"));
+    Assert.assertEquals(12, CrawlDbMergeJoin.getPartition("part-m-00012"));
+  }
+
+  private int countEntries(Path part) throws Exception {
+    int count = 0;
+    try (MapFile.Reader reader = new MapFile.Reader(part, conf)) {
+      Text key = new Text();
+      while (reader.next(key, new CrawlDatum())) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testInjectKeepsCurrent() throws Exception {
+    Path crawlDb = new Path(testdir, "crawldb");
+    Path current = new Path(crawlDb, CrawlDb.CURRENT_NAME);
+    createCrawlDb(current, 3, new int[] { 0, 1, 2 });
+    int[] counts = new int[3];
+    for (int i = 0; i < 3; i++) {
+      counts[i] = countEntries(
+          new Path(current, String.format("part-r-%05d", i)));
+    }
+    // a single seed, only its partition is merged
+    Path urlPath = new Path(testdir, "seeds");
+    CrawlDBTestUtil.generateSeedList(fs, urlPath,
+        Collections.singletonList("https://seed.example.org/"));
+
+    List<Job> jobs = CrawlDbMergeJoin.inject(conf, crawlDb,
+        Collections.singletonList(urlPath));
+    Assert.assertNotNull(jobs);
+    Assert.assertEquals(2, jobs.size());
+    Path newCrawlDb = FileOutputFormat.getOutputPath(jobs.get(1));
+
+    // current is complete and unchanged until the new CrawlDb is installed
+    int total = 0;
+    for (int i = 0; i < 3; i++) {
+      String part = String.format("part-r-%05d", i);
+      Assert.assertEquals(counts[i], countEntries(new Path(current, part)));
+      total += countEntries(new Path(newCrawlDb, part));
+    }
+    Assert.assertEquals(101, total);
+    Assert.assertEquals(3, CrawlDbMergeJoin.checkPartitioning(conf, newCrawlDb));
+  }
+
+  @Test
+  public void testTempDirsRemovedOnFailure() throws Exception {
+    Path crawlDb = new Path(testdir, "crawldb");
+    Path current = new Path(crawlDb, CrawlDb.CURRENT_NAME);
+    createCrawlDb(current, 3, new int[] { 0, 1, 2 });
+    String seed = "https://seed.example.org/";
+    int partition = new HashPartitioner<Text, CrawlDatum>()
+        .getPartition(new Text(seed), null, 3);
+    Path urlPath = new Path(testdir, "seeds");
+    CrawlDBTestUtil.generateSeedList(fs, urlPath,
+        Collections.singletonList(seed));
+    // corrupt the CrawlDb part receiving the seed, the merge job fails
+    Path data = new Path(new Path(current,
+        String.format("part-r-%05d", partition)), MapFile.DATA_FILE_NAME);
+    fs.delete(fs.getChecksumFile(data), false);
+    try (FSDataOutputStream out = fs.getRawFileSystem().append(data)) {
+      out.write(new byte[] { 0, 0, 0, 100, 0, 0, 0, 10, 1, 2, 3 });
+    }
+    try {
+      CrawlDbMergeJoin.inject(conf, crawlDb,
+          Collections.singletonList(urlPath));
+      Assert.fail("merge join should fail");
+    } catch (IOException | RuntimeException e) {
+      // expected
+    }
+    FileStatus[] stats = fs.listStatus(crawlDb);
+    Assert.assertEquals(1, stats.length);
+    Assert.assertEquals(current.getName(), stats[0].getPath().getName());
+  }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tdunning.math.stats.MergingDigest;
+
+public class TestCrawlDbReader {
+
+  private static final Path testdir = new Path("build/test/crawldb-reader-test");
+
+  private static final int NUM_PARTS = 3;
+
+  private Configuration conf;
+  private FileSystem fs;
+  private Path crawlDb;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = CrawlDBTestUtil.createContext().getConfiguration();
+    fs = FileSystem.get(conf);
+    fs.delete(testdir, true);
+    crawlDb = new Path(testdir, "crawldb");
+
+    // hash-partitioned CrawlDb with 100 URLs
+    HashPartitioner<Text, CrawlDatum> partitioner = new HashPartitioner<>();
+    List<TreeMap<Text, CrawlDatum>> parts = new ArrayList<>();
+    for (int i = 0; i < NUM_PARTS; i++) {
+      parts.add(new TreeMap<>());
+    }
+    for (int i = 0; i < 100; i++) {
+      Text url = new Text("https://example.com/" + i);
+      parts.get(partitioner.getPartition(url, null, NUM_PARTS)).put(url,
+          new CrawlDatum(CrawlDatum.STATUS_DB_FETCHED, i));
+    }
+    Path current = new Path(crawlDb, CrawlDb.CURRENT_NAME);
+    for (int i = 0; i < NUM_PARTS; i++) {
+      MapFile.Writer writer = new MapFile.Writer(conf,
+          new Path(current, String.format("part-r-%05d", i)),
+          MapFile.Writer.keyClass(Text.class),
+          SequenceFile.Writer.valueClass(CrawlDatum.class));
+      for (Map.Entry<Text, CrawlDatum> e : parts.get(i).entrySet()) {
+        writer.append(e.getKey(), e.getValue());
+      }
+      writer.close();
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    fs.delete(testdir, true);
+  }
+
+  @Test
+  public void testBatchGet() throws Exception {
+    List<String> urls = new ArrayList<>();
+    for (int i = 150; i >= 0; i -= 3) {
+      urls.add("https://example.com/" + i);
+    }
+    try (CrawlDbReader dbr = new CrawlDbReader()) {
+      Map<String, CrawlDatum> res = dbr.get(crawlDb.toString(), urls, conf);
+      List<String> expected = new ArrayList<>();
+      for (String url : urls) {
+        CrawlDatum datum = dbr.get(crawlDb.toString(), url, conf);
+        if (datum != null) {
+          expected.add(url);
+          Assert.assertEquals(datum, res.get(url));
+        }
+      }
+      Assert.assertEquals(34, expected.size());
+      // found URLs in input order
+      Assert.assertEquals(expected, new ArrayList<>(res.keySet()));
+    }
+  }
+
+  @Test
+  public void testConcurrentGet() throws Exception {
+    Path current = new Path(crawlDb, CrawlDb.CURRENT_NAME);
+    List<String> urls = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      urls.add("https://example.com/" + i);
+    }
+    try (CrawlDbReader dbr = new CrawlDbReader()) {
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        results.add(executor.submit(() -> {
+          int found = 0;
+          for (int i = 0; i < 20; i++) {
+            found += dbr.get(crawlDb.toString(), urls, conf).size();
+          }
+          return found;
+        }));
+      }
+      // readers are re-opened while other threads look up URLs
+      for (int i = 0; i < 20; i++) {
+        fs.setTimes(current, 1000L * (i + 1), -1);
+        dbr.get(crawlDb.toString(), "https://example.com/1", conf);
+      }
+      for (Future<Integer> result : results) {
+        Assert.assertEquals(2000, result.get().intValue());
+      }
+      executor.shutdown();
+    }
+  }
+
+  private void writeSummaries(boolean hostCounts) throws Exception {
+    Path current = new Path(crawlDb, CrawlDb.CURRENT_NAME);
+    for (int i = 0; i < NUM_PARTS; i++) {
+      Path part = new Path(current, String.format("part-r-%05d", i));
+      CrawlDbStatsSummary summary = new CrawlDbStatsSummary(hostCounts);
+      try (MapFile.Reader reader = new MapFile.Reader(part, conf)) {
+        Text key = new Text();
+        CrawlDatum value = new CrawlDatum();
+        while (reader.next(key, value)) {
+          summary.add(key, value);
+        }
+      }
+      summary.write(new Path(part, CrawlDbStatsSummary.SUMMARY_FILE_NAME),
+          conf);
+    }
+  }
+
+  @Test
+  public void testStatsSummary() throws Exception {
+    writeSummaries(true);
+
+    try (CrawlDbReader dbr = new CrawlDbReader()) {
+      TreeMap<String, Writable> merged = dbr
+          .processStatJobHelper(crawlDb.toString(), conf, true, false);
+      TreeMap<String, Writable> scanned = dbr
+          .processStatJobHelper(crawlDb.toString(), conf, true, true);
+      Assert.assertEquals(scanned.keySet(), merged.keySet());
+      for (Map.Entry<String, Writable> e : scanned.entrySet()) {
+        if (e.getValue() instanceof BytesWritable) {
+          MergingDigest expected = MergingDigest.fromBytes(
+              ByteBuffer.wrap(((BytesWritable) e.getValue()).getBytes()));
+          MergingDigest actual = MergingDigest.fromBytes(ByteBuffer
+              .wrap(((BytesWritable) merged.get(e.getKey())).getBytes()));
+          Assert.assertEquals(expected.quantile(.5), actual.quantile(.5), 1.0);
+        } else {
+          Assert.assertEquals(e.getKey(), e.getValue(), merged.get(e.getKey()));
+        }
+      }
+      Assert.assertEquals(100L, ((LongWritable) merged.get("T")).get());
+      Assert.assertTrue(merged.containsKey("status 2 example.com"));
+    }
+  }
+
+  @Test
+  public void testStatsSummaryWithoutHostCounts() throws Exception {
+    writeSummaries(false);
+
+    try (CrawlDbReader dbr = new CrawlDbReader()) {
+      TreeMap<String, Writable> merged = dbr
+          .processStatJobHelper(crawlDb.toString(), conf, false, false);
+      Assert.assertEquals(100L, ((LongWritable) merged.get("T")).get());
+      Assert.assertFalse(merged.containsKey("status 2 example.com"));
+      // status counts per host are required: the CrawlDb is scanned
+      TreeMap<String, Writable> sorted = dbr
+          .processStatJobHelper(crawlDb.toString(), conf, true, false);
+      Assert.assertEquals(100L,
+          ((LongWritable) sorted.get("status 2 example.com")).get());
+    }
+  }
+
+}
@@ -22,6 +22,7 @@ import java.util.Collections;
 import java.util.Comparator;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.SequenceFile;
@@ -300,6 +301,50 @@ public class TestGenerator {
 
   }
 
+  /**
+   * Test that URLs are distributed over multiple segments (see
+   * "generate.max.num.segments"), partitioned by one job per segment and by a
+   * single job for all segments.
+   * 
+   * @throws Exception
+   */
+  @Test
+  public void testGenerateMultipleSegments() throws Exception {
+    for (boolean singleJob : new boolean[] { false, true }) {
+      ArrayList<URLCrawlDatum> list = new ArrayList<URLCrawlDatum>();
+      for (String host : new String[] { "aaa", "bbb", "ccc" }) {
+        for (int i = 0; i < 3; i++) {
+          list.add(createURLCrawlDatum("http://" + host + "/" + i, 1, i));
+        }
+      }
+      createCrawlDB(list);
+
+      Configuration myConfiguration = new Configuration(conf);
+      myConfiguration.setInt(Generator.GENERATOR_MAX_COUNT, 1);
+      myConfiguration.set(Generator.GENERATOR_COUNT_MODE,
+          Generator.GENERATOR_COUNT_VALUE_HOST);
+      myConfiguration.setBoolean(Generator.GENERATOR_PARTITION_SINGLE_JOB,
+          singleJob);
+      Generator g = new Generator(myConfiguration);
+      Path[] generatedSegments = g.generate(dbDir, segmentsDir, -1,
+          Long.MAX_VALUE, Long.MAX_VALUE, false, false, false, 3, null);
+
+      Assert.assertEquals(3, generatedSegments.length);
+      for (Path segment : generatedSegments) {
+        ArrayList<URLCrawlDatum> l = new ArrayList<URLCrawlDatum>();
+        for (FileStatus part : fs.listStatus(
+            new Path(segment, CrawlDatum.GENERATE_DIR_NAME))) {
+          if (part.getPath().getName().startsWith("part-")) {
+            l.addAll(readContents(part.getPath()));
+          }
+        }
+        // one URL per host in every segment
+        Assert.assertEquals(3, l.size());
+      }
+      delete(testdir);
+    }
+  }
+
   /**
    * Read contents of fetchlist.
    * 
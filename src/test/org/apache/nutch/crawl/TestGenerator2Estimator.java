@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.nutch.crawl.Generator2Estimator.Estimate;
+import org.apache.nutch.crawl.Generator2Estimator.EstimatorReducer;
+import org.apache.nutch.crawl.Generator2Estimator.SampledInputFormat;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestGenerator2Estimator {
+
+  @Test
+  public void testSample() {
+    List<InputSplit> splits = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      splits.add(new FileSplit(new Path("part-r-" + i), 0, 1000, null));
+    }
+    List<InputSplit> sample = SampledInputFormat.sample(splits, 0.25f, 42);
+    Assert.assertEquals(5, sample.size());
+    Assert.assertEquals(sample, SampledInputFormat.sample(splits, 0.25f, 42));
+    Assert.assertEquals(1, SampledInputFormat.sample(splits, 0.0f, 42).size());
+    Assert.assertEquals(20, SampledInputFormat.sample(splits, 1.0f, 42).size());
+  }
+
+  @Test
+  public void testEstimateSegments() {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt(Generator2.GENERATOR_MAX_NUM_SEGMENTS, 4);
+    conf.setInt(Generator2.GENERATOR_MAX_COUNT, 10);
+    conf.setInt(Generator2.GENERATOR_COUNT_KEEP_MIN_IN_SEGMENT, 5);
+    conf.setDouble(Generator2Estimator.GENERATOR_ESTIMATE_SCALE, 2.0);
+    EstimatorReducer reducer = new EstimatorReducer();
+    reducer.configure(conf);
+
+    // 30 sampled URLs scaled up to 60, 4 segments x 10 URLs selected
+    Estimate estimate = reducer.estimate("example.com", 30, null);
+    Assert.assertEquals("example.com\t60\t40\t20\t0", estimate.toString());
+    Assert.assertArrayEquals(new long[] { 10, 10, 10, 10 },
+        reducer.segmentCounts);
+  }
+
+  @Test
+  public void testEstimateHostLimits() {
+    Configuration conf = NutchConfiguration.create();
+    conf.set(Generator2.GENERATOR_COUNT_MODE,
+        Generator2.GENERATOR_COUNT_VALUE_DOMAIN);
+    conf.setInt(Generator2.GENERATOR_MAX_NUM_SEGMENTS, 2);
+    conf.setInt(Generator2.GENERATOR_MAX_HOSTS_PER_DOMAIN, 2);
+    conf.setInt(Generator2.GENERATOR_MAX_COUNT_PER_HOST, 3);
+    conf.setInt(Generator2.GENERATOR_COUNT_KEEP_MIN_IN_SEGMENT, 2);
+    EstimatorReducer reducer = new EstimatorReducer();
+    reducer.configure(conf);
+
+    Map<String, long[]> hosts = new LinkedHashMap<>();
+    hosts.put("a.example.com", new long[] { 10 });
+    hosts.put("b.example.com", new long[] { 4 });
+    hosts.put("c.example.com", new long[] { 5 });
+    Estimate estimate = reducer.estimate("example.com", 19, hosts);
+    // a: 6 of 10 URLs (3 per host and segment), b: 4, c: over host limit
+    Assert.assertEquals("example.com\t19\t10\t9\t2", estimate.toString());
+    Assert.assertArrayEquals(new long[] { 4, 6 }, reducer.segmentCounts);
+  }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.crawl.Generator2.DomainScorePair;
+import org.apache.nutch.crawl.Generator2.Selector;
+import org.apache.nutch.crawl.Generator2.SelectorReducer;
+import org.apache.nutch.hostdb.HostDatum;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for the fetch time balancing of {@link Generator2}. */
+public class TestGenerator2FetchTimeBalancing {
+
+  private static final Path testdir = new Path(
+      "build/test/generator2-balancing-test");
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = NutchConfiguration.create();
+    fs = FileSystem.get(conf);
+    fs.delete(testdir, true);
+    Path hostDb = new Path(testdir, "hostdb");
+    conf.set(Generator2.GENERATOR_HOSTDB, hostDb.toString());
+    conf.setBoolean(Generator2.GENERATOR_BALANCE_FETCH_TIME, true);
+    conf.set(Generator2.GENERATOR_BALANCE_CRAWL_DELAY_FIELD, "crawl_delay");
+    conf.setFloat("fetcher.server.delay", 1.0f);
+    conf.setInt("http.timeout", 10000);
+    conf.setInt(Generator2.GENERATOR_MAX_NUM_SEGMENTS, 4);
+
+    try (SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(
+            new Path(new Path(hostDb, "current"), "part-r-00000")),
+        SequenceFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(HostDatum.class))) {
+      // crawl delay 2 sec., response time 500 ms, 40% failures
+      HostDatum slow = new HostDatum();
+      slow.getMetaData().put(new Text("crawl_delay"), new Text("2"));
+      slow.getMetaData().put(new Text("avg._rs_"), new Text("500"));
+      slow.setFetched(6);
+      slow.setDnsFailures(2L);
+      slow.setConnectionFailures(2L);
+      writer.append(new Text("slow.example.com"), slow);
+      // no statistics: fetcher.server.delay
+      HostDatum fast = new HostDatum();
+      fast.setFetched(1);
+      writer.append(new Text("fast.example.com"), fast);
+      for (int i = 0; i < 20; i++) {
+        writer.append(new Text("host" + i + ".example.org"), new HostDatum());
+      }
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    fs.delete(testdir, true);
+  }
+
+  @Test
+  public void testFetchTimeEstimate() throws Exception {
+    SelectorReducer reducer = new SelectorReducer();
+    reducer.configure(conf);
+
+    Assert.assertEquals(22, reducer.hostFetchTimes.size());
+    // 2000 ms delay + 0.6 * 500 ms response time + 0.4 * 10000 ms timeout
+    Assert.assertEquals(6300.0f, reducer.getFetchTime("slow.example.com"),
+        0.01f);
+    Assert.assertEquals(1000.0f, reducer.getFetchTime("fast.example.com"),
+        0.01f);
+    // hosts missing in HostDb: average over all hosts
+    Assert.assertEquals((6300.0f + 21 * 1000.0f) / 22,
+        reducer.getFetchTime("unknown.example.net"), 0.01f);
+  }
+
+  @Test
+  public void testSelectBalancedSegment() throws Exception {
+    SelectorReducer reducer = new SelectorReducer();
+    reducer.configure(conf);
+
+    Assert.assertEquals(4, reducer.segmentLoad.length);
+    reducer.segmentLoad[0][0] = 3000.0;
+    reducer.segmentLoad[1][0] = 1000.0;
+    reducer.segmentLoad[2][0] = 2000.0;
+    reducer.segmentLoad[3][0] = 1000.0;
+    int segment = reducer.selectBalancedSegment(0);
+    Assert.assertTrue(segment == 1 || segment == 3);
+    reducer.segmentLoad[segment][0] += 6300.0;
+    Assert.assertEquals(segment == 1 ? 3 : 1,
+        reducer.selectBalancedSegment(0));
+  }
+
+  @Test
+  public void testPartitionSeedSharedWithPartitionJob() throws Exception {
+    int numLists = 5;
+    conf.setInt("num.lists", numLists);
+    conf.setInt(Generator2.GENERATOR_BALANCE_PARTITION_SEED, 12345);
+    // the selector runs with another seed
+    conf.setInt("partition.url.seed", 42);
+    SelectorReducer reducer = new SelectorReducer();
+    reducer.configure(conf);
+
+    // fetch lists are partitioned with the balanced seed
+    Configuration partitionConf = new Configuration(conf);
+    Generator2.setPartitionSeed(partitionConf);
+    Assert.assertEquals(12345, partitionConf.getInt("partition.url.seed", 0));
+    URLPartitioner partitioner = new URLPartitioner();
+    partitioner.setConf(partitionConf);
+
+    Set<Integer> fetchLists = new HashSet<>();
+    for (int i = 0; i < 50; i++) {
+      Text url = new Text("https://host" + i + ".example.org/page.html");
+      int fetchList = reducer.getFetchList(url);
+      Assert.assertEquals(url.toString(),
+          partitioner.getPartition(url, null, numLists), fetchList);
+      fetchLists.add(fetchList);
+    }
+    Assert.assertTrue(fetchLists.size() > 1);
+  }
+
+  @Test
+  public void testLoadOnlyHostsOfPartition() throws Exception {
+    int numReduces = 3;
+    conf.setInt("mapreduce.job.reduces", numReduces);
+    conf.setInt("partition.url.seed", 42);
+    Selector selector = new Selector();
+    selector.setConf(conf);
+    DomainScorePair key = new DomainScorePair();
+
+    Set<String> loaded = new HashSet<>();
+    for (int p = 0; p < numReduces; p++) {
+      Configuration taskConf = new Configuration(conf);
+      taskConf.setInt("mapreduce.task.partition", p);
+      SelectorReducer reducer = new SelectorReducer();
+      reducer.configure(taskConf);
+      for (String host : reducer.hostFetchTimes.keySet()) {
+        key.set(host, .0f);
+        Assert.assertEquals(host, p,
+            selector.getPartition(key, null, numReduces));
+        Assert.assertTrue(host, loaded.add(host));
+      }
+    }
+    // every host is loaded by exactly one reduce task
+    Assert.assertEquals(22, loaded.size());
+  }
+
+}
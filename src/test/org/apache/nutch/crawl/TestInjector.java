@@ -68,6 +68,17 @@ public class TestInjector {
   @Test
   public void testInject()
       throws IOException, ClassNotFoundException, InterruptedException {
+    testInject(false);
+  }
+
+  @Test
+  public void testInjectMergeJoin()
+      throws IOException, ClassNotFoundException, InterruptedException {
+    testInject(true);
+  }
+
+  private void testInject(boolean mergeJoin)
+      throws IOException, ClassNotFoundException, InterruptedException {
     ArrayList<String> urls = new ArrayList<String>();
     // We'll use a separate list for MD so we can still compare url with
     // containsAll
@@ -104,6 +115,7 @@ public class TestInjector {
     CrawlDBTestUtil.generateSeedList(fs, urlPath, urls2);
     injector = new Injector(conf);
     conf.setBoolean("db.injector.update", true);
+    conf.setBoolean(Injector.INJECTOR_MERGE_JOIN, mergeJoin);
     injector.inject(crawldbPath, urlPath);
     urls.addAll(urls2);
 
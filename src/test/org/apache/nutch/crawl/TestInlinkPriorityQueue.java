@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestInlinkPriorityQueue {
+
+  private static CrawlDatum link(float score) {
+    return new CrawlDatum(CrawlDatum.STATUS_LINKED, 0, score);
+  }
+
+  @Test
+  public void testKeepsBestScoringLinks() {
+    InlinkPriorityQueue queue = new InlinkPriorityQueue(3);
+    float[] scores = { 0.5f, 0.1f, 0.9f, 0.3f, 0.7f, 0.2f };
+    int accepted = 0;
+    for (float score : scores) {
+      CrawlDatum link = link(score);
+      if (queue.accepts(link)) {
+        Assert.assertTrue(queue.insert(link));
+        accepted++;
+      } else {
+        Assert.assertFalse(queue.insert(link));
+      }
+    }
+    Assert.assertEquals(5, accepted);
+    Assert.assertEquals(3, queue.size());
+    // lowest scoring link is popped first
+    Assert.assertEquals(0.5f, queue.pop().getScore(), 0.0f);
+    Assert.assertEquals(0.7f, queue.pop().getScore(), 0.0f);
+    Assert.assertEquals(0.9f, queue.pop().getScore(), 0.0f);
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSitemapDbUpdate {
+
+  private static final Path testdir = new Path(
+      "build/test/sitemapdb-update-test");
+
+  private static final String SITEMAP1 = "https://example.com/sitemap1.xml";
+  private static final String SITEMAP2 = "https://example.com/sitemap2.xml";
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = CrawlDBTestUtil.createContext().getConfiguration();
+    fs = FileSystem.get(conf);
+    fs.delete(testdir, true);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    fs.delete(testdir, true);
+  }
+
+  private void writeStates(Path dir, CrawlDatum... states) throws Exception {
+    // injected URLs and sitemap states written by step 1
+    try (SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(new Path(dir, "sitemaps-r-00000")),
+        SequenceFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(CrawlDatum.class))) {
+      for (int i = 0; i < states.length; i++) {
+        writer.append(new Text(i == 0 ? SITEMAP1 : SITEMAP2), states[i]);
+      }
+    }
+  }
+
+  private CrawlDatum state(byte status, long time) {
+    CrawlDatum datum = new CrawlDatum(status, 0);
+    datum.setFetchTime(time);
+    datum.getMetaData().put(
+        SitemapInjector.SitemapInjectMapper.SITEMAP_MAX_LASTMOD,
+        new LongWritable(time - 1000));
+    return datum;
+  }
+
+  @Test
+  public void testUpdate() throws Exception {
+    Path sitemapDb = new Path(testdir, "sitemapdb");
+    SitemapInjector injector = new SitemapInjector();
+    injector.setConf(conf);
+
+    Path run1 = new Path(testdir, "run1");
+    writeStates(run1, state(CrawlDatum.STATUS_FETCH_SUCCESS, 10000),
+        state(CrawlDatum.STATUS_FETCH_SUCCESS, 10000));
+    injector.updateSitemapDb(sitemapDb, run1);
+
+    Path run2 = new Path(testdir, "run2");
+    writeStates(run2, state(CrawlDatum.STATUS_FETCH_NOTMODIFIED, 20000));
+    injector.updateSitemapDb(sitemapDb, run2);
+
+    // no states: sitemap DB unchanged
+    injector.updateSitemapDb(sitemapDb, new Path(testdir, "run3"));
+
+    try (CrawlDbReader reader = new CrawlDbReader()) {
+      CrawlDatum datum = reader.get(sitemapDb.toString(), SITEMAP1, conf);
+      Assert.assertEquals(CrawlDatum.STATUS_DB_NOTMODIFIED, datum.getStatus());
+      Assert.assertEquals(20000, datum.getFetchTime());
+      Assert.assertEquals(19000, ((LongWritable) datum.getMetaData()
+          .get(SitemapInjector.SitemapInjectMapper.SITEMAP_MAX_LASTMOD)).get());
+      datum = reader.get(sitemapDb.toString(), SITEMAP2, conf);
+      Assert.assertEquals(CrawlDatum.STATUS_DB_FETCHED, datum.getStatus());
+      Assert.assertEquals(10000, datum.getFetchTime());
+    }
+    Assert.assertFalse(fs.exists(new Path(sitemapDb, CrawlDb.LOCK_NAME)));
+  }
+
+}
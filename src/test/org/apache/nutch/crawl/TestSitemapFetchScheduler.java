@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.fetcher.FetchItem;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSitemapFetchScheduler {
+
+  @Test
+  public void testPoliteness() throws Exception {
+    Configuration conf = NutchConfiguration.create();
+    conf.setFloat("fetcher.server.delay", 1.0f);
+    SitemapFetchScheduler scheduler = new SitemapFetchScheduler(conf);
+
+    long start = System.currentTimeMillis();
+    FetchItem first = scheduler.acquire("https://example.com/sitemap1.xml");
+    Assert.assertNotNull(first);
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      // other host: not blocked
+      Future<FetchItem> otherHost = executor.submit(
+          () -> scheduler.acquire("https://example.org/sitemap.xml"));
+      scheduler.finish(otherHost.get(500, TimeUnit.MILLISECONDS));
+
+      // same host: waits until the first fetch is finished and the crawl
+      // delay has elapsed
+      Future<FetchItem> sameHost = executor.submit(
+          () -> scheduler.acquire("https://example.com/sitemap2.xml"));
+      Thread.sleep(200);
+      Assert.assertFalse(sameHost.isDone());
+      long finished = System.currentTimeMillis();
+      scheduler.finish(first);
+      FetchItem second = sameHost.get(5, TimeUnit.SECONDS);
+      Assert.assertTrue(System.currentTimeMillis() - finished >= 900);
+      scheduler.finish(second);
+      Assert.assertEquals(0, scheduler.getQueuedSize());
+    } finally {
+      executor.shutdownNow();
+    }
+    Assert.assertTrue(System.currentTimeMillis() - start >= 1000);
+  }
+
+}
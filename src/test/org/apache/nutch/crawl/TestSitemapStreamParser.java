@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.crawl;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import crawlercommons.sitemaps.Namespace;
+import crawlercommons.sitemaps.SiteMapURL;
+
+public class TestSitemapStreamParser {
+
+  private static final String SITEMAP = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\"\n"
+      + "  xmlns:image=\"http://www.google.com/schemas/sitemap-image/1.1\">\n"
+      + "  <url>\n"
+      + "    <loc>https://example.com/a.html</loc>\n"
+      + "    <lastmod>2024-01-01</lastmod>\n"
+      + "    <changefreq>daily</changefreq>\n"
+      + "    <priority>0.8</priority>\n"
+      + "    <image:image><image:loc>https://example.com/a.jpg</image:loc></image:image>\n"
+      + "  </url>\n"
+      + "  <url><loc><![CDATA[https://example.com/b.html]]></loc></url>\n"
+      + "  <url><loc>https://other.example.org/c.html</loc></url>\n"
+      + "</urlset>";
+
+  private static final String INDEX = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+      + "  <sitemap><loc>https://example.com/sitemap1.xml</loc></sitemap>\n"
+      + "</sitemapindex>";
+
+  private SitemapStreamParser parser = new SitemapStreamParser(false,
+      Collections.singleton(Namespace.SITEMAP));
+
+  private List<SiteMapURL> parse(SitemapStreamParser parser, String contentType,
+      byte[] content, int limit) throws Exception {
+    List<SiteMapURL> urls = new ArrayList<>();
+    Assert.assertTrue(parser.parse(new URL("https://example.com/sitemap.xml"),
+        contentType, content, url -> {
+          urls.add(url);
+          return urls.size() < limit;
+        }));
+    return urls;
+  }
+
+  @Test
+  public void testXml() throws Exception {
+    List<SiteMapURL> urls = parse(parser, "application/xml",
+        SITEMAP.getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE);
+    Assert.assertEquals(3, urls.size());
+    Assert.assertEquals("https://example.com/a.html",
+        urls.get(0).getUrl().toString());
+    Assert.assertEquals(SiteMapURL.ChangeFrequency.DAILY,
+        urls.get(0).getChangeFrequency());
+    Assert.assertEquals(0.8, urls.get(0).getPriority(), 0.0001);
+    Assert.assertNotNull(urls.get(0).getLastModified());
+    Assert.assertEquals("https://example.com/b.html",
+        urls.get(1).getUrl().toString());
+
+    // stop after the first URL
+    Assert.assertEquals(1, parse(parser, "application/xml",
+        SITEMAP.getBytes(StandardCharsets.UTF_8), 1).size());
+
+    // strict: URL on a different host is rejected
+    SitemapStreamParser strictParser = new SitemapStreamParser(true,
+        Collections.singleton(Namespace.SITEMAP));
+    Assert.assertEquals(2, parse(strictParser, "application/xml",
+        SITEMAP.getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE).size());
+  }
+
+  @Test
+  public void testGzipAndText() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(SITEMAP.getBytes(StandardCharsets.UTF_8));
+    }
+    Assert.assertEquals(3, parse(parser, "application/gzip",
+        bytes.toByteArray(), Integer.MAX_VALUE).size());
+
+    String text = "https://example.com/a.html\n\nhttps://example.com/b.html\n";
+    Assert.assertEquals(2, parse(parser, "text/plain",
+        text.getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE).size());
+  }
+
+  @Test
+  public void testLeadingWhitespace() throws Exception {
+    // more white space than fits into the mark limit of the input stream
+    StringBuilder sb = new StringBuilder("\ufeff");
+    for (int i = 0; i < 5000; i++) {
+      sb.append(i % 80 == 0 ? '\n' : ' ');
+    }
+    Assert.assertEquals(3, parse(parser, "application/xml",
+        (sb + SITEMAP).getBytes(StandardCharsets.UTF_8), Integer.MAX_VALUE)
+            .size());
+    Assert.assertEquals(2, parse(parser, "text/plain",
+        (sb + "https://example.com/a.html\nhttps://example.com/b.html\n")
+            .getBytes(StandardCharsets.UTF_8),
+        Integer.MAX_VALUE).size());
+  }
+
+  @Test
+  public void testIndexNotStreamed() throws Exception {
+    Assert.assertFalse(parser.parse(new URL("https://example.com/index.xml"),
+        "application/xml", INDEX.getBytes(StandardCharsets.UTF_8),
+        url -> true));
+  }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for OutlinkProcessor. */
+public class TestOutlinkProcessor {
+
+  private static final String URL = "https://www.example.com/";
+
+  private static Outlink[] outlinks() throws Exception {
+    return new Outlink[] { new Outlink("https://www.example.com/a", "A"),
+        new Outlink(URL, "self"),
+        new Outlink("https://www.example.com/a", "A"),
+        new Outlink("https://www.example.com/a", "other anchor"),
+        new Outlink("https://foo.example.com/b", "B"),
+        new Outlink("https://www.example.org/c", "C"),
+        new Outlink("https://www.example.com/" + "x".repeat(100), "long") };
+  }
+
+  private static String[] urls(List<Outlink> outlinks) {
+    String[] urls = new String[outlinks.size()];
+    for (int i = 0; i < urls.length; i++) {
+      urls[i] = outlinks.get(i).getToUrl();
+    }
+    return urls;
+  }
+
+  @Test
+  public void testDeduplicate() throws Exception {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt("db.max.outlink.length", 50);
+    OutlinkProcessor processor = new OutlinkProcessor(conf, null, null, null);
+
+    List<Outlink> result = processor.process(URL, null, outlinks(), 100, true);
+    Assert.assertArrayEquals(new String[] { "https://www.example.com/a",
+        "https://www.example.com/a", "https://foo.example.com/b",
+        "https://www.example.org/c" }, urls(result));
+
+    // not filtered, only deduplicated
+    result = processor.process(URL, null, outlinks(), 100, false);
+    Assert.assertEquals(6, result.size());
+
+    // duplicates count against the max. number of outlinks
+    result = processor.process(URL, null, outlinks(), 3, true);
+    Assert.assertEquals(2, result.size());
+    Assert.assertEquals("other anchor", result.get(1).getAnchor());
+    result = processor.process(URL, null, outlinks(), 4, true);
+    Assert.assertEquals(3, result.size());
+    Assert.assertEquals("https://foo.example.com/b",
+        result.get(2).getToUrl());
+  }
+
+  @Test
+  public void testFilterNormalize() throws Exception {
+    // ParseOutputFormat delegates single links to OutlinkProcessor
+    Assert.assertEquals("https://www.example.com/a",
+        ParseOutputFormat.filterNormalize(URL, "https://www.example.com/a",
+            "www.example.com", false, true, "byHost", null, null, null));
+    Assert.assertNull(ParseOutputFormat.filterNormalize(URL, URL,
+        "www.example.com", false, true, "byHost", null, null, null));
+    Assert.assertNull(ParseOutputFormat.filterNormalize(URL,
+        "https://foo.example.com/b", "www.example.com", false, true, "byHost",
+        null, null, null));
+
+    Assert.assertEquals("https://foo.example.com/b",
+        ParseOutputFormat.filterNormalize(URL, "https://foo.example.com/b",
+            "example.com", false, true, "byDomain", null, null, null));
+    Assert.assertNull(ParseOutputFormat.filterNormalize(URL,
+        "https://foo.example.com/b", "example.com", true, false, "byDomain",
+        null, null, null));
+  }
+
+  @Test
+  public void testIgnoreLinks() throws Exception {
+    Configuration conf = NutchConfiguration.create();
+    conf.setBoolean("db.ignore.external.links", true);
+    OutlinkProcessor processor = new OutlinkProcessor(conf, null, null, null);
+    List<Outlink> result = processor.process(URL, "www.example.com",
+        outlinks(), 100, true);
+    Assert.assertEquals(3, result.size());
+
+    conf.set("db.ignore.external.links.mode", "byDomain");
+    processor = new OutlinkProcessor(conf, null, null, null);
+    result = processor.process(URL, "example.com", outlinks(), 100, true);
+    Assert.assertEquals(4, result.size());
+
+    conf.setBoolean("db.ignore.external.links", false);
+    conf.setBoolean("db.ignore.internal.links", true);
+    processor = new OutlinkProcessor(conf, null, null, null);
+    result = processor.process(URL, "example.com", outlinks(), 100, true);
+    Assert.assertArrayEquals(new String[] { "https://www.example.org/c" },
+        urls(result));
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.protocol.Content;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for ParseCache. */
+public class TestParseCache {
+
+  private static final Path testdir = new Path("build/test/parse-cache-test");
+
+  private static final String URL = "https://example.com/";
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = NutchConfiguration.create();
+    conf.setInt(ParseCache.PARSER_CACHE_SIZE, 10);
+    fs = FileSystem.get(conf);
+    fs.delete(testdir, true);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    fs.delete(testdir, true);
+  }
+
+  private Content content(String text, String header) {
+    Metadata metadata = new Metadata();
+    metadata.set("X-Header", header);
+    return new Content(URL, URL, text.getBytes(StandardCharsets.UTF_8),
+        "text/html", metadata, conf);
+  }
+
+  private ParseResult parse(Content content) {
+    Outlink[] outlinks = new Outlink[0];
+    ParseData data = new ParseData(ParseStatus.STATUS_SUCCESS, "title",
+        outlinks, content.getMetadata());
+    return ParseResult.createParseResult(URL,
+        new ParseImpl(new String(content.getContent(),
+            StandardCharsets.UTF_8), data));
+  }
+
+  @Test
+  public void testCache() throws Exception {
+    ParseCache cache = new ParseCache(conf);
+    Content content = content("text", "1");
+    String key = cache.getKey(content);
+    Assert.assertNull(cache.get(key, content));
+    ParseResult result = parse(content);
+    cache.put(key, content, result);
+    Assert.assertEquals(key,
+        result.get(URL).getData().getParseMeta().get(ParseCache.PARSE_CACHE_KEY));
+    // modification of the result must not affect the cache
+    result.get(URL).getData().getContentMeta().set("X-Added", "x");
+
+    Content unchanged = content("text", "2");
+    Assert.assertEquals(key, cache.getKey(unchanged));
+    ParseResult cached = cache.get(key, unchanged);
+    Assert.assertNotNull(cached);
+    Parse parse = cached.get(URL);
+    Assert.assertEquals("text", parse.getText());
+    Assert.assertEquals("title", parse.getData().getTitle());
+    Assert.assertEquals("2", parse.getData().getContentMeta().get("X-Header"));
+    Assert.assertNull(parse.getData().getContentMeta().get("X-Added"));
+
+    Content changed = content("changed text", "3");
+    Assert.assertNotEquals(key, cache.getKey(changed));
+    Assert.assertNull(cache.get(cache.getKey(changed), changed));
+
+    // other parser configuration
+    Configuration conf2 = new Configuration(conf);
+    conf2.set("plugin.includes", "parse-tika");
+    Assert.assertNotEquals(key, new ParseCache(conf2).getKey(unchanged));
+  }
+
+  @Test
+  public void testOtherUrl() throws Exception {
+    ParseCache cache = new ParseCache(conf);
+    Content content = content("text", "1");
+    String key = cache.getKey(content);
+    cache.put(key, content, parse(content));
+
+    // same content, URL differs only in the query or fragment: relative
+    // links (e.g. "?page=2") resolve differently
+    for (String url : new String[] { URL + "?page=1", URL + "#top",
+        URL + "other/" }) {
+      Content other = new Content(url, url, content.getContent(),
+          "text/html", new Metadata(), conf);
+      Assert.assertNotEquals(key, cache.getKey(other));
+      Assert.assertNull(cache.get(cache.getKey(other), other));
+    }
+  }
+
+  @Test
+  public void testSegment() throws Exception {
+    Path segment = new Path(testdir, "20260101000000");
+    Content content = content("text", "1");
+    String key = new ParseCache(conf).getKey(content);
+    ParseResult result = parse(content);
+    Parse parse = result.get(URL);
+    parse.getData().getParseMeta().set(ParseCache.PARSE_CACHE_KEY, key);
+    Path part = new Path("part-r-00000");
+    try (MapFile.Writer text = new MapFile.Writer(conf,
+        new Path(new Path(segment, ParseText.DIR_NAME), part),
+        MapFile.Writer.keyClass(Text.class),
+        MapFile.Writer.valueClass(ParseText.class));
+        MapFile.Writer data = new MapFile.Writer(conf,
+            new Path(new Path(segment, ParseData.DIR_NAME), part),
+            MapFile.Writer.keyClass(Text.class),
+            MapFile.Writer.valueClass(ParseData.class))) {
+      text.append(new Text(URL), new ParseText(parse.getText()));
+      data.append(new Text(URL), parse.getData());
+    }
+
+    conf.set(ParseCache.PARSER_CACHE_SEGMENT, segment.toString());
+    ParseCache cache = new ParseCache(conf);
+    Content unchanged = content("text", "2");
+    ParseResult cached = cache.get(cache.getKey(unchanged), unchanged);
+    Assert.assertNotNull(cached);
+    Assert.assertEquals("text", cached.get(URL).getText());
+    Assert.assertEquals("2",
+        cached.get(URL).getData().getContentMeta().get("X-Header"));
+
+    Content changed = content("changed text", "3");
+    Assert.assertNull(cache.get(cache.getKey(changed), changed));
+  }
+
+}
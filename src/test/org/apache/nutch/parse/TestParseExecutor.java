@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.protocol.Content;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for ParseExecutor. */
+public class TestParseExecutor {
+
+  /** Parser ignoring interruption, runs until it is released */
+  private static class RunawayParser implements Parser {
+    private volatile boolean released = false;
+    private Configuration conf;
+
+    @Override
+    public ParseResult getParse(Content c) {
+      long n = 0;
+      while (!released) {
+        // burn CPU, ignore interrupts
+        n++;
+      }
+      return new ParseStatus(ParseStatus.SUCCESS, "parsed " + (n > 0))
+          .getEmptyParseResult(c.getUrl(), conf);
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+      this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+      return conf;
+    }
+  }
+
+  private static Content content(String url) {
+    return new Content(url, url, new byte[0], "text/html", new Metadata(),
+        NutchConfiguration.create());
+  }
+
+  private static void waitForAbandoned(ParseExecutor executor, int n)
+      throws InterruptedException {
+    for (int i = 0; i < 100 && executor.getAbandonedRunning() != n; i++) {
+      Thread.sleep(50);
+    }
+    Assert.assertEquals(n, executor.getAbandonedRunning());
+  }
+
+  @Test
+  public void testAbandonedThreadsBounded() throws Exception {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt(ParseExecutor.PARSER_THREADS_MAX, 1);
+    ParseExecutor executor = new ParseExecutor(conf);
+
+    RunawayParser runaway = new RunawayParser();
+    Assert.assertNull(executor.parse(runaway, content("http://a.com/"), 1));
+    waitForAbandoned(executor, 1);
+
+    // the only thread is still occupied by the abandoned parse
+    RunawayParser parser = new RunawayParser();
+    parser.released = true;
+    Assert.assertNull(executor.parse(parser, content("http://b.com/"), 1));
+
+    // thread available again after the abandoned parse has finished
+    runaway.released = true;
+    waitForAbandoned(executor, 0);
+    ParseResult result = executor.parse(parser, content("http://b.com/"), 1);
+    Assert.assertNotNull(result);
+    Assert.assertTrue(result.isSuccess());
+  }
+
+  @Test
+  public void testCpuBudget() throws Exception {
+    Configuration conf = NutchConfiguration.create();
+    conf.setLong(ParseExecutor.PARSER_BUDGET_CPU, 1);
+    ParseExecutor executor = new ParseExecutor(conf);
+
+    RunawayParser runaway = new RunawayParser();
+    long start = System.currentTimeMillis();
+    try {
+      Assert.assertNull(executor.parse(runaway, content("http://a.com/"), 30));
+      Assert.assertTrue(System.currentTimeMillis() - start < 20000);
+      waitForAbandoned(executor, 1);
+    } finally {
+      runaway.released = true;
+    }
+    waitForAbandoned(executor, 0);
+  }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import org.apache.hadoop.io.MapWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.util.WritableTestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for ParseOutlinks. */
+public class TestParseOutlinks {
+
+  private static final String URL = "https://www.example.com/dir/page.html";
+
+  @Test
+  public void testParseOutlinks() throws Exception {
+    Outlink[] outlinks = new Outlink[] {
+        new Outlink("https://www.example.com/dir/other.html", "Other"),
+        new Outlink("https://www.example.com/", ""),
+        new Outlink("http://foo.com/", "Foo"),
+        new Outlink(URL, "Self"),
+        new Outlink("https://www.example.com/dir/page.html😀", "") };
+    MapWritable md = new MapWritable();
+    md.put(new Text("rel"), new Text("nofollow"));
+    outlinks[2].setMetadata(md);
+
+    ParseOutlinks original = new ParseOutlinks(URL, outlinks, 1234567L);
+    ParseOutlinks read = (ParseOutlinks) WritableTestUtils.writeRead(original,
+        null);
+    Assert.assertEquals(outlinks.length, read.size());
+    Assert.assertEquals(1234567L, read.getFetchTime());
+    Outlink[] restored = read.getOutlinks(URL);
+    Assert.assertArrayEquals(outlinks, restored);
+    Assert.assertEquals(new Text("nofollow"),
+        restored[2].getMetadata().get(new Text("rel")));
+    Assert.assertNull(restored[0].getMetadata());
+
+    ParseData data = new ParseData(ParseStatus.STATUS_SUCCESS, "title",
+        new Outlink[0], new Metadata());
+    Assert.assertArrayEquals(outlinks, read.addTo(URL, data).getOutlinks());
+  }
+
+  @Test
+  public void testCommonPrefixLength() {
+    Assert.assertEquals(0, ParseOutlinks.commonPrefixLength("abc", "xyz"));
+    Assert.assertEquals(3, ParseOutlinks.commonPrefixLength("abc", "abcd"));
+    // do not split surrogate pairs
+    Assert.assertEquals(1,
+        ParseOutlinks.commonPrefixLength("a😀", "a😁"));
+  }
+
+}
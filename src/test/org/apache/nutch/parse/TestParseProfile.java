@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.crawl.TextProfileSignature;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for ParseProfile. */
+public class TestParseProfile {
+
+  @Test
+  public void testGet() {
+    Configuration conf = NutchConfiguration.create();
+    Assert.assertEquals(ParseProfile.FULL, ParseProfile.get(conf));
+    conf.set(ParseProfile.PARSER_PROFILE, "outlinks_signature");
+    ParseProfile profile = ParseProfile.get(conf);
+    Assert.assertEquals(ParseProfile.OUTLINKS_SIGNATURE, profile);
+    Assert.assertTrue(profile.needsText());
+    Assert.assertTrue(profile.needsOutlinks());
+    Assert.assertFalse(profile.needsMetadata());
+    conf.set(ParseProfile.PARSER_PROFILE, "unknown");
+    Assert.assertEquals(ParseProfile.FULL, ParseProfile.get(conf));
+  }
+
+  @Test
+  public void testSupportsSignature() {
+    Configuration conf = NutchConfiguration.create();
+    // MD5Signature (default) does not use the parse text
+    for (ParseProfile profile : ParseProfile.values()) {
+      Assert.assertTrue(profile.supportsSignature(conf));
+    }
+    conf.set("db.signature.class", TextProfileSignature.class.getName());
+    Assert.assertFalse(ParseProfile.OUTLINKS.supportsSignature(conf));
+    Assert.assertFalse(ParseProfile.METADATA.supportsSignature(conf));
+    Assert.assertTrue(ParseProfile.OUTLINKS_SIGNATURE.supportsSignature(conf));
+    Assert.assertTrue(ParseProfile.SIGNATURE.supportsSignature(conf));
+    Assert.assertTrue(ParseProfile.FULL.supportsSignature(conf));
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.parse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.metadata.Nutch;
+import org.apache.nutch.protocol.Content;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests for {@link ParseSegment}. */
+public class TestParseSegment {
+
+  private static final int NUM_DOCS = 50;
+
+  private Configuration conf;
+  private FileSystem fs;
+  private Path testDir;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = NutchConfiguration.create();
+    fs = FileSystem.get(conf);
+    testDir = new Path(conf.get("hadoop.tmp.dir"),
+        "parse-segment-" + System.currentTimeMillis());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    fs.delete(testDir, true);
+  }
+
+  private Path createSegment(String name) throws Exception {
+    Path segment = new Path(testDir, name);
+    Path content = new Path(new Path(segment, Content.DIR_NAME),
+        "part-r-00000");
+    try (MapFile.Writer writer = new MapFile.Writer(conf, content,
+        MapFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(Content.class))) {
+      for (int i = 0; i < NUM_DOCS; i++) {
+        // zero-padded so that keys are appended in sorted order
+        String url = String.format("http://example.com/%03d.html", i);
+        Metadata metadata = new Metadata();
+        metadata.set(Nutch.FETCH_STATUS_KEY,
+            Integer.toString(CrawlDatum.STATUS_FETCH_SUCCESS));
+        String html = "<html><head><title>title " + i
+            + "</title></head><body><p>text " + i + "</p><a href=\"/link" + i
+            + ".html\">link</a></body></html>";
+        writer.append(new Text(url), new Content(url, url,
+            html.getBytes(StandardCharsets.UTF_8), "text/html", metadata,
+            conf));
+      }
+    }
+    return segment;
+  }
+
+  private TreeMap<String, String> readParse(Path segment) throws Exception {
+    TreeMap<String, String> parses = new TreeMap<>();
+    Text key = new Text();
+    ParseText text = new ParseText();
+    for (MapFile.Reader reader : MapFileOutputFormat
+        .getReaders(new Path(segment, ParseText.DIR_NAME), conf)) {
+      while (reader.next(key, text)) {
+        parses.put(key.toString(), text.getText());
+      }
+      reader.close();
+    }
+    ParseData data = new ParseData();
+    for (MapFile.Reader reader : MapFileOutputFormat
+        .getReaders(new Path(segment, ParseData.DIR_NAME), conf)) {
+      while (reader.next(key, data)) {
+        String url = key.toString();
+        StringBuilder sb = new StringBuilder(parses.get(url));
+        sb.append('|').append(data.getTitle());
+        for (Outlink outlink : data.getOutlinks()) {
+          sb.append('|').append(outlink.getToUrl());
+        }
+        parses.put(url, sb.toString());
+      }
+      reader.close();
+    }
+    return parses;
+  }
+
+  @Test
+  public void testMultithreadedParse() throws Exception {
+    conf.setInt(ParseSegment.PARSE_THREADS, 1);
+    Path single = createSegment("single");
+    new ParseSegment(conf).parse(single);
+    TreeMap<String, String> expected = readParse(single);
+    Assert.assertEquals(NUM_DOCS, expected.size());
+    String parse = expected.get("http://example.com/007.html");
+    Assert.assertTrue(parse.contains("text 7"));
+    Assert.assertTrue(parse.endsWith("|title 7|http://example.com/link7.html"));
+
+    conf.setInt(ParseSegment.PARSE_THREADS, 4);
+    Path multi = createSegment("multi");
+    new ParseSegment(conf).parse(multi);
+    Assert.assertEquals(expected, readParse(multi));
+  }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.segment;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.parse.Outlink;
+import org.apache.nutch.parse.ParseData;
+import org.apache.nutch.parse.ParseOutlinks;
+import org.apache.nutch.parse.ParseStatus;
+import org.apache.nutch.util.NutchConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test merging of segments which store the outlinks in
+ * <code>parse_outlinks</code> with segments which store them in the parse
+ * data.
+ */
+public class TestSegmentMergerOutlinks {
+  Configuration conf;
+  FileSystem fs;
+  Path testDir;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = NutchConfiguration.create();
+    fs = FileSystem.get(conf);
+    testDir = new Path(conf.get("hadoop.tmp.dir"), "merge-outlinks-"
+        + System.currentTimeMillis());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    fs.delete(testDir, true);
+  }
+
+  private static Outlink[] outlinks(String... urls) throws Exception {
+    Outlink[] outlinks = new Outlink[urls.length];
+    for (int i = 0; i < urls.length; i++) {
+      outlinks[i] = new Outlink(urls[i], "anchor " + i);
+    }
+    return outlinks;
+  }
+
+  /**
+   * Write parse data, and parse outlinks if <code>separate</code> is true.
+   * URLs must be passed in sorted order.
+   */
+  private Path createSegment(String name, boolean separate, String[] urls,
+      Outlink[][] links) throws Exception {
+    Path segment = new Path(testDir, name);
+    MapFile.Writer pdOut = new MapFile.Writer(conf,
+        new Path(new Path(segment, ParseData.DIR_NAME), "part-r-00000"),
+        MapFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(ParseData.class));
+    MapFile.Writer poOut = null;
+    if (separate) {
+      poOut = new MapFile.Writer(conf,
+          new Path(new Path(segment, ParseOutlinks.DIR_NAME), "part-r-00000"),
+          MapFile.Writer.keyClass(Text.class),
+          SequenceFile.Writer.valueClass(ParseOutlinks.class));
+    }
+    for (int i = 0; i < urls.length; i++) {
+      Text key = new Text(urls[i]);
+      Outlink[] dataLinks = links[i];
+      if (separate) {
+        poOut.append(key, new ParseOutlinks(urls[i], links[i], 0L));
+        dataLinks = new Outlink[0];
+      }
+      pdOut.append(key, new ParseData(ParseStatus.STATUS_SUCCESS, name,
+          dataLinks, new Metadata(), new Metadata()));
+    }
+    pdOut.close();
+    if (poOut != null) {
+      poOut.close();
+    }
+    return segment;
+  }
+
+  @Test
+  public void testMergeOutlinks() throws Exception {
+    String a = "http://example.com/a";
+    String b = "http://example.com/b";
+    String c = "http://example.com/c";
+    Path seg1 = createSegment("20260101000000", false, new String[] { a, b },
+        new Outlink[][] { outlinks("http://example.com/a1"),
+            outlinks("http://example.com/b1") });
+    Path seg2 = createSegment("20260102000000", true, new String[] { b, c },
+        new Outlink[][] { outlinks("http://example.com/b2", "http://other/"),
+            outlinks() });
+
+    Path out = new Path(testDir, "out");
+    SegmentMerger merger = new SegmentMerger(conf);
+    merger.merge(out, new Path[] { seg1, seg2 }, false, false, -1);
+    FileStatus[] stats = fs.listStatus(out);
+    Assert.assertEquals(1, stats.length);
+    Path merged = stats[0].getPath();
+
+    // outlinks are only found in parse_outlinks
+    Text key = new Text();
+    ParseData data = new ParseData();
+    Map<String, String> titles = new HashMap<>();
+    for (MapFile.Reader reader : MapFileOutputFormat
+        .getReaders(new Path(merged, ParseData.DIR_NAME), conf)) {
+      while (reader.next(key, data)) {
+        titles.put(key.toString(), data.getTitle());
+        Assert.assertEquals(0, data.getOutlinks().length);
+      }
+      reader.close();
+    }
+    Assert.assertEquals(3, titles.size());
+    Assert.assertEquals("20260102000000", titles.get(b));
+
+    ParseOutlinks value = new ParseOutlinks();
+    Map<String, Outlink[]> links = new HashMap<>();
+    for (MapFile.Reader reader : MapFileOutputFormat
+        .getReaders(new Path(merged, ParseOutlinks.DIR_NAME), conf)) {
+      while (reader.next(key, value)) {
+        links.put(key.toString(), value.getOutlinks(key.toString()));
+      }
+      reader.close();
+    }
+    Assert.assertEquals(3, links.size());
+    Assert.assertArrayEquals(outlinks("http://example.com/a1"), links.get(a));
+    Assert.assertArrayEquals(
+        outlinks("http://example.com/b2", "http://other/"), links.get(b));
+    Assert.assertEquals(0, links.get(c).length);
+  }
+
+}
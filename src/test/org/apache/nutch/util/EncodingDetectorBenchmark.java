@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.util;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.nutch.metadata.Metadata;
+import org.apache.nutch.protocol.Content;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Micro-benchmark of the charset detection of {@link EncodingDetector} with
+ * ICU4J only and with the fast detection enabled
+ * (<code>encodingdetector.fast</code>), over HTML samples in several
+ * languages and encodings. <code>shift_jis</code> (no charset declared) is
+ * ambiguous and falls back to ICU4J.
+ *
+ * Run with
+ * <code>java -cp ... org.apache.nutch.util.EncodingDetectorBenchmark</code>
+ * after compiling the test classes with the JMH annotation processor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingDetectorBenchmark {
+
+  @Param({ "ascii", "utf-8", "utf-8-bom", "windows-1251", "shift_jis" })
+  private String sample;
+
+  private Configuration icuConf;
+  private Configuration fastConf;
+  private Content content;
+
+  private static String page(String lang, String meta, String text) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<!DOCTYPE html>\n<html lang=\"").append(lang)
+        .append("\">\n<head>\n");
+    if (meta != null) {
+      sb.append("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=")
+          .append(meta).append("\">\n");
+    }
+    sb.append("<title>Benchmark</title>\n</head>\n<body>\n");
+    for (int i = 0; i < 200; i++) {
+      sb.append("<p><a href=\"/page").append(i).append("\">").append(text)
+          .append("</a> ").append(text).append("</p>\n");
+    }
+    sb.append("</body>\n</html>\n");
+    return sb.toString();
+  }
+
+  @Setup
+  public void setup() {
+    icuConf = NutchConfiguration.create();
+    icuConf.setInt(EncodingDetector.MIN_CONFIDENCE_KEY, 50);
+    fastConf = new Configuration(icuConf);
+    fastConf.setBoolean(EncodingDetector.FAST_DETECTION_KEY, true);
+
+    byte[] data;
+    switch (sample) {
+    case "ascii":
+      data = page("en", null, "The quick brown fox jumps over the lazy dog.")
+          .getBytes(Charset.forName("US-ASCII"));
+      break;
+    case "utf-8":
+      data = page("de", null, "Zwölf Boxkämpfer jagen Viktor quer über den "
+          + "großen Sylter Deich. 我能吞下玻璃而不伤身体。")
+          .getBytes(Charset.forName("UTF-8"));
+      break;
+    case "utf-8-bom":
+      byte[] page = page("el", null, "Ξεσκεπάζω την ψυχοφθόρα βδελυγμία.")
+          .getBytes(Charset.forName("UTF-8"));
+      data = new byte[page.length + 3];
+      data[0] = (byte) 0xEF;
+      data[1] = (byte) 0xBB;
+      data[2] = (byte) 0xBF;
+      System.arraycopy(page, 0, data, 3, page.length);
+      break;
+    case "windows-1251":
+      data = page("ru", "windows-1251",
+          "Съешь же ещё этих мягких французских булок, да выпей чаю.")
+          .getBytes(Charset.forName("windows-1251"));
+      break;
+    case "shift_jis":
+      data = page("ja", null, "いろはにほへと ちりぬるを わかよたれそ つねならむ")
+          .getBytes(Charset.forName("Shift_JIS"));
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown sample " + sample);
+    }
+    content = new Content("http://www.example.com/",
+        "http://www.example.com/", data, "text/html", new Metadata(),
+        icuConf);
+  }
+
+  private String detect(Configuration conf) {
+    EncodingDetector detector = new EncodingDetector(conf);
+    detector.autoDetectClues(content, true);
+    detector.addClue(detector.isFastDetection()
+        ? detector.getSniffedEncoding()
+        : EncodingDetector.sniffCharacterEncoding(content.getContent()),
+        "sniffed");
+    return detector.guessEncoding(content, "windows-1252");
+  }
+
+  @Benchmark
+  public String icu() {
+    return detect(icuConf);
+  }
+
+  @Benchmark
+  public String fast() {
+    return detect(fastConf);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder()
+        .include(EncodingDetectorBenchmark.class.getSimpleName()).build())
+            .run();
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.util;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.jexl3.JexlContext;
+import org.apache.commons.jexl3.JexlScript;
+import org.apache.commons.jexl3.MapContext;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.nutch.hostdb.HostDatum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Micro-benchmark comparing the evaluation of a generator-style JEXL
+ * expression against a {@link MapContext} filled per host (as done
+ * previously) and against the reusable {@link JexlUtil.HostDatumContext}.
+ *
+ * Run with <code>java -cp ... org.apache.nutch.util.JexlUtilBenchmark</code>
+ * after compiling the test classes with the JMH annotation processor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JexlUtilBenchmark {
+
+  private static final String EXPR = "fetched > 100 && avg_rs < 2000.0 ? 5000 : 500";
+
+  private JexlScript script;
+  private HostDatum datum;
+  private JexlUtil.HostDatumContext hostContext;
+
+  @Setup
+  public void setup() {
+    script = JexlUtil.parseExpression(EXPR);
+    datum = new HostDatum();
+    datum.setFetched(250);
+    datum.setUnfetched(1000);
+    datum.setGone(5);
+    datum.setRedirTemp(3);
+    datum.getMetaData().put(new Text("avg_rs"), new FloatWritable(850.5f));
+    datum.getMetaData().put(new Text("num_pages"), new IntWritable(1200));
+    datum.getMetaData().put(new Text("ip"), new Text("127.0.0.1"));
+    hostContext = new JexlUtil.HostDatumContext();
+  }
+
+  @Benchmark
+  public Object mapContext() {
+    JexlContext context = new MapContext();
+    context.set("unfetched", datum.getUnfetched());
+    context.set("fetched", datum.getFetched());
+    context.set("gone", datum.getGone());
+    context.set("redirTemp", datum.getRedirTemp());
+    context.set("redirPerm", datum.getRedirPerm());
+    context.set("redirs", datum.getRedirPerm() + datum.getRedirTemp());
+    context.set("notModified", datum.getNotModified());
+    context.set("ok", datum.getFetched() + datum.getNotModified());
+    context.set("numRecords", datum.numRecords());
+    context.set("dnsFailures", datum.getDnsFailures());
+    context.set("connectionFailures", datum.getConnectionFailures());
+    for (Map.Entry<Writable, Writable> entry : datum.getMetaData().entrySet()) {
+      Object value = entry.getValue();
+      String key = entry.getKey().toString();
+      if (value instanceof FloatWritable) {
+        context.set(key, ((FloatWritable) value).get());
+      } else if (value instanceof IntWritable) {
+        context.set(key, ((IntWritable) value).get());
+      } else if (value instanceof Text) {
+        context.set(key, value.toString());
+      }
+    }
+    return script.execute(context);
+  }
+
+  @Benchmark
+  public Object hostDatumContext() {
+    return script.execute(hostContext.reset(datum));
+  }
+
+  @Benchmark
+  public Object parseAndEvaluate() {
+    return JexlUtil.parseExpression(EXPR).execute(hostContext.reset(datum));
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder()
+        .include(JexlUtilBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
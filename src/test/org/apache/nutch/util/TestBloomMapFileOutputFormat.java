@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.util;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BloomMapFile;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBloomMapFileOutputFormat {
+
+  private static final Path testdir = new Path(
+      "build/test/bloom-mapfile-test");
+
+  private Configuration conf;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = NutchConfiguration.create();
+    conf.set("mapreduce.framework.name", "local");
+    fs = FileSystem.get(conf);
+    fs.delete(testdir, true);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    fs.delete(testdir, true);
+  }
+
+  @Test
+  public void testWriteAndRead() throws Exception {
+    Path input = new Path(testdir, "input");
+    try (SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+        SequenceFile.Writer.file(input),
+        SequenceFile.Writer.keyClass(Text.class),
+        SequenceFile.Writer.valueClass(Text.class))) {
+      for (int i = 0; i < 100; i++) {
+        writer.append(new Text("https://example.com/" + i), new Text("" + i));
+      }
+    }
+
+    Path output = new Path(testdir, "output");
+    Job job = NutchJob.getInstance(conf);
+    FileInputFormat.addInputPath(job, input);
+    job.setInputFormatClass(SequenceFileInputFormat.class);
+    job.setNumReduceTasks(2);
+    FileOutputFormat.setOutputPath(job, output);
+    job.setOutputFormatClass(BloomMapFileOutputFormat.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(Text.class);
+    Assert.assertTrue(job.waitForCompletion(true));
+
+    MapFile.Reader[] readers = BloomMapFileOutputFormat.getReaders(output,
+        conf);
+    Assert.assertEquals(2, readers.length);
+    HashPartitioner<Text, Text> partitioner = new HashPartitioner<>();
+    try {
+      for (MapFile.Reader reader : readers) {
+        Assert.assertTrue(reader instanceof BloomMapFile.Reader);
+      }
+      Text value = new Text();
+      for (int i = 0; i < 200; i++) {
+        Text key = new Text("https://example.com/" + i);
+        if (i < 100) {
+          Assert.assertNotNull(MapFileOutputFormat.getEntry(readers,
+              partitioner, key, value));
+          Assert.assertEquals("" + i, value.toString());
+        } else {
+          Assert.assertNull(MapFileOutputFormat.getEntry(readers, partitioner,
+              key, value));
+        }
+      }
+    } finally {
+      for (MapFile.Reader reader : readers) {
+        reader.close();
+      }
+    }
+  }
+
+}
@@ -17,6 +17,8 @@
 package org.apache.nutch.util;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.nutch.metadata.Metadata;
@@ -87,4 +89,73 @@ public class TestEncodingDetector {
     Assert.assertEquals("utf-8", encoding.toLowerCase());
   }
 
+  private String guess(Configuration conf, byte[] data, String header) {
+    Metadata metadata = new Metadata();
+    if (header != null) {
+      metadata.set(Response.CONTENT_TYPE, header);
+    }
+    Content content = new Content("http://www.example.com",
+        "http://www.example.com/", data, "text/html", metadata, conf);
+    EncodingDetector detector = new EncodingDetector(conf);
+    detector.autoDetectClues(content, true);
+    return detector.guessEncoding(content, "windows-1252").toLowerCase();
+  }
+
+  @Test
+  public void testFastDetection() {
+    Configuration conf = NutchConfiguration.create();
+    conf.setInt(EncodingDetector.MIN_CONFIDENCE_KEY, 50);
+    conf.setBoolean(EncodingDetector.FAST_DETECTION_KEY, true);
+
+    byte[] ascii = "<html><body>Hello, World!</body></html>"
+        .getBytes(StandardCharsets.US_ASCII);
+    Assert.assertEquals(EncodingDetector.ASCII,
+        EncodingDetector.checkUTF8(ascii));
+    Assert.assertEquals("windows-1252", guess(conf, ascii, null));
+    Assert.assertEquals("iso-8859-2",
+        guess(conf, ascii, "text/html; charset=ISO-8859-2"));
+
+    Assert.assertEquals(EncodingDetector.UTF8,
+        EncodingDetector.checkUTF8(contentInOctets));
+    Assert.assertEquals("utf-8",
+        guess(conf, contentInOctets, "text/html; charset=ISO-8859-2"));
+    // truncated multi-byte sequence
+    byte[] truncated = new byte[contentInOctets.length - 1];
+    System.arraycopy(contentInOctets, 0, truncated, 0, truncated.length);
+    Assert.assertEquals(EncodingDetector.UTF8,
+        EncodingDetector.checkUTF8(truncated));
+    // overlong encoding of '/'
+    Assert.assertEquals(EncodingDetector.NOT_UTF8,
+        EncodingDetector.checkUTF8(new byte[] { 'a', (byte) 0xc0, (byte) 0xaf }));
+
+    byte[] declared = ("<html><head><META http-equiv=\"Content-Type\" "
+        + "content=\"text/html; charset=windows-1251\"></head>"
+        + "<body>Привет</body></html>").getBytes(Charset.forName("windows-1251"));
+    Assert.assertEquals(EncodingDetector.NOT_UTF8,
+        EncodingDetector.checkUTF8(declared));
+    Assert.assertEquals("windows-1251",
+        EncodingDetector.sniffCharacterEncoding(declared));
+    Assert.assertEquals("windows-1251",
+        guess(conf, declared, "text/html; charset=UTF-8"));
+    Assert.assertEquals("UTF-8", EncodingDetector.sniffCharacterEncoding(
+        "<meta charset='UTF-8'>".getBytes(StandardCharsets.US_ASCII)));
+
+    // sniffed also if the content type is not subject to detection
+    EncodingDetector detector = new EncodingDetector(conf);
+    detector.autoDetectClues(new Content("http://www.example.com/",
+        "http://www.example.com/", declared, "application/x-unknown",
+        new Metadata(), conf), true);
+    Assert.assertEquals("windows-1251", detector.getSniffedEncoding());
+
+    byte[] bom = { (byte) 0xFE, (byte) 0xFF, 0, 'a', 0, 'b', 0, 'c' };
+    Assert.assertEquals("utf-16be", guess(conf, bom, null));
+
+    // UTF-16 without byte order mark: NUL bytes are ASCII, left to ICU
+    byte[] utf16 = "<html><body>Hello, World! This is a test.</body></html>"
+        .getBytes(StandardCharsets.UTF_16LE);
+    Assert.assertTrue(EncodingDetector.containsNul(utf16));
+    Assert.assertFalse(EncodingDetector.containsNul(ascii));
+    Assert.assertEquals("utf-16le", guess(conf, utf16, null));
+  }
+
 }
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nutch.util;
+
+import java.util.Arrays;
+
+import org.apache.commons.jexl3.JexlContext;
+import org.apache.commons.jexl3.JexlScript;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.nutch.crawl.CrawlDatum;
+import org.apache.nutch.hostdb.HostDatum;
+import org.apache.nutch.indexer.NutchDocument;
+import org.apache.nutch.metadata.Metadata;
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Unit tests for the reusable JEXL contexts in JexlUtil. */
+public class TestJexlUtil {
+
+  private static Object eval(String expr, JexlContext context) {
+    JexlScript script = JexlUtil.parseExpression(expr);
+    Assert.assertNotNull(script);
+    return script.execute(context);
+  }
+
+  @Test
+  public void testParseExpression() {
+    JexlScript script = JexlUtil
+        .parseExpression("fetchTime > 2016-03-20T00:00:00Z");
+    Assert.assertNotNull(script);
+    Assert.assertSame(script,
+        JexlUtil.parseExpression("fetchTime > 2016-03-20T00:00:00Z"));
+    Assert.assertNull(JexlUtil.parseExpression(null));
+  }
+
+  @Test
+  public void testHostDatumContext() {
+    HostDatum datum = new HostDatum();
+    datum.setFetched(10);
+    datum.setNotModified(5);
+    datum.getMetaData().put(new Text("Avg-Response-Time"),
+        new FloatWritable(1.5f));
+    JexlUtil.HostDatumContext context = new JexlUtil.HostDatumContext();
+    context.setVariable("limit", 12);
+
+    context.reset(datum);
+    Assert.assertEquals(15L, ((Number) context.get("ok")).longValue());
+    Assert.assertEquals(1.5f, (Float) context.get("Avg-Response-Time"), 0.0001f);
+    Assert.assertTrue(context.has("fetched"));
+    Assert.assertFalse(context.has("unknown"));
+    Assert.assertEquals(Boolean.TRUE, eval("ok > limit", context));
+
+    // script assignments take precedence over fields
+    Assert.assertEquals(Boolean.TRUE, eval("fetched = 100; x = 1; fetched == 100",
+        context));
+    Assert.assertEquals(100, context.get("fetched"));
+
+    // fields and metadata are taken from the new datum, provided variables
+    // are kept, script assignments are discarded
+    HostDatum other = new HostDatum();
+    other.setFetched(1);
+    context.reset(other);
+    Assert.assertEquals(1L, ((Number) context.get("ok")).longValue());
+    Assert.assertEquals(1L, ((Number) context.get("fetched")).longValue());
+    Assert.assertFalse(context.has("Avg-Response-Time"));
+    Assert.assertFalse(context.has("x"));
+    Assert.assertEquals(Boolean.FALSE, eval("ok > limit", context));
+  }
+
+  @Test
+  public void testCrawlDatumContext() {
+    CrawlDatum datum = new CrawlDatum(CrawlDatum.STATUS_DB_FETCHED, 3600, 2.0f);
+    datum.getMetaData().put(new Text("depth"), new IntWritable(3));
+    datum.getMetaData().put(new Text("Content-Type"), new Text("text/html"));
+    JexlUtil.CrawlDatumContext context = new JexlUtil.CrawlDatumContext();
+
+    context.reset("https://example.com/", datum);
+    Assert.assertEquals("https://example.com/", context.get("url"));
+    Assert.assertEquals("db_fetched", context.get("status"));
+    Assert.assertEquals(3, context.get("depth"));
+    Assert.assertEquals("text/html", context.get("Content_Type"));
+    Assert.assertEquals(Boolean.TRUE,
+        eval("status == 'db_fetched' && score > 1 && depth == 3", context));
+
+    context.setVariable("title", "Example");
+    context.set("tag", "x");
+    context.set("status", "changed");
+    Assert.assertEquals("Example", context.get("title"));
+    Assert.assertEquals("x", context.get("tag"));
+    Assert.assertEquals("changed", context.get("status"));
+
+    context.reset("https://example.org/",
+        new CrawlDatum(CrawlDatum.STATUS_DB_UNFETCHED, 3600, 0.5f));
+    Assert.assertEquals("https://example.org/", context.get("url"));
+    Assert.assertEquals("db_unfetched", context.get("status"));
+    Assert.assertFalse(context.has("depth"));
+    Assert.assertEquals("Example", context.get("title"));
+    Assert.assertFalse(context.has("tag"));
+    Assert.assertNull(context.get("tag"));
+  }
+
+  @Test
+  public void testNutchDocumentContext() {
+    NutchDocument doc = new NutchDocument();
+    doc.add("lang", "en");
+    doc.add("tag", "a");
+    doc.add("tag", "b");
+    JexlUtil.NutchDocumentContext context = new JexlUtil.NutchDocumentContext();
+
+    context.reset(doc);
+    Assert.assertEquals("en", context.get("lang"));
+    Assert.assertEquals(Arrays.asList("a", "b"), context.get("tag"));
+    Assert.assertTrue(context.has("lang"));
+    Assert.assertFalse(context.has("title"));
+
+    // assignments are visible to the script but do not modify the document
+    Assert.assertEquals(Boolean.TRUE,
+        eval("lang = 'de'; title = 'x'; lang == 'de' && title == 'x'",
+            context));
+    Assert.assertEquals("en", doc.getFieldValue("lang"));
+    Assert.assertNull(doc.getField("title"));
+
+    context.reset(new NutchDocument());
+    Assert.assertFalse(context.has("lang"));
+    Assert.assertFalse(context.has("title"));
+    Assert.assertNull(context.get("title"));
+  }
+
+  @Test
+  public void testMetadataContext() {
+    Metadata metadata = new Metadata();
+    metadata.add("Content-Language", "en");
+    metadata.add("keywords", "a");
+    metadata.add("keywords", "b");
+    JexlUtil.MetadataContext context = new JexlUtil.MetadataContext();
+
+    context.reset(metadata);
+    Assert.assertEquals("en", context.get("Content-Language"));
+    Assert.assertArrayEquals(new String[] { "a", "b" },
+        (String[]) context.get("keywords"));
+    Assert.assertTrue(context.has("keywords"));
+    Assert.assertFalse(context.has("author"));
+
+    // assignments do not modify the metadata
+    context.set("author", "someone");
+    Assert.assertEquals("someone", context.get("author"));
+    Assert.assertNull(metadata.get("author"));
+
+    context.reset(new Metadata());
+    Assert.assertFalse(context.has("author"));
+    Assert.assertNull(context.get("keywords"));
+  }
+
+}
@@ -116,6 +116,48 @@ public class TestMimeUtil extends TestCase {
     }
   }
 
+  /** check common signatures before MIME magic */
+  public void testFastMimeMagic() {
+    Configuration conf = NutchConfiguration.create();
+    conf.setBoolean("mime.type.magic.fast", true);
+    MimeUtil mimeUtil = new MimeUtil(conf);
+    for (String[] testPage : textBasedFormats) {
+      String mimeType = mimeUtil.autoResolveContentType(testPage[2],
+          urlPrefix, testPage[3].getBytes(defaultCharset));
+      assertEquals("", testPage[0], mimeType);
+    }
+    assertEquals("application/pdf", MimeUtil.detectCommonSignatures(
+        "%PDF-1.4".getBytes(defaultCharset), "text/html"));
+    assertEquals("text/html", MimeUtil.detectCommonSignatures(
+        "\n <HTML lang=\"en\">".getBytes(defaultCharset), "text/plain"));
+    assertNull(MimeUtil.detectCommonSignatures(
+        "<htmlx>".getBytes(defaultCharset), "text/plain"));
+  }
+
+  /** skip MIME magic for hosts sending consistent Content-Type headers */
+  public void testHostTrust() {
+    Configuration conf = NutchConfiguration.create();
+    conf.setBoolean("mime.type.magic.fast", true);
+    conf.setInt("mime.type.magic.host.trust", 2);
+    MimeUtil mimeUtil = new MimeUtil(conf);
+    byte[] text = "This is a plain text document".getBytes(defaultCharset);
+    // erroneous Content-Type detected by magic
+    assertEquals("text/plain", mimeUtil.autoResolveContentType(
+        "application/msword", urlPrefix + "test.doc", text));
+    for (int i = 0; i < 2; i++) {
+      assertEquals("text/plain", mimeUtil.autoResolveContentType(
+          "text/plain", urlPrefix + "test.txt", text));
+    }
+    // host trusted: magic skipped, then checked again
+    assertEquals("application/msword", mimeUtil.autoResolveContentType(
+        "application/msword", urlPrefix + "test.doc", text));
+    assertEquals("text/plain", mimeUtil.autoResolveContentType(
+        "application/msword", urlPrefix + "test.doc", text));
+    // not trusted anymore
+    assertEquals("text/plain", mimeUtil.autoResolveContentType(
+        "application/msword", urlPrefix + "test.doc", text));
+  }
+
   /** use only MIME magic (detection from content bytes) */
   public void testOnlyMimeMagic() {
     for (String[] testPage : textBasedFormats) {